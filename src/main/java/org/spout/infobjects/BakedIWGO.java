@@ -0,0 +1,156 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import org.spout.api.generator.WorldGeneratorObject;
+import org.spout.api.geo.World;
+
+import org.spout.infobjects.util.BoundingBox;
+import org.spout.infobjects.value.ValueState;
+import org.spout.infobjects.voxel.VoxelBuffer;
+
+/**
+ * A pre-generated variant of an iWGO. The variant is a variation of the iWGO randomized in its own
+ * value state, which has then been executed in a dry run. The recorded blocks are kept in a voxel
+ * buffer with its origin at 0, 0, 0, so placing the variant only replays the finished writes at
+ * the desired position. The conditions are checked with the variant's value state, so they always
+ * match the variant's blocks. The iWGO itself is shared and isn't modified by the variant. Baked
+ * variants are usually obtained from an {@link IWGOManager} which keeps a pool of them and refills
+ * it in the background.
+ */
+public class BakedIWGO extends WorldGeneratorObject {
+	private final IWGO iwgo;
+	private final ValueState state;
+	private final VoxelBuffer voxels;
+
+	/**
+	 * Constructs a new baked variant of an iWGO, randomized in a new value state.
+	 *
+	 * @param iwgo The iWGO to bake
+	 */
+	public BakedIWGO(IWGO iwgo) {
+		this(iwgo, new ValueState());
+	}
+
+	/**
+	 * Constructs a new baked variant of an iWGO. The iWGO is randomized in the value state, using
+	 * the state's random if it has one, and then executed in a dry run. The state should not be used
+	 * by anything else afterwards, as it holds the values of the variant.
+	 *
+	 * @param iwgo The iWGO to bake
+	 * @param state The state to randomize the variant in
+	 */
+	public BakedIWGO(IWGO iwgo, ValueState state) {
+		this.iwgo = iwgo;
+		this.state = state;
+		iwgo.randomize(state);
+		voxels = new VoxelBuffer(0, 0, 0);
+		iwgo.dryRun(voxels, state);
+	}
+
+	/**
+	 * Gets the iWGO this is a variant of.
+	 *
+	 * @return The iWGO
+	 */
+	public IWGO getIWGO() {
+		return iwgo;
+	}
+
+	/**
+	 * Gets the value state holding the values of this variant.
+	 *
+	 * @return The value state of the variant
+	 */
+	public ValueState getValueState() {
+		return state;
+	}
+
+	/**
+	 * Gets the name of the iWGO this is a variant of.
+	 *
+	 * @return The iWGO's name
+	 */
+	public String getName() {
+		return iwgo.getName();
+	}
+
+	/**
+	 * Gets the voxel buffer with the pre-generated blocks of this variant. The buffer's origin is
+	 * at 0, 0, 0. Changes to the buffer are reflected in the variant.
+	 *
+	 * @return The voxel buffer of this variant
+	 */
+	public VoxelBuffer getVoxels() {
+		return voxels;
+	}
+
+	/**
+	 * Tests if the variant can be placed in the world at the given coordinates, using the conditions
+	 * of the iWGO with the values of the variant.
+	 *
+	 * @param w The world
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 * @param z The z coordinate
+	 * @return True if the variant can be placed, false if otherwise
+	 */
+	@Override
+	public boolean canPlaceObject(World w, int x, int y, int z) {
+		return iwgo.canPlaceObject(w, x, y, z, state);
+	}
+
+	/**
+	 * Places the variant in the world by applying its pre-generated blocks at the given
+	 * coordinates. No instructions are executed. The cached condition results of the iWGOs for the
+	 * written blocks are invalidated, as for any other placement.
+	 *
+	 * @param w The world
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 * @param z The z coordinate
+	 */
+	@Override
+	public void placeObject(World w, int x, int y, int z) {
+		if (voxels.isEmpty()) {
+			return;
+		}
+		voxels.apply(w, x, y, z);
+		IWGO.invalidateConditionCaches(w, new BoundingBox(voxels.getMinX() + x, voxels.getMinY() + y,
+				voxels.getMinZ() + z, voxels.getMaxX() + x, voxels.getMaxY() + y, voxels.getMaxZ() + z));
+	}
+
+	/**
+	 * Returns the string representation of this variant.
+	 *
+	 * @return The string form of this variant
+	 */
+	@Override
+	public String toString() {
+		return "BakedIWGO{name=" + iwgo.getName() + ", voxels=" + voxels + '}';
+	}
+}
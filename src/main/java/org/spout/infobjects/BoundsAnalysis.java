@@ -0,0 +1,198 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.spout.infobjects.exception.ValueParsingException;
+import org.spout.infobjects.expression.Expression;
+import org.spout.infobjects.expression.ExpressionParser;
+import org.spout.infobjects.instruction.Instruction;
+import org.spout.infobjects.instruction.RepeatInstruction;
+import org.spout.infobjects.util.BoundingBox;
+import org.spout.infobjects.util.Interval;
+import org.spout.infobjects.value.DoubleValue;
+import org.spout.infobjects.value.IncrementableValue;
+import org.spout.infobjects.value.MathExpressionValue;
+import org.spout.infobjects.value.RandomDoubleValue;
+import org.spout.infobjects.value.RandomIntValue;
+import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.VariableMathExpressionValue;
+import org.spout.infobjects.variable.Variable;
+import org.spout.infobjects.variable.VariableSource;
+
+/**
+ * Computes the worst case bounding box of the blocks placed by an iWGO without running it. Each
+ * value is evaluated to the interval of all of its possible results, using the ranges of the
+ * random values and interval arithmetic over the math expressions. Incremented variables are
+ * widened by the maximum number of repeats. The instructions and shapes then turn the intervals of
+ * their values into the boxes of the blocks they can place. Any value or instruction that can't be
+ * analysed makes the result {@link org.spout.infobjects.util.BoundingBox#UNBOUNDED}.
+ */
+public class BoundsAnalysis {
+	private final IWGO iwgo;
+	private final Map<IncrementableValue, RepeatInstruction> repeats =
+			new IdentityHashMap<IncrementableValue, RepeatInstruction>();
+	private final Map<Value, Interval> intervals = new IdentityHashMap<Value, Interval>();
+
+	/**
+	 * Constructs a new bounds analysis for the iWGO.
+	 *
+	 * @param iwgo The iWGO to analyse
+	 */
+	public BoundsAnalysis(IWGO iwgo) {
+		this.iwgo = iwgo;
+		for (Instruction instruction : iwgo.getInstructions()) {
+			if (instruction instanceof RepeatInstruction) {
+				final RepeatInstruction repeat = (RepeatInstruction) instruction;
+				for (IncrementableValue incrementable : repeat.getIncrementables()) {
+					repeats.put(incrementable, repeat);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the iWGO being analysed.
+	 *
+	 * @return The iWGO
+	 */
+	public IWGO getIWGO() {
+		return iwgo;
+	}
+
+	/**
+	 * Gets the bounding box of all the blocks the iWGO can place, relative to its position. Returns
+	 * null if the iWGO doesn't place any blocks.
+	 *
+	 * @return The bounding box, or null if no blocks are placed
+	 */
+	public BoundingBox getBounds() {
+		BoundingBox bounds = null;
+		for (Instruction instruction : iwgo.getInstructions()) {
+			bounds = union(bounds, instruction.getBounds(this));
+		}
+		return bounds;
+	}
+
+	/**
+	 * Gets the interval of all the possible results of the value. Unknown value types give an
+	 * unbounded interval.
+	 *
+	 * @param value The value to analyse
+	 * @return The interval of the value
+	 */
+	public Interval getInterval(Value value) {
+		if (intervals.containsKey(value)) {
+			final Interval interval = intervals.get(value);
+			// a null entry means the value depends on itself
+			return interval != null ? interval : Interval.UNBOUNDED;
+		}
+		intervals.put(value, null);
+		final Interval interval = calculateInterval(value);
+		intervals.put(value, interval);
+		return interval;
+	}
+
+	/**
+	 * Gets the smallest bounding box containing both boxes, either of which may be null.
+	 *
+	 * @param first The first box, may be null
+	 * @param second The second box, may be null
+	 * @return The union of the boxes, or null if both are null
+	 */
+	public static BoundingBox union(BoundingBox first, BoundingBox second) {
+		if (first == null) {
+			return second;
+		}
+		if (second == null) {
+			return first;
+		}
+		return first.union(second);
+	}
+
+	private Interval calculateInterval(Value value) {
+		if (value instanceof Variable) {
+			return getInterval(((Variable) value).getRawValue());
+		}
+		if (value instanceof DoubleValue) {
+			return new Interval(value.getValue());
+		}
+		if (value instanceof RandomIntValue) {
+			final RandomIntValue random = (RandomIntValue) value;
+			return new Interval(random.getMin(), random.getMax());
+		}
+		if (value instanceof RandomDoubleValue) {
+			final RandomDoubleValue random = (RandomDoubleValue) value;
+			return new Interval(random.getMin(), random.getMax());
+		}
+		if (value instanceof IncrementableValue) {
+			final IncrementableValue incrementable = (IncrementableValue) value;
+			final Interval original = getInterval(incrementable.getOriginalValue());
+			final RepeatInstruction repeat = repeats.get(incrementable);
+			if (repeat == null) {
+				return original;
+			}
+			final Interval times = getInterval(repeat.getTimes()).truncate();
+			final Interval count = new Interval(0, Math.max(0, times.getMax()));
+			return original.add(getInterval(incrementable.getIncrement()).multiply(count));
+		}
+		if (value instanceof MathExpressionValue) {
+			return calculateInterval((MathExpressionValue) value);
+		}
+		return Interval.UNBOUNDED;
+	}
+
+	private Interval calculateInterval(MathExpressionValue value) {
+		if (value.getExpression() == null) {
+			return Interval.UNBOUNDED;
+		}
+		final Expression expression;
+		try {
+			expression = ExpressionParser.parse(value.getExpression());
+		} catch (ValueParsingException ex) {
+			return Interval.UNBOUNDED;
+		}
+		final Map<String, Interval> variables = new HashMap<String, Interval>();
+		if (value instanceof VariableMathExpressionValue) {
+			final VariableMathExpressionValue variableValue = (VariableMathExpressionValue) value;
+			for (String name : expression.getVariables()) {
+				Interval interval = new Interval(0);
+				for (VariableSource source : variableValue.getVariableSources()) {
+					if (source.hasVariable(name)) {
+						interval = getInterval(source.getVariable(name));
+						break;
+					}
+				}
+				variables.put(name, interval);
+			}
+		}
+		return expression.getInterval(variables);
+	}
+}
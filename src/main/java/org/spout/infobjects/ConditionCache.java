@@ -0,0 +1,241 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.spout.api.geo.World;
+
+import org.spout.infobjects.util.BoundingBox;
+
+/**
+ * A cache of the results of the condition checks of an iWGO, by world and origin. The results are
+ * only valid for the current shared variation of the iWGO, so the cache must be cleared when it is
+ * randomized, and the results for the variations held in value states must not be cached. They are
+ * also only valid for the current blocks of the world, so the origins affected by a block change
+ * must be invalidated. The results of each world are bucketed by the chunk of their origin, so
+ * invalidating a box only visits the buckets of the chunks it touches, instead of every result.
+ * Once the capacity is reached, the results for the world are discarded. This is thread safe.
+ */
+public class ConditionCache {
+	private static final int CHUNK_BITS = 4;
+	private final int capacity;
+	private final ConcurrentMap<World, WorldResults> results = new ConcurrentHashMap<World, WorldResults>();
+
+	/**
+	 * Constructs a new condition cache.
+	 *
+	 * @param capacity The maximum number of results per world
+	 */
+	public ConditionCache(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Gets the cached result of the check at the origin, if any.
+	 *
+	 * @param world The world
+	 * @param x The x coordinate of the origin
+	 * @param y The y coordinate of the origin
+	 * @param z The z coordinate of the origin
+	 * @return The result of the check, or null if it isn't cached
+	 */
+	public Boolean get(World world, int x, int y, int z) {
+		final WorldResults worldResults = results.get(world);
+		if (worldResults == null) {
+			return null;
+		}
+		final ConcurrentMap<Origin, Boolean> chunk = worldResults.chunks.get(chunkKey(
+				x >> CHUNK_BITS, y >> CHUNK_BITS, z >> CHUNK_BITS));
+		return chunk != null ? chunk.get(new Origin(x, y, z)) : null;
+	}
+
+	/**
+	 * Caches the result of the check at the origin.
+	 *
+	 * @param world The world
+	 * @param x The x coordinate of the origin
+	 * @param y The y coordinate of the origin
+	 * @param z The z coordinate of the origin
+	 * @param passed The result of the check
+	 */
+	public void put(World world, int x, int y, int z, boolean passed) {
+		WorldResults worldResults = results.get(world);
+		if (worldResults == null) {
+			worldResults = new WorldResults();
+			final WorldResults previous = results.putIfAbsent(world, worldResults);
+			if (previous != null) {
+				worldResults = previous;
+			}
+		}
+		if (worldResults.size.get() >= capacity) {
+			results.remove(world, worldResults);
+			worldResults = new WorldResults();
+			final WorldResults previous = results.putIfAbsent(world, worldResults);
+			if (previous != null) {
+				worldResults = previous;
+			}
+		}
+		final Long key = chunkKey(x >> CHUNK_BITS, y >> CHUNK_BITS, z >> CHUNK_BITS);
+		ConcurrentMap<Origin, Boolean> chunk = worldResults.chunks.get(key);
+		if (chunk == null) {
+			chunk = new ConcurrentHashMap<Origin, Boolean>();
+			final ConcurrentMap<Origin, Boolean> previous = worldResults.chunks.putIfAbsent(key, chunk);
+			if (previous != null) {
+				chunk = previous;
+			}
+		}
+		if (chunk.put(new Origin(x, y, z), passed) == null) {
+			worldResults.size.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes the cached results for the origins in the box. Only the chunks touched by the box are
+	 * visited, unless the box touches more chunks than have results.
+	 *
+	 * @param world The world
+	 * @param origins The box of the origins to invalidate
+	 */
+	public void invalidate(World world, BoundingBox origins) {
+		if (!origins.isBounded()) {
+			invalidate(world);
+			return;
+		}
+		final WorldResults worldResults = results.get(world);
+		if (worldResults == null) {
+			return;
+		}
+		final long chunkCount = ((long) origins.getMaxChunkX() - origins.getMinChunkX() + 1)
+				* ((long) origins.getMaxChunkY() - origins.getMinChunkY() + 1)
+				* ((long) origins.getMaxChunkZ() - origins.getMinChunkZ() + 1);
+		if (chunkCount > worldResults.chunks.size()) {
+			for (ConcurrentMap<Origin, Boolean> chunk : worldResults.chunks.values()) {
+				invalidate(worldResults, chunk, origins);
+			}
+			return;
+		}
+		for (int chunkX = origins.getMinChunkX(); chunkX <= origins.getMaxChunkX(); chunkX++) {
+			for (int chunkY = origins.getMinChunkY(); chunkY <= origins.getMaxChunkY(); chunkY++) {
+				for (int chunkZ = origins.getMinChunkZ(); chunkZ <= origins.getMaxChunkZ(); chunkZ++) {
+					final ConcurrentMap<Origin, Boolean> chunk = worldResults.chunks.get(chunkKey(chunkX, chunkY, chunkZ));
+					if (chunk != null) {
+						invalidate(worldResults, chunk, origins);
+					}
+				}
+			}
+		}
+	}
+
+	private static void invalidate(WorldResults worldResults, ConcurrentMap<Origin, Boolean> chunk, BoundingBox origins) {
+		for (Iterator<Origin> iterator = chunk.keySet().iterator(); iterator.hasNext();) {
+			final Origin origin = iterator.next();
+			if (origins.contains(origin.x, origin.y, origin.z) && chunk.remove(origin) != null) {
+				worldResults.size.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes all the cached results for the world.
+	 *
+	 * @param world The world
+	 */
+	public void invalidate(World world) {
+		results.remove(world);
+	}
+
+	/**
+	 * Removes all the cached results.
+	 */
+	public void clear() {
+		results.clear();
+	}
+
+	/**
+	 * Gets the number of cached results, for all the worlds.
+	 *
+	 * @return The number of results
+	 */
+	public int size() {
+		int size = 0;
+		for (WorldResults worldResults : results.values()) {
+			size += worldResults.size.get();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the string representation of this cache.
+	 *
+	 * @return The string form of this cache
+	 */
+	@Override
+	public String toString() {
+		return "ConditionCache{capacity=" + capacity + ", size=" + size() + '}';
+	}
+
+	// chunks far enough apart can share a bucket, the origins are still compared in full
+	private static long chunkKey(int chunkX, int chunkY, int chunkZ) {
+		return ((long) chunkX & 0x1FFFFF) << 42 | ((long) chunkY & 0x1FFFFF) << 21 | (long) chunkZ & 0x1FFFFF;
+	}
+
+	private static final class WorldResults {
+		private final ConcurrentMap<Long, ConcurrentMap<Origin, Boolean>> chunks =
+				new ConcurrentHashMap<Long, ConcurrentMap<Origin, Boolean>>();
+		private final AtomicInteger size = new AtomicInteger();
+	}
+
+	private static final class Origin {
+		private final int x;
+		private final int y;
+		private final int z;
+
+		private Origin(int x, int y, int z) {
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Origin)) {
+				return false;
+			}
+			final Origin other = (Origin) obj;
+			return x == other.x && y == other.y && z == other.z;
+		}
+
+		@Override
+		public int hashCode() {
+			return (x * 31 + y) * 31 + z;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import org.spout.api.event.EventHandler;
+import org.spout.api.event.Listener;
+import org.spout.api.event.Order;
+import org.spout.api.event.block.BlockChangeEvent;
+import org.spout.api.geo.cuboid.Block;
+
+import org.spout.infobjects.util.BoundingBox;
+
+/**
+ * Invalidates the cached condition checks of all the iWGOs affected by each block change. Only
+ * the changes which fire a {@link org.spout.api.event.block.BlockChangeEvent} are seen, so the
+ * blocks set by generators and populators must still be reported through
+ * {@link IWGO#invalidateConditionCaches(org.spout.api.geo.World, org.spout.infobjects.util.BoundingBox)}.
+ * The plugin registers this listener when enabled.
+ */
+public class ConditionCacheListener implements Listener {
+	/**
+	 * Invalidates the cached checks which read the changed block.
+	 *
+	 * @param event The block change event
+	 */
+	@EventHandler(order = Order.MONITOR, ignoreCancelled = true)
+	public void onBlockChange(BlockChangeEvent event) {
+		final Block block = event.getBlock();
+		IWGO.invalidateConditionCaches(block.getWorld(), new BoundingBox(block.getX(), block.getY(),
+				block.getZ(), block.getX(), block.getY(), block.getZ()));
+	}
+}
@@ -27,40 +27,111 @@
 package org.spout.infobjects;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.spout.api.generator.WorldGeneratorObject;
 import org.spout.api.geo.World;
 import org.spout.api.geo.discrete.Point;
-import org.spout.api.math.GenericMath;
-import org.spout.api.math.IntVector3;
+import org.spout.api.material.BlockMaterial;
 import org.spout.api.util.Named;
 
 import org.spout.infobjects.condition.Condition;
+import org.spout.infobjects.condition.TraversalPlan;
 import org.spout.infobjects.instruction.Instruction;
 import org.spout.infobjects.material.MaterialSetter;
+import org.spout.infobjects.util.BoundingBox;
 import org.spout.infobjects.util.RandomOwner;
+import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
+import org.spout.infobjects.variable.DependencyGraph;
 import org.spout.infobjects.variable.Variable;
 import org.spout.infobjects.variable.VariableSource;
+import org.spout.infobjects.variable.VariableTable;
+import org.spout.infobjects.voxel.VoxelBuffer;
 
 /**
- * A user defined WorldGeneratorObject. This WGO is loaded from a configuration. It is not thread
- * safe and must be synchronized externally. Alternatively more copies can be loaded using the
- * {@link org.spout.infobjects.IWGOLoader} class for unsynchronized thread local use.
+ * A user defined WorldGeneratorObject. This WGO is loaded from a configuration. The world and
+ * position of a check or placement are held in a {@link org.spout.infobjects.PlacementContext}
+ * created for each call, so a single iWGO can be checked and placed from many threads at the same
+ * time. The values read and changed by a call are kept in the context's
+ * {@link org.spout.infobjects.value.ValueState}, so checks and placements run concurrently. Only
+ * randomizing the shared values and setting the random are exclusive. To place different
+ * variations from many threads, randomize a value state for each placement with
+ * {@link #randomize(org.spout.infobjects.value.ValueState)} instead. Loading, adding or removing
+ * variables, setters, conditions and instructions must still be synchronized externally.
  */
 public class IWGO extends WorldGeneratorObject implements VariableSource, Named, RandomOwner {
+	private static final ForkJoinPool BATCH_POOL = new ForkJoinPool();
+	private static final int BATCH_SPLIT = 4;
+	private static final int CONDITION_ORDERING_INTERVAL = 256;
+	private static final int CONDITION_CACHE_CAPACITY = 1 << 16;
+	private static final Map<IWGO, Boolean> CONDITION_CACHED = new WeakHashMap<IWGO, Boolean>();
+	private static final Comparator<Condition> CONDITION_SCORE_ORDER = new Comparator<Condition>() {
+		@Override
+		public int compare(Condition o1, Condition o2) {
+			return Double.compare(o1.getStatistics().getScore(), o2.getStatistics().getScore());
+		}
+	};
+	private static final Comparator<VoxelBuffer> CHUNK_ORDER = new Comparator<VoxelBuffer>() {
+		@Override
+		public int compare(VoxelBuffer o1, VoxelBuffer o2) {
+			int c = compareChunk(o1.getMinX(), o2.getMinX());
+			if (c == 0) {
+				c = compareChunk(o1.getMinZ(), o2.getMinZ());
+				if (c == 0) {
+					c = compareChunk(o1.getMinY(), o2.getMinY());
+				}
+			}
+			return c;
+		}
+
+		private int compareChunk(int b1, int b2) {
+			final int c1 = b1 >> 4;
+			final int c2 = b2 >> 4;
+			return c1 < c2 ? -1 : (c1 == c2 ? 0 : 1);
+		}
+	};
 	private final String name;
-	private World world;
-	private final IntVector3 position = new IntVector3(0, 0, 0);
-	private final Map<String, Variable> variables = new LinkedHashMap<String, Variable>();
+	private final VariableTable variables = new VariableTable();
 	private final Map<String, MaterialSetter> setters = new HashMap<String, MaterialSetter>();
 	private final List<Condition> conditions = new ArrayList<Condition>();
 	private final Map<String, Instruction> instructions = new LinkedHashMap<String, Instruction>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private volatile BoundingBox bounds = BoundingBox.UNBOUNDED;
+	private volatile Condition[] conditionOrder = null;
+	private volatile boolean adaptiveConditionOrder = false;
+	private volatile boolean conditionOrderingDue = false;
+	private volatile boolean traversalPlanned = false;
+	private volatile TraversalPlan traversalPlan = null;
+	private volatile ConditionCache conditionCache = null;
+	private volatile BoundingBox conditionBounds = BoundingBox.UNBOUNDED;
+	private volatile DependencyGraph dependencyGraph = null;
+	// the conditions and instructions whose values are calculated by the dependency graph
+	private volatile Set<Object> graphed = Collections.emptySet();
+	private final AtomicInteger checksSinceOrdering = new AtomicInteger();
+	private final ThreadLocal<VoxelBuffer> placementBuffer = new ThreadLocal<VoxelBuffer>() {
+		@Override
+		protected VoxelBuffer initialValue() {
+			return new VoxelBuffer();
+		}
+	};
+	private final ThreadLocal<PlacementContext> currentContext = new ThreadLocal<PlacementContext>();
 
 	/**
 	 * Constructs a new iWGO. To create a new iWGO, load it using
@@ -87,7 +158,7 @@ public class IWGO extends WorldGeneratorObject implements VariableSource, Named,
 
 	/**
 	 * Tests if the object can be placed in the world at the given coordinated. To do so it checks
-	 * all the conditions. If any is false it fails.
+	 * all the conditions. If any is false it fails. This can be called from many threads at once.
 	 *
 	 * @param w The world
 	 * @param x The x coordinate
@@ -97,19 +168,48 @@ public class IWGO extends WorldGeneratorObject implements VariableSource, Named,
 	 */
 	@Override
 	public boolean canPlaceObject(World w, int x, int y, int z) {
-		world = w;
-		position.set(x, y, z);
-		for (Condition condition : conditions) {
-			if (!condition.check()) {
-				return false;
+		return canPlaceObject(w, x, y, z, new ValueState());
+	}
+
+	/**
+	 * Tests if the variation of the object in the value state can be placed in the world at the
+	 * given coordinates. The conditions read their values from the state. The results are only
+	 * cached for the shared variation, that is, when the state is empty.
+	 *
+	 * @param w The world
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 * @param z The z coordinate
+	 * @param state The state of the values of the variation
+	 * @return True if the object can be placed, false if otherwise
+	 * @see #randomize(org.spout.infobjects.value.ValueState)
+	 */
+	public boolean canPlaceObject(World w, int x, int y, int z, ValueState state) {
+		final ConditionCache cache = state.isEmpty() ? conditionCache : null;
+		lock.readLock().lock();
+		try {
+			if (cache != null) {
+				final Boolean cached = cache.get(w, x, y, z);
+				if (cached != null) {
+					return cached;
+				}
 			}
+			final boolean passed = checkConditions(new PlacementContext(w, x, y, z, null, state));
+			if (cache != null) {
+				cache.put(w, x, y, z, passed);
+			}
+			return passed;
+		} finally {
+			lock.readLock().unlock();
+			orderConditionsIfDue();
 		}
-		return true;
 	}
 
 	/**
 	 * Places the object in world. To do so it executes all the instructions at the given
-	 * coordinates.
+	 * coordinates. The blocks set by the instructions are recorded in a voxel buffer owned by the
+	 * calling thread, which is then flushed to the world once all the instructions have been
+	 * executed.
 	 *
 	 * @param w The world
 	 * @param x The x coordinate
@@ -118,89 +218,896 @@ public class IWGO extends WorldGeneratorObject implements VariableSource, Named,
 	 */
 	@Override
 	public void placeObject(World w, int x, int y, int z) {
-		world = w;
-		position.set(x, y, z);
-		for (Instruction instruction : instructions.values()) {
-			instruction.execute();
+		placeObject(w, x, y, z, new ValueState());
+	}
+
+	/**
+	 * Places the variation of the object in the value state in the world. The instructions read
+	 * their values from the state, and store the values they change in it.
+	 *
+	 * @param w The world
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 * @param z The z coordinate
+	 * @param state The state of the values of the variation
+	 * @see #randomize(org.spout.infobjects.value.ValueState)
+	 */
+	public void placeObject(World w, int x, int y, int z, ValueState state) {
+		final VoxelBuffer buffer = placementBuffer.get();
+		buffer.reset(x, y, z);
+		execute(new PlacementContext(w, x, y, z, buffer, state));
+		flush(buffer, w);
+	}
+
+	/**
+	 * Checks the conditions and places the object in one call. The check and the placement run
+	 * under the same read lock, so the shared values can't be randomized by another thread between
+	 * them, and the variation that is checked is the one that is placed. Other checks and placements
+	 * still run at the same time. This isn't atomic with respect to the world: nothing stops other
+	 * writers from changing the checked blocks before the placement is written. Each block read by
+	 * the conditions is only fetched once from the world, even when the condition volumes overlap.
+	 * The blocks are recorded in a voxel buffer and only written to the world if all the conditions
+	 * passed and all the instructions executed successfully, so a failed placement never leaves
+	 * partial writes.
+	 *
+	 * @param w The world
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 * @param z The z coordinate
+	 * @return True if the object was placed, false if the conditions failed
+	 */
+	public boolean tryPlaceObject(World w, int x, int y, int z) {
+		return tryPlaceObject(w, x, y, z, new ValueState());
+	}
+
+	/**
+	 * Checks the conditions and places the variation of the object in the value state, like
+	 * {@link #tryPlaceObject(org.spout.api.geo.World, int, int, int)}.
+	 *
+	 * @param w The world
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 * @param z The z coordinate
+	 * @param state The state of the values of the variation
+	 * @return True if the object was placed, false if the conditions failed
+	 * @see #randomize(org.spout.infobjects.value.ValueState)
+	 */
+	public boolean tryPlaceObject(World w, int x, int y, int z, ValueState state) {
+		final VoxelBuffer buffer = placementBuffer.get();
+		buffer.reset(x, y, z);
+		final PlacementContext context = new PlacementContext(w, x, y, z, buffer, state);
+		context.setReadCached(true);
+		lock.readLock().lock();
+		try {
+			if (!checkConditions(context)) {
+				return false;
+			}
+			executeInstructions(context);
+		} catch (RuntimeException ex) {
+			buffer.clear();
+			throw ex;
+		} finally {
+			lock.readLock().unlock();
+			orderConditionsIfDue();
 		}
+		flush(buffer, w);
+		return true;
 	}
 
 	/**
-	 * Sets the iWGO's random to the provided one. The variables, material setters, condition and
-	 * instruction will have their random instances changed.
+	 * Finds all the origins in the region where the object can be placed. This is the same as
+	 * calling {@link #canPlaceObject(org.spout.api.geo.World, int, int, int)} for every origin of
+	 * the region, but the conditions check all the origins at once, so overlapping volumes aren't
+	 * read again for each origin. Cuboid conditions answer for each origin in constant time using
+	 * prefix sums.
 	 *
-	 * @param random The random to use
+	 * @param w The world
+	 * @param region The region of the origins to test, inclusive
+	 * @return The coordinates of the valid origins, as consecutive x, y and z triplets
+	 * @throws IllegalArgumentException If the region is unbounded or too large
 	 */
-	@Override
-	public void setRandom(Random random) {
-		for (Variable variable : variables.values()) {
-			if (variable.getRawValue() instanceof RandomOwner) {
-				((RandomOwner) variable.getRawValue()).setRandom(random);
+	public int[] findPlacements(World w, BoundingBox region) {
+		if (!region.isBounded() || region.getVolume() > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Region is too large: " + region);
+		}
+		final boolean[] passed = new boolean[(int) region.getVolume()];
+		Arrays.fill(passed, true);
+		lock.readLock().lock();
+		try {
+			for (Condition condition : getConditionArray()) {
+				condition.checkRegion(w, region, passed);
 			}
+		} finally {
+			lock.readLock().unlock();
 		}
-		for (MaterialSetter setter : setters.values()) {
-			if (setter instanceof RandomOwner) {
-				((RandomOwner) setter).setRandom(random);
+		int count = 0;
+		for (boolean site : passed) {
+			if (site) {
+				count++;
 			}
 		}
-		for (Condition condition : conditions) {
-			condition.setRandom(random);
+		final int[] placements = new int[count * 3];
+		int index = 0;
+		int next = 0;
+		for (int x = region.getMinX(); x <= region.getMaxX(); x++) {
+			for (int y = region.getMinY(); y <= region.getMaxY(); y++) {
+				for (int z = region.getMinZ(); z <= region.getMaxZ(); z++) {
+					if (passed[index++]) {
+						placements[next++] = x;
+						placements[next++] = y;
+						placements[next++] = z;
+					}
+				}
+			}
+		}
+		return placements;
+	}
+
+	/**
+	 * Places the object at many sites in the world at once, using the shared fork join pool. See
+	 * {@link #placeObjects(org.spout.api.geo.World, int[], java.util.concurrent.ForkJoinPool, java.util.Random)}.
+	 *
+	 * @param w The world
+	 * @param coords The coordinates of the sites, as consecutive x, y and z triplets
+	 * @return For each site, true if the object was placed, false if the conditions failed
+	 */
+	public boolean[] placeObjects(World w, int[] coords) {
+		return placeObjects(w, coords, BATCH_POOL, new Random());
+	}
+
+	/**
+	 * Places the object at many sites in the world at once, with a new random. See
+	 * {@link #placeObjects(org.spout.api.geo.World, int[], java.util.concurrent.ForkJoinPool, java.util.Random)}.
+	 *
+	 * @param w The world
+	 * @param coords The coordinates of the sites, as consecutive x, y and z triplets
+	 * @param pool The pool to check and generate the sites on
+	 * @return For each site, true if the object was placed, false if the conditions failed
+	 */
+	public boolean[] placeObjects(World w, int[] coords, ForkJoinPool pool) {
+		return placeObjects(w, coords, pool, new Random());
+	}
+
+	/**
+	 * Places the object at many sites in the world at once. Each site gets its own variation of the
+	 * object, randomized in a value state with a random seeded from the provided one. The seeds are
+	 * drawn on the calling thread in the order of the sites, so the same random gives the same
+	 * variations no matter how the sites are split on the pool. The conditions are checked and the
+	 * voxels are generated for all the sites in parallel on the pool, without excluding each other.
+	 * The blocks of the sites that passed are then written to the world on the calling thread, with
+	 * the sites sorted by the chunk of the lower corner of their writes. A site which writes across
+	 * many chunks still touches the other ones out of that order. All the sites are checked against
+	 * the world as it was before the call, so the sites should be far enough apart not to overlap.
+	 *
+	 * @param w The world
+	 * @param coords The coordinates of the sites, as consecutive x, y and z triplets
+	 * @param pool The pool to check and generate the sites on
+	 * @param random The random to seed the variation of each site from
+	 * @return For each site, true if the object was placed, false if the conditions failed
+	 */
+	public boolean[] placeObjects(World w, int[] coords, ForkJoinPool pool, Random random) {
+		if (coords.length % 3 != 0) {
+			throw new IllegalArgumentException("The coordinates must be x, y and z triplets");
+		}
+		final VoxelBuffer[] sites = new VoxelBuffer[coords.length / 3];
+		final long[] seeds = new long[sites.length];
+		for (int i = 0; i < seeds.length; i++) {
+			seeds[i] = random.nextLong();
+		}
+		pool.invoke(new BatchTask(w, coords, seeds, sites, 0, sites.length));
+		final boolean[] placed = new boolean[sites.length];
+		final List<VoxelBuffer> writes = new ArrayList<VoxelBuffer>(sites.length);
+		for (int i = 0; i < sites.length; i++) {
+			if (sites[i] != null) {
+				placed[i] = true;
+				if (!sites[i].isEmpty()) {
+					writes.add(sites[i]);
+				}
+			}
 		}
-		for (Instruction instruction : instructions.values()) {
-			instruction.setRandom(random);
+		Collections.sort(writes, CHUNK_ORDER);
+		for (VoxelBuffer write : writes) {
+			flush(write, w);
 		}
+		return placed;
 	}
 
 	/**
-	 * Randomizes the iWGO. This will result (theoretically) in a new variation of the iWGO being
-	 * outputted.
+	 * Executes all the instructions at the given coordinates without touching any world. The blocks
+	 * that would have been set are returned in a new voxel buffer, with its origin at the
+	 * coordinates, which also provides the bounding box of the writes. The buffer can later be
+	 * flushed or applied to a world to actually place the object.
+	 *
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 * @param z The z coordinate
+	 * @return The buffer with all the writes of the placement
 	 */
-	public void randomize() {
-		for (Variable variable : variables.values()) {
-			variable.calculate();
+	public VoxelBuffer dryRun(int x, int y, int z) {
+		final VoxelBuffer recording = new VoxelBuffer(x, y, z);
+		dryRun(recording);
+		return recording;
+	}
+
+	/**
+	 * Executes all the instructions at the origin of the provided buffer without touching any
+	 * world. The blocks that would have been set are appended to the buffer.
+	 *
+	 * @param recording The buffer to record the writes in
+	 */
+	public void dryRun(VoxelBuffer recording) {
+		dryRun(recording, new ValueState());
+	}
+
+	/**
+	 * Executes all the instructions for the variation of the object in the value state, at the
+	 * origin of the provided buffer, without touching any world. The blocks that would have been
+	 * set are appended to the buffer.
+	 *
+	 * @param recording The buffer to record the writes in
+	 * @param state The state of the values of the variation
+	 * @see #randomize(org.spout.infobjects.value.ValueState)
+	 */
+	public void dryRun(VoxelBuffer recording, ValueState state) {
+		execute(new PlacementContext(null, recording.getOriginX(), recording.getOriginY(),
+				recording.getOriginZ(), recording, state));
+	}
+
+	private static void flush(VoxelBuffer buffer, World w) {
+		if (buffer.isEmpty()) {
+			return;
+		}
+		final BoundingBox changed = new BoundingBox(buffer.getMinX(), buffer.getMinY(), buffer.getMinZ(),
+				buffer.getMaxX(), buffer.getMaxY(), buffer.getMaxZ());
+		buffer.flush(w);
+		invalidateConditionCaches(w, changed);
+	}
+
+	/**
+	 * Returns true if the results of
+	 * {@link #canPlaceObject(org.spout.api.geo.World, int, int, int)} are cached.
+	 *
+	 * @return True if the condition checks are cached, false if not
+	 */
+	public boolean isConditionCached() {
+		return conditionCache != null;
+	}
+
+	/**
+	 * Sets whether or not the results of
+	 * {@link #canPlaceObject(org.spout.api.geo.World, int, int, int)} are cached, by world and
+	 * origin, so checking the same origin again is free. Only the results of the shared variation
+	 * are cached: the checks with a non-empty {@link org.spout.infobjects.value.ValueState}, which
+	 * hold another variation, neither read nor store results. The cache is cleared when the iWGO is
+	 * randomized. The placements done through any iWGO invalidate the origins they affect in the
+	 * caches of all the iWGOs, and so do the block changes which fire a
+	 * {@link org.spout.api.event.block.BlockChangeEvent}, once the plugin is enabled. Any other change
+	 * to the world, such as the blocks set by generators and populators, must be reported with
+	 * {@link #invalidateConditionCaches(org.spout.api.geo.World, org.spout.infobjects.util.BoundingBox)}.
+	 *
+	 * @param cached Whether or not to cache the checks
+	 */
+	public void setConditionCached(boolean cached) {
+		synchronized (CONDITION_CACHED) {
+			if (cached) {
+				conditionCache = new ConditionCache(CONDITION_CACHE_CAPACITY);
+				CONDITION_CACHED.put(this, Boolean.TRUE);
+			} else {
+				conditionCache = null;
+				CONDITION_CACHED.remove(this);
+			}
+		}
+	}
+
+	/**
+	 * Invalidates the cached checks of all the iWGOs that could have been changed by changes to the
+	 * blocks in the box. See
+	 * {@link #invalidateConditionCache(org.spout.api.geo.World, org.spout.infobjects.util.BoundingBox)}.
+	 *
+	 * @param w The world
+	 * @param changed The box of the changed blocks
+	 */
+	public static void invalidateConditionCaches(World w, BoundingBox changed) {
+		final IWGO[] cached;
+		synchronized (CONDITION_CACHED) {
+			if (CONDITION_CACHED.isEmpty()) {
+				return;
+			}
+			cached = CONDITION_CACHED.keySet().toArray(new IWGO[CONDITION_CACHED.size()]);
+		}
+		for (IWGO iwgo : cached) {
+			if (iwgo != null) {
+				iwgo.invalidateConditionCache(w, changed);
+			}
+		}
+	}
+
+	/**
+	 * Invalidates the cached checks that could have been changed by changes to the blocks of the
+	 * chunk.
+	 *
+	 * @param w The world
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkY The y coordinate of the chunk
+	 * @param chunkZ The z coordinate of the chunk
+	 */
+	public void invalidateConditionCache(World w, int chunkX, int chunkY, int chunkZ) {
+		invalidateConditionCache(w, BoundingBox.ofChunk(chunkX, chunkY, chunkZ));
+	}
+
+	/**
+	 * Invalidates the cached checks that could have been changed by changes to the blocks in the
+	 * box. These are the checks of the origins for which the conditions read blocks in the box.
+	 *
+	 * @param w The world
+	 * @param changed The box of the changed blocks
+	 */
+	public void invalidateConditionCache(World w, BoundingBox changed) {
+		final ConditionCache cache = conditionCache;
+		final BoundingBox reach = conditionBounds;
+		if (cache == null || reach == null) {
+			return;
+		}
+		if (!reach.isBounded() || !changed.isBounded()) {
+			cache.invalidate(w);
+			return;
 		}
+		cache.invalidate(w, new BoundingBox(clamp((long) changed.getMinX() - reach.getMaxX()),
+				clamp((long) changed.getMinY() - reach.getMaxY()), clamp((long) changed.getMinZ() - reach.getMaxZ()),
+				clamp((long) changed.getMaxX() - reach.getMinX()), clamp((long) changed.getMaxY() - reach.getMinY()),
+				clamp((long) changed.getMaxZ() - reach.getMinZ())));
+	}
+
+	private static int clamp(long coordinate) {
+		return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, coordinate));
+	}
+
+	private BoundingBox calculateConditionBounds() {
+		BoundingBox reach = null;
 		for (Condition condition : conditions) {
-			condition.randomize();
+			reach = BoundsAnalysis.union(reach, condition.getBounds());
+		}
+		return reach;
+	}
+
+	private void execute(PlacementContext context) {
+		lock.readLock().lock();
+		try {
+			executeInstructions(context);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private boolean checkConditions(PlacementContext context) {
+		final PlacementContext previous = enterContext(context);
+		try {
+			return checkConditionsInContext(context);
+		} finally {
+			exitContext(previous);
+		}
+	}
+
+	private boolean checkConditionsInContext(PlacementContext context) {
+		// the statistics are only needed to order the conditions
+		final boolean recorded = adaptiveConditionOrder;
+		boolean passed = true;
+		// the plan is built from the shared values
+		final TraversalPlan plan = context.getValueState().isEmpty() ? getTraversalPlan() : null;
+		if (plan != null) {
+			final int reads = context.getReadCount();
+			final Condition failed = plan.check(context);
+			if (failed != null) {
+				if (recorded) {
+					failed.getStatistics().record(false, context.getReadCount() - reads);
+				}
+				passed = false;
+			}
+		}
+		if (passed) {
+			for (Condition condition : getConditionArray()) {
+				if (plan != null && plan.contains(condition)) {
+					continue;
+				}
+				final int reads = context.getReadCount();
+				passed = condition.check(context);
+				if (recorded) {
+					condition.getStatistics().record(passed, context.getReadCount() - reads);
+				}
+				if (!passed) {
+					break;
+				}
+			}
+		}
+		if (recorded) {
+			// only the thread which resets the counter schedules the ordering, which can't be done
+			// here, under the read lock
+			final int checks = checksSinceOrdering.incrementAndGet();
+			if (checks >= CONDITION_ORDERING_INTERVAL && checksSinceOrdering.compareAndSet(checks, 0)) {
+				conditionOrderingDue = true;
+			}
+		}
+		return passed;
+	}
+
+	private void orderConditionsIfDue() {
+		// never wait for the write lock in a check, the next check will try again if it's busy
+		if (conditionOrderingDue && lock.writeLock().tryLock()) {
+			try {
+				conditionOrderingDue = false;
+				if (adaptiveConditionOrder) {
+					sortConditions();
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	private Condition[] getConditionArray() {
+		Condition[] order = conditionOrder;
+		if (order == null || order.length != conditions.size()) {
+			order = conditions.toArray(new Condition[conditions.size()]);
+			conditionOrder = order;
 		}
-		for (Instruction instruction : instructions.values()) {
-			instruction.randomize();
+		return order;
+	}
+
+	/**
+	 * Sorts the conditions in the order they are checked, by increasing statistical
+	 * {@link org.spout.infobjects.condition.ConditionStatistics#getScore() score}, so the
+	 * conditions that are cheap and fail often are checked first. This is done automatically
+	 * after checks when the adaptive condition order is enabled. The order does not change the
+	 * result of the checks, only the time they take. If the order changed, the traversal plan is
+	 * rebuilt on the next check, so the planned conditions are traversed in the new order. This
+	 * waits for the checks and placements in progress to complete.
+	 */
+	public void orderConditions() {
+		lock.writeLock().lock();
+		try {
+			sortConditions();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void sortConditions() {
+		final Condition[] current = getConditionArray();
+		final Condition[] order = current.clone();
+		Arrays.sort(order, CONDITION_SCORE_ORDER);
+		if (!Arrays.equals(order, current)) {
+			conditionOrder = order;
+			traversalPlan = null;
+		}
+	}
+
+	/**
+	 * Gets the conditions in the order in which they are currently checked. The list is a snapshot
+	 * and cannot be modified. The statistics used for the order are available from
+	 * {@link org.spout.infobjects.condition.Condition#getStatistics()}.
+	 *
+	 * @return The conditions in check order
+	 */
+	public List<Condition> getConditionOrder() {
+		return Collections.unmodifiableList(Arrays.asList(getConditionArray()));
+	}
+
+	/**
+	 * Returns true if the conditions are periodically reordered from their statistics.
+	 *
+	 * @return True if the condition order is adaptive, false if the file order is used
+	 */
+	public boolean isAdaptiveConditionOrder() {
+		return adaptiveConditionOrder;
+	}
+
+	/**
+	 * Sets whether or not the conditions are periodically reordered from their statistics. This is
+	 * disabled by default. While enabled, every check records the statistics of the checked
+	 * conditions. When disabled, the conditions are checked in the order they were added again.
+	 * This waits for the checks and placements in progress to complete.
+	 *
+	 * @param adaptive Whether or not to reorder the conditions
+	 */
+	public void setAdaptiveConditionOrder(boolean adaptive) {
+		lock.writeLock().lock();
+		try {
+			adaptiveConditionOrder = adaptive;
+			checksSinceOrdering.set(0);
+			conditionOrderingDue = false;
+			if (!adaptive) {
+				conditionOrder = null;
+				traversalPlan = null;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns true if the shape conditions are checked together in a single
+	 * {@link org.spout.infobjects.condition.TraversalPlan traversal plan}.
+	 *
+	 * @return True if the conditions are planned, false if they are checked one by one
+	 */
+	public boolean isTraversalPlanned() {
+		return traversalPlanned;
+	}
+
+	/**
+	 * Sets whether or not the shape conditions are checked together in a single
+	 * {@link org.spout.infobjects.condition.TraversalPlan traversal plan}, so the voxels shared by
+	 * overlapping conditions are only read once. The plan is rebuilt each time the iWGO is
+	 * randomized. The planned conditions are checked before the other ones, and only record
+	 * statistics when they fail.
+	 *
+	 * @param planned Whether or not to plan the conditions
+	 */
+	public void setTraversalPlanned(boolean planned) {
+		traversalPlanned = planned;
+		traversalPlan = null;
+	}
+
+	private TraversalPlan getTraversalPlan() {
+		if (!traversalPlanned) {
+			return null;
+		}
+		TraversalPlan plan = traversalPlan;
+		if (plan == null) {
+			plan = new TraversalPlan(Arrays.asList(getConditionArray()));
+			traversalPlan = plan;
+		}
+		return plan;
+	}
+
+	private void executeInstructions(PlacementContext context) {
+		final PlacementContext previous = enterContext(context);
+		try {
+			for (Instruction instruction : instructions.values()) {
+				instruction.execute(context);
+			}
+		} finally {
+			exitContext(previous);
+		}
+	}
+
+	/**
+	 * Makes the context the one of the check or placement in progress on the calling thread, until
+	 * {@link #exitContext(org.spout.infobjects.PlacementContext)} is called with the returned
+	 * context. This is done by the checks and placements of the iWGO, and by the default
+	 * implementations of the methods taking a context in the conditions, shapes and instructions,
+	 * so that the deprecated methods without a context keep working.
+	 *
+	 * @param context The context to enter
+	 * @return The previous context of the calling thread, or null if there was none
+	 */
+	public PlacementContext enterContext(PlacementContext context) {
+		final PlacementContext previous = currentContext.get();
+		currentContext.set(context);
+		return previous;
+	}
+
+	/**
+	 * Restores the context of the calling thread to the one returned by
+	 * {@link #enterContext(org.spout.infobjects.PlacementContext)}.
+	 *
+	 * @param previous The previous context, may be null
+	 */
+	public void exitContext(PlacementContext previous) {
+		if (previous != null) {
+			currentContext.set(previous);
+		} else {
+			currentContext.remove();
+		}
+	}
+
+	/**
+	 * Gets the context of the check or placement in progress on the calling thread.
+	 *
+	 * @return The current context
+	 * @throws IllegalStateException If no check or placement is in progress on this thread
+	 */
+	public PlacementContext getCurrentContext() {
+		final PlacementContext context = currentContext.get();
+		if (context == null) {
+			throw new IllegalStateException("No check or placement in progress on this thread");
 		}
+		return context;
+	}
+
+	/**
+	 * Gets the voxel buffer in which the blocks are recorded by the placement or dry run in
+	 * progress on the calling thread.
+	 *
+	 * @return The voxel buffer of the current placement, null during condition checks
+	 * @throws IllegalStateException If no check or placement is in progress on this thread
+	 * @deprecated Use the voxel buffer of the context passed to
+	 * {@link org.spout.infobjects.instruction.Instruction#execute(org.spout.infobjects.PlacementContext)}
+	 */
+	@Deprecated
+	public VoxelBuffer getVoxelBuffer() {
+		return getCurrentContext().getVoxelBuffer();
+	}
+
+	/**
+	 * Records a material from the material setter at the relative integer coordinates, for the
+	 * placement in progress on the calling thread.
+	 *
+	 * @param setter The material setter to use
+	 * @param xx The relative x coordinate
+	 * @param yy The relative y coordinate
+	 * @param zz The relative z coordinate
+	 * @param outer Whether or not the material is outside or inside the shape
+	 * @throws IllegalStateException If no placement is in progress on this thread
+	 * @deprecated Use
+	 * {@link org.spout.infobjects.PlacementContext#setMaterial(org.spout.infobjects.material.MaterialSetter, int, int, int, boolean)}
+	 */
+	@Deprecated
+	public void setMaterial(MaterialSetter setter, int xx, int yy, int zz, boolean outer) {
+		getCurrentContext().setMaterial(setter, xx, yy, zz, outer);
+	}
+
+	/**
+	 * Records a material from the material setter at the relative real coordinates, for the
+	 * placement in progress on the calling thread.
+	 *
+	 * @param setter The material setter to use
+	 * @param xx The relative x coordinate
+	 * @param yy The relative y coordinate
+	 * @param zz The relative z coordinate
+	 * @param outer Whether or not the material is outside or inside the shape
+	 * @throws IllegalStateException If no placement is in progress on this thread
+	 * @deprecated Use
+	 * {@link org.spout.infobjects.PlacementContext#setMaterial(org.spout.infobjects.material.MaterialSetter, double, double, double, boolean)}
+	 */
+	@Deprecated
+	public void setMaterial(MaterialSetter setter, double xx, double yy, double zz, boolean outer) {
+		getCurrentContext().setMaterial(setter, xx, yy, zz, outer);
 	}
 
 	/**
-	 * Transforms the relative real coordinates to absolute for the iWGO and adds the world to the
-	 * position data.
+	 * Gets the block material in the world at the relative integer coordinates, for the check or
+	 * placement in progress on the calling thread.
+	 *
+	 * @param xx The relative x coordinate
+	 * @param yy The relative y coordinate
+	 * @param zz The relative z coordinate
+	 * @return The block material at the coordinates
+	 * @throws IllegalStateException If no check or placement is in progress on this thread
+	 * @deprecated Use {@link org.spout.infobjects.PlacementContext#getBlockMaterial(int, int, int)}
+	 */
+	@Deprecated
+	public BlockMaterial getBlockMaterial(int xx, int yy, int zz) {
+		return getCurrentContext().getBlockMaterial(xx, yy, zz);
+	}
+
+	/**
+	 * Transforms the relative real coordinates to absolute, for the check or placement in progress
+	 * on the calling thread, and adds the world to the position data.
 	 *
 	 * @param xx The relative x coordinate
 	 * @param yy The relative y coordinate
 	 * @param zz The relative z coordinate
 	 * @return The absolute coordinates plus the world
+	 * @throws IllegalStateException If no check or placement is in progress on this thread
+	 * @deprecated Use the origin and world of the context passed to the conditions and instructions
 	 */
+	@Deprecated
 	public Point transform(double xx, double yy, double zz) {
 		return transform((float) xx, (float) yy, (float) zz);
 	}
 
 	/**
-	 * Transforms the relative integer coordinates to absolute for the iWGO and adds the world to
-	 * the position data.
+	 * Transforms the relative integer coordinates to absolute, for the check or placement in
+	 * progress on the calling thread, and adds the world to the position data.
 	 *
 	 * @param xx The relative x coordinate
 	 * @param yy The relative y coordinate
 	 * @param zz The relative z coordinate
 	 * @return The absolute coordinates plus the world
+	 * @throws IllegalStateException If no check or placement is in progress on this thread
+	 * @deprecated Use the origin and world of the context passed to the conditions and instructions
 	 */
+	@Deprecated
 	public Point transform(float xx, float yy, float zz) {
-		return new Point(world, xx + position.getX(), yy + position.getY(), zz + position.getZ());
+		final PlacementContext context = getCurrentContext();
+		return new Point(context.getWorld(), xx + context.getX(), yy + context.getY(), zz + context.getZ());
 	}
 
 	/**
-	 * Transforms the relative point to absolute for the iWGO.
+	 * Transforms the relative point to absolute, for the check or placement in progress on the
+	 * calling thread.
 	 *
 	 * @param pos The relative point
 	 * @return The absolute point
+	 * @throws IllegalStateException If no check or placement is in progress on this thread
+	 * @deprecated Use the origin of the context passed to the conditions and instructions
 	 */
+	@Deprecated
 	public Point transform(Point pos) {
-		return pos.add(position.getX(), position.getY(), position.getZ());
+		final PlacementContext context = getCurrentContext();
+		return pos.add(context.getX(), context.getY(), context.getZ());
+	}
+
+	/**
+	 * Gets the worst case bounding box of the blocks placed by the iWGO, relative to its position.
+	 * This is known before placing the object, so it can be used to find which chunks need to be
+	 * loaded for a placement, or to reject a site without running anything. It is calculated by
+	 * the loader, and should be recalculated with {@link #calculateBounds()} after adding
+	 * instructions. This is null if the iWGO never places any blocks, and
+	 * {@link org.spout.infobjects.util.BoundingBox#UNBOUNDED} if the extent cannot be determined.
+	 *
+	 * @return The bounding box of the placed blocks
+	 */
+	public BoundingBox getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * Calculates the worst case bounding box of the blocks placed by the iWGO, using a
+	 * {@link org.spout.infobjects.BoundsAnalysis} of the instructions and values.
+	 *
+	 * @return The calculated bounding box
+	 * @see #getBounds()
+	 */
+	public BoundingBox calculateBounds() {
+		bounds = new BoundsAnalysis(this).getBounds();
+		return bounds;
+	}
+
+	/**
+	 * Gets the dependency graph of the variables of the iWGO and its instructions. This is built by
+	 * the loader, and should be built again with {@link #buildDependencyGraph()} after adding
+	 * variables or instructions.
+	 *
+	 * @return The dependency graph, or null if it hasn't been built
+	 */
+	public DependencyGraph getDependencyGraph() {
+		return dependencyGraph;
+	}
+
+	/**
+	 * Builds the dependency graph of the variables of the iWGO and its instructions, and of the
+	 * values of the conditions and instructions, when they are
+	 * {@link org.spout.infobjects.condition.Condition#getValues() known}. The constant variables and
+	 * values are calculated once, and the constant variables are folded into the expressions using
+	 * them. Randomizing then only recalculates the variables and values which depend on random or
+	 * incremented values, in topological order. The conditions and instructions with unknown values
+	 * are still randomized as a whole.
+	 *
+	 * @return The built dependency graph
+	 */
+	public DependencyGraph buildDependencyGraph() {
+		lock.writeLock().lock();
+		try {
+			final DependencyGraph graph = new DependencyGraph();
+			final Set<Object> known = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			graph.add(variables);
+			for (Condition condition : conditions) {
+				final List<Value> values = condition.getValues();
+				if (values != null) {
+					graph.add(values);
+					known.add(condition);
+				}
+			}
+			for (Instruction instruction : instructions.values()) {
+				graph.add(instruction.getVariableTable());
+				final List<Value> values = instruction.getValues();
+				if (values != null) {
+					graph.add(values);
+					known.add(instruction);
+				}
+			}
+			graph.build();
+			dependencyGraph = graph;
+			graphed = known;
+			return graph;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Sets the iWGO's random to the provided one. The variables, material setters, condition and
+	 * instruction will have their random instances changed.
+	 *
+	 * @param random The random to use
+	 */
+	@Override
+	public void setRandom(Random random) {
+		lock.writeLock().lock();
+		try {
+			for (Variable variable : variables.getVariables()) {
+				if (variable.getRawValue() instanceof RandomOwner) {
+					((RandomOwner) variable.getRawValue()).setRandom(random);
+				}
+			}
+			for (MaterialSetter setter : setters.values()) {
+				if (setter instanceof RandomOwner) {
+					((RandomOwner) setter).setRandom(random);
+				}
+			}
+			for (Condition condition : conditions) {
+				condition.setRandom(random);
+			}
+			for (Instruction instruction : instructions.values()) {
+				instruction.setRandom(random);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Randomizes the iWGO. This will result (theoretically) in a new variation of the iWGO being
+	 * outputted. With a dependency graph, only the variables and values which can change are
+	 * recalculated. This waits for the checks and placements in progress to complete.
+	 */
+	public void randomize() {
+		lock.writeLock().lock();
+		try {
+			final DependencyGraph graph = dependencyGraph;
+			final Set<Object> known = graphed;
+			variables.calculate();
+			for (Condition condition : conditions) {
+				if (!known.contains(condition)) {
+					condition.randomize();
+				}
+			}
+			for (Instruction instruction : instructions.values()) {
+				if (known.contains(instruction)) {
+					instruction.getVariableTable().calculate();
+				} else {
+					instruction.randomize();
+				}
+			}
+			if (graph != null) {
+				graph.calculateValues();
+			}
+			traversalPlan = null;
+			getTraversalPlan();
+			conditionBounds = calculateConditionBounds();
+			final ConditionCache cache = conditionCache;
+			if (cache != null) {
+				cache.clear();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Randomizes a variation of the iWGO in the value state, leaving the iWGO unchanged. The state
+	 * can then be passed to the checks and placements, to place this variation. If the state has a
+	 * random, it is used instead of the randoms of the iWGO. Many threads can randomize their own
+	 * states at once.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	public void randomize(ValueState state) {
+		lock.readLock().lock();
+		try {
+			final DependencyGraph graph = dependencyGraph;
+			final Set<Object> known = graphed;
+			variables.calculate(state);
+			for (Condition condition : conditions) {
+				if (!known.contains(condition)) {
+					condition.randomize(state);
+				}
+			}
+			for (Instruction instruction : instructions.values()) {
+				if (known.contains(instruction)) {
+					instruction.getVariableTable().calculate(state);
+				} else {
+					instruction.randomize(state);
+				}
+			}
+			if (graph != null) {
+				graph.calculateValues(state);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	/**
@@ -210,7 +1117,7 @@ public class IWGO extends WorldGeneratorObject implements VariableSource, Named,
 	 */
 	@Override
 	public void addVariable(Variable variable) {
-		variables.put(variable.getName(), variable);
+		variables.addVariable(variable);
 	}
 
 	/**
@@ -221,7 +1128,7 @@ public class IWGO extends WorldGeneratorObject implements VariableSource, Named,
 	 */
 	@Override
 	public Variable getVariable(String name) {
-		return variables.get(name);
+		return variables.getVariable(name);
 	}
 
 	/**
@@ -231,7 +1138,7 @@ public class IWGO extends WorldGeneratorObject implements VariableSource, Named,
 	 */
 	@Override
 	public Collection<Variable> getVariables() {
-		return variables.values();
+		return variables.getVariables();
 	}
 
 	/**
@@ -242,7 +1149,7 @@ public class IWGO extends WorldGeneratorObject implements VariableSource, Named,
 	 */
 	@Override
 	public Map<String, Variable> getVariableMap() {
-		return variables;
+		return variables.getVariableMap();
 	}
 
 	/**
@@ -253,7 +1160,17 @@ public class IWGO extends WorldGeneratorObject implements VariableSource, Named,
 	 */
 	@Override
 	public boolean hasVariable(String name) {
-		return variables.containsKey(name);
+		return variables.hasVariable(name);
+	}
+
+	/**
+	 * Gets the variable table of the iWGO. Each variable has a slot in the table's frame, which
+	 * can be used to snapshot and restore the values of all the variables.
+	 *
+	 * @return The variable table
+	 */
+	public VariableTable getVariableTable() {
+		return variables;
 	}
 
 	/**
@@ -312,6 +1229,9 @@ public class IWGO extends WorldGeneratorObject implements VariableSource, Named,
 	 */
 	public void addCondition(Condition condition) {
 		conditions.add(condition);
+		conditionOrder = null;
+		traversalPlan = null;
+		conditionBounds = BoundingBox.UNBOUNDED;
 	}
 
 	/**
@@ -371,4 +1291,45 @@ public class IWGO extends WorldGeneratorObject implements VariableSource, Named,
 	public boolean hasInstruction(String name) {
 		return instructions.containsKey(name);
 	}
+
+	private class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final World world;
+		private final int[] coords;
+		private final long[] seeds;
+		private final VoxelBuffer[] sites;
+		private final int start;
+		private final int end;
+
+		private BatchTask(World world, int[] coords, long[] seeds, VoxelBuffer[] sites, int start, int end) {
+			this.world = world;
+			this.coords = coords;
+			this.seeds = seeds;
+			this.sites = sites;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= BATCH_SPLIT) {
+				for (int i = start; i < end; i++) {
+					final int x = coords[i * 3];
+					final int y = coords[i * 3 + 1];
+					final int z = coords[i * 3 + 2];
+					final ValueState state = new ValueState(new Random(seeds[i]));
+					randomize(state);
+					if (canPlaceObject(world, x, y, z, state)) {
+						final VoxelBuffer site = new VoxelBuffer(x, y, z);
+						dryRun(site, state);
+						sites[i] = site;
+					}
+				}
+			} else {
+				final int middle = (start + end) >>> 1;
+				invokeAll(new BatchTask(world, coords, seeds, sites, start, middle),
+						new BatchTask(world, coords, seeds, sites, middle, end));
+			}
+		}
+	}
 }
@@ -32,6 +32,7 @@ import org.spout.api.command.annotated.Command;
 import org.spout.api.command.annotated.CommandPermissions;
 import org.spout.api.entity.Player;
 import org.spout.api.exception.CommandException;
+import org.spout.api.generator.WorldGeneratorObject;
 import org.spout.api.geo.World;
 import org.spout.api.geo.discrete.Point;
 
@@ -54,10 +55,13 @@ public class IWGOCommands {
 		if (!(source instanceof Player)) {
 			throw new CommandException("You must be a player.");
 		}
-		final IWGO iwgo = InfObjects.getIWGOManager().getIWGO(args.getString(0));
+		final IWGOManager manager = InfObjects.getIWGOManager();
+		final IWGO iwgo = manager.getIWGO(args.getString(0));
 		if (iwgo == null) {
 			throw new CommandException("Invalid IWGO name.");
 		}
+		final BakedIWGO variant = manager.getVariantPoolSize() > 0 ? manager.takeVariant(iwgo.getName()) : null;
+		final WorldGeneratorObject object = variant != null ? variant : iwgo;
 		final Player player = (Player) source;
 		final Point loc = player.getScene().getPosition();
 		final World world = loc.getWorld();
@@ -65,15 +69,22 @@ public class IWGOCommands {
 		final int y = loc.getBlockY();
 		final int z = loc.getBlockZ();
 		final boolean force = args.hasFlag('f');
-		if (!iwgo.canPlaceObject(world, x, y, z)) {
+		if (!object.canPlaceObject(world, x, y, z)) {
 			player.sendMessage("Couldn't place the IWGO.");
 			if (!force) {
+				if (variant != null) {
+					manager.returnVariant(variant);
+				}
 				return;
 			}
 			player.sendMessage("Forcing placement.");
 		}
-		iwgo.placeObject(world, x, y, z);
-		iwgo.randomize();
+		object.placeObject(world, x, y, z);
+		if (variant != null) {
+			manager.recycleVariant(variant);
+		} else {
+			iwgo.randomize();
+		}
 	}
 
 	/**
@@ -56,6 +56,7 @@ public class IWGOLoader {
 		try {
 			Class.forName("org.spout.infobjects.condition.CuboidCondition");
 			Class.forName("org.spout.infobjects.condition.SphereCondition");
+			Class.forName("org.spout.infobjects.condition.HeightCondition");
 			Class.forName("org.spout.infobjects.instruction.ShapeInstruction");
 			Class.forName("org.spout.infobjects.instruction.RepeatInstruction");
 			Class.forName("org.spout.infobjects.instruction.BlockInstruction");
@@ -111,6 +112,8 @@ public class IWGOLoader {
 			loadMaterialSetters(iwgo, config.getNode("setters"));
 			loadConditions(iwgo, config.getNode("conditions"));
 			loadInstructions(iwgo, config.getNode("instructions"));
+			iwgo.buildDependencyGraph();
+			iwgo.calculateBounds();
 			iwgo.randomize();
 			return iwgo;
 		} catch (Exception ex) {
@@ -30,17 +30,30 @@ import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.spout.infobjects.exception.IWGOLoadingException;
 
 /**
  * A simple manager for iWGOs located in the same directory. This manager loads all the iWGO in a
- * directory and manages access and loading.
+ * directory and manages access and loading. It can also keep a pool of pre-generated variants for
+ * each iWGO (see {@link BakedIWGO}), which are refilled on a background executor so that
+ * placement only needs to replay finished blocks. The pool is disabled by default, use
+ * {@link #setVariantPoolSize(int)} to enable it.
  */
 public class IWGOManager {
 	private final File directory;
 	private final Map<String, IWGO> iwgos = new ConcurrentHashMap<String, IWGO>();
+	private final Map<String, Queue<BakedIWGO>> variants = new ConcurrentHashMap<String, Queue<BakedIWGO>>();
+	private final Map<String, AtomicInteger> pendingVariants = new ConcurrentHashMap<String, AtomicInteger>();
+	private volatile int variantPoolSize = 0;
+	private ExecutorService bakingExecutor;
 
 	/**
 	 * Constructs a new iWGO manager. It will manage a directory and if wanted can create the
@@ -87,19 +100,24 @@ public class IWGOManager {
 				try {
 					final IWGO iwgo = IWGOLoader.loadIWGO(file);
 					iwgos.put(iwgo.getName(), iwgo);
+					variants.put(iwgo.getName(), new ConcurrentLinkedQueue<BakedIWGO>());
+					pendingVariants.put(iwgo.getName(), new AtomicInteger(0));
 				} catch (IWGOLoadingException ex) {
 					IWGOLoader.logIWGOLoadingException(ex);
 				}
 			}
 		}
+		refillVariants();
 	}
 
 	/**
-	 * Unloads the iWGO. Clears the map.
+	 * Unloads the iWGO. Clears the map and the variant pools.
 	 */
 	public void unloadIWGOs() {
 		synchronized (iwgos) {
 			iwgos.clear();
+			variants.clear();
+			pendingVariants.clear();
 		}
 	}
 
@@ -111,6 +129,143 @@ public class IWGOManager {
 		loadIWGOs();
 	}
 
+	/**
+	 * Gets the number of pre-generated variants kept in the pool of each iWGO. Zero means the pool
+	 * is disabled.
+	 *
+	 * @return The variant pool size
+	 */
+	public int getVariantPoolSize() {
+		return variantPoolSize;
+	}
+
+	/**
+	 * Sets the number of pre-generated variants to keep in the pool of each iWGO. Zero disables the
+	 * pool. The pools are refilled in the background to the new size.
+	 *
+	 * @param size The variant pool size
+	 * @throws IllegalArgumentException If the size is negative
+	 */
+	public void setVariantPoolSize(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Variant pool size cannot be negative");
+		}
+		variantPoolSize = size;
+		refillVariants();
+	}
+
+	/**
+	 * Sets the executor used to bake the variants in the background. By default, a single daemon
+	 * thread is used.
+	 *
+	 * @param executor The executor to bake the variants with
+	 */
+	public synchronized void setBakingExecutor(ExecutorService executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor cannot be null");
+		}
+		bakingExecutor = executor;
+	}
+
+	/**
+	 * Takes a pre-generated variant of an iWGO from its pool. The variants are baked from the loaded
+	 * iWGO, without reading its file again. If the pool is empty, no variant is baked on the calling
+	 * thread and null is returned, in which case the caller should fall back to the iWGO from
+	 * {@link #getIWGO(String)}. The pool is then refilled in the background. The returned variant
+	 * belongs to the caller. Once done with it, give it back with
+	 * {@link #recycleVariant(BakedIWGO)} if it has been placed, or with
+	 * {@link #returnVariant(BakedIWGO)} if it hasn't.
+	 *
+	 * @param name The name of the iWGO
+	 * @return A baked variant of the iWGO, or null if the iWGO couldn't be found or its pool is
+	 * empty
+	 */
+	public BakedIWGO takeVariant(String name) {
+		final Queue<BakedIWGO> pool = variants.get(name);
+		if (pool == null) {
+			return null;
+		}
+		final BakedIWGO variant = pool.poll();
+		refillVariants(name);
+		return variant;
+	}
+
+	/**
+	 * Gives back a variant which hasn't been placed. It is put back in its pool as is, if the pool
+	 * isn't full and the iWGO hasn't been reloaded since the variant was baked.
+	 *
+	 * @param variant The unused variant
+	 */
+	public void returnVariant(BakedIWGO variant) {
+		final Queue<BakedIWGO> pool = variants.get(variant.getName());
+		if (pool != null && pool.size() < variantPoolSize && iwgos.get(variant.getName()) == variant.getIWGO()) {
+			pool.add(variant);
+		}
+	}
+
+	/**
+	 * Gives back a variant which has been placed. A new variant is baked in the background to
+	 * replace it in the pool, if the pool isn't full.
+	 *
+	 * @param variant The used variant
+	 */
+	public void recycleVariant(BakedIWGO variant) {
+		refillVariants(variant.getName());
+	}
+
+	private void refillVariants() {
+		for (String name : iwgos.keySet()) {
+			refillVariants(name);
+		}
+	}
+
+	private void refillVariants(String name) {
+		final Queue<BakedIWGO> pool = variants.get(name);
+		final AtomicInteger pending = pendingVariants.get(name);
+		if (pool == null || pending == null) {
+			return;
+		}
+		while (true) {
+			final int current = pending.get();
+			if (pool.size() + current >= variantPoolSize) {
+				return;
+			}
+			if (pending.compareAndSet(current, current + 1)) {
+				submitBake(name, pool, pending);
+			}
+		}
+	}
+
+	private void submitBake(final String name, final Queue<BakedIWGO> pool, final AtomicInteger pending) {
+		getBakingExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					final IWGO iwgo = iwgos.get(name);
+					if (iwgo != null) {
+						pool.add(new BakedIWGO(iwgo));
+					}
+				} finally {
+					pending.decrementAndGet();
+				}
+			}
+		});
+	}
+
+	private synchronized ExecutorService getBakingExecutor() {
+		if (bakingExecutor == null) {
+			bakingExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					final Thread thread = new Thread(runnable, "IWGO variant baker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return bakingExecutor;
+	}
+
 	/**
 	 * Gets an iWGO from it's name.
 	 *
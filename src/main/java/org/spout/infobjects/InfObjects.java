@@ -50,6 +50,7 @@ public class InfObjects extends CommonPlugin {
 		final CommandRegistrationsFactory<Class<?>> commandRegFactory =
 				new AnnotatedCommandRegistrationFactory(getEngine(), new SimpleInjector(), new SimpleAnnotatedCommandExecutorFactory());
 		getEngine().getRootCommand().addSubCommands(this, IWGOCommands.class, commandRegFactory);
+		getEngine().getEventManager().registerEvents(new ConditionCacheListener(), this);
 		MANAGER.loadIWGOs();
 		getLogger().info("Loaded " + MANAGER.getIWGOMap().size() + " IWGO(s)");
 		getLogger().info("v" + getDescription().getVersion() + " enabled");
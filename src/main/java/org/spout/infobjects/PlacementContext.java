@@ -0,0 +1,344 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import org.spout.api.geo.World;
+import org.spout.api.material.BlockMaterial;
+import org.spout.api.math.GenericMath;
+import org.spout.api.util.cuboid.CuboidBlockMaterialBuffer;
+
+import org.spout.infobjects.material.MaterialSetter;
+import org.spout.infobjects.value.ValueState;
+import org.spout.infobjects.voxel.VoxelBuffer;
+
+/**
+ * The state of a single condition check or placement of an iWGO. It holds the world, the origin of
+ * the iWGO, the voxel buffer to record the blocks in and the {@link org.spout.infobjects.value.ValueState}
+ * of the values. A new context is used for each call, so that many threads can check and place the
+ * same iWGO at the same time. Conditions read the world through the context and shapes and
+ * instructions record their blocks in it, always using coordinates relative to the origin. The
+ * values are read from the value state, and everything the execution changes, such as the counters
+ * of the repeat instructions, is stored in it, so the iWGO itself isn't modified. A context is only
+ * used by a single thread.
+ */
+public class PlacementContext {
+	private static final int READ_CACHE_CAPACITY = 256;
+	private final World world;
+	private final int x;
+	private final int y;
+	private final int z;
+	private final VoxelBuffer buffer;
+	private final ValueState values;
+	private boolean readCached = false;
+	private long[] readKeys = null;
+	private BlockMaterial[] readMaterials = null;
+	private int readSize = 0;
+	private int readCount = 0;
+
+	/**
+	 * Constructs a new context for a condition check, which doesn't record any blocks.
+	 *
+	 * @param world The world
+	 * @param x The x coordinate of the origin
+	 * @param y The y coordinate of the origin
+	 * @param z The z coordinate of the origin
+	 */
+	public PlacementContext(World world, int x, int y, int z) {
+		this(world, x, y, z, null);
+	}
+
+	/**
+	 * Constructs a new context for a placement, which records the blocks in the buffer. The world
+	 * may be null for dry runs.
+	 *
+	 * @param world The world, may be null
+	 * @param x The x coordinate of the origin
+	 * @param y The y coordinate of the origin
+	 * @param z The z coordinate of the origin
+	 * @param buffer The buffer to record the blocks in
+	 */
+	public PlacementContext(World world, int x, int y, int z, VoxelBuffer buffer) {
+		this(world, x, y, z, buffer, new ValueState());
+	}
+
+	/**
+	 * Constructs a new context for a placement of a variation of the iWGO, whose values are in the
+	 * value state. The buffer may be null for condition checks, and the world for dry runs.
+	 *
+	 * @param world The world, may be null
+	 * @param x The x coordinate of the origin
+	 * @param y The y coordinate of the origin
+	 * @param z The z coordinate of the origin
+	 * @param buffer The buffer to record the blocks in, may be null
+	 * @param values The state of the values
+	 */
+	public PlacementContext(World world, int x, int y, int z, VoxelBuffer buffer, ValueState values) {
+		this.world = world;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.buffer = buffer;
+		this.values = values;
+	}
+
+	/**
+	 * Gets the world. This may be null for dry runs.
+	 *
+	 * @return The world
+	 */
+	public World getWorld() {
+		return world;
+	}
+
+	/**
+	 * Gets the x coordinate of the origin.
+	 *
+	 * @return The x coordinate
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * Gets the y coordinate of the origin.
+	 *
+	 * @return The y coordinate
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * Gets the z coordinate of the origin.
+	 *
+	 * @return The z coordinate
+	 */
+	public int getZ() {
+		return z;
+	}
+
+	/**
+	 * Gets the voxel buffer in which the blocks are recorded. This is null for condition checks.
+	 *
+	 * @return The voxel buffer
+	 */
+	public VoxelBuffer getVoxelBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Gets the state of the values for this call. Values should be read with
+	 * {@link org.spout.infobjects.value.Value#getValue(org.spout.infobjects.value.ValueState)}
+	 * using this state. An empty state reads the shared values of the iWGO.
+	 *
+	 * @return The value state
+	 */
+	public ValueState getValueState() {
+		return values;
+	}
+
+	/**
+	 * Gets the number of blocks read from the world through this context so far. Reads served by
+	 * the cache are not counted.
+	 *
+	 * @return The number of block reads
+	 */
+	public int getReadCount() {
+		return readCount;
+	}
+
+	/**
+	 * Adds block reads done outside of this context to the read count, such as bulk reads done by
+	 * conditions.
+	 *
+	 * @param count The number of reads to add
+	 */
+	public void addReadCount(int count) {
+		readCount += count;
+	}
+
+	/**
+	 * Returns true if the block materials read from the world are cached.
+	 *
+	 * @return True if the reads are cached, false if not
+	 */
+	public boolean isReadCached() {
+		return readCached;
+	}
+
+	/**
+	 * Sets whether or not the block materials read one at a time from the world are cached. With
+	 * the cache, each block read through {@link #getBlockMaterial(int, int, int)} is only fetched
+	 * once from the world during this call. This is useful when the volumes of the conditions
+	 * overlap. The bulk reads bypass the cache: {@link #getCuboid(int, int, int, int, int, int)},
+	 * {@link #getSurfaceHeight(int, int)} and the slab reads of the large cuboid and sphere
+	 * conditions fetch their blocks from the world on every check. The reads are kept in a
+	 * primitive open addressing map keyed by the packed relative coordinates. Disabling the cache
+	 * clears it.
+	 *
+	 * @param cached Whether or not to cache the reads
+	 */
+	public void setReadCached(boolean cached) {
+		readCached = cached;
+		if (!cached) {
+			readKeys = null;
+			readMaterials = null;
+			readSize = 0;
+		}
+	}
+
+	/**
+	 * Records a material from the material setter at the relative integer coordinates in the voxel
+	 * buffer. The coordinates are made absolute by adding the origin. Random setters use the random
+	 * of the value state, if it has one.
+	 *
+	 * @param setter The material setter to use
+	 * @param xx The relative x coordinate
+	 * @param yy The relative y coordinate
+	 * @param zz The relative z coordinate
+	 * @param outer Whether or not the material is outside or inside the shape
+	 */
+	public void setMaterial(MaterialSetter setter, int xx, int yy, int zz, boolean outer) {
+		setter.setMaterial(buffer, xx + x, yy + y, zz + z, outer, values.getRandom());
+	}
+
+	/**
+	 * Records a material from the material setter at the relative real coordinates in the voxel
+	 * buffer. The coordinates are floored to the block coordinates.
+	 *
+	 * @param setter The material setter to use
+	 * @param xx The relative x coordinate
+	 * @param yy The relative y coordinate
+	 * @param zz The relative z coordinate
+	 * @param outer Whether or not the material is outside or inside the shape
+	 * @see #setMaterial(org.spout.infobjects.material.MaterialSetter, int, int, int, boolean)
+	 */
+	public void setMaterial(MaterialSetter setter, double xx, double yy, double zz, boolean outer) {
+		setMaterial(setter, GenericMath.floor(xx), GenericMath.floor(yy), GenericMath.floor(zz), outer);
+	}
+
+	/**
+	 * Gets the block material in the world at the relative integer coordinates. The coordinates are
+	 * made absolute by adding the origin.
+	 *
+	 * @param xx The relative x coordinate
+	 * @param yy The relative y coordinate
+	 * @param zz The relative z coordinate
+	 * @return The block material at the coordinates
+	 */
+	public BlockMaterial getBlockMaterial(int xx, int yy, int zz) {
+		if (!readCached) {
+			readCount++;
+			return world.getBlockMaterial(xx + x, yy + y, zz + z);
+		}
+		if (readKeys == null) {
+			readKeys = new long[READ_CACHE_CAPACITY];
+			readMaterials = new BlockMaterial[READ_CACHE_CAPACITY];
+		}
+		// offset by one so that zero marks the empty entries
+		final long key = (((long) xx & 0x1FFFFF) << 42 | ((long) yy & 0x1FFFFF) << 21 | (long) zz & 0x1FFFFF) + 1;
+		int index = readIndex(key);
+		if (readKeys[index] == key) {
+			return readMaterials[index];
+		}
+		readCount++;
+		final BlockMaterial material = world.getBlockMaterial(xx + x, yy + y, zz + z);
+		if (readSize + 1 << 1 > readKeys.length) {
+			growReads();
+			index = readIndex(key);
+		}
+		readKeys[index] = key;
+		readMaterials[index] = material;
+		readSize++;
+		return material;
+	}
+
+	private int readIndex(long key) {
+		final int mask = readKeys.length - 1;
+		final long hash = key * 0x9E3779B97F4A7C15L;
+		int index = (int) (hash ^ hash >>> 32) & mask;
+		while (readKeys[index] != 0 && readKeys[index] != key) {
+			index = index + 1 & mask;
+		}
+		return index;
+	}
+
+	private void growReads() {
+		final long[] oldKeys = readKeys;
+		final BlockMaterial[] oldMaterials = readMaterials;
+		readKeys = new long[oldKeys.length << 1];
+		readMaterials = new BlockMaterial[oldKeys.length << 1];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				final int index = readIndex(oldKeys[i]);
+				readKeys[index] = oldKeys[i];
+				readMaterials[index] = oldMaterials[i];
+			}
+		}
+	}
+
+	/**
+	 * Gets the height of the surface in the world at the relative column coordinates, from the
+	 * world's heightmap. The height is relative to the origin. Each call is added to the read count.
+	 *
+	 * @param xx The relative x coordinate of the column
+	 * @param zz The relative z coordinate of the column
+	 * @return The relative height of the surface
+	 */
+	public int getSurfaceHeight(int xx, int zz) {
+		readCount++;
+		return world.getSurfaceHeight(xx + x, zz + z) - y;
+	}
+
+	/**
+	 * Reads all the blocks of the cuboid volume from the world at once. The coordinates of the
+	 * lower corner are relative, but the returned buffer is indexed by absolute coordinates. Every
+	 * block of the volume is added to the read count. The read cache isn't used or filled.
+	 *
+	 * @param xx The relative x coordinate of the lower corner
+	 * @param yy The relative y coordinate of the lower corner
+	 * @param zz The relative z coordinate of the lower corner
+	 * @param sizeX The size of the volume on x
+	 * @param sizeY The size of the volume on y
+	 * @param sizeZ The size of the volume on z
+	 * @return The buffer with the block materials of the volume
+	 */
+	public CuboidBlockMaterialBuffer getCuboid(int xx, int yy, int zz, int sizeX, int sizeY, int sizeZ) {
+		readCount += sizeX * sizeY * sizeZ;
+		return world.getCuboid(xx + x, yy + y, zz + z, sizeX, sizeY, sizeZ);
+	}
+
+	/**
+	 * Returns the string representation of this context.
+	 *
+	 * @return The string form of this context
+	 */
+	@Override
+	public String toString() {
+		return "PlacementContext{world=" + world + ", x=" + x + ", y=" + y + ", z=" + z + '}';
+	}
+}
@@ -26,19 +26,25 @@
  */
 package org.spout.infobjects.condition;
 
+import java.util.List;
 import java.util.Random;
 
+import org.spout.api.geo.World;
 import org.spout.api.util.config.ConfigurationNode;
 
 import org.spout.infobjects.IWGO;
+import org.spout.infobjects.PlacementContext;
 import org.spout.infobjects.exception.ConditionLoadingException;
+import org.spout.infobjects.util.BoundingBox;
 import org.spout.infobjects.util.ConfigurationLoadable;
 import org.spout.infobjects.util.RandomOwner;
 import org.spout.infobjects.util.TypeFactory;
+import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
 
 /**
  * An abstract condition. This class stores only the parent iWGO. Extend this class, implement
- * {@link #load(org.spout.api.util.config.ConfigurationNode)}, {@link #check()} and
+ * {@link #load(org.spout.api.util.config.ConfigurationNode)}, {@link #check(org.spout.infobjects.PlacementContext)} and
  * {@link #setRandom(java.util.Random)} to create your own condition. For the loader to recognize it
  * it will also need to be registered with {@link #register(java.lang.String, java.lang.Class)}. It
  * is important to make sure the extending class has a constructor with the same arguments as this
@@ -47,6 +53,7 @@ import org.spout.infobjects.util.TypeFactory;
 public abstract class Condition implements ConfigurationLoadable, RandomOwner {
 	private static final TypeFactory<Condition> CONDITIONS = new TypeFactory<Condition>(IWGO.class);
 	private final IWGO iwgo;
+	private final ConditionStatistics statistics = new ConditionStatistics();
 
 	/**
 	 * Constructs a new condition.
@@ -66,6 +73,17 @@ public abstract class Condition implements ConfigurationLoadable, RandomOwner {
 		return iwgo;
 	}
 
+	/**
+	 * Gets the statistics of the checks of this condition, as recorded by the parent iWGO while its
+	 * {@link org.spout.infobjects.IWGO#setAdaptiveConditionOrder(boolean) adaptive condition order}
+	 * is enabled.
+	 *
+	 * @return The condition statistics
+	 */
+	public ConditionStatistics getStatistics() {
+		return statistics;
+	}
+
 	/**
 	 * Loads this condition from the properties node in the condition declaration.
 	 *
@@ -76,18 +94,102 @@ public abstract class Condition implements ConfigurationLoadable, RandomOwner {
 	public abstract void load(ConfigurationNode properties) throws ConditionLoadingException;
 
 	/**
-	 * An abstract method which is implemented by the extending class. Returns true if the condition
-	 * check is successful, false it not.
+	 * Returns true if the condition check is successful, false it not. The world and position of
+	 * the check are provided by the context, and the values must be read from its
+	 * {@link org.spout.infobjects.value.ValueState}. This may be called from many threads at once,
+	 * so it should not modify the condition. By default, this enters the context on the iWGO and
+	 * calls {@link #check()}, for the conditions written before the contexts. Extending classes
+	 * must override one of the two methods.
+	 *
+	 * @param context The context of the check
+	 * @return True if the check is successful, false if not.
+	 */
+	public boolean check(PlacementContext context) {
+		final PlacementContext previous = iwgo.enterContext(context);
+		try {
+			return check();
+		} finally {
+			iwgo.exitContext(previous);
+		}
+	}
+
+	/**
+	 * Returns true if the condition check is successful, false it not. By default, this checks the
+	 * condition in the context of the check in progress on the calling thread.
 	 *
 	 * @return True if the check is successful, false if not.
+	 * @throws IllegalStateException If no check is in progress on this thread
+	 * @deprecated Override and call {@link #check(org.spout.infobjects.PlacementContext)} instead
+	 */
+	@Deprecated
+	public boolean check() {
+		return check(iwgo.getCurrentContext());
+	}
+
+	/**
+	 * Checks this condition for every origin in the region at once. The origins are indexed in the
+	 * array by {@code (dx * sizeY + dy) * sizeZ + dz}, where the deltas are relative to the lower
+	 * corner of the region and the sizes are the region's. The check is skipped for the origins
+	 * already marked as failed, and the ones for which this condition fails are marked as such. By
+	 * default, this runs {@link #check(org.spout.infobjects.PlacementContext)} for each origin.
+	 * Conditions which can share work between overlapping origins should override it.
+	 *
+	 * @param world The world
+	 * @param region The region of the origins to check
+	 * @param passed For each origin, whether or not the conditions checked so far passed
 	 */
-	public abstract boolean check();
+	public void checkRegion(World world, BoundingBox region, boolean[] passed) {
+		int index = 0;
+		for (int x = region.getMinX(); x <= region.getMaxX(); x++) {
+			for (int y = region.getMinY(); y <= region.getMaxY(); y++) {
+				for (int z = region.getMinZ(); z <= region.getMaxZ(); z++) {
+					if (passed[index] && !check(new PlacementContext(world, x, y, z))) {
+						passed[index] = false;
+					}
+					index++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the bounding box of the blocks read by this condition for its current values, relative
+	 * to the origin. A change to a block outside of this box can't change the result of the check.
+	 * This is null if the condition doesn't read any block. By default, this is
+	 * {@link org.spout.infobjects.util.BoundingBox#UNBOUNDED}.
+	 *
+	 * @return The bounding box of the read blocks
+	 */
+	public BoundingBox getBounds() {
+		return BoundingBox.UNBOUNDED;
+	}
+
+	/**
+	 * Gets the values calculated when this condition is randomized. The iWGO adds them to its
+	 * {@link org.spout.infobjects.variable.DependencyGraph dependency graph}, and then only
+	 * calculates those which can change, instead of randomizing the condition. By default, this
+	 * returns null: the values are unknown, and the condition is randomized as a whole.
+	 *
+	 * @return The values of the condition, or null if they are unknown
+	 */
+	public List<Value> getValues() {
+		return null;
+	}
 
 	/**
 	 * Randomizes this condition.
 	 */
 	public abstract void randomize();
 
+	/**
+	 * Randomizes this condition in the state. The condition itself isn't changed. By default, this
+	 * does nothing, and the condition is checked with its shared values.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	public void randomize(ValueState state) {
+	}
+
 	/**
 	 * Sets the random for this condition.
 	 *
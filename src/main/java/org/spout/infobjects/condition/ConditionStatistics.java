@@ -0,0 +1,143 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.condition;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics of the checks of a condition: the number of checks, how many of them failed and
+ * how many blocks were read from the world. These are used by the iWGO to evaluate the cheap and
+ * selective conditions first. The statistics are updated atomically, as checks may run on many
+ * threads at once.
+ */
+public class ConditionStatistics {
+	private final AtomicLong checks = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+	private final AtomicLong blockReads = new AtomicLong();
+
+	/**
+	 * Records the result of a check.
+	 *
+	 * @param passed Whether or not the check was successful
+	 * @param reads The number of blocks read from the world during the check
+	 */
+	public void record(boolean passed, int reads) {
+		checks.incrementAndGet();
+		if (!passed) {
+			rejections.incrementAndGet();
+		}
+		blockReads.addAndGet(reads);
+	}
+
+	/**
+	 * Gets the number of recorded checks.
+	 *
+	 * @return The number of checks
+	 */
+	public long getChecks() {
+		return checks.get();
+	}
+
+	/**
+	 * Gets the number of recorded checks that failed.
+	 *
+	 * @return The number of rejections
+	 */
+	public long getRejections() {
+		return rejections.get();
+	}
+
+	/**
+	 * Gets the total number of blocks read by the recorded checks.
+	 *
+	 * @return The number of block reads
+	 */
+	public long getBlockReads() {
+		return blockReads.get();
+	}
+
+	/**
+	 * Gets the ratio of failed checks, between 0 and 1. This is 0 if no checks were recorded.
+	 *
+	 * @return The rejection rate
+	 */
+	public double getRejectionRate() {
+		final long count = checks.get();
+		return count == 0 ? 0 : (double) rejections.get() / count;
+	}
+
+	/**
+	 * Gets the average number of blocks read by a check. This is 0 if no checks were recorded.
+	 *
+	 * @return The average block reads
+	 */
+	public double getAverageBlockReads() {
+		final long count = checks.get();
+		return count == 0 ? 0 : (double) blockReads.get() / count;
+	}
+
+	/**
+	 * Gets the expected cost of finding a rejection with this condition, which is the average cost
+	 * of a check divided by the rejection rate. Conditions are best evaluated in increasing order of
+	 * this score. Conditions which have never been checked have a score of 0, so they are measured
+	 * first, and conditions which never failed have an infinite score.
+	 *
+	 * @return The ordering score
+	 */
+	public double getScore() {
+		final long count = checks.get();
+		if (count == 0) {
+			return 0;
+		}
+		final long failed = rejections.get();
+		if (failed == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		// a check costs at least one unit, even if it reads nothing
+		return (1 + (double) blockReads.get() / count) * count / failed;
+	}
+
+	/**
+	 * Clears all the recorded statistics.
+	 */
+	public void reset() {
+		checks.set(0);
+		rejections.set(0);
+		blockReads.set(0);
+	}
+
+	/**
+	 * Returns the string representation of the statistics.
+	 *
+	 * @return The string form of the statistics
+	 */
+	@Override
+	public String toString() {
+		return "ConditionStatistics{checks=" + checks + ", rejections=" + rejections
+				+ ", blockReads=" + blockReads + '}';
+	}
+}
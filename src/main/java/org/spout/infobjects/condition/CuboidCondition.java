@@ -26,22 +26,29 @@
  */
 package org.spout.infobjects.condition;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
 
-import org.spout.api.geo.discrete.Point;
-import org.spout.api.material.BlockMaterial;
+import org.spout.api.geo.World;
+import org.spout.api.util.cuboid.CuboidBlockMaterialBuffer;
 
 import org.spout.infobjects.IWGO;
+import org.spout.infobjects.PlacementContext;
 import org.spout.infobjects.exception.ConditionLoadingException;
+import org.spout.infobjects.material.MaterialSet;
+import org.spout.infobjects.util.BoundingBox;
 import org.spout.infobjects.util.RandomOwner;
 import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
 
 /**
  * An implementation of {@link ShapeCondition}. This condition will check cuboid volumes.
  */
 public class CuboidCondition extends ShapeCondition {
+	private static final int BULK_READ_VOLUME = 64;
+	private static final long PREFIX_SUM_VOLUME = 1 << 22;
 	private Value length;
 	private Value height;
 	private Value depth;
@@ -82,35 +89,281 @@ public class CuboidCondition extends ShapeCondition {
 	}
 
 	/**
-	 * Checks the cuboid volume defined from the position to the position plus the size.
+	 * Checks the cuboid volume defined from the position to the position plus the size. The probes,
+	 * if any, are checked first: the center, the corners and then a low discrepancy sample. In the
+	 * threshold mode, the probes are skipped and the scan stops as soon as the outcome is certain.
+	 * Volumes of at least {@value #BULK_READ_VOLUME} blocks are fetched from the world in a single
+	 * bulk read, then scanned in memory. Volumes of at least {@value #PARALLEL_VOLUME} blocks are
+	 * split in slabs along x, which are read and checked in parallel.
 	 *
+	 * @param context The context of the check
 	 * @return True if successful, false if not
 	 */
 	@Override
-	public boolean check() {
+	public boolean check(PlacementContext context) {
+		final ValueState values = context.getValueState();
+		final int px = (int) getX().getValue(values);
+		final int py = (int) getY().getValue(values);
+		final int pz = (int) getZ().getValue(values);
+		final int sizeX = (int) length.getValue(values);
+		final int sizeY = (int) height.getValue(values);
+		final int sizeZ = (int) depth.getValue(values);
+		final ConditionMode mode = getMode();
+		final MaterialSet materials = getMaterials();
+		if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) {
+			return true;
+		}
+		final ThresholdCounter counter = newThresholdCounter(sizeX * sizeY * sizeZ);
+		if (counter != null && counter.isDecided()) {
+			return counter.isPassed();
+		}
+		// a single failed block doesn't fail a threshold check
+		if (counter == null && !probe(context, px, py, pz, sizeX, sizeY, sizeZ)) {
+			return false;
+		}
+		final int volume = sizeX * sizeY * sizeZ;
+		if (volume >= PARALLEL_VOLUME) {
+			final int allowed = counter != null ? volume - counter.getRequired() : 0;
+			return checkParallel(context, px, py, pz, sizeX, sizeY, sizeZ, allowed);
+		}
+		if (volume >= BULK_READ_VOLUME) {
+			final CuboidBlockMaterialBuffer blocks = context.getCuboid(px, py, pz, sizeX, sizeY, sizeZ);
+			final int bx = context.getX() + px;
+			final int by = context.getY() + py;
+			final int bz = context.getZ() + pz;
+			for (int xx = 0; xx < sizeX; xx++) {
+				for (int yy = 0; yy < sizeY; yy++) {
+					for (int zz = 0; zz < sizeZ; zz++) {
+						final boolean matches = mode.check(blocks.get(bx + xx, by + yy, bz + zz), materials);
+						if (counter == null ? !matches : counter.count(matches)) {
+							return counter != null && counter.isPassed();
+						}
+					}
+				}
+			}
+			return true;
+		}
+		for (int xx = 0; xx < sizeX; xx++) {
+			for (int yy = 0; yy < sizeY; yy++) {
+				for (int zz = 0; zz < sizeZ; zz++) {
+					final boolean matches = mode.check(context.getBlockMaterial(px + xx, py + yy, pz + zz), materials);
+					if (counter == null ? !matches : counter.count(matches)) {
+						return counter != null && counter.isPassed();
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean checkParallel(PlacementContext context, int px, int py, int pz,
+			int sizeX, final int sizeY, final int sizeZ, int allowed) {
+		final World world = context.getWorld();
+		final int bx = context.getX() + px;
+		final int by = context.getY() + py;
+		final int bz = context.getZ() + pz;
+		final ConditionMode mode = getMode();
+		final MaterialSet materials = getMaterials();
+		final SlabCheck slabs = new SlabCheck(allowed) {
+			@Override
+			protected void checkSlab(int start, int end) {
+				final CuboidBlockMaterialBuffer blocks = world.getCuboid(bx + start, by, bz, end - start, sizeY, sizeZ);
+				addReadCount((end - start) * sizeY * sizeZ);
+				for (int xx = start; xx < end; xx++) {
+					for (int yy = 0; yy < sizeY; yy++) {
+						if (isCancelled()) {
+							return;
+						}
+						for (int zz = 0; zz < sizeZ; zz++) {
+							if (!mode.check(blocks.get(bx + xx, by + yy, bz + zz), materials) && fail()) {
+								return;
+							}
+						}
+					}
+				}
+			}
+		};
+		final boolean passed = slabs.check(0, sizeX);
+		context.addReadCount(slabs.getReadCount());
+		return passed;
+	}
+
+	private boolean probe(PlacementContext context, int px, int py, int pz, int sizeX, int sizeY, int sizeZ) {
+		final int count = getProbes();
+		final ConditionMode mode = getMode();
+		final MaterialSet materials = getMaterials();
+		for (int i = 0; i < count; i++) {
+			final int xx;
+			final int yy;
+			final int zz;
+			if (i == 0) {
+				xx = sizeX >> 1;
+				yy = sizeY >> 1;
+				zz = sizeZ >> 1;
+			} else if (i <= 8) {
+				final int corner = i - 1;
+				xx = (corner & 1) == 0 ? 0 : sizeX - 1;
+				yy = (corner & 2) == 0 ? 0 : sizeY - 1;
+				zz = (corner & 4) == 0 ? 0 : sizeZ - 1;
+			} else {
+				xx = (int) (halton(i - 8, 2) * sizeX);
+				yy = (int) (halton(i - 8, 3) * sizeY);
+				zz = (int) (halton(i - 8, 5) * sizeZ);
+			}
+			if (!mode.check(context.getBlockMaterial(px + xx, py + yy, pz + zz), materials)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds every voxel of the cuboid volume to the traversal plan. Threshold mode checks can't be
+	 * planned, as they don't fail on a single block.
+	 *
+	 * @param plan The plan to add the voxels to
+	 * @param index The index of this condition in the plan
+	 * @return True if the voxels were added, false in threshold mode
+	 */
+	@Override
+	public boolean addVoxels(TraversalPlan plan, int index) {
+		if (getMode() == ConditionMode.THRESHOLD) {
+			return false;
+		}
 		final int px = (int) getX().getValue();
 		final int py = (int) getY().getValue();
 		final int pz = (int) getZ().getValue();
 		final int sizeX = (int) length.getValue();
 		final int sizeY = (int) height.getValue();
 		final int sizeZ = (int) depth.getValue();
-		final IWGO iwgo = getIWGO();
-		final ConditionMode mode = getMode();
-		final Set<BlockMaterial> materials = getMaterials();
 		for (int xx = 0; xx < sizeX; xx++) {
 			for (int yy = 0; yy < sizeY; yy++) {
 				for (int zz = 0; zz < sizeZ; zz++) {
-					final Point pos = iwgo.transform(px + xx, py + yy, pz + zz);
-					if (!mode.check(pos.getWorld().getBlockMaterial(pos.getBlockX(),
-							pos.getBlockY(), pos.getBlockZ()), materials)) {
-						return false;
-					}
+					plan.add(px + xx, py + yy, pz + zz, index);
 				}
 			}
 		}
 		return true;
 	}
 
+	/**
+	 * Checks the cuboid volume for every origin in the region at once. The union of the volumes is
+	 * read from the world in one bulk read and turned into a mask of the blocks failing the mode.
+	 * A 3D prefix sum of the mask then gives the number of failing blocks in the volume of any
+	 * origin with eight lookups, instead of a scan of the volume. Large regions are checked in slabs
+	 * along x, so the bulk read and the prefix sums stay bounded. If the slab of a single origin
+	 * is still too large, each origin is checked on its own.
+	 *
+	 * @param world The world
+	 * @param region The region of the origins to check
+	 * @param passed For each origin, whether or not the conditions checked so far passed
+	 */
+	@Override
+	public void checkRegion(World world, BoundingBox region, boolean[] passed) {
+		final int px = (int) getX().getValue();
+		final int py = (int) getY().getValue();
+		final int pz = (int) getZ().getValue();
+		final int sizeX = (int) length.getValue();
+		final int sizeY = (int) height.getValue();
+		final int sizeZ = (int) depth.getValue();
+		if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) {
+			return;
+		}
+		// the region is small enough for its volume to fit in an int
+		final int regionX = (int) region.getSizeX();
+		final int regionY = (int) region.getSizeY();
+		final int regionZ = (int) region.getSizeZ();
+		// the prefix sums are padded by one on each axis, computed in long as they may overflow
+		final long sliceVolume = ((long) regionY + sizeY) * ((long) regionZ + sizeZ);
+		// the number of origins on x checked at once, for the prefix sums to stay under the cap
+		final long maxSlab = PREFIX_SUM_VOLUME / sliceVolume - sizeX;
+		if (maxSlab < 1) {
+			super.checkRegion(world, region, passed);
+			return;
+		}
+		// everything below is bounded by the cap
+		final int slab = (int) Math.min(maxSlab, regionX);
+		final ConditionMode mode = getMode();
+		final MaterialSet materials = getMaterials();
+		// the number of failing blocks a volume can have and still pass
+		final ThresholdCounter counter = newThresholdCounter(sizeX * sizeY * sizeZ);
+		final int allowed = counter != null ? sizeX * sizeY * sizeZ - counter.getRequired() : 0;
+		final int lengthY = regionY + sizeY - 1;
+		final int lengthZ = regionZ + sizeZ - 1;
+		final int oy = region.getMinY() + py;
+		final int oz = region.getMinZ() + pz;
+		final int strideY = lengthZ + 1;
+		final int strideX = (int) sliceVolume;
+		// sums[x + 1][y + 1][z + 1] is the number of failing blocks from the corner of the slab to
+		// x, y, z, the padding stays zero as the array is reused for each slab
+		final int[] sums = new int[(slab + sizeX) * strideX];
+		for (int from = 0; from < regionX; from += slab) {
+			final int slabX = Math.min(slab, regionX - from);
+			final int lengthX = slabX + sizeX - 1;
+			final int ox = region.getMinX() + from + px;
+			final CuboidBlockMaterialBuffer blocks = world.getCuboid(ox, oy, oz, lengthX, lengthY, lengthZ);
+			for (int xx = 0; xx < lengthX; xx++) {
+				for (int yy = 0; yy < lengthY; yy++) {
+					int i = (xx + 1) * strideX + (yy + 1) * strideY + 1;
+					for (int zz = 0; zz < lengthZ; zz++, i++) {
+						final int failed = mode.check(blocks.get(ox + xx, oy + yy, oz + zz), materials) ? 0 : 1;
+						sums[i] = failed + sums[i - strideX] + sums[i - strideY] + sums[i - 1]
+								- sums[i - strideX - strideY] - sums[i - strideX - 1] - sums[i - strideY - 1]
+								+ sums[i - strideX - strideY - 1];
+					}
+				}
+			}
+			final int dx = sizeX * strideX;
+			final int dy = sizeY * strideY;
+			final int dz = sizeZ;
+			int index = from * regionY * regionZ;
+			for (int xx = 0; xx < slabX; xx++) {
+				for (int yy = 0; yy < regionY; yy++) {
+					int i = xx * strideX + yy * strideY;
+					for (int zz = 0; zz < regionZ; zz++, i++, index++) {
+						if (!passed[index]) {
+							continue;
+						}
+						final int failed = sums[i + dx + dy + dz] - sums[i + dy + dz] - sums[i + dx + dz] - sums[i + dx + dy]
+								+ sums[i + dz] + sums[i + dy] + sums[i + dx] - sums[i];
+						if (failed > allowed) {
+							passed[index] = false;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the bounding box of the cuboid volume for the current values.
+	 *
+	 * @return The bounding box of the volume, or null if the volume is empty
+	 */
+	@Override
+	public BoundingBox getBounds() {
+		final int px = (int) getX().getValue();
+		final int py = (int) getY().getValue();
+		final int pz = (int) getZ().getValue();
+		final int sizeX = (int) length.getValue();
+		final int sizeY = (int) height.getValue();
+		final int sizeZ = (int) depth.getValue();
+		if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) {
+			return null;
+		}
+		return new BoundingBox(px, py, pz, px + sizeX - 1, py + sizeY - 1, pz + sizeZ - 1);
+	}
+
+	/**
+	 * Gets the values of the x, y and z position and of the size of the cuboid.
+	 *
+	 * @return The values of the cuboid condition
+	 */
+	@Override
+	public List<Value> getValues() {
+		return Arrays.asList(getX(), getY(), getZ(), length, height, depth);
+	}
+
 	/**
 	 * Randomizes the x, y and z position and size of the cuboid. The sizes will only change if they
 	 * are randomizable.
@@ -123,6 +376,19 @@ public class CuboidCondition extends ShapeCondition {
 		depth.calculate();
 	}
 
+	/**
+	 * Randomizes the size values in the state. Then calls the super method.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	@Override
+	public void randomize(ValueState state) {
+		super.randomize(state);
+		length.calculate(state);
+		height.calculate(state);
+		depth.calculate(state);
+	}
+
 	/**
 	 * Sets the randoms of the position and size values to the provided one if they implement
 	 * {@link org.spout.infobjects.util.RandomOwner}.
@@ -152,6 +418,6 @@ public class CuboidCondition extends ShapeCondition {
 	public String toString() {
 		return "CuboidCondition{x=" + getX() + ", y=" + getY() + ", z=" + getZ() + ", materials="
 				+ getMaterials() + ", length=" + length + ", height=" + height
-				+ ", depth=" + depth + ", mode=" + getMode() + '}';
+				+ ", depth=" + depth + ", mode=" + getMode() + ", probes=" + getProbes() + '}';
 	}
 }
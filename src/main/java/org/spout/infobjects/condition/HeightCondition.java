@@ -0,0 +1,329 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.condition;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.spout.api.util.config.ConfigurationNode;
+
+import org.spout.infobjects.IWGO;
+import org.spout.infobjects.PlacementContext;
+import org.spout.infobjects.exception.ConditionLoadingException;
+import org.spout.infobjects.util.BoundingBox;
+import org.spout.infobjects.util.IWGOUtils;
+import org.spout.infobjects.util.RandomOwner;
+import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueParser;
+import org.spout.infobjects.value.ValueState;
+
+/**
+ * A condition on the ground under the footprint of the iWGO. The footprint is a rectangle of
+ * columns on x and z. The height of the surface of each column is read from the world's heightmap,
+ * which is much cheaper than scanning the columns block by block. The condition can check that the
+ * ground stays within a range relative to the origin, that the difference between the highest and
+ * lowest columns (the flatness) is small enough and that the difference between neighbouring
+ * columns (the slope) is small enough. Each of these checks is optional.
+ */
+public class HeightCondition extends Condition {
+	private Value x;
+	private Value z;
+	private Value sizeX;
+	private Value sizeZ;
+	private Value minGround;
+	private Value maxGround;
+	private int flatness = -1;
+	private int slope = -1;
+
+	static {
+		Condition.register("height", HeightCondition.class);
+	}
+
+	/**
+	 * Constructs a new height condition from the parent iWGO.
+	 *
+	 * @param iwgo The parent iWGO
+	 */
+	public HeightCondition(IWGO iwgo) {
+		super(iwgo);
+	}
+
+	/**
+	 * Loads the condition from the properties node in the condition declaration. Expected
+	 * properties are the position and the size of the footprint, on x and z. The ground range, as
+	 * "min" and "max" in the ground node, the flatness and the slope are optional.
+	 *
+	 * @param properties The properties node to load
+	 * @throws ConditionLoadingException If the loading fails
+	 */
+	@Override
+	public void load(ConfigurationNode properties) throws ConditionLoadingException {
+		final Map<String, Value> position =
+				ValueParser.parse(IWGOUtils.toStringMap(properties.getNode("position")), getIWGO());
+		if (!position.containsKey("x")) {
+			throw new ConditionLoadingException("x coordinate for position is missing");
+		}
+		if (!position.containsKey("z")) {
+			throw new ConditionLoadingException("z coordinate for position is missing");
+		}
+		x = position.get("x");
+		z = position.get("z");
+		final Map<String, Value> size =
+				ValueParser.parse(IWGOUtils.toStringMap(properties.getNode("size")), getIWGO());
+		if (!size.containsKey("x")) {
+			throw new ConditionLoadingException("x size is missing");
+		}
+		if (!size.containsKey("z")) {
+			throw new ConditionLoadingException("z size is missing");
+		}
+		sizeX = size.get("x");
+		sizeZ = size.get("z");
+		final Map<String, Value> ground =
+				ValueParser.parse(IWGOUtils.toStringMap(properties.getNode("ground")), getIWGO());
+		minGround = ground.get("min");
+		maxGround = ground.get("max");
+		flatness = properties.getNode("flatness").getInt(-1);
+		slope = properties.getNode("slope").getInt(-1);
+	}
+
+	/**
+	 * Checks the heights of the surface in the footprint. The check fails on the first column
+	 * outside of the ground range, or as soon as the flatness or slope is exceeded.
+	 *
+	 * @param context The context of the check
+	 * @return True if successful, false if not
+	 */
+	@Override
+	public boolean check(PlacementContext context) {
+		final ValueState values = context.getValueState();
+		final int px = (int) x.getValue(values);
+		final int pz = (int) z.getValue(values);
+		final int lengthX = (int) sizeX.getValue(values);
+		final int lengthZ = (int) sizeZ.getValue(values);
+		if (lengthX <= 0 || lengthZ <= 0) {
+			return true;
+		}
+		final int min = minGround != null ? (int) minGround.getValue(values) : Integer.MIN_VALUE;
+		final int max = maxGround != null ? (int) maxGround.getValue(values) : Integer.MAX_VALUE;
+		// the heights of the previous row, for the slope
+		final int[] previous = slope >= 0 ? new int[lengthZ] : null;
+		int lowest = Integer.MAX_VALUE;
+		int highest = Integer.MIN_VALUE;
+		for (int xx = 0; xx < lengthX; xx++) {
+			for (int zz = 0; zz < lengthZ; zz++) {
+				final int height = context.getSurfaceHeight(px + xx, pz + zz);
+				if (height < min || height > max) {
+					return false;
+				}
+				if (flatness >= 0) {
+					lowest = Math.min(lowest, height);
+					highest = Math.max(highest, height);
+					if (highest - lowest > flatness) {
+						return false;
+					}
+				}
+				if (previous != null) {
+					if (xx > 0 && Math.abs(height - previous[zz]) > slope
+							|| zz > 0 && Math.abs(height - previous[zz - 1]) > slope) {
+						return false;
+					}
+					previous[zz] = height;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the bounding box of the columns of the footprint for the current values. The surface
+	 * height depends on every block of the column, so the box spans all the heights.
+	 *
+	 * @return The bounding box of the footprint columns, or null if the footprint is empty
+	 */
+	@Override
+	public BoundingBox getBounds() {
+		final int px = (int) x.getValue();
+		final int pz = (int) z.getValue();
+		final int lengthX = (int) sizeX.getValue();
+		final int lengthZ = (int) sizeZ.getValue();
+		if (lengthX <= 0 || lengthZ <= 0) {
+			return null;
+		}
+		return new BoundingBox(px, Integer.MIN_VALUE, pz, px + lengthX - 1, Integer.MAX_VALUE, pz + lengthZ - 1);
+	}
+
+	/**
+	 * Sets the {@link org.spout.infobjects.value.Value}s representing the x and z coordinates of
+	 * the footprint, relative to the origin.
+	 *
+	 * @param x The value for x
+	 * @param z The value for z
+	 */
+	public void setPosition(Value x, Value z) {
+		this.x = x;
+		this.z = z;
+	}
+
+	/**
+	 * Sets the {@link org.spout.infobjects.value.Value}s representing the size of the footprint on
+	 * x and z.
+	 *
+	 * @param sizeX The value for the size on x
+	 * @param sizeZ The value for the size on z
+	 */
+	public void setSize(Value sizeX, Value sizeZ) {
+		this.sizeX = sizeX;
+		this.sizeZ = sizeZ;
+	}
+
+	/**
+	 * Sets the {@link org.spout.infobjects.value.Value}s representing the range of the ground
+	 * height, relative to the origin. Either bound may be null to not check it.
+	 *
+	 * @param min The value for the lowest ground height, may be null
+	 * @param max The value for the highest ground height, may be null
+	 */
+	public void setGround(Value min, Value max) {
+		minGround = min;
+		maxGround = max;
+	}
+
+	/**
+	 * Gets the maximum difference between the highest and lowest columns of the footprint. A
+	 * negative value means that the flatness isn't checked.
+	 *
+	 * @return The flatness
+	 */
+	public int getFlatness() {
+		return flatness;
+	}
+
+	/**
+	 * Sets the maximum difference between the highest and lowest columns of the footprint.
+	 *
+	 * @param flatness The flatness, negative to not check it
+	 */
+	public void setFlatness(int flatness) {
+		this.flatness = flatness;
+	}
+
+	/**
+	 * Gets the maximum difference between the heights of neighbouring columns of the footprint. A
+	 * negative value means that the slope isn't checked.
+	 *
+	 * @return The slope
+	 */
+	public int getSlope() {
+		return slope;
+	}
+
+	/**
+	 * Sets the maximum difference between the heights of neighbouring columns of the footprint.
+	 *
+	 * @param slope The slope, negative to not check it
+	 */
+	public void setSlope(int slope) {
+		this.slope = slope;
+	}
+
+	/**
+	 * Gets the values of the position, size and ground range of the footprint. The bounds of the
+	 * ground range are null if they aren't checked.
+	 *
+	 * @return The values of the height condition
+	 */
+	@Override
+	public List<Value> getValues() {
+		return Arrays.asList(x, z, sizeX, sizeZ, minGround, maxGround);
+	}
+
+	/**
+	 * Randomizes the position, size and ground range of the footprint. The values will only change
+	 * if they are randomizable.
+	 */
+	@Override
+	public void randomize() {
+		x.calculate();
+		z.calculate();
+		sizeX.calculate();
+		sizeZ.calculate();
+		if (minGround != null) {
+			minGround.calculate();
+		}
+		if (maxGround != null) {
+			maxGround.calculate();
+		}
+	}
+
+	/**
+	 * Randomizes the position, size and ground range of the footprint in the state.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	@Override
+	public void randomize(ValueState state) {
+		x.calculate(state);
+		z.calculate(state);
+		sizeX.calculate(state);
+		sizeZ.calculate(state);
+		if (minGround != null) {
+			minGround.calculate(state);
+		}
+		if (maxGround != null) {
+			maxGround.calculate(state);
+		}
+	}
+
+	/**
+	 * Sets the randoms of the position, size and ground range values to the provided one if they
+	 * implement {@link org.spout.infobjects.util.RandomOwner}.
+	 *
+	 * @param random The random to set
+	 */
+	@Override
+	public void setRandom(Random random) {
+		for (Value value : new Value[]{x, z, sizeX, sizeZ, minGround, maxGround}) {
+			if (value instanceof RandomOwner) {
+				((RandomOwner) value).setRandom(random);
+			}
+		}
+	}
+
+	/**
+	 * Returns a string representation of this condition.
+	 *
+	 * @return The string representation of the condition
+	 */
+	@Override
+	public String toString() {
+		return "HeightCondition{x=" + x + ", z=" + z + ", sizeX=" + sizeX + ", sizeZ=" + sizeZ
+				+ ", minGround=" + minGround + ", maxGround=" + maxGround + ", flatness=" + flatness
+				+ ", slope=" + slope + '}';
+	}
+}
@@ -26,7 +26,6 @@
  */
 package org.spout.infobjects.condition;
 
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -36,18 +35,26 @@ import org.spout.api.util.config.ConfigurationNode;
 
 import org.spout.infobjects.IWGO;
 import org.spout.infobjects.exception.ConditionLoadingException;
+import org.spout.infobjects.material.MaterialSet;
 import org.spout.infobjects.util.IWGOUtils;
 import org.spout.infobjects.util.RandomOwner;
 import org.spout.infobjects.value.Value;
 import org.spout.infobjects.value.ValueParser;
+import org.spout.infobjects.value.ValueState;
 
 /**
  * An abstract class to represent a shape based condition. Provides the materials to check for, the
  * condition's mode and its position.
  */
 public abstract class ShapeCondition extends Condition {
-	private final Set<BlockMaterial> materials = new HashSet<BlockMaterial>();
+	/**
+	 * The volume from which the checks are split in slabs and run in parallel.
+	 */
+	protected static final int PARALLEL_VOLUME = 1 << 17;
+	private final MaterialSet materials = new MaterialSet();
 	private ConditionMode mode;
+	private int probes = 0;
+	private double threshold = 100;
 	private Value x;
 	private Value y;
 	private Value z;
@@ -80,6 +87,59 @@ public abstract class ShapeCondition extends Condition {
 		this.mode = mode;
 	}
 
+	/**
+	 * Gets the number of blocks probed before the exhaustive scan of the volume. The probes are the
+	 * center, the corners and then a low discrepancy sample of the volume. Most sites that fail do
+	 * so on a few blocks, which the probes find without scanning the whole volume. A value of 0
+	 * disables probing.
+	 *
+	 * @return The number of probes
+	 */
+	public int getProbes() {
+		return probes;
+	}
+
+	/**
+	 * Sets the number of blocks probed before the exhaustive scan of the volume.
+	 *
+	 * @param probes The number of probes, 0 to disable probing
+	 * @see #getProbes()
+	 */
+	public void setProbes(int probes) {
+		this.probes = Math.max(0, probes);
+	}
+
+	/**
+	 * Gets the percentage of the blocks of the volume that must be one of the materials for the
+	 * check to pass in the threshold mode.
+	 *
+	 * @return The threshold, as a percentage
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Sets the percentage of the blocks of the volume that must be one of the materials for the
+	 * check to pass in the threshold mode. The value is clamped between 0 and 100.
+	 *
+	 * @param threshold The threshold, as a percentage
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = Math.max(0, Math.min(100, threshold));
+	}
+
+	/**
+	 * Creates a counter for a threshold mode check of a volume with the total number of blocks, or
+	 * returns null if the mode isn't the threshold mode.
+	 *
+	 * @param total The number of blocks in the volume
+	 * @return The counter, or null if not in threshold mode
+	 */
+	protected ThresholdCounter newThresholdCounter(int total) {
+		return mode == ConditionMode.THRESHOLD ? new ThresholdCounter(total, threshold) : null;
+	}
+
 	/**
 	 * Gets the {@link org.spout.infobjects.value.Value} representing the x coordinate.
 	 *
@@ -176,6 +236,20 @@ public abstract class ShapeCondition extends Condition {
 	 */
 	public abstract void setSize(Map<String, Value> sizes) throws ConditionLoadingException;
 
+	/**
+	 * Adds the voxels of the condition's volume, for the current values, to the traversal plan.
+	 * This must either add all the voxels and return true, or add none and return false if the
+	 * volume can't be described voxel by voxel, in which case the condition is checked on its own.
+	 * By default, this returns false.
+	 *
+	 * @param plan The plan to add the voxels to
+	 * @param index The index of this condition in the plan
+	 * @return True if the voxels were added, false if not
+	 */
+	public boolean addVoxels(TraversalPlan plan, int index) {
+		return false;
+	}
+
 	/**
 	 * Adds a block material to this condition. The materials are used in checks, where the
 	 * condition's volume is tested for either absence or presence of the materials.
@@ -200,13 +274,14 @@ public abstract class ShapeCondition extends Condition {
 	 *
 	 * @return The materials as a set
 	 */
-	public Set<BlockMaterial> getMaterials() {
+	public MaterialSet getMaterials() {
 		return materials;
 	}
 
 	/**
 	 * Loads the condition from the properties node in the condition declaration. Expected
-	 * properties are: the mode, the size, the position and the list of materials to check.
+	 * properties are: the mode, the size, the position and the list of materials to check. The
+	 * number of probes and the threshold percentage, for the threshold mode, are optional.
 	 *
 	 * @param properties The properties node to load
 	 * @throws ConditionLoadingException If the loading fails
@@ -219,6 +294,8 @@ public abstract class ShapeCondition extends Condition {
 		for (String name : properties.getNode("check").getStringList()) {
 			addBlockMaterial(IWGOUtils.tryGetBlockMaterial(name));
 		}
+		setProbes(properties.getNode("probes").getInt(0));
+		setThreshold(properties.getNode("threshold").getDouble(100));
 	}
 
 	@Override
@@ -228,6 +305,13 @@ public abstract class ShapeCondition extends Condition {
 		z.calculate();
 	}
 
+	@Override
+	public void randomize(ValueState state) {
+		x.calculate(state);
+		y.calculate(state);
+		z.calculate(state);
+	}
+
 	@Override
 	public void setRandom(Random random) {
 		if (x instanceof RandomOwner) {
@@ -241,18 +325,103 @@ public abstract class ShapeCondition extends Condition {
 		}
 	}
 
+	/**
+	 * Gets an element of the Halton sequence, a low discrepancy sequence in [0, 1[. Using a
+	 * different prime base for each axis gives points spread evenly over a volume.
+	 *
+	 * @param index The index of the element, starting at 1
+	 * @param base The prime base of the sequence
+	 * @return The element of the sequence
+	 */
+	protected static double halton(int index, int base) {
+		double result = 0;
+		double fraction = 1;
+		while (index > 0) {
+			fraction /= base;
+			result += fraction * (index % base);
+			index /= base;
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the blocks matching the materials during a threshold mode check, to stop as soon as
+	 * the outcome is certain: when enough blocks matched to reach the threshold, or when too few
+	 * blocks remain for it to be reached.
+	 */
+	protected static class ThresholdCounter {
+		private final int required;
+		private int remaining;
+		private int matched = 0;
+
+		/**
+		 * Constructs a new counter for a volume.
+		 *
+		 * @param total The number of blocks in the volume
+		 * @param threshold The percentage of the blocks that must match
+		 */
+		public ThresholdCounter(int total, double threshold) {
+			required = (int) Math.ceil(total * threshold / 100 - 1e-9);
+			remaining = total;
+		}
+
+		/**
+		 * Gets the number of blocks that must match for the check to pass.
+		 *
+		 * @return The required number of matches
+		 */
+		public int getRequired() {
+			return required;
+		}
+
+		/**
+		 * Counts a block.
+		 *
+		 * @param matches Whether or not the block is one of the materials
+		 * @return True if the outcome of the check is now certain, false if not
+		 */
+		public boolean count(boolean matches) {
+			remaining--;
+			if (matches) {
+				matched++;
+			}
+			return isDecided();
+		}
+
+		/**
+		 * Returns true if the outcome of the check is certain, whatever the remaining blocks are.
+		 *
+		 * @return True if the outcome is decided, false if not
+		 */
+		public boolean isDecided() {
+			return matched >= required || matched + remaining < required;
+		}
+
+		/**
+		 * Returns true if enough blocks matched to reach the threshold.
+		 *
+		 * @return True if the check passed, false if not
+		 */
+		public boolean isPassed() {
+			return matched >= required;
+		}
+	}
+
 	/**
 	 * An enum with the modes a condition can have when checking the condition volume for materials.
 	 * The include mode means the condition should return true only if all the materials are present
-	 * in the volume. The exclude mode means it should check that none are present.
+	 * in the volume. The exclude mode means it should check that none are present. The threshold
+	 * mode means that at least the {@link ShapeCondition#getThreshold() threshold} percentage of
+	 * the blocks of the volume must be one of the materials.
 	 */
 	public static enum ConditionMode {
-		INCLUDE, EXCLUDE;
+		INCLUDE, EXCLUDE, THRESHOLD;
 
 		/**
 		 * Runs the check for a material according to the mode. If the mode is include, this method
 		 * will return false if the material is in the provided set. If it is exclude, it will
-		 * return false if it is not.
+		 * return false if it is not. If it is threshold, the result is the same as include and only
+		 * tells if the block counts towards the threshold.
 		 *
 		 * @param material The material to check
 		 * @param materials The material set to check in
@@ -262,6 +431,7 @@ public abstract class ShapeCondition extends Condition {
 		public boolean check(BlockMaterial material, Set<BlockMaterial> materials) {
 			switch (this) {
 				case INCLUDE:
+				case THRESHOLD:
 					return materials.contains(material);
 				case EXCLUDE:
 					return !materials.contains(material);
@@ -269,5 +439,19 @@ public abstract class ShapeCondition extends Condition {
 					return false;
 			}
 		}
+
+		/**
+		 * Runs the check for a material according to the mode, using the indexed material set.
+		 * This is the same as {@link #check(org.spout.api.material.BlockMaterial, java.util.Set)},
+		 * but the membership test doesn't hash the material.
+		 *
+		 * @param material The material to check
+		 * @param materials The material set to check in
+		 * @return True or false depending on the mode and the presence or absence of the material
+		 * in the set
+		 */
+		public boolean check(BlockMaterial material, MaterialSet materials) {
+			return materials.contains(material) == (this != EXCLUDE);
+		}
 	}
 }
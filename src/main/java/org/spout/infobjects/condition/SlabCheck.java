@@ -0,0 +1,150 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.condition;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A check of a large volume split in slabs along one axis, which are checked in parallel on a
+ * fork join pool. Extending classes implement {@link #checkSlab(int, int)} to check one slab. The
+ * slabs share a cancellation flag, which is raised as soon as the volume has more failed blocks
+ * than allowed, so that every other slab stops. A check is only used once.
+ */
+public abstract class SlabCheck {
+	private static final ForkJoinPool SLAB_POOL = new ForkJoinPool();
+	private final int allowed;
+	private final AtomicBoolean cancelled = new AtomicBoolean(false);
+	private final AtomicInteger failures = new AtomicInteger();
+	private final AtomicInteger reads = new AtomicInteger();
+	private int slabWidth = 1;
+
+	/**
+	 * Constructs a new slab check.
+	 *
+	 * @param allowed The number of blocks that can fail without failing the check
+	 */
+	public SlabCheck(int allowed) {
+		this.allowed = allowed;
+	}
+
+	/**
+	 * Checks the slabs from the start (inclusive) to the end (exclusive) in parallel. If called
+	 * from a fork join pool, the slabs are checked on that pool, else on a shared pool.
+	 *
+	 * @param start The first slab coordinate
+	 * @param end The last slab coordinate, exclusive
+	 * @return True if the check passed, false if not
+	 */
+	public boolean check(int start, int end) {
+		final ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : SLAB_POOL;
+		slabWidth = Math.max(1, (end - start) / (pool.getParallelism() * 4));
+		final SlabTask task = new SlabTask(start, end);
+		if (ForkJoinTask.inForkJoinPool()) {
+			task.invoke();
+		} else {
+			SLAB_POOL.invoke(task);
+		}
+		return !cancelled.get();
+	}
+
+	/**
+	 * Checks one slab. This is called from many threads at once. Implementations should call
+	 * {@link #fail()} for each failed block and return as soon as it returns true or
+	 * {@link #isCancelled()} does.
+	 *
+	 * @param start The first coordinate of the slab
+	 * @param end The last coordinate of the slab, exclusive
+	 */
+	protected abstract void checkSlab(int start, int end);
+
+	/**
+	 * Counts a failed block, and cancels the check if there are more than allowed.
+	 *
+	 * @return True if the check has been cancelled, false if not
+	 */
+	protected boolean fail() {
+		if (failures.incrementAndGet() > allowed) {
+			cancelled.set(true);
+		}
+		return cancelled.get();
+	}
+
+	/**
+	 * Returns true if the check has been cancelled because a slab found too many failed blocks.
+	 *
+	 * @return True if the check is cancelled, false if not
+	 */
+	protected boolean isCancelled() {
+		return cancelled.get();
+	}
+
+	/**
+	 * Adds block reads done by a slab to the read count.
+	 *
+	 * @param count The number of reads to add
+	 */
+	protected void addReadCount(int count) {
+		reads.addAndGet(count);
+	}
+
+	/**
+	 * Gets the number of blocks read by all the slabs.
+	 *
+	 * @return The read count
+	 */
+	public int getReadCount() {
+		return reads.get();
+	}
+
+	private class SlabTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int start;
+		private final int end;
+
+		private SlabTask(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (isCancelled()) {
+				return;
+			}
+			if (end - start <= slabWidth) {
+				checkSlab(start, end);
+			} else {
+				final int middle = start + ((end - start) >> 1);
+				invokeAll(new SlabTask(start, middle), new SlabTask(middle, end));
+			}
+		}
+	}
+}
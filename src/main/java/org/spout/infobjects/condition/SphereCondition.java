@@ -26,17 +26,22 @@
  */
 package org.spout.infobjects.condition;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
 
-import org.spout.api.geo.discrete.Point;
-import org.spout.api.material.BlockMaterial;
+import org.spout.api.geo.World;
+import org.spout.api.util.cuboid.CuboidBlockMaterialBuffer;
 
 import org.spout.infobjects.IWGO;
+import org.spout.infobjects.PlacementContext;
 import org.spout.infobjects.exception.ConditionLoadingException;
+import org.spout.infobjects.material.MaterialSet;
+import org.spout.infobjects.util.BoundingBox;
 import org.spout.infobjects.util.RandomOwner;
 import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
 
 /**
  * An implementation of {@link ShapeCondition}. This condition will check spherical volumes.
@@ -82,42 +87,64 @@ public class SphereCondition extends ShapeCondition {
 	}
 
 	/**
-	 * Checks the sphere volume defined from the position and the radiuses.
+	 * Checks the sphere volume defined from the position and the radiuses. The probes, if any, are
+	 * checked first: the center, the extremities on each axis and then a low discrepancy sample. In
+	 * the threshold mode, the probes are skipped and the scan stops as soon as the outcome is
+	 * certain. When the bounding box of the sphere has at least {@value #PARALLEL_VOLUME} blocks,
+	 * the volume is split in slabs along x, which are read and checked in parallel.
 	 *
+	 * @param context The context of the check
 	 * @return True if successful, false if not
 	 */
 	@Override
-	public boolean check() {
-		final int px = (int) getX().getValue();
-		final int py = (int) getY().getValue();
-		final int pz = (int) getZ().getValue();
-		final double rx = radiusX.getValue() + 0.5;
-		final double ry = radiusY.getValue() + 0.5;
-		final double rz = radiusZ.getValue() + 0.5;
+	public boolean check(PlacementContext context) {
+		final ValueState values = context.getValueState();
+		final int px = (int) getX().getValue(values);
+		final int py = (int) getY().getValue(values);
+		final int pz = (int) getZ().getValue(values);
+		final double rx = radiusX.getValue(values) + 0.5;
+		final double ry = radiusY.getValue(values) + 0.5;
+		final double rz = radiusZ.getValue(values) + 0.5;
 		final double invRadiusX = 1 / rx;
 		final double invRadiusY = 1 / ry;
 		final double invRadiusZ = 1 / rz;
 		final int ceilRadiusX = (int) Math.ceil(rx);
 		final int ceilRadiusY = (int) Math.ceil(ry);
 		final int ceilRadiusZ = (int) Math.ceil(rz);
-		final IWGO iwgo = getIWGO();
 		final ConditionMode mode = getMode();
-		final Set<BlockMaterial> materials = getMaterials();
+		final MaterialSet materials = getMaterials();
+		final int total = mode == ConditionMode.THRESHOLD ? countVoxels(rx, ry, rz) : 0;
+		final ThresholdCounter counter = newThresholdCounter(total);
+		if (counter != null && counter.isDecided()) {
+			return counter.isPassed();
+		}
+		// a single failed block doesn't fail a threshold check
+		if (counter == null && !probe(context, px, py, pz, rx, ry, rz)) {
+			return false;
+		}
+		if ((long) (ceilRadiusX * 2 + 1) * (ceilRadiusY * 2 + 1) * (ceilRadiusZ * 2 + 1) >= PARALLEL_VOLUME) {
+			final int allowed = counter != null ? total - counter.getRequired() : 0;
+			return checkParallel(context, px, py, pz, rx, ry, rz, allowed);
+		}
 		double nextXn = 0;
 		forX:
 		for (int xx = 0; xx <= ceilRadiusX; xx++) {
 			final double xn = nextXn;
 			nextXn = (xx + 1) * invRadiusX;
+			// mirror the octant, but visit the center planes only once
+			final int stepX = xx == 0 ? 1 : xx << 1;
 			double nextYn = 0;
 			forY:
 			for (int yy = 0; yy <= ceilRadiusY; yy++) {
 				final double yn = nextYn;
 				nextYn = (yy + 1) * invRadiusY;
+				final int stepY = yy == 0 ? 1 : yy << 1;
 				double nextZn = 0;
 				forZ:
 				for (int zz = 0; zz <= ceilRadiusZ; zz++) {
 					final double zn = nextZn;
 					nextZn = (zz + 1) * invRadiusZ;
+					final int stepZ = zz == 0 ? 1 : zz << 1;
 					if (xn * xn + yn * yn + zn * zn > 1) {
 						if (zz == 0) {
 							if (yy == 0) {
@@ -127,45 +154,171 @@ public class SphereCondition extends ShapeCondition {
 						}
 						break forZ;
 					}
-					final Point pos0 = iwgo.transform(px + xx, py + yy, pz + zz);
-					if (!mode.check(pos0.getWorld().getBlockMaterial(pos0.getBlockX(),
-							pos0.getBlockY(), pos0.getBlockZ()), materials)) {
-						return false;
-					}
-					final Point pos1 = iwgo.transform(px - xx, py + yy, pz + zz);
-					if (!mode.check(pos1.getWorld().getBlockMaterial(pos1.getBlockX(),
-							pos1.getBlockY(), pos1.getBlockZ()), materials)) {
-						return false;
-					}
-					final Point pos2 = iwgo.transform(px + xx, py - yy, pz + zz);
-					if (!mode.check(pos2.getWorld().getBlockMaterial(pos2.getBlockX(),
-							pos2.getBlockY(), pos2.getBlockZ()), materials)) {
-						return false;
-					}
-					final Point pos3 = iwgo.transform(px + xx, py + yy, pz - zz);
-					if (!mode.check(pos3.getWorld().getBlockMaterial(pos3.getBlockX(),
-							pos3.getBlockY(), pos3.getBlockZ()), materials)) {
-						return false;
-					}
-					final Point pos4 = iwgo.transform(px - xx, py - yy, pz + zz);
-					if (!mode.check(pos4.getWorld().getBlockMaterial(pos4.getBlockX(),
-							pos4.getBlockY(), pos4.getBlockZ()), materials)) {
-						return false;
+					for (int bx = px - xx; bx <= px + xx; bx += stepX) {
+						for (int by = py - yy; by <= py + yy; by += stepY) {
+							for (int bz = pz - zz; bz <= pz + zz; bz += stepZ) {
+								final boolean matches = mode.check(context.getBlockMaterial(bx, by, bz), materials);
+								if (counter == null ? !matches : counter.count(matches)) {
+									return counter != null && counter.isPassed();
+								}
+							}
+						}
 					}
-					final Point pos5 = iwgo.transform(px + xx, py - yy, pz - zz);
-					if (!mode.check(pos5.getWorld().getBlockMaterial(pos5.getBlockX(),
-							pos5.getBlockY(), pos5.getBlockZ()), materials)) {
-						return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean checkParallel(PlacementContext context, int px, int py, int pz,
+			double rx, double ry, double rz, int allowed) {
+		final World world = context.getWorld();
+		final int bx = context.getX() + px;
+		final int by = context.getY() + py;
+		final int bz = context.getZ() + pz;
+		final double invRadiusX = 1 / rx;
+		final double invRadiusY = 1 / ry;
+		final double invRadiusZ = 1 / rz;
+		final int ceilRadiusX = (int) Math.ceil(rx);
+		final int ceilRadiusY = (int) Math.ceil(ry);
+		final int ceilRadiusZ = (int) Math.ceil(rz);
+		final ConditionMode mode = getMode();
+		final MaterialSet materials = getMaterials();
+		final SlabCheck slabs = new SlabCheck(allowed) {
+			@Override
+			protected void checkSlab(int start, int end) {
+				final int sizeY = ceilRadiusY * 2 + 1;
+				final int sizeZ = ceilRadiusZ * 2 + 1;
+				final CuboidBlockMaterialBuffer blocks =
+						world.getCuboid(bx + start, by - ceilRadiusY, bz - ceilRadiusZ, end - start, sizeY, sizeZ);
+				addReadCount((end - start) * sizeY * sizeZ);
+				// same normalization as the sequential check, so the same voxels are covered
+				for (int xx = start; xx < end; xx++) {
+					final double xn = xx == 0 ? 0 : Math.abs(xx) * invRadiusX;
+					for (int yy = -ceilRadiusY; yy <= ceilRadiusY; yy++) {
+						if (isCancelled()) {
+							return;
+						}
+						final double yn = yy == 0 ? 0 : Math.abs(yy) * invRadiusY;
+						for (int zz = -ceilRadiusZ; zz <= ceilRadiusZ; zz++) {
+							final double zn = zz == 0 ? 0 : Math.abs(zz) * invRadiusZ;
+							if (xn * xn + yn * yn + zn * zn <= 1
+									&& !mode.check(blocks.get(bx + xx, by + yy, bz + zz), materials) && fail()) {
+								return;
+							}
+						}
 					}
-					final Point pos6 = iwgo.transform(px - xx, py + yy, pz - zz);
-					if (!mode.check(pos6.getWorld().getBlockMaterial(pos6.getBlockX(),
-							pos6.getBlockY(), pos6.getBlockZ()), materials)) {
-						return false;
+				}
+			}
+		};
+		final boolean passed = slabs.check(-ceilRadiusX, ceilRadiusX + 1);
+		context.addReadCount(slabs.getReadCount());
+		return passed;
+	}
+
+	private static int countVoxels(double rx, double ry, double rz) {
+		final double invRadiusX = 1 / rx;
+		final double invRadiusY = 1 / ry;
+		final double invRadiusZ = 1 / rz;
+		final int ceilRadiusX = (int) Math.ceil(rx);
+		final int ceilRadiusY = (int) Math.ceil(ry);
+		final int ceilRadiusZ = (int) Math.ceil(rz);
+		int count = 0;
+		for (int xx = 0; xx <= ceilRadiusX; xx++) {
+			final double xn = xx == 0 ? 0 : xx * invRadiusX;
+			for (int yy = 0; yy <= ceilRadiusY; yy++) {
+				final double yn = yy == 0 ? 0 : yy * invRadiusY;
+				for (int zz = 0; zz <= ceilRadiusZ; zz++) {
+					final double zn = zz == 0 ? 0 : zz * invRadiusZ;
+					if (xn * xn + yn * yn + zn * zn > 1) {
+						break;
 					}
-					final Point pos7 = iwgo.transform(px - xx, py - yy, pz - zz);
-					if (!mode.check(pos7.getWorld().getBlockMaterial(pos7.getBlockX(),
-							pos7.getBlockY(), pos7.getBlockZ()), materials)) {
-						return false;
+					// the number of mirrors of the voxel in the other octants
+					count += (xx == 0 ? 1 : 2) * (yy == 0 ? 1 : 2) * (zz == 0 ? 1 : 2);
+				}
+			}
+		}
+		return count;
+	}
+
+	private boolean probe(PlacementContext context, int px, int py, int pz, double rx, double ry, double rz) {
+		final int count = getProbes();
+		final ConditionMode mode = getMode();
+		final MaterialSet materials = getMaterials();
+		// the largest offsets inside the sphere on each axis
+		final int extentX = Math.max(0, (int) rx);
+		final int extentY = Math.max(0, (int) ry);
+		final int extentZ = Math.max(0, (int) rz);
+		int probed = 0;
+		for (int i = 0; probed < count && i < count * 4; i++) {
+			int xx = 0;
+			int yy = 0;
+			int zz = 0;
+			if (i >= 1 && i <= 6) {
+				final int extremity = (i & 1) == 1 ? 1 : -1;
+				switch ((i - 1) >> 1) {
+					case 0:
+						xx = extremity * extentX;
+						break;
+					case 1:
+						yy = extremity * extentY;
+						break;
+					default:
+						zz = extremity * extentZ;
+				}
+			} else if (i > 6) {
+				xx = (int) Math.round((halton(i - 6, 2) * 2 - 1) * extentX);
+				yy = (int) Math.round((halton(i - 6, 3) * 2 - 1) * extentY);
+				zz = (int) Math.round((halton(i - 6, 5) * 2 - 1) * extentZ);
+				final double xn = xx / rx;
+				final double yn = yy / ry;
+				final double zn = zz / rz;
+				if (xn * xn + yn * yn + zn * zn > 1) {
+					continue;
+				}
+			}
+			probed++;
+			if (!mode.check(context.getBlockMaterial(px + xx, py + yy, pz + zz), materials)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds every voxel of the sphere volume to the traversal plan. Threshold mode checks can't be
+	 * planned, as they don't fail on a single block.
+	 *
+	 * @param plan The plan to add the voxels to
+	 * @param index The index of this condition in the plan
+	 * @return True if the voxels were added, false in threshold mode
+	 */
+	@Override
+	public boolean addVoxels(TraversalPlan plan, int index) {
+		if (getMode() == ConditionMode.THRESHOLD) {
+			return false;
+		}
+		final int px = (int) getX().getValue();
+		final int py = (int) getY().getValue();
+		final int pz = (int) getZ().getValue();
+		final double rx = radiusX.getValue() + 0.5;
+		final double ry = radiusY.getValue() + 0.5;
+		final double rz = radiusZ.getValue() + 0.5;
+		final int ceilRadiusX = (int) Math.ceil(rx);
+		final int ceilRadiusY = (int) Math.ceil(ry);
+		final int ceilRadiusZ = (int) Math.ceil(rz);
+		final double invRadiusX = 1 / rx;
+		final double invRadiusY = 1 / ry;
+		final double invRadiusZ = 1 / rz;
+		// same normalization as the check, so the same voxels are covered
+		for (int xx = -ceilRadiusX; xx <= ceilRadiusX; xx++) {
+			final double xn = xx == 0 ? 0 : Math.abs(xx) * invRadiusX;
+			for (int yy = -ceilRadiusY; yy <= ceilRadiusY; yy++) {
+				final double yn = yy == 0 ? 0 : Math.abs(yy) * invRadiusY;
+				for (int zz = -ceilRadiusZ; zz <= ceilRadiusZ; zz++) {
+					final double zn = zz == 0 ? 0 : Math.abs(zz) * invRadiusZ;
+					if (xn * xn + yn * yn + zn * zn <= 1) {
+						plan.add(px + xx, py + yy, pz + zz, index);
 					}
 				}
 			}
@@ -173,6 +326,33 @@ public class SphereCondition extends ShapeCondition {
 		return true;
 	}
 
+	/**
+	 * Gets the bounding box of the sphere volume for the current values.
+	 *
+	 * @return The bounding box of the volume
+	 */
+	@Override
+	public BoundingBox getBounds() {
+		final int px = (int) getX().getValue();
+		final int py = (int) getY().getValue();
+		final int pz = (int) getZ().getValue();
+		final int ceilRadiusX = Math.max(0, (int) Math.ceil(radiusX.getValue() + 0.5));
+		final int ceilRadiusY = Math.max(0, (int) Math.ceil(radiusY.getValue() + 0.5));
+		final int ceilRadiusZ = Math.max(0, (int) Math.ceil(radiusZ.getValue() + 0.5));
+		return new BoundingBox(px - ceilRadiusX, py - ceilRadiusY, pz - ceilRadiusZ,
+				px + ceilRadiusX, py + ceilRadiusY, pz + ceilRadiusZ);
+	}
+
+	/**
+	 * Gets the values of the x, y and z position and of the radiuses of the sphere.
+	 *
+	 * @return The values of the sphere condition
+	 */
+	@Override
+	public List<Value> getValues() {
+		return Arrays.asList(getX(), getY(), getZ(), radiusX, radiusY, radiusZ);
+	}
+
 	/**
 	 * Randomizes the x, y and z position and radiuses of the sphere. The radiuses will only change
 	 * if they are randomizable.
@@ -185,6 +365,19 @@ public class SphereCondition extends ShapeCondition {
 		radiusZ.calculate();
 	}
 
+	/**
+	 * Randomizes the size values in the state. Then calls the super method.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	@Override
+	public void randomize(ValueState state) {
+		super.randomize(state);
+		radiusX.calculate(state);
+		radiusY.calculate(state);
+		radiusZ.calculate(state);
+	}
+
 	/**
 	 * Sets the randoms of the position and radius values to the provided one if they implement
 	 * {@link org.spout.infobjects.util.RandomOwner}.
@@ -214,6 +407,6 @@ public class SphereCondition extends ShapeCondition {
 	public String toString() {
 		return "SphereCondition{x=" + getX() + ", y=" + getY() + ", z=" + getZ() + ", materials="
 				+ getMaterials() + ", radiusX=" + radiusX + ", radiusY=" + radiusY
-				+ ", radiusZ=" + radiusZ + ", mode=" + getMode() + '}';
+				+ ", radiusZ=" + radiusZ + ", mode=" + getMode() + ", probes=" + getProbes() + '}';
 	}
 }
@@ -0,0 +1,221 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.condition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.spout.api.material.BlockMaterial;
+
+import org.spout.infobjects.PlacementContext;
+import org.spout.infobjects.condition.ShapeCondition.ConditionMode;
+import org.spout.infobjects.material.MaterialSet;
+
+/**
+ * A single traversal of the volumes of several shape conditions. Each voxel covered by at least
+ * one of the conditions is read once, then tested against every condition covering it, instead of
+ * being read again by each condition when the volumes overlap. The traversal stops at the first
+ * failure of any of the conditions. The voxels are visited in the order of the conditions, so the
+ * first condition is fully tested before the voxels that only the next conditions cover.
+ * <p/>
+ * A plan is only valid for the current values and order of the conditions, so it must be rebuilt
+ * after they are randomized or reordered. The voxels are deduplicated while the plan is
+ * constructed with a primitive open addressing map of their packed coordinates, which is dropped
+ * once the plan is built. At most {@value #MAX_CONDITIONS} conditions are planned. The conditions
+ * which can't describe their volume as voxels aren't planned and should be checked separately.
+ */
+public class TraversalPlan {
+	/**
+	 * The maximum number of conditions in a plan.
+	 */
+	public static final int MAX_CONDITIONS = 64;
+	private final List<ShapeCondition> conditions = new ArrayList<ShapeCondition>();
+	// the slots of the voxels by packed coordinates, in an open addressing map only used while
+	// the plan is constructed
+	private long[] slotKeys = new long[32];
+	private int[] slots = new int[32];
+	private int[] coords = new int[48];
+	private long[] masks = new long[16];
+	private int size = 0;
+
+	/**
+	 * Constructs a new plan from the conditions, in order. Only the shape conditions which can
+	 * {@link ShapeCondition#addVoxels(org.spout.infobjects.condition.TraversalPlan, int) add their
+	 * voxels} are planned, up to {@value #MAX_CONDITIONS} of them.
+	 *
+	 * @param candidates The conditions to plan
+	 */
+	public TraversalPlan(Collection<? extends Condition> candidates) {
+		for (Condition condition : candidates) {
+			if (conditions.size() >= MAX_CONDITIONS) {
+				break;
+			}
+			if (condition instanceof ShapeCondition
+					&& ((ShapeCondition) condition).addVoxels(this, conditions.size())) {
+				conditions.add((ShapeCondition) condition);
+			}
+		}
+		slotKeys = null;
+		slots = null;
+	}
+
+	/**
+	 * Adds a voxel covered by the condition at the index to the plan. This is called by the
+	 * conditions while the plan is being constructed. The coordinates are relative to the origin.
+	 *
+	 * @param xx The relative x coordinate
+	 * @param yy The relative y coordinate
+	 * @param zz The relative z coordinate
+	 * @param condition The index of the condition in the plan
+	 */
+	public void add(int xx, int yy, int zz, int condition) {
+		if (slotKeys == null) {
+			throw new IllegalStateException("The plan has already been constructed");
+		}
+		// offset by one so that zero marks the empty entries
+		final long key = (((long) xx & 0x1FFFFF) << 42 | ((long) yy & 0x1FFFFF) << 21 | (long) zz & 0x1FFFFF) + 1;
+		int index = slotIndex(key);
+		final int slot;
+		if (slotKeys[index] == key) {
+			slot = slots[index];
+		} else {
+			if (size == masks.length) {
+				masks = Arrays.copyOf(masks, size << 1);
+				coords = Arrays.copyOf(coords, size * 6);
+			}
+			if (size + 1 << 1 > slotKeys.length) {
+				growSlots();
+				index = slotIndex(key);
+			}
+			slot = size++;
+			coords[slot * 3] = xx;
+			coords[slot * 3 + 1] = yy;
+			coords[slot * 3 + 2] = zz;
+			slotKeys[index] = key;
+			slots[index] = slot;
+		}
+		masks[slot] |= 1L << condition;
+	}
+
+	private int slotIndex(long key) {
+		final int mask = slotKeys.length - 1;
+		final long hash = key * 0x9E3779B97F4A7C15L;
+		int index = (int) (hash ^ hash >>> 32) & mask;
+		while (slotKeys[index] != 0 && slotKeys[index] != key) {
+			index = index + 1 & mask;
+		}
+		return index;
+	}
+
+	private void growSlots() {
+		final long[] oldKeys = slotKeys;
+		final int[] oldSlots = slots;
+		slotKeys = new long[oldKeys.length << 1];
+		slots = new int[oldKeys.length << 1];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				final int index = slotIndex(oldKeys[i]);
+				slotKeys[index] = oldKeys[i];
+				slots[index] = oldSlots[i];
+			}
+		}
+	}
+
+	/**
+	 * Gets the planned conditions, in the order of the plan.
+	 *
+	 * @return The planned conditions as an unmodifiable list
+	 */
+	public List<ShapeCondition> getConditions() {
+		return Collections.unmodifiableList(conditions);
+	}
+
+	/**
+	 * Returns true if the condition is part of this plan.
+	 *
+	 * @param condition The condition to look for
+	 * @return True if the condition is planned, false if not
+	 */
+	public boolean contains(Condition condition) {
+		for (ShapeCondition planned : conditions) {
+			if (planned == condition) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the number of distinct voxels read by the plan.
+	 *
+	 * @return The number of voxels
+	 */
+	public int getVoxelCount() {
+		return size;
+	}
+
+	/**
+	 * Checks all the planned conditions in one traversal.
+	 *
+	 * @param context The context of the check
+	 * @return The first condition that failed, or null if all the conditions passed
+	 */
+	public ShapeCondition check(PlacementContext context) {
+		final int count = conditions.size();
+		final ConditionMode[] modes = new ConditionMode[count];
+		final MaterialSet[] materials = new MaterialSet[count];
+		for (int i = 0; i < count; i++) {
+			modes[i] = conditions.get(i).getMode();
+			materials[i] = conditions.get(i).getMaterials();
+		}
+		for (int slot = 0, i = 0; slot < size; slot++, i += 3) {
+			final BlockMaterial material = context.getBlockMaterial(coords[i], coords[i + 1], coords[i + 2]);
+			long mask = masks[slot];
+			while (mask != 0) {
+				final int condition = Long.numberOfTrailingZeros(mask);
+				if (!modes[condition].check(material, materials[condition])) {
+					return conditions.get(condition);
+				}
+				mask &= mask - 1;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the string representation of this plan.
+	 *
+	 * @return The string form of this plan
+	 */
+	@Override
+	public String toString() {
+		return "TraversalPlan{conditions=" + conditions + ", voxels=" + size + '}';
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.expression;
+
+import java.util.Random;
+
+/**
+ * A mathematical expression compiled by {@link ExpressionCompiler} into a tree of small
+ * evaluation nodes. Each node evaluates its operands with one virtual call each. These calls see
+ * every kind of node, so they are usually megamorphic and not inlined. The tree still evaluates
+ * faster than the exp4j postfix form because it works on primitive doubles, with no token stack,
+ * boxing or variable map lookups.
+ */
+public abstract class CompiledExpression {
+	/**
+	 * Evaluates the expression. The expression only reads the frame and the random, so it can be
+	 * evaluated by many threads at once, each with its own frame.
+	 *
+	 * @param frame The values of the variables, by slot
+	 * @param random The random for the random functions, or null to use the random of the functions
+	 * @return The result of the expression
+	 */
+	public abstract double evaluate(double[] frame, Random random);
+}
@@ -0,0 +1,589 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.expression;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.spout.infobjects.util.Interval;
+
+/**
+ * A node of the syntax tree of a mathematical expression, as parsed by
+ * {@link ExpressionParser}. The tree is immutable. It is used to analyse the expressions of the
+ * values without evaluating them, such as finding the interval of all their possible results, and
+ * to simplify them before they are compiled.
+ */
+public abstract class Expression {
+	/**
+	 * Gets the interval of all the possible results of this expression, given the intervals of the
+	 * variables. Unknown variables and functions give an unbounded interval.
+	 *
+	 * @param variables The intervals of the variables, mapped by name
+	 * @return The interval of the possible results
+	 */
+	public abstract Interval getInterval(Map<String, Interval> variables);
+
+	/**
+	 * Adds the names of all the variables used in this expression to the set.
+	 *
+	 * @param names The set to add the names to
+	 */
+	public abstract void findVariables(Set<String> names);
+
+	/**
+	 * Returns true if this expression calls one of the random functions, "ranI" or "ranF". Such an
+	 * expression can't be removed by a simplification, even when its result is unused, as each call
+	 * draws from the random and changes the results of the calls after it.
+	 *
+	 * @return True if the expression calls a random function, false if not
+	 */
+	public abstract boolean isRandom();
+
+	/**
+	 * Simplifies this expression. The variables with a known value are replaced by constants, the
+	 * subexpressions without variables or random functions are folded into constants, and the
+	 * operations with an identity operand are removed. An operation whose result doesn't depend on
+	 * an operand, such as {@code x ^ 0}, is only removed if that operand isn't
+	 * {@link #isRandom() random}, so the random functions are called as many times as in this
+	 * expression. The result is the same as the one of this expression, except maybe for the sign
+	 * of zero.
+	 *
+	 * @param constants The values of the variables known to be constant, mapped by name
+	 * @return The simplified expression, or this expression if it can't be simplified
+	 */
+	public abstract Expression simplify(Map<String, Double> constants);
+
+	/**
+	 * Simplifies this expression without any known variable.
+	 *
+	 * @return The simplified expression
+	 * @see #simplify(java.util.Map)
+	 */
+	public Expression simplify() {
+		return simplify(Collections.<String, Double>emptyMap());
+	}
+
+	/**
+	 * Returns true if this expression is a constant of the value.
+	 *
+	 * @param value The value to compare to
+	 * @return True if this is a constant of the value, false if not
+	 */
+	public boolean isConstant(double value) {
+		return this instanceof Constant && ((Constant) this).value == value;
+	}
+
+	/**
+	 * Gets the names of all the variables used in this expression, in order of appearance.
+	 *
+	 * @return The names of the variables as a set
+	 */
+	public Set<String> getVariables() {
+		final Set<String> names = new LinkedHashSet<String>();
+		findVariables(names);
+		return names;
+	}
+
+	/**
+	 * A constant number.
+	 */
+	public static final class Constant extends Expression {
+		private final double value;
+
+		/**
+		 * Constructs a new constant from its value.
+		 *
+		 * @param value The value of the constant
+		 */
+		public Constant(double value) {
+			this.value = value;
+		}
+
+		/**
+		 * Gets the value of the constant.
+		 *
+		 * @return The value
+		 */
+		public double getValue() {
+			return value;
+		}
+
+		@Override
+		public Interval getInterval(Map<String, Interval> variables) {
+			return Interval.of(value);
+		}
+
+		@Override
+		public void findVariables(Set<String> names) {
+		}
+
+		@Override
+		public boolean isRandom() {
+			return false;
+		}
+
+		@Override
+		public Expression simplify(Map<String, Double> constants) {
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return Double.toString(value);
+		}
+	}
+
+	/**
+	 * A reference to a variable by name.
+	 */
+	public static final class Variable extends Expression {
+		private final String name;
+
+		/**
+		 * Constructs a new variable reference from the name of the variable.
+		 *
+		 * @param name The name of the variable
+		 */
+		public Variable(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Gets the name of the variable.
+		 *
+		 * @return The name of the variable
+		 */
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public Interval getInterval(Map<String, Interval> variables) {
+			final Interval interval = variables.get(name);
+			return interval != null ? interval : Interval.UNBOUNDED;
+		}
+
+		@Override
+		public void findVariables(Set<String> names) {
+			names.add(name);
+		}
+
+		@Override
+		public boolean isRandom() {
+			return false;
+		}
+
+		@Override
+		public Expression simplify(Map<String, Double> constants) {
+			final Double value = constants.get(name);
+			return value != null ? new Constant(value) : this;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * The negation of an expression.
+	 */
+	public static final class Negation extends Expression {
+		private final Expression operand;
+
+		/**
+		 * Constructs a new negation of the operand.
+		 *
+		 * @param operand The expression to negate
+		 */
+		public Negation(Expression operand) {
+			this.operand = operand;
+		}
+
+		/**
+		 * Gets the negated expression.
+		 *
+		 * @return The operand
+		 */
+		public Expression getOperand() {
+			return operand;
+		}
+
+		@Override
+		public Interval getInterval(Map<String, Interval> variables) {
+			return operand.getInterval(variables).negate();
+		}
+
+		@Override
+		public void findVariables(Set<String> names) {
+			operand.findVariables(names);
+		}
+
+		@Override
+		public boolean isRandom() {
+			return operand.isRandom();
+		}
+
+		@Override
+		public Expression simplify(Map<String, Double> constants) {
+			final Expression simple = operand.simplify(constants);
+			if (simple instanceof Constant) {
+				return new Constant(-((Constant) simple).value);
+			}
+			if (simple instanceof Negation) {
+				return ((Negation) simple).operand;
+			}
+			return simple == operand ? this : new Negation(simple);
+		}
+
+		@Override
+		public String toString() {
+			return "-(" + operand + ")";
+		}
+	}
+
+	/**
+	 * A binary operation, one of {@code +}, {@code -}, {@code *}, {@code /}, {@code %} or
+	 * {@code ^}.
+	 */
+	public static final class Operation extends Expression {
+		private final char operator;
+		private final Expression left;
+		private final Expression right;
+
+		/**
+		 * Constructs a new operation from the operator and its operands.
+		 *
+		 * @param operator The operator character
+		 * @param left The left operand
+		 * @param right The right operand
+		 * @throws IllegalArgumentException If the operator is unknown
+		 */
+		public Operation(char operator, Expression left, Expression right) {
+			if ("+-*/%^".indexOf(operator) < 0) {
+				throw new IllegalArgumentException("Unknown operator: " + operator);
+			}
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		/**
+		 * Gets the operator character.
+		 *
+		 * @return The operator
+		 */
+		public char getOperator() {
+			return operator;
+		}
+
+		/**
+		 * Gets the left operand.
+		 *
+		 * @return The left operand
+		 */
+		public Expression getLeft() {
+			return left;
+		}
+
+		/**
+		 * Gets the right operand.
+		 *
+		 * @return The right operand
+		 */
+		public Expression getRight() {
+			return right;
+		}
+
+		@Override
+		public Interval getInterval(Map<String, Interval> variables) {
+			final Interval a = left.getInterval(variables);
+			final Interval b = right.getInterval(variables);
+			switch (operator) {
+				case '+':
+					return a.add(b);
+				case '-':
+					return a.subtract(b);
+				case '*':
+					return a.multiply(b);
+				case '/':
+					return a.divide(b);
+				case '%':
+					return a.remainder(b);
+				default:
+					return a.pow(b);
+			}
+		}
+
+		@Override
+		public void findVariables(Set<String> names) {
+			left.findVariables(names);
+			right.findVariables(names);
+		}
+
+		@Override
+		public boolean isRandom() {
+			return left.isRandom() || right.isRandom();
+		}
+
+		@Override
+		public Expression simplify(Map<String, Double> constants) {
+			final Expression a = left.simplify(constants);
+			final Expression b = right.simplify(constants);
+			if (a instanceof Constant && b instanceof Constant) {
+				return new Constant(apply(operator, ((Constant) a).value, ((Constant) b).value));
+			}
+			// x * 0 isn't simplified, as it is NaN for infinite and NaN values of x
+			switch (operator) {
+				case '+':
+					if (a.isConstant(0)) {
+						return b;
+					}
+					if (b.isConstant(0)) {
+						return a;
+					}
+					break;
+				case '-':
+					if (b.isConstant(0)) {
+						return a;
+					}
+					if (a.isConstant(0)) {
+						return new Negation(b).simplify(constants);
+					}
+					break;
+				case '*':
+					if (a.isConstant(1)) {
+						return b;
+					}
+					if (b.isConstant(1)) {
+						return a;
+					}
+					if (a.isConstant(-1)) {
+						return new Negation(b).simplify(constants);
+					}
+					if (b.isConstant(-1)) {
+						return new Negation(a).simplify(constants);
+					}
+					break;
+				case '/':
+					if (b.isConstant(1)) {
+						return a;
+					}
+					if (b.isConstant(-1)) {
+						return new Negation(a).simplify(constants);
+					}
+					break;
+				case '^':
+					if (b.isConstant(1)) {
+						return a;
+					}
+					// the base is dropped, so only if it doesn't draw from the random
+					if (b.isConstant(0) && !a.isRandom()) {
+						return new Constant(1);
+					}
+					break;
+			}
+			return a == left && b == right ? this : new Operation(operator, a, b);
+		}
+
+		private static double apply(char operator, double a, double b) {
+			switch (operator) {
+				case '+':
+					return a + b;
+				case '-':
+					return a - b;
+				case '*':
+					return a * b;
+				case '/':
+					return a / b;
+				case '%':
+					return a % b;
+				default:
+					return Math.pow(a, b);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "(" + left + " " + operator + " " + right + ")";
+		}
+	}
+
+	/**
+	 * A call to a function, either one of the exp4j built-in functions or a random function.
+	 */
+	public static final class Function extends Expression {
+		private final String name;
+		private final Expression[] arguments;
+
+		/**
+		 * Constructs a new function call from the name of the function and its arguments.
+		 *
+		 * @param name The name of the function
+		 * @param arguments The arguments of the call
+		 */
+		public Function(String name, Expression... arguments) {
+			this.name = name;
+			this.arguments = arguments.clone();
+		}
+
+		/**
+		 * Gets the name of the called function.
+		 *
+		 * @return The name of the function
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the number of arguments.
+		 *
+		 * @return The argument count
+		 */
+		public int getArgumentCount() {
+			return arguments.length;
+		}
+
+		/**
+		 * Gets the argument at the index.
+		 *
+		 * @param index The index of the argument
+		 * @return The argument
+		 */
+		public Expression getArgument(int index) {
+			return arguments[index];
+		}
+
+		@Override
+		public Interval getInterval(Map<String, Interval> variables) {
+			if (arguments.length == 2) {
+				final Interval a = arguments[0].getInterval(variables);
+				final Interval b = arguments[1].getInterval(variables);
+				if (name.equals("ranI")) {
+					return a.truncate().union(b.truncate());
+				}
+				if (name.equals("ranF")) {
+					return a.union(b);
+				}
+				return Interval.UNBOUNDED;
+			}
+			if (arguments.length != 1) {
+				return Interval.UNBOUNDED;
+			}
+			final Interval a = arguments[0].getInterval(variables);
+			if (name.equals("abs")) {
+				return a.abs();
+			} else if (name.equals("ceil")) {
+				return a.ceil();
+			} else if (name.equals("floor")) {
+				return a.floor();
+			} else if (name.equals("sin") || name.equals("cos")) {
+				return new Interval(-1, 1);
+			} else if (name.equals("tanh")) {
+				return Interval.of(Math.tanh(a.getMin()), Math.tanh(a.getMax()));
+			} else if (name.equals("acos")) {
+				return Interval.of(Math.acos(a.getMin()), Math.acos(a.getMax()));
+			} else if (name.equals("asin")) {
+				return Interval.of(Math.asin(a.getMin()), Math.asin(a.getMax()));
+			} else if (name.equals("atan")) {
+				return Interval.of(Math.atan(a.getMin()), Math.atan(a.getMax()));
+			} else if (name.equals("cbrt")) {
+				return Interval.of(Math.cbrt(a.getMin()), Math.cbrt(a.getMax()));
+			} else if (name.equals("sqrt")) {
+				return Interval.of(Math.sqrt(a.getMin()), Math.sqrt(a.getMax()));
+			} else if (name.equals("exp")) {
+				return Interval.of(Math.exp(a.getMin()), Math.exp(a.getMax()));
+			} else if (name.equals("expm1")) {
+				return Interval.of(Math.expm1(a.getMin()), Math.expm1(a.getMax()));
+			} else if (name.equals("log")) {
+				return Interval.of(Math.log(a.getMin()), Math.log(a.getMax()));
+			} else if (name.equals("sinh")) {
+				return Interval.of(Math.sinh(a.getMin()), Math.sinh(a.getMax()));
+			} else if (name.equals("cosh")) {
+				final Interval bounds = Interval.of(Math.cosh(a.getMin()), Math.cosh(a.getMax()));
+				return a.contains(0) ? bounds.union(new Interval(1)) : bounds;
+			}
+			return Interval.UNBOUNDED;
+		}
+
+		@Override
+		public void findVariables(Set<String> names) {
+			for (Expression argument : arguments) {
+				argument.findVariables(names);
+			}
+		}
+
+		@Override
+		public boolean isRandom() {
+			if (name.equals("ranI") || name.equals("ranF")) {
+				return true;
+			}
+			for (Expression argument : arguments) {
+				if (argument.isRandom()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Expression simplify(Map<String, Double> constants) {
+			final Expression[] simple = new Expression[arguments.length];
+			boolean changed = false;
+			boolean constant = true;
+			for (int i = 0; i < arguments.length; i++) {
+				simple[i] = arguments[i].simplify(constants);
+				changed |= simple[i] != arguments[i];
+				constant &= simple[i] instanceof Constant;
+			}
+			final Function function = changed ? new Function(name, simple) : this;
+			if (constant && !name.equals("ranI") && !name.equals("ranF")) {
+				final CompiledExpression compiled = new ExpressionCompiler(
+						Collections.<String>emptyList(), null, null).compile(function);
+				if (compiled != null) {
+					return new Constant(compiled.evaluate(new double[0], null));
+				}
+			}
+			return function;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder builder = new StringBuilder(name).append('(');
+			for (int i = 0; i < arguments.length; i++) {
+				if (i > 0) {
+					builder.append(", ");
+				}
+				builder.append(arguments[i]);
+			}
+			return builder.append(')').toString();
+		}
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.expression;
+
+import java.util.List;
+import java.util.Random;
+
+import de.congrace.exp4j.function.Function;
+import de.congrace.exp4j.function.Functions;
+
+import org.spout.infobjects.function.RandomFunction;
+import org.spout.infobjects.util.IWGOUtils;
+
+/**
+ * A compiler of the syntax trees of mathematical expressions into {@link CompiledExpression}s.
+ * No bytecode is generated: each node of the syntax tree becomes a small evaluation node object.
+ * The variables are read from the frame passed to the evaluation, an array with a slot for each
+ * variable name. The random functions use the random passed to the evaluation, or if there is
+ * none, the random of the functions of the value, so that setting their random also affects the
+ * compiled expression. The other functions registered with exp4j are applied by their exp4j
+ * function object, so they give exactly the same results as in exp4j. Custom functions which
+ * aren't registered are not supported.
+ */
+public class ExpressionCompiler {
+	private final List<String> variables;
+	private final RandomFunction randomInt;
+	private final RandomFunction randomDouble;
+
+	/**
+	 * Constructs a new compiler.
+	 *
+	 * @param variables The names of the variables, in the order of their slots in the frame
+	 * @param randomInt The "ranI" function to take the random from
+	 * @param randomDouble The "ranF" function to take the random from
+	 */
+	public ExpressionCompiler(List<String> variables, RandomFunction randomInt, RandomFunction randomDouble) {
+		this.variables = variables;
+		this.randomInt = randomInt;
+		this.randomDouble = randomDouble;
+	}
+
+	/**
+	 * Compiles the expression.
+	 *
+	 * @param expression The syntax tree of the expression
+	 * @return The compiled expression, or null if it uses an unknown function or variable
+	 */
+	public CompiledExpression compile(Expression expression) {
+		if (expression instanceof Expression.Constant) {
+			final double value = ((Expression.Constant) expression).getValue();
+			return new CompiledExpression() {
+				@Override
+				public double evaluate(double[] frame, Random random) {
+					return value;
+				}
+			};
+		}
+		if (expression instanceof Expression.Variable) {
+			final int slot = variables.indexOf(((Expression.Variable) expression).getName());
+			if (slot < 0) {
+				return null;
+			}
+			return new CompiledExpression() {
+				@Override
+				public double evaluate(double[] frame, Random random) {
+					return frame[slot];
+				}
+			};
+		}
+		if (expression instanceof Expression.Negation) {
+			final CompiledExpression operand = compile(((Expression.Negation) expression).getOperand());
+			if (operand == null) {
+				return null;
+			}
+			return new CompiledExpression() {
+				@Override
+				public double evaluate(double[] frame, Random random) {
+					return -operand.evaluate(frame, random);
+				}
+			};
+		}
+		if (expression instanceof Expression.Operation) {
+			final Expression.Operation operation = (Expression.Operation) expression;
+			final CompiledExpression left = compile(operation.getLeft());
+			final CompiledExpression right = compile(operation.getRight());
+			if (left == null || right == null) {
+				return null;
+			}
+			return compileOperation(operation.getOperator(), left, right);
+		}
+		if (expression instanceof Expression.Function) {
+			final Expression.Function function = (Expression.Function) expression;
+			final CompiledExpression[] arguments = new CompiledExpression[function.getArgumentCount()];
+			for (int i = 0; i < arguments.length; i++) {
+				arguments[i] = compile(function.getArgument(i));
+				if (arguments[i] == null) {
+					return null;
+				}
+			}
+			if (arguments.length == 2) {
+				final CompiledExpression random = compileRandomFunction(function.getName(), arguments[0], arguments[1]);
+				if (random != null) {
+					return random;
+				}
+			}
+			return compileFunction(function.getName(), arguments);
+		}
+		return null;
+	}
+
+	private static CompiledExpression compileOperation(char operator, final CompiledExpression left,
+			final CompiledExpression right) {
+		switch (operator) {
+			case '+':
+				return new CompiledExpression() {
+					@Override
+					public double evaluate(double[] frame, Random random) {
+						return left.evaluate(frame, random) + right.evaluate(frame, random);
+					}
+				};
+			case '-':
+				return new CompiledExpression() {
+					@Override
+					public double evaluate(double[] frame, Random random) {
+						return left.evaluate(frame, random) - right.evaluate(frame, random);
+					}
+				};
+			case '*':
+				return new CompiledExpression() {
+					@Override
+					public double evaluate(double[] frame, Random random) {
+						return left.evaluate(frame, random) * right.evaluate(frame, random);
+					}
+				};
+			case '/':
+				return new CompiledExpression() {
+					@Override
+					public double evaluate(double[] frame, Random random) {
+						return left.evaluate(frame, random) / right.evaluate(frame, random);
+					}
+				};
+			case '%':
+				return new CompiledExpression() {
+					@Override
+					public double evaluate(double[] frame, Random random) {
+						return left.evaluate(frame, random) % right.evaluate(frame, random);
+					}
+				};
+			default:
+				return new CompiledExpression() {
+					@Override
+					public double evaluate(double[] frame, Random random) {
+						return Math.pow(left.evaluate(frame, random), right.evaluate(frame, random));
+					}
+				};
+		}
+	}
+
+	private CompiledExpression compileRandomFunction(String name, final CompiledExpression min,
+			final CompiledExpression max) {
+		if (name.equals("ranI")) {
+			final RandomFunction function = randomInt;
+			return new CompiledExpression() {
+				@Override
+				public double evaluate(double[] frame, Random random) {
+					final int lower = (int) min.evaluate(frame, random);
+					return IWGOUtils.nextInt(random != null ? random : function.getRandom(), lower, (int) max.evaluate(frame, random));
+				}
+			};
+		}
+		if (name.equals("ranF")) {
+			final RandomFunction function = randomDouble;
+			return new CompiledExpression() {
+				@Override
+				public double evaluate(double[] frame, Random random) {
+					final double lower = min.evaluate(frame, random);
+					return IWGOUtils.nextDouble(random != null ? random : function.getRandom(), lower, max.evaluate(frame, random));
+				}
+			};
+		}
+		return null;
+	}
+
+	private static CompiledExpression compileFunction(String name, final CompiledExpression[] arguments) {
+		if (!Functions.isFunction(name)) {
+			return null;
+		}
+		final Function function = Functions.getFunction(name);
+		if (function == null || function.getArgumentCount() != arguments.length) {
+			return null;
+		}
+		if (arguments.length == 1) {
+			final CompiledExpression argument = arguments[0];
+			return new CompiledExpression() {
+				@Override
+				public double evaluate(double[] frame, Random random) {
+					return function.applyFunction(argument.evaluate(frame, random));
+				}
+			};
+		}
+		// compiled expressions are shared by the threads placing the iWGO, so the argument array is
+		// per thread, allocated once per node and thread instead of on every evaluation
+		final ThreadLocal<double[]> scratch = new ThreadLocal<double[]>() {
+			@Override
+			protected double[] initialValue() {
+				return new double[arguments.length];
+			}
+		};
+		return new CompiledExpression() {
+			@Override
+			public double evaluate(double[] frame, Random random) {
+				final double[] values = scratch.get();
+				for (int i = 0; i < values.length; i++) {
+					values[i] = arguments[i].evaluate(frame, random);
+				}
+				return function.applyFunction(values);
+			}
+		};
+	}
+}
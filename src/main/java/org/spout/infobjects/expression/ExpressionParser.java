@@ -0,0 +1,236 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.congrace.exp4j.constant.Constants;
+
+import org.spout.infobjects.exception.ValueParsingException;
+
+/**
+ * A parser for the mathematical expressions used by the values. It follows the syntax of exp4j:
+ * the {@code +}, {@code -}, {@code *}, {@code /}, {@code %} and right associative {@code ^}
+ * operators, unary minus with a lower precedence than {@code ^}, parentheses, function calls,
+ * constants and variables. A name is a constant when exp4j considers it one, so a variable can't
+ * use the name of a constant, as in exp4j. Only the pi and e constants are supported. A number,
+ * variable or closing parenthesis directly followed by another operand is an implicit
+ * multiplication.
+ */
+public class ExpressionParser {
+	private final String expression;
+	private int index = 0;
+
+	private ExpressionParser(String expression) {
+		this.expression = expression;
+	}
+
+	/**
+	 * Parses the expression into its syntax tree.
+	 *
+	 * @param expression The expression to parse
+	 * @return The root of the syntax tree
+	 * @throws ValueParsingException If the expression cannot be parsed
+	 */
+	public static Expression parse(String expression) {
+		if (expression == null) {
+			throw new ValueParsingException("Expression can not be null");
+		}
+		final ExpressionParser parser = new ExpressionParser(expression);
+		try {
+			final Expression root = parser.parseSum();
+			parser.skipWhitespace();
+			if (parser.index < expression.length()) {
+				throw parser.error("Unexpected character '" + expression.charAt(parser.index) + "'");
+			}
+			return root;
+		} catch (IllegalArgumentException ex) {
+			throw new ValueParsingException(expression, ex);
+		}
+	}
+
+	private Expression parseSum() {
+		Expression left = parseProduct();
+		while (true) {
+			final char operator = peek();
+			if (operator != '+' && operator != '-') {
+				return left;
+			}
+			index++;
+			left = new Expression.Operation(operator, left, parseProduct());
+		}
+	}
+
+	private Expression parseProduct() {
+		Expression left = parseUnary();
+		while (true) {
+			final char operator = peek();
+			if (operator == '*' || operator == '/' || operator == '%') {
+				index++;
+				left = new Expression.Operation(operator, left, parseUnary());
+			} else if (operator == '(' || isNameStart(operator) || isNumberStart(operator)) {
+				left = new Expression.Operation('*', left, parseUnary());
+			} else {
+				return left;
+			}
+		}
+	}
+
+	private Expression parseUnary() {
+		final char operator = peek();
+		if (operator == '-') {
+			index++;
+			return new Expression.Negation(parseUnary());
+		}
+		if (operator == '+') {
+			index++;
+			return parseUnary();
+		}
+		return parsePower();
+	}
+
+	private Expression parsePower() {
+		final Expression base = parsePrimary();
+		if (peek() == '^') {
+			index++;
+			return new Expression.Operation('^', base, parseUnary());
+		}
+		return base;
+	}
+
+	private Expression parsePrimary() {
+		final char next = peek();
+		if (next == '(') {
+			index++;
+			final Expression inner = parseSum();
+			expect(')');
+			return inner;
+		}
+		if (isNumberStart(next)) {
+			return new Expression.Constant(parseNumber());
+		}
+		if (isNameStart(next)) {
+			final String name = parseName();
+			if (peek() == '(') {
+				index++;
+				final List<Expression> arguments = new ArrayList<Expression>();
+				if (peek() != ')') {
+					do {
+						arguments.add(parseSum());
+					} while (consume(','));
+				}
+				expect(')');
+				return new Expression.Function(name, arguments.toArray(new Expression[arguments.size()]));
+			}
+			if (Constants.isConstant(name)) {
+				if (name.equalsIgnoreCase("pi")) {
+					return new Expression.Constant(Math.PI);
+				}
+				if (name.equalsIgnoreCase("e")) {
+					return new Expression.Constant(Math.E);
+				}
+				throw error("Unsupported constant \"" + name + "\"");
+			}
+			return new Expression.Variable(name);
+		}
+		if (next == 0) {
+			throw error("Unexpected end of expression");
+		}
+		throw error("Unexpected character '" + next + "'");
+	}
+
+	private double parseNumber() {
+		final int start = index;
+		while (index < expression.length() && isNumberStart(expression.charAt(index))) {
+			index++;
+		}
+		if (index < expression.length() && Character.toLowerCase(expression.charAt(index)) == 'e') {
+			int exponent = index + 1;
+			if (exponent < expression.length() && "+-".indexOf(expression.charAt(exponent)) >= 0) {
+				exponent++;
+			}
+			if (exponent < expression.length() && Character.isDigit(expression.charAt(exponent))) {
+				index = exponent;
+				while (index < expression.length() && Character.isDigit(expression.charAt(index))) {
+					index++;
+				}
+			}
+		}
+		try {
+			return Double.parseDouble(expression.substring(start, index));
+		} catch (NumberFormatException ex) {
+			throw error("Invalid number \"" + expression.substring(start, index) + "\"");
+		}
+	}
+
+	private String parseName() {
+		final int start = index;
+		while (index < expression.length() && Character.isLetterOrDigit(expression.charAt(index))
+				|| index < expression.length() && expression.charAt(index) == '_') {
+			index++;
+		}
+		return expression.substring(start, index);
+	}
+
+	private char peek() {
+		skipWhitespace();
+		return index < expression.length() ? expression.charAt(index) : 0;
+	}
+
+	private boolean consume(char c) {
+		if (peek() == c) {
+			index++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(char c) {
+		if (!consume(c)) {
+			throw error("Expected '" + c + "'");
+		}
+	}
+
+	private void skipWhitespace() {
+		while (index < expression.length() && Character.isWhitespace(expression.charAt(index))) {
+			index++;
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at index " + index);
+	}
+
+	private static boolean isNameStart(char c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+	}
+
+	private static boolean isNumberStart(char c) {
+		return c >= '0' && c <= '9' || c == '.';
+	}
+}
@@ -59,6 +59,15 @@ public abstract class RandomFunction extends Function implements RandomOwner {
 		super(name);
 	}
 
+	/**
+	 * Gets the random of this random function.
+	 *
+	 * @return The random
+	 */
+	public Random getRandom() {
+		return random;
+	}
+
 	/**
 	 * Sets the random for this random function.
 	 *
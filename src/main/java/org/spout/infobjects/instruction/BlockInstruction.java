@@ -26,15 +26,21 @@
  */
 package org.spout.infobjects.instruction;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 import org.spout.api.util.config.ConfigurationNode;
+import org.spout.infobjects.BoundsAnalysis;
 import org.spout.infobjects.IWGO;
+import org.spout.infobjects.PlacementContext;
 import org.spout.infobjects.exception.InstructionLoadingException;
 import org.spout.infobjects.material.MaterialSetter;
+import org.spout.infobjects.util.BoundingBox;
 import org.spout.infobjects.util.RandomOwner;
 import org.spout.infobjects.value.Value;
 import org.spout.infobjects.value.ValueParser;
+import org.spout.infobjects.value.ValueState;
 
 /**
  * An instruction to place a single block at a position. The outer boolean dictates whether the
@@ -85,11 +91,37 @@ public class BlockInstruction extends Instruction {
 	}
 
 	/**
-	 * Executes the instruction. Sets the material from the material setter at the desired location.
+	 * Executes the instruction. Records the material from the material setter at the desired
+	 * location in the context's voxel buffer.
+	 *
+	 * @param context The context of the placement
+	 */
+	@Override
+	public void execute(PlacementContext context) {
+		final ValueState values = context.getValueState();
+		context.setMaterial(setter, x.getValue(values), y.getValue(values), z.getValue(values), outer);
+	}
+
+	/**
+	 * Gets the bounding box of the block placed by this instruction, from the intervals of the
+	 * position values.
+	 *
+	 * @param analysis The bounds analysis of the iWGO
+	 * @return The bounding box of the placed block
 	 */
 	@Override
-	public void execute() {
-		setter.setMaterial(getIWGO().transform(x.getValue(), y.getValue(), z.getValue()), outer);
+	public BoundingBox getBounds(BoundsAnalysis analysis) {
+		return BoundingBox.of(analysis.getInterval(x), analysis.getInterval(y), analysis.getInterval(z));
+	}
+
+	/**
+	 * Gets the values representing the x, y and z position coordinates.
+	 *
+	 * @return The values of the block instruction
+	 */
+	@Override
+	public List<Value> getValues() {
+		return Arrays.asList(x, y, z);
 	}
 
 	/**
@@ -104,6 +136,20 @@ public class BlockInstruction extends Instruction {
 		z.calculate();
 	}
 
+	/**
+	 * Randomizes each value representing the x, y and z position coordinated in the state and calls
+	 * the super method.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	@Override
+	public void randomize(ValueState state) {
+		super.randomize(state);
+		x.calculate(state);
+		y.calculate(state);
+		z.calculate(state);
+	}
+
 	/**
 	 * Sets the random of each value representing the x, y and z position coordinates to the
 	 * provided one and calls the super method.
@@ -27,18 +27,24 @@
 package org.spout.infobjects.instruction;
 
 import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
 import org.spout.api.util.config.ConfigurationNode;
+import org.spout.infobjects.BoundsAnalysis;
 import org.spout.infobjects.IWGO;
+import org.spout.infobjects.PlacementContext;
 import org.spout.infobjects.exception.InstructionLoadingException;
+import org.spout.infobjects.util.BoundingBox;
 import org.spout.infobjects.util.ConfigurationLoadable;
 import org.spout.infobjects.util.RandomOwner;
 import org.spout.infobjects.util.TypeFactory;
+import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
 import org.spout.infobjects.variable.Variable;
 import org.spout.infobjects.variable.VariableSource;
+import org.spout.infobjects.variable.VariableTable;
 
 /**
  * An abstract instruction. This class provides the parent iWGO, the name of the instruction and
@@ -51,7 +57,7 @@ public abstract class Instruction implements ConfigurationLoadable, VariableSour
 	private static final TypeFactory<Instruction> INSTRUCTIONS = new TypeFactory<Instruction>(IWGO.class, String.class);
 	private final IWGO iwgo;
 	private final String name;
-	private final Map<String, Variable> variables = new LinkedHashMap<String, Variable>();
+	private final VariableTable variables = new VariableTable();
 
 	/**
 	 * Constructs a new instruction from the parent iWGO and its name.
@@ -93,9 +99,48 @@ public abstract class Instruction implements ConfigurationLoadable, VariableSour
 
 	/**
 	 * Executes this instruction. Each instruction is called once by placement call, unless another
-	 * instruction calls the method.
+	 * instruction calls the method. The blocks should be recorded in the context, and the values
+	 * read from its {@link org.spout.infobjects.value.ValueState}. This may be called from many
+	 * threads at once, so anything that changes during the execution must be stored in the state,
+	 * not in the instruction. By default, this enters the context on the iWGO and calls
+	 * {@link #execute()}, for the instructions written before the contexts. Extending classes must
+	 * override one of the two methods.
+	 *
+	 * @param context The context of the placement
+	 */
+	public void execute(PlacementContext context) {
+		final PlacementContext previous = iwgo.enterContext(context);
+		try {
+			execute();
+		} finally {
+			iwgo.exitContext(previous);
+		}
+	}
+
+	/**
+	 * Executes this instruction. By default, this executes the instruction in the context of the
+	 * placement in progress on the calling thread.
+	 *
+	 * @throws IllegalStateException If no placement is in progress on this thread
+	 * @deprecated Override and call {@link #execute(org.spout.infobjects.PlacementContext)} instead
+	 */
+	@Deprecated
+	public void execute() {
+		execute(iwgo.getCurrentContext());
+	}
+
+	/**
+	 * Gets the bounding box of all the blocks this instruction can place, relative to the iWGO's
+	 * position, using the analysis to find the intervals of the values. Returns null if the
+	 * instruction never places any blocks. By default, this returns
+	 * {@link org.spout.infobjects.util.BoundingBox#UNBOUNDED}, as the extent is unknown.
+	 *
+	 * @param analysis The bounds analysis of the iWGO
+	 * @return The bounding box of the placed blocks
 	 */
-	public abstract void execute();
+	public BoundingBox getBounds(BoundsAnalysis analysis) {
+		return BoundingBox.UNBOUNDED;
+	}
 
 	/**
 	 * Sets the random of the variables for this instruction.
@@ -104,20 +149,41 @@ public abstract class Instruction implements ConfigurationLoadable, VariableSour
 	 */
 	@Override
 	public void setRandom(Random random) {
-		for (Variable variable : variables.values()) {
+		for (Variable variable : variables.getVariables()) {
 			if (variable.getRawValue() instanceof RandomOwner) {
 				((RandomOwner) variable.getRawValue()).setRandom(random);
 			}
 		}
 	}
 
+	/**
+	 * Gets the values calculated when this instruction is randomized, other than its variables.
+	 * The iWGO adds them to its {@link org.spout.infobjects.variable.DependencyGraph dependency
+	 * graph}, and then only calculates those which can change, instead of randomizing the
+	 * instruction. By default, this returns null: the values are unknown, and the instruction is
+	 * randomized as a whole.
+	 *
+	 * @return The values of the instruction, or null if they are unknown
+	 */
+	public List<Value> getValues() {
+		return null;
+	}
+
 	/**
 	 * Randomizes the variables for this instruction.
 	 */
 	public void randomize() {
-		for (Variable variable : variables.values()) {
-			variable.calculate();
-		}
+		variables.calculate();
+	}
+
+	/**
+	 * Randomizes the variables for this instruction in the state. The instruction itself isn't
+	 * changed.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	public void randomize(ValueState state) {
+		variables.calculate(state);
 	}
 
 	/**
@@ -127,7 +193,7 @@ public abstract class Instruction implements ConfigurationLoadable, VariableSour
 	 */
 	@Override
 	public void addVariable(Variable variable) {
-		variables.put(variable.getName(), variable);
+		variables.addVariable(variable);
 	}
 
 	/**
@@ -138,7 +204,7 @@ public abstract class Instruction implements ConfigurationLoadable, VariableSour
 	 */
 	@Override
 	public Variable getVariable(String name) {
-		return variables.get(name);
+		return variables.getVariable(name);
 	}
 
 	/**
@@ -149,7 +215,7 @@ public abstract class Instruction implements ConfigurationLoadable, VariableSour
 	 */
 	@Override
 	public Collection<Variable> getVariables() {
-		return variables.values();
+		return variables.getVariables();
 	}
 
 	/**
@@ -160,7 +226,7 @@ public abstract class Instruction implements ConfigurationLoadable, VariableSour
 	 */
 	@Override
 	public Map<String, Variable> getVariableMap() {
-		return variables;
+		return variables.getVariableMap();
 	}
 
 	/**
@@ -171,7 +237,17 @@ public abstract class Instruction implements ConfigurationLoadable, VariableSour
 	 */
 	@Override
 	public boolean hasVariable(String name) {
-		return variables.containsKey(name);
+		return variables.hasVariable(name);
+	}
+
+	/**
+	 * Gets the variable table of the instruction. Each variable has a slot in the table's frame, which
+	 * can be used to snapshot and restore the values of all the variables.
+	 *
+	 * @return The variable table
+	 */
+	public VariableTable getVariableTable() {
+		return variables;
 	}
 
 	/**
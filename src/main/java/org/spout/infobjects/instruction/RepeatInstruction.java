@@ -26,29 +26,41 @@
  */
 package org.spout.infobjects.instruction;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
 import org.spout.api.util.config.ConfigurationNode;
 
+import org.spout.infobjects.BoundsAnalysis;
 import org.spout.infobjects.IWGO;
+import org.spout.infobjects.PlacementContext;
 import org.spout.infobjects.exception.InstructionLoadingException;
+import org.spout.infobjects.util.BoundingBox;
 import org.spout.infobjects.util.RandomOwner;
 import org.spout.infobjects.value.IncrementableValue;
 import org.spout.infobjects.value.Value;
 import org.spout.infobjects.value.ValueParser;
+import org.spout.infobjects.value.ValueState;
+import org.spout.infobjects.variable.DependencyGraph;
 import org.spout.infobjects.variable.Variable;
 
 /**
  * An instruction for repeating another instruction a specific number of time. This instruction can
  * also increment iWGO variables for each repeat. The values of the variables are reset once
- * execution is over.
+ * execution is over. The increments are kept in the {@link org.spout.infobjects.value.ValueState}
+ * of the placement, so many placements can repeat the instruction at once. If the iWGO has a
+ * {@link org.spout.infobjects.variable.DependencyGraph dependency graph}, each repeat only
+ * recalculates the variables and values which depend on the incremented variables or on the random
+ * values of the repeated instruction.
  */
 public class RepeatInstruction extends Instruction {
 	private Instruction repeat;
 	private Value times;
 	private final Set<IncrementableValue> incrementables = new HashSet<IncrementableValue>();
+	private volatile LoopPlan loopPlan = null;
 
 	static {
 		Instruction.register("repeat", RepeatInstruction.class);
@@ -103,7 +115,7 @@ public class RepeatInstruction extends Instruction {
 	/**
 	 * Adds a named value to be incremented. This value should have the same name as the iWGO
 	 * variable that needs to be incremented. The incrementable value should have for value the
-	 * value of the iWGO variable.
+	 * value of the iWGO variable. The iWGO variable is replaced by one of this value.
 	 *
 	 * @param name The name of the iWGO variable to increment
 	 * @param value The incrementable value to increment
@@ -151,6 +163,38 @@ public class RepeatInstruction extends Instruction {
 		}
 	}
 
+	/**
+	 * Gets the bounding box of the repeated instruction. The incremented values are accounted for
+	 * by the analysis.
+	 *
+	 * @param analysis The bounds analysis of the iWGO
+	 * @return The bounding box of the repeated instruction
+	 */
+	@Override
+	public BoundingBox getBounds(BoundsAnalysis analysis) {
+		return repeat.getBounds(analysis);
+	}
+
+	/**
+	 * Gets the value for the times to repeat the repeated instruction, and the variables and values
+	 * of the repeated instruction, as they are recalculated by the repeats. If the values of the
+	 * repeated instruction are unknown, so are those of this instruction.
+	 *
+	 * @return The values of the repeat instruction, or null if they are unknown
+	 */
+	@Override
+	public List<Value> getValues() {
+		final List<Value> repeatValues = repeat.getValues();
+		if (repeatValues == null) {
+			return null;
+		}
+		final List<Value> values = new ArrayList<Value>();
+		values.add(times);
+		values.addAll(repeat.getVariables());
+		values.addAll(repeatValues);
+		return values;
+	}
+
 	/**
 	 * Randomizes the value for the times to repeat the repeated instruction and calls the super
 	 * method.
@@ -161,6 +205,18 @@ public class RepeatInstruction extends Instruction {
 		times.calculate();
 	}
 
+	/**
+	 * Randomizes the value for the times to repeat the repeated instruction in the state and calls
+	 * the super method.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	@Override
+	public void randomize(ValueState state) {
+		super.randomize(state);
+		times.calculate(state);
+	}
+
 	/**
 	 * Sets the random of the value for the times to repeat the repeated instruction and calls the
 	 * super method.
@@ -178,21 +234,81 @@ public class RepeatInstruction extends Instruction {
 	/**
 	 * Executes this instruction. Executes the repeated instruction for the number of times
 	 * specified by the time value, incrementing all the incrementable values once during each
-	 * iteration. Resets all the incrementable values to the original values once execution is over.
+	 * iteration and randomizing the repeated instruction. With a dependency graph, only the values
+	 * depending on the incremented variables or on the random values of the repeated instruction
+	 * are recalculated, including the iWGO variables depending on the incremented ones. The
+	 * increments and the recalculated values are stored in the value state of the context, and the
+	 * incrementable values are reset in it once execution is over.
+	 *
+	 * @param context The context of the placement
 	 */
 	@Override
-	public void execute() {
-		for (int i = (int) times.getValue(); i >= 1; i--) {
+	public void execute(PlacementContext context) {
+		final ValueState values = context.getValueState();
+		final Value[] loop = getLoopValues();
+		for (int i = (int) times.getValue(values); i >= 1; i--) {
 			for (IncrementableValue increment : incrementables) {
-				increment.increment();
+				increment.increment(values);
 			}
-			repeat.randomize();
-			repeat.execute();
+			randomizeRepeat(values, loop);
+			repeat.execute(context);
 		}
 		for (IncrementableValue increment : incrementables) {
-			increment.reset();
+			increment.reset(values);
 		}
-		repeat.randomize();
+		randomizeRepeat(values, loop);
+	}
+
+	private void randomizeRepeat(ValueState values, Value[] loop) {
+		if (loop != null) {
+			for (Value value : loop) {
+				value.calculate(values);
+			}
+		} else {
+			repeat.randomize(values);
+		}
+	}
+
+	// the values recalculated by each repeat, or null to randomize the whole repeated instruction
+	private Value[] getLoopValues() {
+		final DependencyGraph graph = getIWGO().getDependencyGraph();
+		if (graph == null) {
+			return null;
+		}
+		LoopPlan plan = loopPlan;
+		if (plan == null || plan.graph != graph) {
+			plan = new LoopPlan(graph, planLoop(graph));
+			loopPlan = plan;
+		}
+		return plan.values;
+	}
+
+	private Value[] planLoop(DependencyGraph graph) {
+		final List<Value> repeatValues = repeat.getValues();
+		if (repeatValues == null) {
+			return null;
+		}
+		final List<Value> changed = new ArrayList<Value>();
+		final List<Value> scope = new ArrayList<Value>();
+		for (Variable variable : getIWGO().getVariables()) {
+			final Value value = variable.getRawValue();
+			if (incrementables.contains(value)) {
+				changed.add(variable);
+			} else if (!(value instanceof IncrementableValue)) {
+				// recalculating an incrementable value would recalculate the original value
+				scope.add(variable);
+			}
+		}
+		final List<Value> owned = new ArrayList<Value>(repeat.getVariables());
+		owned.addAll(repeatValues);
+		for (Value value : owned) {
+			if (graph.isSource(value)) {
+				changed.add(value);
+			}
+			scope.add(value);
+		}
+		final List<Value> dependents = graph.getDependents(changed, scope);
+		return dependents.toArray(new Value[dependents.size()]);
 	}
 
 	/**
@@ -205,4 +321,14 @@ public class RepeatInstruction extends Instruction {
 		return "RepeatInstruction{repeat=" + repeat + ", times=" + times + ", incrementables="
 				+ incrementables + '}';
 	}
+
+	private static class LoopPlan {
+		private final DependencyGraph graph;
+		private final Value[] values;
+
+		private LoopPlan(DependencyGraph graph, Value[] values) {
+			this.graph = graph;
+			this.values = values;
+		}
+	}
 }
@@ -34,11 +34,16 @@ import java.util.logging.Logger;
 
 import org.spout.api.util.config.ConfigurationNode;
 
+import org.spout.infobjects.BoundsAnalysis;
 import org.spout.infobjects.IWGO;
+import org.spout.infobjects.PlacementContext;
 import org.spout.infobjects.exception.InstructionLoadingException;
 import org.spout.infobjects.exception.ShapeLoadingException;
 import org.spout.infobjects.shape.Shape;
+import org.spout.infobjects.util.BoundingBox;
 import org.spout.infobjects.util.RandomOwner;
+import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
 
 /**
  * A shape placing instruction.
@@ -111,6 +116,40 @@ public class ShapeInstruction extends Instruction {
 		}
 	}
 
+	/**
+	 * Gets the bounding box of all the shapes drawn by this instruction.
+	 *
+	 * @param analysis The bounds analysis of the iWGO
+	 * @return The bounding box of the shapes, or null if there are none
+	 */
+	@Override
+	public BoundingBox getBounds(BoundsAnalysis analysis) {
+		BoundingBox bounds = null;
+		for (Shape shape : shapes) {
+			bounds = BoundsAnalysis.union(bounds, shape.getBounds(analysis));
+		}
+		return bounds;
+	}
+
+	/**
+	 * Gets the values of all the shapes of this instruction. If the values of any shape are
+	 * unknown, so are those of the instruction.
+	 *
+	 * @return The values of the shapes, or null if they are unknown
+	 */
+	@Override
+	public List<Value> getValues() {
+		final List<Value> values = new ArrayList<Value>();
+		for (Shape shape : shapes) {
+			final List<Value> shapeValues = shape.getValues();
+			if (shapeValues == null) {
+				return null;
+			}
+			values.addAll(shapeValues);
+		}
+		return values;
+	}
+
 	/**
 	 * Randomizes all the shapes for this instruction and calls the super method.
 	 */
@@ -122,6 +161,19 @@ public class ShapeInstruction extends Instruction {
 		}
 	}
 
+	/**
+	 * Randomizes all the shapes for this instruction in the state and calls the super method.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	@Override
+	public void randomize(ValueState state) {
+		super.randomize(state);
+		for (Shape shape : shapes) {
+			shape.randomize(state);
+		}
+	}
+
 	/**
 	 * Sets the randoms for all the shapes for this instruction to the provided one and calls the
 	 * super method.
@@ -140,11 +192,13 @@ public class ShapeInstruction extends Instruction {
 
 	/**
 	 * Executes this instruction by drawing all the shapes.
+	 *
+	 * @param context The context of the placement
 	 */
 	@Override
-	public void execute() {
+	public void execute(PlacementContext context) {
 		for (Shape shape : shapes) {
-			shape.draw();
+			shape.draw(context);
 		}
 	}
 
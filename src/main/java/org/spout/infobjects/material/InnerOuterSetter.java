@@ -26,11 +26,11 @@
  */
 package org.spout.infobjects.material;
 
-import org.spout.api.geo.World;
 import org.spout.api.material.BlockMaterial;
 import org.spout.api.util.config.ConfigurationNode;
 
 import org.spout.infobjects.util.IWGOUtils;
+import org.spout.infobjects.voxel.VoxelBuffer;
 
 /**
  * A material setter for setting a different inner and outer material.
@@ -83,22 +83,22 @@ public class InnerOuterSetter extends MaterialSetter {
 	}
 
 	/**
-	 * Sets the material at the desired coordinated inside the world. If outer is true, the outer
+	 * Records the material at the desired coordinates in the buffer. If outer is true, the outer
 	 * material and data is used, if false, the inner one is. If data is -1,
 	 * {@link org.spout.api.material.Material#getData()} is used.
 	 *
-	 * @param world The world to set the material in
+	 * @param buffer The buffer to record the material in
 	 * @param x The x coordinate of the world position
 	 * @param y The y coordinate of the world position
 	 * @param z The z coordinate of the world position
 	 * @param outer Whether or not the material is outside or inside the shape
 	 */
 	@Override
-	public void setMaterial(World world, int x, int y, int z, boolean outer) {
+	public void setMaterial(VoxelBuffer buffer, int x, int y, int z, boolean outer) {
 		if (outer) {
-			world.setBlockMaterial(x, y, z, this.outer, outerData == -1 ? this.outer.getData() : outerData, null);
+			buffer.add(x, y, z, this.outer, outerData == -1 ? this.outer.getData() : outerData);
 		} else {
-			world.setBlockMaterial(x, y, z, inner, innerData == -1 ? inner.getData() : innerData, null);
+			buffer.add(x, y, z, inner, innerData == -1 ? inner.getData() : innerData);
 		}
 	}
 
@@ -0,0 +1,190 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.material;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.spout.api.material.BlockMaterial;
+
+/**
+ * A set of block materials with constant time membership tests that don't hash. Besides the
+ * regular set of materials, the set keeps a dense bit table indexed by material id for the root
+ * materials, and a bit set indexed by data for each id with sub materials. Testing a material is
+ * then a couple of array lookups, which is what the conditions do for every block they scan.
+ */
+public class MaterialSet extends AbstractSet<BlockMaterial> {
+	private static final int ID_COUNT = Short.MAX_VALUE + 1;
+	private final Set<BlockMaterial> materials = new HashSet<BlockMaterial>();
+	private final long[] ids = new long[ID_COUNT >> 6];
+	private BitSet[] subMaterials = new BitSet[0];
+
+	/**
+	 * Tests if the block material is in this set.
+	 *
+	 * @param material The material to test
+	 * @return True if the set contains the material, false if not
+	 */
+	public boolean contains(BlockMaterial material) {
+		if (material == null) {
+			return false;
+		}
+		final int id = material.getId();
+		if (id < 0) {
+			return materials.contains(material);
+		}
+		if (material.isSubMaterial()) {
+			final BitSet data = id < subMaterials.length ? subMaterials[id] : null;
+			return data != null && data.get(material.getData() & 0xFFFF);
+		}
+		return (ids[id >> 6] & 1L << id) != 0;
+	}
+
+	/**
+	 * Tests if the object is a block material in this set.
+	 *
+	 * @param o The object to test
+	 * @return True if the set contains the object, false if not
+	 */
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof BlockMaterial && contains((BlockMaterial) o);
+	}
+
+	/**
+	 * Adds a block material to this set.
+	 *
+	 * @param material The material to add
+	 * @return True if the material wasn't already in the set, false if it was
+	 */
+	@Override
+	public boolean add(BlockMaterial material) {
+		if (material == null) {
+			throw new IllegalArgumentException("Material cannot be null");
+		}
+		if (!materials.add(material)) {
+			return false;
+		}
+		setIndexed(material, true);
+		return true;
+	}
+
+	/**
+	 * Removes the object from this set, if it is one of its block materials.
+	 *
+	 * @param o The object to remove
+	 * @return True if the object was removed, false if it wasn't in the set
+	 */
+	@Override
+	public boolean remove(Object o) {
+		if (!materials.remove(o)) {
+			return false;
+		}
+		setIndexed((BlockMaterial) o, false);
+		return true;
+	}
+
+	/**
+	 * Removes all the materials from this set.
+	 */
+	@Override
+	public void clear() {
+		materials.clear();
+		Arrays.fill(ids, 0);
+		subMaterials = new BitSet[0];
+	}
+
+	/**
+	 * Gets an iterator over the materials of this set. Removing through the iterator is supported.
+	 *
+	 * @return The iterator
+	 */
+	@Override
+	public Iterator<BlockMaterial> iterator() {
+		final Iterator<BlockMaterial> iterator = materials.iterator();
+		return new Iterator<BlockMaterial>() {
+			private BlockMaterial last;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public BlockMaterial next() {
+				last = iterator.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				iterator.remove();
+				setIndexed(last, false);
+			}
+		};
+	}
+
+	/**
+	 * Gets the number of materials in this set.
+	 *
+	 * @return The size of the set
+	 */
+	@Override
+	public int size() {
+		return materials.size();
+	}
+
+	private void setIndexed(BlockMaterial material, boolean present) {
+		final int id = material.getId();
+		if (id < 0) {
+			return;
+		}
+		if (material.isSubMaterial()) {
+			if (id >= subMaterials.length) {
+				if (!present) {
+					return;
+				}
+				subMaterials = Arrays.copyOf(subMaterials, id + 1);
+			}
+			if (subMaterials[id] == null) {
+				if (!present) {
+					return;
+				}
+				subMaterials[id] = new BitSet();
+			}
+			subMaterials[id].set(material.getData() & 0xFFFF, present);
+		} else if (present) {
+			ids[id >> 6] |= 1L << id;
+		} else {
+			ids[id >> 6] &= ~(1L << id);
+		}
+	}
+}
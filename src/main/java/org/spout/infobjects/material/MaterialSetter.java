@@ -26,6 +26,8 @@
  */
 package org.spout.infobjects.material;
 
+import java.util.Random;
+
 import org.spout.api.geo.World;
 import org.spout.api.geo.discrete.Point;
 import org.spout.api.util.Named;
@@ -33,10 +35,11 @@ import org.spout.api.util.config.ConfigurationNode;
 import org.spout.infobjects.util.ConfigurationLoadable;
 
 import org.spout.infobjects.util.TypeFactory;
+import org.spout.infobjects.voxel.VoxelBuffer;
 
 /**
  * An abstract material setter. Provides the name and some overloads for the
- * {@link #setMaterial(org.spout.api.geo.World, int, int, int, boolean)} method. Register your own
+ * {@link #setMaterial(org.spout.infobjects.voxel.VoxelBuffer, int, int, int, boolean)} method. Register your own
  * material setter with {@link #register(java.lang.String, java.lang.Class)} so the iWGO loader can
  * recognize it. Make sure there's at least one constructor with the same arguments as the one for
  * this class, as it's the one that will be called for construction.
@@ -68,7 +71,8 @@ public abstract class MaterialSetter implements ConfigurationLoadable, Named {
 	 * Sets a material at the point. The material depends on the material setter implementation and
 	 * configuration and the value of the outer parameter. If a material is being set at the outer
 	 * edge of a shape, the parameter should be true, else, false. Material setters might provide
-	 * different materials for the outside and the inside of a shape.
+	 * different materials for the outside and the inside of a shape. The material is set in the
+	 * world immediately.
 	 *
 	 * @param pos The position at which to set the material
 	 * @param outer Whether or not the material is outside or inside the shape
@@ -82,7 +86,10 @@ public abstract class MaterialSetter implements ConfigurationLoadable, Named {
 	 * material setter implementation and configuration and the value of the outer parameter. If a
 	 * material is being set at the outer edge of a shape, the parameter should be true, else,
 	 * false. Material setters might provide different materials for the outside and the inside of a
-	 * shape.
+	 * shape. The material is set in the world immediately. When setting many materials, prefer
+	 * recording them in a {@link org.spout.infobjects.voxel.VoxelBuffer} with
+	 * {@link #setMaterial(org.spout.infobjects.voxel.VoxelBuffer, int, int, int, boolean)} and
+	 * flushing it once done.
 	 *
 	 * @param world The world to set the material in
 	 * @param x The x coordinate of the world position
@@ -90,7 +97,57 @@ public abstract class MaterialSetter implements ConfigurationLoadable, Named {
 	 * @param z The z coordinate of the world position
 	 * @param outer Whether or not the material is outside or inside the shape
 	 */
-	public abstract void setMaterial(World world, int x, int y, int z, boolean outer);
+	public void setMaterial(World world, int x, int y, int z, boolean outer) {
+		final VoxelBuffer buffer = new VoxelBuffer(x, y, z, 1);
+		setMaterial(buffer, x, y, z, outer);
+		buffer.flush(world);
+	}
+
+	/**
+	 * Records a material at the point in the voxel buffer. This is the same as
+	 * {@link #setMaterial(org.spout.infobjects.voxel.VoxelBuffer, int, int, int, boolean)}, using the
+	 * block coordinates of the point.
+	 *
+	 * @param buffer The buffer to record the material in
+	 * @param pos The position at which to set the material
+	 * @param outer Whether or not the material is outside or inside the shape
+	 */
+	public void setMaterial(VoxelBuffer buffer, Point pos, boolean outer) {
+		setMaterial(buffer, pos.getBlockX(), pos.getBlockY(), pos.getBlockZ(), outer);
+	}
+
+	/**
+	 * Records a material at the coordinates in the voxel buffer. The material depends on the
+	 * material setter implementation and configuration and the value of the outer parameter. If a
+	 * material is being set at the outer edge of a shape, the parameter should be true, else,
+	 * false. Material setters might provide different materials for the outside and the inside of a
+	 * shape. Nothing is written to the world until the buffer is flushed.
+	 *
+	 * @param buffer The buffer to record the material in
+	 * @param x The x coordinate of the world position
+	 * @param y The y coordinate of the world position
+	 * @param z The z coordinate of the world position
+	 * @param outer Whether or not the material is outside or inside the shape
+	 */
+	public abstract void setMaterial(VoxelBuffer buffer, int x, int y, int z, boolean outer);
+
+	/**
+	 * Records a material at the coordinates in the voxel buffer, like
+	 * {@link #setMaterial(org.spout.infobjects.voxel.VoxelBuffer, int, int, int, boolean)}, but
+	 * using the provided random instead of the setter's own one, if the setter is random. This is
+	 * used during placement, with the random of the placement's
+	 * {@link org.spout.infobjects.value.ValueState}. By default, the random is ignored.
+	 *
+	 * @param buffer The buffer to record the material in
+	 * @param x The x coordinate of the world position
+	 * @param y The y coordinate of the world position
+	 * @param z The z coordinate of the world position
+	 * @param outer Whether or not the material is outside or inside the shape
+	 * @param random The random to use, or null to use the setter's own one
+	 */
+	public void setMaterial(VoxelBuffer buffer, int x, int y, int z, boolean outer, Random random) {
+		setMaterial(buffer, x, y, z, outer);
+	}
 
 	/**
 	 * Gets the name of the material setter.
@@ -28,10 +28,10 @@ package org.spout.infobjects.material;
 
 import java.util.Random;
 
-import org.spout.api.geo.World;
 import org.spout.api.util.config.ConfigurationNode;
 
 import org.spout.infobjects.util.RandomOwner;
+import org.spout.infobjects.voxel.VoxelBuffer;
 
 /**
  * A material setter for setting a different inner and outer material or not, depending on an
@@ -69,20 +69,38 @@ public class RandomInnerOuterSetter extends InnerOuterSetter implements RandomOw
 	}
 
 	/**
-	 * Sets the material at the desired coordinates in the world. If outer is true and the next
+	 * Records the material at the desired coordinates in the buffer. If outer is true and the next
 	 * integer from the random in the range [0, 100[ is smaller than the odd for outer, the outer
 	 * material is set. If outer is false, the same is done, but for the inner odd and material.
 	 *
-	 * @param world The world to set the material in
+	 * @param buffer The buffer to record the material in
 	 * @param x The x coordinate of the world position
 	 * @param y The y coordinate of the world position
 	 * @param z The z coordinate of the world position
 	 * @param outer Whether or not the material is outside the shape
 	 */
 	@Override
-	public void setMaterial(World world, int x, int y, int z, boolean outer) {
+	public void setMaterial(VoxelBuffer buffer, int x, int y, int z, boolean outer) {
 		if (random.nextInt(100) < (outer ? outerOdd : innerOdd)) {
-			super.setMaterial(world, x, y, z, outer);
+			super.setMaterial(buffer, x, y, z, outer);
+		}
+	}
+
+	/**
+	 * Records the material at the desired coordinates in the buffer, drawing from the provided
+	 * random instead of the setter's own one.
+	 *
+	 * @param buffer The buffer to record the material in
+	 * @param x The x coordinate of the world position
+	 * @param y The y coordinate of the world position
+	 * @param z The z coordinate of the world position
+	 * @param outer Whether or not the material is outside the shape
+	 * @param random The random to use, or null to use the setter's own one
+	 */
+	@Override
+	public void setMaterial(VoxelBuffer buffer, int x, int y, int z, boolean outer, Random random) {
+		if ((random != null ? random : this.random).nextInt(100) < (outer ? outerOdd : innerOdd)) {
+			super.setMaterial(buffer, x, y, z, outer);
 		}
 	}
 
@@ -28,10 +28,10 @@ package org.spout.infobjects.material;
 
 import java.util.Random;
 
-import org.spout.api.geo.World;
 import org.spout.api.util.config.ConfigurationNode;
 
 import org.spout.infobjects.util.RandomOwner;
+import org.spout.infobjects.voxel.VoxelBuffer;
 
 /**
  * A material setter for randomly setting a material, depending on the specified odd. This setter
@@ -67,19 +67,37 @@ public class RandomSimpleSetter extends SimpleSetter implements RandomOwner {
 	}
 
 	/**
-	 * Sets the material at the desired coordinates in the world. Only sets the material if the next
-	 * integer from the random in the [0, 100[ range is smaller than the odd.
+	 * Records the material at the desired coordinates in the buffer. Only records the material if
+	 * the next integer from the random in the [0, 100[ range is smaller than the odd.
 	 *
-	 * @param world The world to set the material in
+	 * @param buffer The buffer to record the material in
 	 * @param x The x coordinate of the world position
 	 * @param y The y coordinate of the world position
 	 * @param z The z coordinate of the world position
 	 * @param outer Not used, will always set the same material
 	 */
 	@Override
-	public void setMaterial(World world, int x, int y, int z, boolean outer) {
+	public void setMaterial(VoxelBuffer buffer, int x, int y, int z, boolean outer) {
 		if (random.nextInt(100) < odd) {
-			super.setMaterial(world, x, y, z, outer);
+			super.setMaterial(buffer, x, y, z, outer);
+		}
+	}
+
+	/**
+	 * Records the material at the desired coordinates in the buffer, drawing from the provided
+	 * random instead of the setter's own one.
+	 *
+	 * @param buffer The buffer to record the material in
+	 * @param x The x coordinate of the world position
+	 * @param y The y coordinate of the world position
+	 * @param z The z coordinate of the world position
+	 * @param outer Whether or not the material is outside the shape
+	 * @param random The random to use, or null to use the setter's own one
+	 */
+	@Override
+	public void setMaterial(VoxelBuffer buffer, int x, int y, int z, boolean outer, Random random) {
+		if ((random != null ? random : this.random).nextInt(100) < odd) {
+			super.setMaterial(buffer, x, y, z, outer);
 		}
 	}
 
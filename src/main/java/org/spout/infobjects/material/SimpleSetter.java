@@ -26,11 +26,11 @@
  */
 package org.spout.infobjects.material;
 
-import org.spout.api.geo.World;
 import org.spout.api.material.BlockMaterial;
 import org.spout.api.util.config.ConfigurationNode;
 
 import org.spout.infobjects.util.IWGOUtils;
+import org.spout.infobjects.voxel.VoxelBuffer;
 
 /**
  * A setter for setting a material independently from the value of outer.
@@ -69,18 +69,18 @@ public class SimpleSetter extends MaterialSetter {
 	}
 
 	/**
-	 * Sets the material at the desired coordinates inside the world. This setter will always set
+	 * Records the material at the desired coordinates in the buffer. This setter will always set
 	 * the same material, whatever the value of outer may be.
 	 *
-	 * @param world The world to set the material in
+	 * @param buffer The buffer to record the material in
 	 * @param x The x coordinate of the world position
 	 * @param y The y coordinate of the world position
 	 * @param z The z coordinate of the world position
 	 * @param outer Not used, will always set the same material
 	 */
 	@Override
-	public void setMaterial(World world, int x, int y, int z, boolean outer) {
-		world.setBlockMaterial(x, y, z, material, data == -1 ? material.getData() : data, null);
+	public void setMaterial(VoxelBuffer buffer, int x, int y, int z, boolean outer) {
+		buffer.add(x, y, z, material, data == -1 ? material.getData() : data);
 	}
 
 	/**
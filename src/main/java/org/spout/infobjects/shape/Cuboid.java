@@ -26,15 +26,21 @@
  */
 package org.spout.infobjects.shape;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
-import org.spout.infobjects.IWGO;
+import org.spout.infobjects.BoundsAnalysis;
+import org.spout.infobjects.PlacementContext;
 import org.spout.infobjects.exception.ShapeLoadingException;
 import org.spout.infobjects.instruction.Instruction;
 import org.spout.infobjects.material.MaterialSetter;
+import org.spout.infobjects.util.BoundingBox;
+import org.spout.infobjects.util.Interval;
 import org.spout.infobjects.util.RandomOwner;
 import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
 
 /**
  * A shape to draw a cuboid defined by two opposite corners.
@@ -84,27 +90,63 @@ public class Cuboid extends Shape {
 	/**
 	 * Draws the cuboid. The position values define the first lower corner. The opposite corner is
 	 * the position plus the size.
+	 *
+	 * @param context The context of the placement
 	 */
 	@Override
-	public void draw() {
-		final int px = (int) getX().getValue();
-		final int py = (int) getY().getValue();
-		final int pz = (int) getZ().getValue();
-		final int sizeX = (int) length.getValue();
-		final int sizeY = (int) height.getValue();
-		final int sizeZ = (int) depth.getValue();
-		final IWGO iwgo = getInstruction().getIWGO();
+	public void draw(PlacementContext context) {
+		final ValueState values = context.getValueState();
+		final int px = (int) getX().getValue(values);
+		final int py = (int) getY().getValue(values);
+		final int pz = (int) getZ().getValue(values);
+		final int sizeX = (int) length.getValue(values);
+		final int sizeY = (int) height.getValue(values);
+		final int sizeZ = (int) depth.getValue(values);
 		final MaterialSetter setter = getMaterialSetter();
 		for (int xx = 0; xx < sizeX; xx++) {
 			for (int yy = 0; yy < sizeY; yy++) {
 				for (int zz = 0; zz < sizeZ; zz++) {
-					setter.setMaterial(iwgo.transform(px + xx, py + yy, pz + zz),
+					context.setMaterial(setter, px + xx, py + yy, pz + zz,
 							xx == 0 || yy == 0 || zz == 0 || xx == sizeX - 1 || yy == sizeY - 1 || zz == sizeZ - 1);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Gets the bounding box of the cuboid, from the lowest position to the highest position plus
+	 * the largest size.
+	 *
+	 * @param analysis The bounds analysis of the iWGO
+	 * @return The bounding box of the cuboid, or null if its size is never positive
+	 */
+	@Override
+	public BoundingBox getBounds(BoundsAnalysis analysis) {
+		final Interval sizeX = analysis.getInterval(length).truncate();
+		final Interval sizeY = analysis.getInterval(height).truncate();
+		final Interval sizeZ = analysis.getInterval(depth).truncate();
+		if (sizeX.getMax() < 1 || sizeY.getMax() < 1 || sizeZ.getMax() < 1) {
+			return null;
+		}
+		return BoundingBox.of(extend(analysis.getInterval(getX()), sizeX),
+				extend(analysis.getInterval(getY()), sizeY), extend(analysis.getInterval(getZ()), sizeZ));
+	}
+
+	private static Interval extend(Interval position, Interval size) {
+		final Interval start = position.truncate();
+		return new Interval(start.getMin(), start.getMax() + size.getMax() - 1);
+	}
+
+	/**
+	 * Gets the values of the position and of the size of the cuboid.
+	 *
+	 * @return The values of the cuboid
+	 */
+	@Override
+	public List<Value> getValues() {
+		return Arrays.asList(getX(), getY(), getZ(), length, height, depth);
+	}
+
 	/**
 	 * Randomizes the cuboid by recalculating the size values. Then calls the super method.
 	 */
@@ -116,6 +158,20 @@ public class Cuboid extends Shape {
 		depth.calculate();
 	}
 
+	/**
+	 * Randomizes the cuboid in the state by recalculating the size values in it. Then calls the super
+	 * method.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	@Override
+	public void randomize(ValueState state) {
+		super.randomize(state);
+		length.calculate(state);
+		height.calculate(state);
+		depth.calculate(state);
+	}
+
 	/**
 	 * Sets the random for each size value if they implement {@link org.spout.infobjects.util.RandomOwner}.
 	 * Calls the super method.
@@ -26,17 +26,23 @@
  */
 package org.spout.infobjects.shape;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
-import org.spout.api.geo.discrete.Point;
-import org.spout.api.util.BlockIterator;
+import org.spout.api.math.GenericMath;
 
+import org.spout.infobjects.BoundsAnalysis;
+import org.spout.infobjects.PlacementContext;
 import org.spout.infobjects.exception.ShapeLoadingException;
 import org.spout.infobjects.instruction.Instruction;
 import org.spout.infobjects.material.MaterialSetter;
+import org.spout.infobjects.util.BoundingBox;
+import org.spout.infobjects.util.Interval;
 import org.spout.infobjects.util.RandomOwner;
 import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
 
 /**
  * A shape to draw a line from one point to another.
@@ -86,22 +92,80 @@ public class Line extends Shape {
 	}
 
 	/**
-	 * Draws the shape. This uses the {@link org.spout.api.util.BlockIterator} to iterate from the
-	 * position to the position plus the size. Each block is set with the material setter as being
-	 * outer.
+	 * Draws the shape. This walks every block crossed by the line going from the position to the
+	 * position plus the size, in order, using a voxel traversal on the relative coordinates. Each
+	 * block is set with the material setter as being outer.
+	 *
+	 * @param context The context of the placement
 	 */
 	@Override
-	public void draw() {
-		final Point start = getInstruction().getIWGO().transform(getX().getValue(), getY().getValue(), getZ().getValue());
-		final BlockIterator line = new BlockIterator(start, start.add(lengthX.getValue(),
-				lengthY.getValue(), lengthZ.getValue()));
-		final MaterialSetter materialSetter = getMaterialSetter();
-		materialSetter.setMaterial(start, true);
-		while (line.hasNext()) {
-			materialSetter.setMaterial(line.next().getPosition(), true);
+	public void draw(PlacementContext context) {
+		final ValueState values = context.getValueState();
+		final MaterialSetter setter = getMaterialSetter();
+		final double startX = getX().getValue(values);
+		final double startY = getY().getValue(values);
+		final double startZ = getZ().getValue(values);
+		final double dx = lengthX.getValue(values);
+		final double dy = lengthY.getValue(values);
+		final double dz = lengthZ.getValue(values);
+		int x = GenericMath.floor(startX);
+		int y = GenericMath.floor(startY);
+		int z = GenericMath.floor(startZ);
+		final int endX = GenericMath.floor(startX + dx);
+		final int endY = GenericMath.floor(startY + dy);
+		final int endZ = GenericMath.floor(startZ + dz);
+		final int stepX = endX > x ? 1 : -1;
+		final int stepY = endY > y ? 1 : -1;
+		final int stepZ = endZ > z ? 1 : -1;
+		final double deltaX = dx == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dx);
+		final double deltaY = dy == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dy);
+		final double deltaZ = dz == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dz);
+		double maxX = (stepX > 0 ? x + 1 - startX : startX - x) * deltaX;
+		double maxY = (stepY > 0 ? y + 1 - startY : startY - y) * deltaY;
+		double maxZ = (stepZ > 0 ? z + 1 - startZ : startZ - z) * deltaZ;
+		context.setMaterial(setter, x, y, z, true);
+		while (x != endX || y != endY || z != endZ) {
+			if (x != endX && (y == endY || maxX <= maxY) && (z == endZ || maxX <= maxZ)) {
+				x += stepX;
+				maxX += deltaX;
+			} else if (y != endY && (z == endZ || maxY <= maxZ)) {
+				y += stepY;
+				maxY += deltaY;
+			} else {
+				z += stepZ;
+				maxZ += deltaZ;
+			}
+			context.setMaterial(setter, x, y, z, true);
 		}
 	}
 
+	/**
+	 * Gets the bounding box of the line, containing all of its possible start and end points.
+	 *
+	 * @param analysis The bounds analysis of the iWGO
+	 * @return The bounding box of the line
+	 */
+	@Override
+	public BoundingBox getBounds(BoundsAnalysis analysis) {
+		return BoundingBox.of(extend(analysis.getInterval(getX()), analysis.getInterval(lengthX)),
+				extend(analysis.getInterval(getY()), analysis.getInterval(lengthY)),
+				extend(analysis.getInterval(getZ()), analysis.getInterval(lengthZ)));
+	}
+
+	private static Interval extend(Interval start, Interval length) {
+		return start.union(start.add(length));
+	}
+
+	/**
+	 * Gets the values of the position and of the size of the line.
+	 *
+	 * @return The values of the line
+	 */
+	@Override
+	public List<Value> getValues() {
+		return Arrays.asList(getX(), getY(), getZ(), lengthX, lengthY, lengthZ);
+	}
+
 	/**
 	 * Randomizes the size values of the line by recalculating them. Then calls the super method.
 	 */
@@ -113,6 +177,20 @@ public class Line extends Shape {
 		lengthZ.calculate();
 	}
 
+	/**
+	 * Randomizes the size values of the line in the state by recalculating them. Then calls the
+	 * super method.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	@Override
+	public void randomize(ValueState state) {
+		super.randomize(state);
+		lengthX.calculate(state);
+		lengthY.calculate(state);
+		lengthZ.calculate(state);
+	}
+
 	/**
 	 * Sets the random for each size value if they implement
 	 * {@link org.spout.infobjects.util.RandomOwner}. Calls the super method.
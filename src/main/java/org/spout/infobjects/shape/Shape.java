@@ -26,22 +26,27 @@
  */
 package org.spout.infobjects.shape;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
 import org.spout.api.util.config.ConfigurationNode;
 
+import org.spout.infobjects.BoundsAnalysis;
 import org.spout.infobjects.IWGO;
 import org.spout.infobjects.IWGOLoader;
+import org.spout.infobjects.PlacementContext;
 import org.spout.infobjects.exception.ShapeLoadingException;
 import org.spout.infobjects.instruction.Instruction;
 import org.spout.infobjects.material.MaterialSetter;
+import org.spout.infobjects.util.BoundingBox;
 import org.spout.infobjects.util.ConfigurationLoadable;
 import org.spout.infobjects.util.IWGOUtils;
 import org.spout.infobjects.util.RandomOwner;
 import org.spout.infobjects.util.TypeFactory;
 import org.spout.infobjects.value.Value;
 import org.spout.infobjects.value.ValueParser;
+import org.spout.infobjects.value.ValueState;
 
 /**
  * An abstract shape. This class provides the parent instruction, position coordinate
@@ -210,6 +215,29 @@ public abstract class Shape implements ConfigurationLoadable, RandomOwner {
 		setMaterialSetter(materialSetter);
 	}
 
+	/**
+	 * Gets the bounding box of all the blocks this shape can draw, relative to the iWGO's position,
+	 * using the analysis to find the intervals of the values. Returns null if the shape never draws
+	 * any blocks. By default, this returns {@link org.spout.infobjects.util.BoundingBox#UNBOUNDED},
+	 * as the extent is unknown.
+	 *
+	 * @param analysis The bounds analysis of the iWGO
+	 * @return The bounding box of the drawn blocks
+	 */
+	public BoundingBox getBounds(BoundsAnalysis analysis) {
+		return BoundingBox.UNBOUNDED;
+	}
+
+	/**
+	 * Gets the values calculated when this shape is randomized. By default, this returns null:
+	 * the values are unknown, and the instruction drawing the shape is randomized as a whole.
+	 *
+	 * @return The values of the shape, or null if they are unknown
+	 */
+	public List<Value> getValues() {
+		return null;
+	}
+
 	/**
 	 * Randomizes the position of the shape by recalculating the x, y and z coordinate values. The
 	 * position will only change is the coordinate values are random.
@@ -220,6 +248,18 @@ public abstract class Shape implements ConfigurationLoadable, RandomOwner {
 		z.calculate();
 	}
 
+	/**
+	 * Randomizes the position of the shape in the state, by recalculating the x, y and z coordinate
+	 * values in it. The shape itself isn't changed.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	public void randomize(ValueState state) {
+		x.calculate(state);
+		y.calculate(state);
+		z.calculate(state);
+	}
+
 	/**
 	 * Sets the random for the x, y and z coordinate values if they implement
 	 * {@link org.spout.infobjects.util.RandomOwner}.
@@ -240,15 +280,41 @@ public abstract class Shape implements ConfigurationLoadable, RandomOwner {
 	}
 
 	/**
-	 * Draws the shape. This method is abstract and so the result of this call depends on the
-	 * extending class. This method is called during placement of the iWGO by the
+	 * Draws the shape. The result of this call depends on the extending class. This method is
+	 * called during placement of the iWGO by the
 	 * {@link org.spout.infobjects.instruction.ShapeInstruction} to add the shapes which compose the
 	 * iWGO structure. Implementations of this method should iterate through all the blocks that
 	 * compose the shape, of size defined by the size values, at the position defined by the
-	 * position values. It should then call the material setter to set the material for each block,
-	 * with outer being true if the block is at the edge of the shape, false if it is inside.
+	 * position values. It should then call the material setter to set the material for each block
+	 * in the context's {@link org.spout.infobjects.voxel.VoxelBuffer}, with outer being true if the
+	 * block is at the edge of the shape, false if it is inside. The values must be read from the
+	 * context's {@link org.spout.infobjects.value.ValueState}. By default, this enters the context
+	 * on the iWGO and calls {@link #draw()}, for the shapes written before the contexts. Extending
+	 * classes must override one of the two methods.
+	 *
+	 * @param context The context of the placement
+	 */
+	public void draw(PlacementContext context) {
+		final IWGO iwgo = instruction.getIWGO();
+		final PlacementContext previous = iwgo.enterContext(context);
+		try {
+			draw();
+		} finally {
+			iwgo.exitContext(previous);
+		}
+	}
+
+	/**
+	 * Draws the shape. By default, this draws the shape in the context of the placement in progress
+	 * on the calling thread.
+	 *
+	 * @throws IllegalStateException If no placement is in progress on this thread
+	 * @deprecated Override and call {@link #draw(org.spout.infobjects.PlacementContext)} instead
 	 */
-	public abstract void draw();
+	@Deprecated
+	public void draw() {
+		draw(instruction.getIWGO().getCurrentContext());
+	}
 
 	/**
 	 * Registers a type of shape so it may be recognized and used by the
@@ -26,15 +26,21 @@
  */
 package org.spout.infobjects.shape;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
-import org.spout.infobjects.IWGO;
+import org.spout.infobjects.BoundsAnalysis;
+import org.spout.infobjects.PlacementContext;
 import org.spout.infobjects.exception.ShapeLoadingException;
 import org.spout.infobjects.instruction.Instruction;
 import org.spout.infobjects.material.MaterialSetter;
+import org.spout.infobjects.util.BoundingBox;
+import org.spout.infobjects.util.Interval;
 import org.spout.infobjects.util.RandomOwner;
 import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
 
 /**
  * A shape to draw a sphere defined by its radiuses on x, y and z.
@@ -85,38 +91,44 @@ public class Sphere extends Shape {
 	/**
 	 * Draws the sphere. The position values indicate the center of the sphere. The size parameters
 	 * define the radius for each axis.
+	 *
+	 * @param context The context of the placement
 	 */
 	@Override
-	public void draw() {
-		final int px = (int) getX().getValue();
-		final int py = (int) getY().getValue();
-		final int pz = (int) getZ().getValue();
-		final double rx = radiusX.getValue() + 0.5;
-		final double ry = radiusY.getValue() + 0.5;
-		final double rz = radiusZ.getValue() + 0.5;
+	public void draw(PlacementContext context) {
+		final ValueState values = context.getValueState();
+		final int px = (int) getX().getValue(values);
+		final int py = (int) getY().getValue(values);
+		final int pz = (int) getZ().getValue(values);
+		final double rx = radiusX.getValue(values) + 0.5;
+		final double ry = radiusY.getValue(values) + 0.5;
+		final double rz = radiusZ.getValue(values) + 0.5;
 		final double invRadiusX = 1 / rx;
 		final double invRadiusY = 1 / ry;
 		final double invRadiusZ = 1 / rz;
 		final int ceilRadiusX = (int) Math.ceil(rx);
 		final int ceilRadiusY = (int) Math.ceil(ry);
 		final int ceilRadiusZ = (int) Math.ceil(rz);
-		final IWGO iwgo = getInstruction().getIWGO();
 		final MaterialSetter setter = getMaterialSetter();
 		double nextXn = 0;
 		forX:
 		for (int xx = 0; xx <= ceilRadiusX; xx++) {
 			final double xn = nextXn;
 			nextXn = (xx + 1) * invRadiusX;
+			// mirror the octant, but visit the center planes only once
+			final int stepX = xx == 0 ? 1 : xx << 1;
 			double nextYn = 0;
 			forY:
 			for (int yy = 0; yy <= ceilRadiusY; yy++) {
 				final double yn = nextYn;
 				nextYn = (yy + 1) * invRadiusY;
+				final int stepY = yy == 0 ? 1 : yy << 1;
 				double nextZn = 0;
 				forZ:
 				for (int zz = 0; zz <= ceilRadiusZ; zz++) {
 					final double zn = nextZn;
 					nextZn = (zz + 1) * invRadiusZ;
+					final int stepZ = zz == 0 ? 1 : zz << 1;
 					if (lengthSquared(xn, yn, zn) > 1) {
 						if (zz == 0) {
 							if (yy == 0) {
@@ -129,14 +141,13 @@ public class Sphere extends Shape {
 					final boolean outer = lengthSquared(nextXn, yn, zn) > 1
 							|| lengthSquared(xn, nextYn, zn) > 1
 							|| lengthSquared(xn, yn, nextZn) > 1;
-					setter.setMaterial(iwgo.transform(px + xx, py + yy, pz + zz), outer);
-					setter.setMaterial(iwgo.transform(px - xx, py + yy, pz + zz), outer);
-					setter.setMaterial(iwgo.transform(px + xx, py - yy, pz + zz), outer);
-					setter.setMaterial(iwgo.transform(px + xx, py + yy, pz - zz), outer);
-					setter.setMaterial(iwgo.transform(px - xx, py - yy, pz + zz), outer);
-					setter.setMaterial(iwgo.transform(px + xx, py - yy, pz - zz), outer);
-					setter.setMaterial(iwgo.transform(px - xx, py + yy, pz - zz), outer);
-					setter.setMaterial(iwgo.transform(px - xx, py - yy, pz - zz), outer);
+					for (int bx = px - xx; bx <= px + xx; bx += stepX) {
+						for (int by = py - yy; by <= py + yy; by += stepY) {
+							for (int bz = pz - zz; bz <= pz + zz; bz += stepZ) {
+								context.setMaterial(setter, bx, by, bz, outer);
+							}
+						}
+					}
 				}
 			}
 		}
@@ -146,6 +157,36 @@ public class Sphere extends Shape {
 		return x * x + y * y + z * z;
 	}
 
+	/**
+	 * Gets the bounding box of the sphere, from the center minus the largest radius to the center
+	 * plus the largest radius.
+	 *
+	 * @param analysis The bounds analysis of the iWGO
+	 * @return The bounding box of the sphere
+	 */
+	@Override
+	public BoundingBox getBounds(BoundsAnalysis analysis) {
+		return BoundingBox.of(extend(analysis.getInterval(getX()), analysis.getInterval(radiusX)),
+				extend(analysis.getInterval(getY()), analysis.getInterval(radiusY)),
+				extend(analysis.getInterval(getZ()), analysis.getInterval(radiusZ)));
+	}
+
+	private static Interval extend(Interval center, Interval radius) {
+		final Interval position = center.truncate();
+		final double ceilRadius = Math.ceil(Math.max(Math.abs(radius.getMin()), Math.abs(radius.getMax())) + 0.5);
+		return new Interval(position.getMin() - ceilRadius, position.getMax() + ceilRadius);
+	}
+
+	/**
+	 * Gets the values of the position and of the radiuses of the sphere.
+	 *
+	 * @return The values of the sphere
+	 */
+	@Override
+	public List<Value> getValues() {
+		return Arrays.asList(getX(), getY(), getZ(), radiusX, radiusY, radiusZ);
+	}
+
 	/**
 	 * Randomizes the size values of the line by recalculating them. Then calls the super method.
 	 */
@@ -157,6 +198,20 @@ public class Sphere extends Shape {
 		radiusZ.calculate();
 	}
 
+	/**
+	 * Randomizes the size values of the sphere in the state by recalculating them. Then calls the
+	 * super method.
+	 *
+	 * @param state The state to randomize the values in
+	 */
+	@Override
+	public void randomize(ValueState state) {
+		super.randomize(state);
+		radiusX.calculate(state);
+		radiusY.calculate(state);
+		radiusZ.calculate(state);
+	}
+
 	/**
 	 * Sets the random for each size value if they implement
 	 * {@link org.spout.infobjects.util.RandomOwner}. Calls the super method.
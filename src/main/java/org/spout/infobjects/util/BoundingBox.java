@@ -0,0 +1,330 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.util;
+
+/**
+ * An immutable box of block coordinates, with inclusive bounds. The
+ * {@link BoundingBox#UNBOUNDED} box is used when the extent of something cannot be determined. A
+ * box reaching the lowest or highest int coordinate on any side is considered unbounded, as the
+ * extent it stands for may not fit in the block coordinates.
+ */
+public class BoundingBox {
+	/**
+	 * The box containing all the block coordinates.
+	 */
+	public static final BoundingBox UNBOUNDED = new BoundingBox(Integer.MIN_VALUE, Integer.MIN_VALUE,
+			Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	private static final int CHUNK_BITS = 4;
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int maxX;
+	private final int maxY;
+	private final int maxZ;
+
+	/**
+	 * Constructs a new bounding box from its inclusive bounds.
+	 *
+	 * @param minX The lower x coordinate
+	 * @param minY The lower y coordinate
+	 * @param minZ The lower z coordinate
+	 * @param maxX The higher x coordinate
+	 * @param maxY The higher y coordinate
+	 * @param maxZ The higher z coordinate
+	 * @throws IllegalArgumentException If a lower coordinate is greater than the higher one
+	 */
+	public BoundingBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		if (minX > maxX || minY > maxY || minZ > maxZ) {
+			throw new IllegalArgumentException("Lower coordinates cannot be greater than the higher ones");
+		}
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+	}
+
+	/**
+	 * Constructs a new bounding box from the intervals of the block coordinates on each axis. The
+	 * bounds of the intervals are floored. If any interval isn't bounded, or any floored bound
+	 * doesn't fit strictly between the lowest and highest int coordinates, the box is
+	 * {@link #UNBOUNDED} instead of being clamped.
+	 *
+	 * @param x The interval of the x coordinates
+	 * @param y The interval of the y coordinates
+	 * @param z The interval of the z coordinates
+	 * @return The bounding box
+	 */
+	public static BoundingBox of(Interval x, Interval y, Interval z) {
+		if (!fits(x) || !fits(y) || !fits(z)) {
+			return UNBOUNDED;
+		}
+		return new BoundingBox((int) Math.floor(x.getMin()), (int) Math.floor(y.getMin()), (int) Math.floor(z.getMin()),
+				(int) Math.floor(x.getMax()), (int) Math.floor(y.getMax()), (int) Math.floor(z.getMax()));
+	}
+
+	private static boolean fits(Interval interval) {
+		return Math.floor(interval.getMin()) > Integer.MIN_VALUE && Math.floor(interval.getMax()) < Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Gets the lower x coordinate.
+	 *
+	 * @return The lower x coordinate
+	 */
+	public int getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Gets the lower y coordinate.
+	 *
+	 * @return The lower y coordinate
+	 */
+	public int getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Gets the lower z coordinate.
+	 *
+	 * @return The lower z coordinate
+	 */
+	public int getMinZ() {
+		return minZ;
+	}
+
+	/**
+	 * Gets the higher x coordinate.
+	 *
+	 * @return The higher x coordinate
+	 */
+	public int getMaxX() {
+		return maxX;
+	}
+
+	/**
+	 * Gets the higher y coordinate.
+	 *
+	 * @return The higher y coordinate
+	 */
+	public int getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * Gets the higher z coordinate.
+	 *
+	 * @return The higher z coordinate
+	 */
+	public int getMaxZ() {
+		return maxZ;
+	}
+
+	/**
+	 * Gets the number of blocks on the x axis. This is a long, as the size of a box spanning more
+	 * than half of the int coordinates doesn't fit in an int.
+	 *
+	 * @return The size on x
+	 */
+	public long getSizeX() {
+		return (long) maxX - minX + 1;
+	}
+
+	/**
+	 * Gets the number of blocks on the y axis. This is a long, as the size of a box spanning more
+	 * than half of the int coordinates doesn't fit in an int.
+	 *
+	 * @return The size on y
+	 */
+	public long getSizeY() {
+		return (long) maxY - minY + 1;
+	}
+
+	/**
+	 * Gets the number of blocks on the z axis. This is a long, as the size of a box spanning more
+	 * than half of the int coordinates doesn't fit in an int.
+	 *
+	 * @return The size on z
+	 */
+	public long getSizeZ() {
+		return (long) maxZ - minZ + 1;
+	}
+
+	/**
+	 * Gets the number of blocks in the box.
+	 *
+	 * @return The volume of the box
+	 */
+	public long getVolume() {
+		return getSizeX() * getSizeY() * getSizeZ();
+	}
+
+	/**
+	 * Constructs a new bounding box containing all the blocks of the chunk.
+	 *
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkY The y coordinate of the chunk
+	 * @param chunkZ The z coordinate of the chunk
+	 * @return The bounding box of the chunk
+	 */
+	public static BoundingBox ofChunk(int chunkX, int chunkY, int chunkZ) {
+		final int size = (1 << CHUNK_BITS) - 1;
+		return new BoundingBox(chunkX << CHUNK_BITS, chunkY << CHUNK_BITS, chunkZ << CHUNK_BITS,
+				(chunkX << CHUNK_BITS) + size, (chunkY << CHUNK_BITS) + size, (chunkZ << CHUNK_BITS) + size);
+	}
+
+	/**
+	 * Gets the lower x coordinate of the chunks touched by the box.
+	 *
+	 * @return The lower chunk x coordinate
+	 */
+	public int getMinChunkX() {
+		return minX >> CHUNK_BITS;
+	}
+
+	/**
+	 * Gets the lower y coordinate of the chunks touched by the box.
+	 *
+	 * @return The lower chunk y coordinate
+	 */
+	public int getMinChunkY() {
+		return minY >> CHUNK_BITS;
+	}
+
+	/**
+	 * Gets the lower z coordinate of the chunks touched by the box.
+	 *
+	 * @return The lower chunk z coordinate
+	 */
+	public int getMinChunkZ() {
+		return minZ >> CHUNK_BITS;
+	}
+
+	/**
+	 * Gets the higher x coordinate of the chunks touched by the box.
+	 *
+	 * @return The higher chunk x coordinate
+	 */
+	public int getMaxChunkX() {
+		return maxX >> CHUNK_BITS;
+	}
+
+	/**
+	 * Gets the higher y coordinate of the chunks touched by the box.
+	 *
+	 * @return The higher chunk y coordinate
+	 */
+	public int getMaxChunkY() {
+		return maxY >> CHUNK_BITS;
+	}
+
+	/**
+	 * Gets the higher z coordinate of the chunks touched by the box.
+	 *
+	 * @return The higher chunk z coordinate
+	 */
+	public int getMaxChunkZ() {
+		return maxZ >> CHUNK_BITS;
+	}
+
+	/**
+	 * Returns true if no side of this box reaches the lowest or highest int coordinate. This is
+	 * false for {@link #UNBOUNDED}, and for any other box reaching the limits of the coordinates.
+	 *
+	 * @return True if the box is bounded, false if not
+	 */
+	public boolean isBounded() {
+		return minX != Integer.MIN_VALUE && minY != Integer.MIN_VALUE && minZ != Integer.MIN_VALUE
+				&& maxX != Integer.MAX_VALUE && maxY != Integer.MAX_VALUE && maxZ != Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Returns true if the block coordinates are in the box.
+	 *
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 * @param z The z coordinate
+	 * @return True if the box contains the coordinates, false if not
+	 */
+	public boolean contains(int x, int y, int z) {
+		return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+	}
+
+	/**
+	 * Gets the smallest box containing both this box and the other one. The union with an unbounded
+	 * box is {@link #UNBOUNDED}.
+	 *
+	 * @param other The other box
+	 * @return The union of both boxes
+	 */
+	public BoundingBox union(BoundingBox other) {
+		if (!isBounded() || !other.isBounded()) {
+			return UNBOUNDED;
+		}
+		return new BoundingBox(Math.min(minX, other.minX), Math.min(minY, other.minY), Math.min(minZ, other.minZ),
+				Math.max(maxX, other.maxX), Math.max(maxY, other.maxY), Math.max(maxZ, other.maxZ));
+	}
+
+	/**
+	 * Gets this box moved by the offsets. An unbounded box stays unbounded, and so does a box moved
+	 * to the limits of the int coordinates or beyond them, instead of overflowing.
+	 *
+	 * @param x The x offset
+	 * @param y The y offset
+	 * @param z The z offset
+	 * @return The translated box
+	 */
+	public BoundingBox translate(int x, int y, int z) {
+		if (!isBounded()) {
+			return UNBOUNDED;
+		}
+		final long lowX = (long) minX + x;
+		final long lowY = (long) minY + y;
+		final long lowZ = (long) minZ + z;
+		final long highX = (long) maxX + x;
+		final long highY = (long) maxY + y;
+		final long highZ = (long) maxZ + z;
+		if (lowX <= Integer.MIN_VALUE || lowY <= Integer.MIN_VALUE || lowZ <= Integer.MIN_VALUE
+				|| highX >= Integer.MAX_VALUE || highY >= Integer.MAX_VALUE || highZ >= Integer.MAX_VALUE) {
+			return UNBOUNDED;
+		}
+		return new BoundingBox((int) lowX, (int) lowY, (int) lowZ, (int) highX, (int) highY, (int) highZ);
+	}
+
+	/**
+	 * Returns the string representation of the box.
+	 *
+	 * @return The string form of the box
+	 */
+	@Override
+	public String toString() {
+		return "BoundingBox{minX=" + minX + ", minY=" + minY + ", minZ=" + minZ
+				+ ", maxX=" + maxX + ", maxY=" + maxY + ", maxZ=" + maxZ + '}';
+	}
+}
@@ -0,0 +1,319 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.util;
+
+/**
+ * An immutable closed interval of real values, used to evaluate the range of possible results of
+ * values and expressions. The arithmetic methods return an interval containing every result of the
+ * operation for any pair of values taken from the operands. The bounds may be infinite when the
+ * range of a result cannot be determined.
+ */
+public class Interval {
+	/**
+	 * The interval containing all the real values.
+	 */
+	public static final Interval UNBOUNDED = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+	private final double min;
+	private final double max;
+
+	/**
+	 * Constructs a new interval from its bounds. The bounds will be swapped if the minimum is
+	 * greater than the maximum.
+	 *
+	 * @param min The lower bound
+	 * @param max The higher bound
+	 * @throws IllegalArgumentException If any bound is NaN
+	 */
+	public Interval(double min, double max) {
+		if (Double.isNaN(min) || Double.isNaN(max)) {
+			throw new IllegalArgumentException("Bounds cannot be NaN");
+		}
+		this.min = Math.min(min, max);
+		this.max = Math.max(min, max);
+	}
+
+	/**
+	 * Constructs a new interval containing only the provided value.
+	 *
+	 * @param value The value
+	 */
+	public Interval(double value) {
+		this(value, value);
+	}
+
+	/**
+	 * Gets the lower bound.
+	 *
+	 * @return The lower bound
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Gets the higher bound.
+	 *
+	 * @return The higher bound
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns true if both bounds are finite.
+	 *
+	 * @return True if the interval is bounded, false if not
+	 */
+	public boolean isBounded() {
+		return !Double.isInfinite(min) && !Double.isInfinite(max);
+	}
+
+	/**
+	 * Returns true if the interval contains only one value.
+	 *
+	 * @return True if the bounds are equal, false if not
+	 */
+	public boolean isPoint() {
+		return min == max;
+	}
+
+	/**
+	 * Returns true if the value is in the interval.
+	 *
+	 * @param value The value to test
+	 * @return True if the value is in the interval, false if not
+	 */
+	public boolean contains(double value) {
+		return value >= min && value <= max;
+	}
+
+	/**
+	 * Gets the smallest interval containing both this interval and the other one.
+	 *
+	 * @param other The other interval
+	 * @return The union of both intervals
+	 */
+	public Interval union(Interval other) {
+		return new Interval(Math.min(min, other.min), Math.max(max, other.max));
+	}
+
+	/**
+	 * Gets the interval of the sums.
+	 *
+	 * @param other The interval to add
+	 * @return The interval of the sums
+	 */
+	public Interval add(Interval other) {
+		return of(min + other.min, max + other.max);
+	}
+
+	/**
+	 * Gets the interval of the differences.
+	 *
+	 * @param other The interval to subtract
+	 * @return The interval of the differences
+	 */
+	public Interval subtract(Interval other) {
+		return of(min - other.max, max - other.min);
+	}
+
+	/**
+	 * Gets the interval of the products.
+	 *
+	 * @param other The interval to multiply by
+	 * @return The interval of the products
+	 */
+	public Interval multiply(Interval other) {
+		return of(multiply(min, other.min), multiply(min, other.max),
+				multiply(max, other.min), multiply(max, other.max));
+	}
+
+	/**
+	 * Gets the interval of the quotients. If the divisor contains zero the result is unbounded.
+	 *
+	 * @param other The interval to divide by
+	 * @return The interval of the quotients
+	 */
+	public Interval divide(Interval other) {
+		if (other.contains(0)) {
+			return UNBOUNDED;
+		}
+		return multiply(new Interval(1 / other.min, 1 / other.max));
+	}
+
+	/**
+	 * Gets the interval of the remainders of the division, as defined by the {@code %} operator.
+	 *
+	 * @param other The interval to divide by
+	 * @return The interval of the remainders
+	 */
+	public Interval remainder(Interval other) {
+		final double divisor = Math.max(Math.abs(other.min), Math.abs(other.max));
+		return new Interval(Math.max(Math.min(min, 0), -divisor), Math.min(Math.max(max, 0), divisor));
+	}
+
+	/**
+	 * Gets the interval of the powers, where this interval is the base. The result is unbounded
+	 * unless the base is positive or the exponent is a single integer.
+	 *
+	 * @param exponent The interval of the exponent
+	 * @return The interval of the powers
+	 */
+	public Interval pow(Interval exponent) {
+		if (min > 0) {
+			return of(Math.pow(min, exponent.min), Math.pow(min, exponent.max),
+					Math.pow(max, exponent.min), Math.pow(max, exponent.max));
+		}
+		if (exponent.isPoint() && exponent.min == Math.rint(exponent.min) && exponent.min >= 0) {
+			final Interval bounds = of(Math.pow(min, exponent.min), Math.pow(max, exponent.min));
+			return contains(0) ? bounds.union(new Interval(0)) : bounds;
+		}
+		return UNBOUNDED;
+	}
+
+	/**
+	 * Gets the interval of the negated values.
+	 *
+	 * @return The negated interval
+	 */
+	public Interval negate() {
+		return new Interval(-max, -min);
+	}
+
+	/**
+	 * Gets the interval of the absolute values.
+	 *
+	 * @return The absolute interval
+	 */
+	public Interval abs() {
+		if (min >= 0) {
+			return this;
+		}
+		if (max <= 0) {
+			return negate();
+		}
+		return new Interval(0, Math.max(-min, max));
+	}
+
+	/**
+	 * Gets the interval of the values rounded toward zero, as done by a cast to an integer.
+	 *
+	 * @return The truncated interval
+	 */
+	public Interval truncate() {
+		return new Interval(truncate(min), truncate(max));
+	}
+
+	/**
+	 * Gets the interval of the largest integers smaller or equal to the values.
+	 *
+	 * @return The floored interval
+	 */
+	public Interval floor() {
+		return new Interval(Math.floor(min), Math.floor(max));
+	}
+
+	/**
+	 * Gets the interval of the smallest integers greater or equal to the values.
+	 *
+	 * @return The ceiled interval
+	 */
+	public Interval ceil() {
+		return new Interval(Math.ceil(min), Math.ceil(max));
+	}
+
+	/**
+	 * Returns true if the other object is an interval with the same bounds.
+	 *
+	 * @param obj The object to compare with
+	 * @return True if the intervals are equal, false if not
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Interval)) {
+			return false;
+		}
+		final Interval other = (Interval) obj;
+		return Double.compare(min, other.min) == 0 && Double.compare(max, other.max) == 0;
+	}
+
+	/**
+	 * Returns the hash code of the interval.
+	 *
+	 * @return The hash code
+	 */
+	@Override
+	public int hashCode() {
+		final long bits = Double.doubleToLongBits(min) * 31 + Double.doubleToLongBits(max);
+		return (int) (bits ^ (bits >>> 32));
+	}
+
+	/**
+	 * Returns the string representation of the interval.
+	 *
+	 * @return The string form of the interval
+	 */
+	@Override
+	public String toString() {
+		return "Interval{min=" + min + ", max=" + max + '}';
+	}
+
+	/**
+	 * Gets the smallest interval containing all of the values. NaN values make the interval
+	 * unbounded.
+	 *
+	 * @param values The values to contain
+	 * @return The interval containing all the values
+	 */
+	public static Interval of(double... values) {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (double value : values) {
+			if (Double.isNaN(value)) {
+				return UNBOUNDED;
+			}
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		return new Interval(min, max);
+	}
+
+	private static double multiply(double a, double b) {
+		// 0 * infinity is 0 here, since the infinite bound is never reached
+		if (a == 0 || b == 0) {
+			return 0;
+		}
+		return a * b;
+	}
+
+	private static double truncate(double value) {
+		return value < 0 ? Math.ceil(value) : Math.floor(value);
+	}
+}
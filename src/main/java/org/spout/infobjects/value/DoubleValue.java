@@ -97,6 +97,26 @@ public class DoubleValue implements Value {
 	public void calculate() {
 	}
 
+	/**
+	 * Gets the real value of this value, which is the same for every state.
+	 *
+	 * @param state The state, not used
+	 * @return The real value of this value
+	 */
+	@Override
+	public double getValue(ValueState state) {
+		return value;
+	}
+
+	/**
+	 * Does nothing as this value is constant.
+	 *
+	 * @param state The state, not used
+	 */
+	@Override
+	public void calculate(ValueState state) {
+	}
+
 	/**
 	 * Returns the string representation of the value.
 	 *
@@ -30,9 +30,11 @@ package org.spout.infobjects.value;
  * Represents a value that can be incremented. This is done by wrapping an original value.
  * Incrementing does not alter the real value of the original value and can be reset. The amount to
  * increment is determined by a second value, which is recalculated and added to the increment sum
- * for each incrementation.
+ * for each incrementation. The increment sum can also be kept in a {@link ValueState}, apart from
+ * the shared one.
  */
 public class IncrementableValue implements Value {
+	private final int slot = ValueState.newSlot();
 	private final Value value;
 	private final Value increment;
 	private double totalIncrement = 0;
@@ -48,6 +50,24 @@ public class IncrementableValue implements Value {
 		this.increment = increment;
 	}
 
+	/**
+	 * Gets the original value, which is incremented.
+	 *
+	 * @return The original value
+	 */
+	public Value getOriginalValue() {
+		return value;
+	}
+
+	/**
+	 * Gets the value defining the amount to add for each increment.
+	 *
+	 * @return The increment value
+	 */
+	public Value getIncrement() {
+		return increment;
+	}
+
 	/**
 	 * Calculated the original value.
 	 */
@@ -81,6 +101,48 @@ public class IncrementableValue implements Value {
 		totalIncrement = 0;
 	}
 
+	/**
+	 * Calculates the original value in the state.
+	 *
+	 * @param state The state to store the result in
+	 */
+	@Override
+	public void calculate(ValueState state) {
+		value.calculate(state);
+	}
+
+	/**
+	 * Returns the original value's real value plus the increment sum, both from the state. The
+	 * shared increment sum is used if the state doesn't hold one.
+	 *
+	 * @param state The state to read the value from
+	 * @return The incremented value in the state
+	 */
+	@Override
+	public double getValue(ValueState state) {
+		return value.getValue(state) + state.get(slot, totalIncrement);
+	}
+
+	/**
+	 * Calculates the increment value in the state and adds its real value to the increment sum of
+	 * the state.
+	 *
+	 * @param state The state holding the increment sum
+	 */
+	public void increment(ValueState state) {
+		increment.calculate(state);
+		state.set(slot, state.get(slot, totalIncrement) + increment.getValue(state));
+	}
+
+	/**
+	 * Sets the increment sum of the state to 0.
+	 *
+	 * @param state The state holding the increment sum
+	 */
+	public void reset(ValueState state) {
+		state.set(slot, 0);
+	}
+
 	/**
 	 * Returns the string representation of the value.
 	 *
@@ -26,13 +26,22 @@
  */
 package org.spout.infobjects.value;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.regex.Pattern;
 
 import de.congrace.exp4j.exception.UnknownFunctionException;
 import de.congrace.exp4j.exception.UnparsableExpressionException;
 import de.congrace.exp4j.expression.Calculable;
 import de.congrace.exp4j.expression.ExpressionBuilder;
 
+import org.spout.infobjects.exception.ValueParsingException;
+import org.spout.infobjects.expression.CompiledExpression;
+import org.spout.infobjects.expression.Expression;
+import org.spout.infobjects.expression.ExpressionCompiler;
+import org.spout.infobjects.expression.ExpressionParser;
 import org.spout.infobjects.function.RandomDoubleFunction;
 import org.spout.infobjects.function.RandomIntFunction;
 import org.spout.infobjects.util.RandomOwner;
@@ -42,12 +51,26 @@ import org.spout.infobjects.util.RandomOwner;
  * with the {@link Double#Double(java.lang.String)} constructor, this class conserves the
  * mathematical expression as a {@link de.congrace.exp4j.expression.Calculable} and recalculates it
  * for each {@link #calculate()} call. This is ideal for expression with random functions, and this
- * class has been designed for such use.
+ * class has been designed for such use. When possible, the expression is also simplified and
+ * compiled into a {@link org.spout.infobjects.expression.CompiledExpression}, which is evaluated
+ * instead of the calculable. Expressions with custom functions are only evaluated by the calculable.
+ * The compiled expression can be evaluated by many threads at once for different
+ * {@link ValueState}s, but the evaluations of the calculable are synchronized, and don't use the
+ * random of the state.
  */
 public class MathExpressionValue implements Value, RandomOwner {
+	private static final Pattern RANDOM_FUNCTION_PATTERN = Pattern.compile("ran[IF]\\s*\\(");
+	private static final double[] EMPTY_FRAME = new double[0];
+	protected final int slot = ValueState.newSlot();
 	private final RandomIntFunction randomIntFunction = new RandomIntFunction();
 	private final RandomDoubleFunction randomFloatFunction = new RandomDoubleFunction();
 	protected final Calculable calculable;
+	private final String expression;
+	private final List<String> variables;
+	private final double[] frame;
+	private final Expression tree;
+	private CompiledExpression compiled;
+	private final boolean random;
 	private double value;
 
 	/**
@@ -72,7 +95,41 @@ public class MathExpressionValue implements Value, RandomOwner {
 	 */
 	public MathExpressionValue(ExpressionBuilder expressionBuilder)
 			throws UnknownFunctionException, UnparsableExpressionException {
+		this(expressionBuilder, false);
+	}
+
+	/**
+	 * Constructs a new math expression value from the expression builder. The expression is
+	 * compiled if it only uses known functions, and if it has no variables or the variables are
+	 * provided by the extending class, through {@link #setVariable(int, double)}.
+	 *
+	 * @param expressionBuilder The expression builder for this value
+	 * @param variables Whether or not the extending class provides the variables
+	 * @throws UnknownFunctionException If the expression has one or more undeclared function
+	 * @throws UnparsableExpressionException If the expression cannot be parsed
+	 */
+	protected MathExpressionValue(ExpressionBuilder expressionBuilder, boolean variables)
+			throws UnknownFunctionException, UnparsableExpressionException {
 		calculable = expressionBuilder.withCustomFunctions(randomIntFunction, randomFloatFunction).build();
+		expression = expressionBuilder.getExpression();
+		random = RANDOM_FUNCTION_PATTERN.matcher(expression).find();
+		Expression tree;
+		try {
+			tree = ExpressionParser.parse(expression);
+		} catch (ValueParsingException ex) {
+			tree = null;
+		}
+		if (tree != null && (variables || tree.getVariables().isEmpty())) {
+			this.variables = new ArrayList<String>(tree.getVariables());
+			frame = new double[this.variables.size()];
+			this.tree = tree;
+			compiled = compile(tree.simplify());
+		} else {
+			this.variables = null;
+			frame = null;
+			this.tree = null;
+			compiled = null;
+		}
 	}
 
 	/**
@@ -82,6 +139,96 @@ public class MathExpressionValue implements Value, RandomOwner {
 	 */
 	public MathExpressionValue(Calculable calculable) {
 		this.calculable = calculable;
+		expression = null;
+		random = true;
+		variables = null;
+		frame = null;
+		tree = null;
+		compiled = null;
+	}
+
+	/**
+	 * Gets the mathematical expression of this value. This is null if the value was constructed
+	 * from the calculable form of the expression.
+	 *
+	 * @return The expression string
+	 */
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * Returns true if the expression uses the random functions, in which case its value changes on
+	 * each evaluation. This is always true if the expression string is unknown.
+	 *
+	 * @return True if the expression is random, false if not
+	 */
+	public boolean isRandom() {
+		return random;
+	}
+
+	/**
+	 * Returns true if the expression is evaluated in its compiled form, instead of by the
+	 * calculable.
+	 *
+	 * @return True if the expression is compiled, false if not
+	 */
+	public boolean isCompiled() {
+		return compiled != null;
+	}
+
+	/**
+	 * Gets the names of the variables of the compiled expression, in the order of their indexes.
+	 * This is null if the expression isn't compiled.
+	 *
+	 * @return The names of the variables
+	 */
+	protected List<String> getCompiledVariables() {
+		return compiled != null ? variables : null;
+	}
+
+	/**
+	 * Compiles the expression again, replacing the variables with a known value by constants, and
+	 * folding the expression around them. The slots of all the variables are kept. Does nothing if
+	 * the expression isn't compiled.
+	 *
+	 * @param constants The values of the variables known to be constant, mapped by name
+	 */
+	protected void fold(Map<String, Double> constants) {
+		if (compiled != null) {
+			final CompiledExpression folded = compile(tree.simplify(constants));
+			if (folded != null) {
+				compiled = folded;
+			}
+		}
+	}
+
+	private CompiledExpression compile(Expression expression) {
+		return new ExpressionCompiler(variables, randomIntFunction, randomFloatFunction).compile(expression);
+	}
+
+	/**
+	 * Evaluates the compiled expression with the values of the variables in the frame, without
+	 * changing the value. The expression must be compiled.
+	 *
+	 * @param variableValues The values of the variables, by index
+	 * @param random The random for the random functions, or null to use the value's
+	 * @return The result of the expression
+	 * @see #getCompiledVariables()
+	 */
+	protected double evaluate(double[] variableValues, Random random) {
+		return compiled.evaluate(variableValues, random);
+	}
+
+	/**
+	 * Sets the value of the variable at the index for the compiled expression.
+	 *
+	 * @param index The index of the variable
+	 * @param variableValue The value of the variable
+	 * @see #getCompiledVariables()
+	 */
+	protected void setVariable(int index, double variableValue) {
+		frame[index] = variableValue;
 	}
 
 	/**
@@ -99,7 +246,41 @@ public class MathExpressionValue implements Value, RandomOwner {
 	 */
 	@Override
 	public void calculate() {
-		value = calculable.calculate();
+		if (compiled != null) {
+			value = compiled.evaluate(frame, null);
+		} else {
+			synchronized (calculable) {
+				value = calculable.calculate();
+			}
+		}
+	}
+
+	/**
+	 * Gets the real value of the mathematical expression in the state.
+	 *
+	 * @param state The state to read the value from
+	 * @return The real value
+	 */
+	@Override
+	public double getValue(ValueState state) {
+		return state.get(slot, value);
+	}
+
+	/**
+	 * Reevaluates the math expression, using the random of the state if it has one, and stores the
+	 * result in the state.
+	 *
+	 * @param state The state to store the result in
+	 */
+	@Override
+	public void calculate(ValueState state) {
+		if (compiled != null) {
+			state.set(slot, compiled.evaluate(EMPTY_FRAME, state.getRandom()));
+		} else {
+			synchronized (calculable) {
+				state.set(slot, calculable.calculate());
+			}
+		}
 	}
 
 	/**
@@ -61,6 +61,24 @@ public class RandomDoubleValue extends RandomValue {
 		max = Double.parseDouble(minMax[1]);
 	}
 
+	/**
+	 * Gets the minimum possible random real value.
+	 *
+	 * @return The minimum value
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Gets the maximum possible random real value.
+	 *
+	 * @return The maximum value
+	 */
+	public double getMax() {
+		return max;
+	}
+
 	/**
 	 * Gets the real value for this random double value.
 	 *
@@ -79,6 +97,17 @@ public class RandomDoubleValue extends RandomValue {
 		value = IWGOUtils.nextDouble(random, min, max);
 	}
 
+	/**
+	 * Calculates the next random double value between the specified minimum and maximum, using
+	 * the random of the state if it has one, and stores it in the state.
+	 *
+	 * @param state The state to store the value in
+	 */
+	@Override
+	public void calculate(ValueState state) {
+		state.set(slot, IWGOUtils.nextDouble(state.getRandom(random), min, max));
+	}
+
 	/**
 	 * Returns the string representation of the value.
 	 *
@@ -62,6 +62,24 @@ public class RandomIntValue extends RandomValue {
 		max = Integer.parseInt(minMax[1]);
 	}
 
+	/**
+	 * Gets the minimum possible random integer value.
+	 *
+	 * @return The minimum value
+	 */
+	public int getMin() {
+		return min;
+	}
+
+	/**
+	 * Gets the maximum possible random integer value.
+	 *
+	 * @return The maximum value
+	 */
+	public int getMax() {
+		return max;
+	}
+
 	/**
 	 * Gets the real value for this random integer value.
 	 *
@@ -80,6 +98,17 @@ public class RandomIntValue extends RandomValue {
 		value = IWGOUtils.nextInt(random, min, max);
 	}
 
+	/**
+	 * Calculates the next random integer value between the specified minimum and maximum, using
+	 * the random of the state if it has one, and stores it in the state.
+	 *
+	 * @param state The state to store the value in
+	 */
+	@Override
+	public void calculate(ValueState state) {
+		state.set(slot, IWGOUtils.nextInt(state.getRandom(random), min, max));
+	}
+
 	/**
 	 * Returns the string representation of the value.
 	 *
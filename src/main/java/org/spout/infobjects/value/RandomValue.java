@@ -32,9 +32,11 @@ import org.spout.infobjects.util.RandomOwner;
 
 /**
  * Represent an abstract random value. This class provides the random instance and implements {@link org.spout.infobjects.util.RandomOwner}
- * for setting which random to use.
+ * for setting which random to use. It also provides the slot of the value in the
+ * {@link ValueState}s.
  */
 public abstract class RandomValue implements Value, RandomOwner {
+	protected final int slot = ValueState.newSlot();
 	protected Random random = new Random();
 
 	/**
@@ -46,4 +48,15 @@ public abstract class RandomValue implements Value, RandomOwner {
 	public void setRandom(Random random) {
 		this.random = random;
 	}
+
+	/**
+	 * Gets the real value for this random value in the state.
+	 *
+	 * @param state The state to read the value from
+	 * @return The real value
+	 */
+	@Override
+	public double getValue(ValueState state) {
+		return state.get(slot, getValue());
+	}
 }
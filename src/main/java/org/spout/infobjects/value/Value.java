@@ -28,7 +28,9 @@ package org.spout.infobjects.value;
 
 /**
  * Represents a numerical real (double) value. This value might be constant, random or calculated
- * from a mathematical expression. It might also depend on other values as variables,
+ * from a mathematical expression. It might also depend on other values as variables. A value can
+ * also be calculated and read with a {@link ValueState}, which holds the results instead of the
+ * value, so that many variations can be calculated from many threads at once.
  */
 public interface Value {
 	/**
@@ -45,4 +47,22 @@ public interface Value {
 	 * @return The real value of this value.
 	 */
 	public double getValue();
+
+	/**
+	 * Calculates the value, storing the result in the state instead of the value. The values this
+	 * value depends on are read from the state. Constant values don't store anything.
+	 *
+	 * @param state The state to store the result in
+	 */
+	public void calculate(ValueState state);
+
+	/**
+	 * Gets the real (double) value of this value in the state. This is the result of the last
+	 * {@link #calculate(ValueState)} call with the state, or {@link #getValue()} if the value
+	 * hasn't been calculated with it.
+	 *
+	 * @param state The state to read the result from
+	 * @return The real value of this value in the state
+	 */
+	public double getValue(ValueState state);
 }
@@ -0,0 +1,221 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.value;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.spout.infobjects.util.RandomOwner;
+
+/**
+ * The values of a single variation of an iWGO, kept apart from the values themselves. A value
+ * which changes when calculated gets a slot when constructed, and the results of calculating it
+ * with a state are stored in the state's slot instead of the value, as are the increments of the
+ * incrementable values. Reading a value with a state which doesn't hold a result for it falls back
+ * to the value's own result, so an empty state reads the shared variation. The state may also hold
+ * the random used by the random values and material setters, instead of their own. The results are
+ * stored in a primitive open addressing map keyed by slot. A state is only modified by a single
+ * thread, but once filled it may be read by many threads at once.
+ */
+public class ValueState implements RandomOwner {
+	private static final AtomicInteger SLOTS = new AtomicInteger();
+	private static final int INITIAL_CAPACITY = 16;
+	private Random random;
+	private int[] keys = null;
+	private double[] values = null;
+	private int size = 0;
+
+	/**
+	 * Constructs a new empty state, without a random.
+	 */
+	public ValueState() {
+		this(null);
+	}
+
+	/**
+	 * Constructs a new empty state, with the random to use for the random values and material
+	 * setters.
+	 *
+	 * @param random The random to use, may be null
+	 */
+	public ValueState(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Allocates a new slot for a value. Each value which changes when calculated should allocate
+	 * its own slot once, when constructed.
+	 *
+	 * @return The new slot
+	 */
+	public static int newSlot() {
+		return SLOTS.getAndIncrement();
+	}
+
+	/**
+	 * Gets the random of the state. This is null if the values should use their own randoms.
+	 *
+	 * @return The random
+	 */
+	public Random getRandom() {
+		return random;
+	}
+
+	/**
+	 * Gets the random of the state, or the provided one if the state has none.
+	 *
+	 * @param fallback The random to use if the state has none
+	 * @return The random to use
+	 */
+	public Random getRandom(Random fallback) {
+		return random != null ? random : fallback;
+	}
+
+	/**
+	 * Sets the random of the state, used instead of the randoms of the values. Null means the
+	 * values use their own randoms.
+	 *
+	 * @param random The random to use, may be null
+	 */
+	@Override
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Returns true if the state holds no results, in which case the values read with it are the
+	 * shared ones.
+	 *
+	 * @return True if the state is empty, false if not
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the number of results held by the state.
+	 *
+	 * @return The number of results
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if the state holds a result for the slot.
+	 *
+	 * @param slot The slot of the value
+	 * @return True if the state holds a result, false if not
+	 */
+	public boolean contains(int slot) {
+		return size != 0 && keys[index(slot + 1)] != 0;
+	}
+
+	/**
+	 * Gets the result held for the slot, or the fallback if the state holds none.
+	 *
+	 * @param slot The slot of the value
+	 * @param fallback The result to return if the state holds none
+	 * @return The result for the slot
+	 */
+	public double get(int slot, double fallback) {
+		if (size == 0) {
+			return fallback;
+		}
+		final int index = index(slot + 1);
+		return keys[index] != 0 ? values[index] : fallback;
+	}
+
+	/**
+	 * Sets the result held for the slot.
+	 *
+	 * @param slot The slot of the value
+	 * @param value The result to hold
+	 */
+	public void set(int slot, double value) {
+		if (keys == null) {
+			keys = new int[INITIAL_CAPACITY];
+			values = new double[INITIAL_CAPACITY];
+		}
+		final int key = slot + 1;
+		int index = index(key);
+		if (keys[index] == 0) {
+			if (size + 1 << 1 > keys.length) {
+				grow();
+				index = index(key);
+			}
+			keys[index] = key;
+			size++;
+		}
+		values[index] = value;
+	}
+
+	/**
+	 * Removes all the results, keeping the random.
+	 */
+	public void clear() {
+		if (keys != null) {
+			Arrays.fill(keys, 0);
+		}
+		size = 0;
+	}
+
+	private int index(int key) {
+		final int mask = keys.length - 1;
+		final int hash = key * 0x9E3779B9;
+		int index = (hash ^ hash >>> 16) & mask;
+		while (keys[index] != 0 && keys[index] != key) {
+			index = index + 1 & mask;
+		}
+		return index;
+	}
+
+	private void grow() {
+		final int[] oldKeys = keys;
+		final double[] oldValues = values;
+		keys = new int[oldKeys.length << 1];
+		values = new double[oldKeys.length << 1];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				final int index = index(oldKeys[i]);
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the string representation of the state.
+	 *
+	 * @return The string form of the state
+	 */
+	@Override
+	public String toString() {
+		return "ValueState{size=" + size + ", random=" + random + '}';
+	}
+}
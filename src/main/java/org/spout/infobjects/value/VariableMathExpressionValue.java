@@ -29,8 +29,10 @@ package org.spout.infobjects.value;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -42,18 +44,31 @@ import de.congrace.exp4j.expression.Calculable;
 import de.congrace.exp4j.expression.ExpressionBuilder;
 import de.congrace.exp4j.function.Functions;
 
+import org.spout.infobjects.variable.Variable;
 import org.spout.infobjects.variable.VariableSource;
 
 /**
  * A variable math expression value. This is an extension of {@link MathExpressionValue} which adds
  * support for variables on top of random functions. To provide values for the variables, {@link org.spout.infobjects.variable.VariableSource}s
  * must be added using {@link #addVariableSources(org.spout.infobjects.variable.VariableSource[])}.
- * When reevaluating the expression, this value will fetch the variable values from these sources.
- * If a variable cannot be found, the value will be zero.
+ * The variables are resolved from these sources once, on the first evaluation, in the order the
+ * sources were added. Later evaluations read the resolved variables directly. If a variable cannot
+ * be found, the value will be zero, and it is looked up again on the next evaluation. When
+ * calculated with a {@link ValueState}, the variables are read from the state.
  */
 public class VariableMathExpressionValue extends MathExpressionValue {
 	protected static final Pattern VARIABLE_PATTERN = Pattern.compile("[a-zA-Z_]\\w*");
-	private final Set<VariableSource> variableSources = new HashSet<VariableSource>();
+	// the frames of the calculations with a state, reused by each thread
+	private static final ThreadLocal<double[]> STATE_FRAME = new ThreadLocal<double[]>() {
+		@Override
+		protected double[] initialValue() {
+			return new double[8];
+		}
+	};
+	private final Set<VariableSource> variableSources = new LinkedHashSet<VariableSource>();
+	private String[] boundNames = null;
+	private boolean[] foldedVariables = null;
+	private volatile Variable[] boundVariables = null;
 
 	/**
 	 * Constructs a new variable math value from the expression. This constructor will find the
@@ -78,7 +93,7 @@ public class VariableMathExpressionValue extends MathExpressionValue {
 	 */
 	public VariableMathExpressionValue(ExpressionBuilder expressionBuilder)
 			throws UnknownFunctionException, UnparsableExpressionException {
-		super(expressionBuilder.withVariableNames(findVariables(expressionBuilder.getExpression())));
+		super(expressionBuilder.withVariableNames(findVariables(expressionBuilder.getExpression())), true);
 	}
 
 	/**
@@ -91,8 +106,9 @@ public class VariableMathExpressionValue extends MathExpressionValue {
 	}
 
 	/**
-	 * Reevaluates the math expression, updating the values of the variable from the variable
-	 * sources.
+	 * Reevaluates the math expression, updating the values of the variables from the resolved
+	 * variables. The variables are resolved on the first call. The constant variables folded into
+	 * the compiled expression are not updated.
 	 *
 	 * @throws IllegalStateException If no variable sources have been added
 	 */
@@ -101,17 +117,136 @@ public class VariableMathExpressionValue extends MathExpressionValue {
 		if (variableSources.isEmpty()) {
 			throw new IllegalStateException("No variable sources");
 		}
-		for (String variableName : calculable.getVariableNames()) {
-			for (VariableSource source : variableSources) {
-				if (source.hasVariable(variableName)) {
-					calculable.setVariable(variableName, source.getVariable(variableName).getValue());
-					break;
+		final Variable[] variables = getBinding();
+		final boolean compiled = isCompiled();
+		for (int i = 0; i < variables.length; i++) {
+			if (foldedVariables[i]) {
+				continue;
+			}
+			Variable variable = variables[i];
+			if (variable == null) {
+				variable = findVariable(boundNames[i]);
+				if (variable == null) {
+					continue;
 				}
+				variables[i] = variable;
+			}
+			if (compiled) {
+				setVariable(i, variable.getValue());
+			} else {
+				calculable.setVariable(boundNames[i], variable.getValue());
 			}
 		}
 		super.calculate();
 	}
 
+	/**
+	 * Reevaluates the math expression with the values of the variables in the state, and stores
+	 * the result in the state. The variables which couldn't be resolved are zero. This doesn't
+	 * change the value or its variables, so it can be called by many threads at once for different
+	 * states.
+	 *
+	 * @param state The state to read the variables from and store the result in
+	 * @throws IllegalStateException If no variable sources have been added
+	 */
+	@Override
+	public void calculate(ValueState state) {
+		if (variableSources.isEmpty()) {
+			throw new IllegalStateException("No variable sources");
+		}
+		final Variable[] variables = getBinding();
+		final String[] names = boundNames;
+		final boolean[] folded = foldedVariables;
+		// reading the variables doesn't calculate anything, so the frame isn't reentered
+		double[] values = STATE_FRAME.get();
+		if (values.length < variables.length) {
+			values = new double[Math.max(variables.length, values.length << 1)];
+			STATE_FRAME.set(values);
+		}
+		for (int i = 0; i < variables.length; i++) {
+			if (folded[i]) {
+				continue;
+			}
+			Variable variable = variables[i];
+			if (variable == null) {
+				variable = findVariable(names[i]);
+			}
+			values[i] = variable != null ? variable.getValue(state) : 0;
+		}
+		if (isCompiled()) {
+			state.set(slot, evaluate(values, state.getRandom()));
+		} else {
+			synchronized (calculable) {
+				for (int i = 0; i < names.length; i++) {
+					calculable.setVariable(names[i], values[i]);
+				}
+				state.set(slot, calculable.calculate());
+			}
+		}
+	}
+
+	/**
+	 * Resolves the variables of the expression from the variable sources. The first source in
+	 * order of addition that has the variable provides it. This is done automatically on the first
+	 * evaluation and after adding sources, but should be called again if a source replaces one of
+	 * its variables. If the expression is compiled, the variables found
+	 * {@link org.spout.infobjects.variable.Variable#isConstant() constant} are folded into it, so
+	 * this should also be called again after building the dependency graph of the variables.
+	 */
+	public synchronized void bindVariables() {
+		final List<String> names = getCompiledVariables();
+		final String[] bindingNames = names != null ? names.toArray(new String[names.size()])
+				: calculable.getVariableNames().toArray(new String[0]);
+		final Variable[] variables = new Variable[bindingNames.length];
+		final boolean[] folded = new boolean[bindingNames.length];
+		final Map<String, Double> constants = new HashMap<String, Double>();
+		for (int i = 0; i < bindingNames.length; i++) {
+			final Variable variable = findVariable(bindingNames[i]);
+			variables[i] = variable;
+			if (names != null && variable != null && variable.isConstant()) {
+				constants.put(bindingNames[i], variable.getValue());
+				folded[i] = true;
+			}
+		}
+		fold(constants);
+		boundNames = bindingNames;
+		foldedVariables = folded;
+		boundVariables = variables;
+	}
+
+	private Variable[] getBinding() {
+		Variable[] variables = boundVariables;
+		if (variables == null) {
+			synchronized (this) {
+				variables = boundVariables;
+				if (variables == null) {
+					bindVariables();
+					variables = boundVariables;
+				}
+			}
+		}
+		return variables;
+	}
+
+	/**
+	 * Gets the variables of the expression, binding them first if needed. Variables which couldn't
+	 * be resolved from the sources are null.
+	 *
+	 * @return The bound variables, in the order of the variable names
+	 */
+	public List<Variable> getBoundVariables() {
+		return Arrays.asList(getBinding().clone());
+	}
+
+	private Variable findVariable(String name) {
+		for (VariableSource source : variableSources) {
+			if (source.hasVariable(name)) {
+				return source.getVariable(name);
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Adds the variable sources to this variable math expression.
 	 *
@@ -128,6 +263,17 @@ public class VariableMathExpressionValue extends MathExpressionValue {
 	 */
 	public void addVariableSources(Collection<VariableSource> sources) {
 		variableSources.addAll(sources);
+		boundVariables = null;
+	}
+
+	/**
+	 * Gets the variable sources of this variable math expression. Changes to this set are reflected
+	 * in the value once the variables are {@link #bindVariables() bound} again.
+	 *
+	 * @return The variable sources as a set
+	 */
+	public Set<VariableSource> getVariableSources() {
+		return variableSources;
 	}
 
 	/**
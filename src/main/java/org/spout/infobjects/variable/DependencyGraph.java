@@ -0,0 +1,385 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.variable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import org.spout.infobjects.value.DoubleValue;
+import org.spout.infobjects.value.IncrementableValue;
+import org.spout.infobjects.value.MathExpressionValue;
+import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
+import org.spout.infobjects.value.VariableMathExpressionValue;
+
+/**
+ * A dependency graph between the variables of one or more {@link VariableTable}s, and the values
+ * using them, such as the values of conditions and instructions. The edges are found from the
+ * values: a value depends on the variables used in its expression, and a variable on those used by
+ * its value. Random values, incrementable values and values of unknown types are sources of
+ * change. Once built, the variables and values are sorted in topological order, and those which
+ * don't depend on any source of change are calculated once and marked constant. Each table then
+ * only calculates its other variables, in topological order, and {@link #calculateValues()} only
+ * the other added values. The constant variables are folded into the compiled expressions using
+ * them. The graph can also tell which values must be recalculated when some of them change, with
+ * {@link #getDependents(java.util.Collection, java.util.Collection)}.
+ */
+public class DependencyGraph {
+	private final List<VariableTable> tables = new ArrayList<VariableTable>();
+	private final List<Collection<? extends Value>> values = new ArrayList<Collection<? extends Value>>();
+	private final Map<Value, Node> nodes = new IdentityHashMap<Value, Node>();
+	private final List<Node> sorted = new ArrayList<Node>();
+	private final List<Variable> order = new ArrayList<Variable>();
+	private Value[] schedule = new Value[0];
+
+	/**
+	 * Adds the variables of the table to the graph. The graph must be built again for them to be
+	 * accounted for.
+	 *
+	 * @param table The table to add
+	 */
+	public void add(VariableTable table) {
+		tables.add(table);
+	}
+
+	/**
+	 * Adds values using the variables of the tables to the graph, such as the values of a condition
+	 * or an instruction. Null values are ignored. The graph must be built again for them to be
+	 * accounted for.
+	 *
+	 * @param values The values to add
+	 */
+	public void add(Collection<? extends Value> values) {
+		this.values.add(values);
+	}
+
+	/**
+	 * Gets the tables in the graph.
+	 *
+	 * @return The tables as an unmodifiable list
+	 */
+	public List<VariableTable> getTables() {
+		return Collections.unmodifiableList(tables);
+	}
+
+	/**
+	 * Builds the graph from the current variables of the tables and the added values. The variables
+	 * and values are sorted, the constant ones are calculated, and the calculation order of each
+	 * table is set. Variables in a dependency cycle are never constant, and are placed in the order
+	 * of their tables. The variables of the expressions of the values are bound again, so the
+	 * constant ones are folded.
+	 */
+	public void build() {
+		for (Value value : nodes.keySet()) {
+			if (value instanceof Variable) {
+				((Variable) value).setConstant(false);
+			}
+		}
+		nodes.clear();
+		sorted.clear();
+		order.clear();
+		final List<Node> all = new ArrayList<Node>();
+		for (VariableTable table : tables) {
+			for (int i = 0; i < table.size(); i++) {
+				final Node node = new Node(table.getVariable(i), table, i);
+				nodes.put(node.value, node);
+				all.add(node);
+			}
+		}
+		for (Collection<? extends Value> group : values) {
+			for (Value value : group) {
+				if (value != null && !nodes.containsKey(value)) {
+					final Node node = new Node(value, null, -1);
+					nodes.put(value, node);
+					all.add(node);
+				}
+			}
+		}
+		for (Node node : all) {
+			final List<Variable> dependencies = new ArrayList<Variable>();
+			node.source = collect(node.getExpression(), dependencies);
+			for (Variable dependency : dependencies) {
+				final Node dependencyNode = nodes.get(dependency);
+				if (dependencyNode == null) {
+					// not in the graph, so it can't be tracked
+					node.source = true;
+				} else if (dependencyNode != node) {
+					node.dependencies.add(dependencyNode);
+					dependencyNode.dependents.add(node);
+					node.pending++;
+				} else {
+					node.source = true;
+				}
+			}
+		}
+		final Queue<Node> ready = new ArrayDeque<Node>();
+		for (Node node : all) {
+			if (node.pending == 0) {
+				ready.add(node);
+			}
+		}
+		Node node;
+		while ((node = ready.poll()) != null) {
+			node.sorted = true;
+			sorted.add(node);
+			for (Node dependent : node.dependents) {
+				if (--dependent.pending == 0) {
+					ready.add(dependent);
+				}
+			}
+		}
+		for (Node cycle : all) {
+			if (!cycle.sorted) {
+				cycle.source = true;
+				sorted.add(cycle);
+			}
+		}
+		final List<Value> scheduled = new ArrayList<Value>();
+		for (Node sortedNode : sorted) {
+			boolean constant = !sortedNode.source;
+			for (Node dependency : sortedNode.dependencies) {
+				constant &= dependency.constant;
+			}
+			sortedNode.constant = constant;
+			final Value expression = sortedNode.getExpression();
+			if (expression instanceof VariableMathExpressionValue) {
+				// fold the constant dependencies, which have all been calculated by now
+				((VariableMathExpressionValue) expression).bindVariables();
+			}
+			if (constant) {
+				sortedNode.value.calculate();
+			}
+			if (sortedNode.value instanceof Variable) {
+				((Variable) sortedNode.value).setConstant(constant);
+				order.add((Variable) sortedNode.value);
+			} else if (!constant) {
+				scheduled.add(sortedNode.value);
+			}
+		}
+		schedule = scheduled.toArray(new Value[scheduled.size()]);
+		for (VariableTable table : tables) {
+			int count = 0;
+			final int[] schedule = new int[table.size()];
+			for (Node sortedNode : sorted) {
+				if (sortedNode.table == table && !sortedNode.constant) {
+					schedule[count++] = sortedNode.slot;
+				}
+			}
+			table.setSchedule(Arrays.copyOf(schedule, count));
+		}
+	}
+
+	// returns true if the value is a source of change by itself
+	private static boolean collect(Value value, List<Variable> dependencies) {
+		if (value instanceof DoubleValue) {
+			return false;
+		}
+		if (value instanceof Variable) {
+			dependencies.add((Variable) value);
+			return false;
+		}
+		if (value instanceof IncrementableValue) {
+			final IncrementableValue incrementable = (IncrementableValue) value;
+			collect(incrementable.getOriginalValue(), dependencies);
+			collect(incrementable.getIncrement(), dependencies);
+			return true;
+		}
+		if (value instanceof VariableMathExpressionValue) {
+			final VariableMathExpressionValue expression = (VariableMathExpressionValue) value;
+			boolean source = expression.isRandom();
+			for (Variable variable : expression.getBoundVariables()) {
+				if (variable == null) {
+					source = true;
+				} else {
+					dependencies.add(variable);
+				}
+			}
+			return source;
+		}
+		if (value instanceof MathExpressionValue) {
+			return ((MathExpressionValue) value).isRandom();
+		}
+		return true;
+	}
+
+	/**
+	 * Calculates the added values which aren't constant, in topological order. The values only
+	 * depend on variables, which must have been calculated by their tables first.
+	 */
+	public void calculateValues() {
+		for (Value value : schedule) {
+			value.calculate();
+		}
+	}
+
+	/**
+	 * Calculates the added values which aren't constant in the state, like
+	 * {@link #calculateValues()}. The constant values are read from the values themselves.
+	 *
+	 * @param state The state to store the results in
+	 */
+	public void calculateValues(ValueState state) {
+		for (Value value : schedule) {
+			value.calculate(state);
+		}
+	}
+
+	/**
+	 * Gets the values to recalculate when the changed values change, in topological order, as of
+	 * the last build. These are the values of the scope which depend on any changed value, directly
+	 * or not, and the changed values which are in the scope. Values which aren't in the graph don't
+	 * have any dependents.
+	 *
+	 * @param changed The values which change
+	 * @param scope The values which may be recalculated
+	 * @return The values of the scope to recalculate, as a list
+	 */
+	public List<Value> getDependents(Collection<? extends Value> changed, Collection<? extends Value> scope) {
+		final Set<Node> reached = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+		final Queue<Node> pending = new ArrayDeque<Node>();
+		for (Value value : changed) {
+			final Node node = nodes.get(value);
+			if (node != null && reached.add(node)) {
+				pending.add(node);
+			}
+		}
+		Node node;
+		while ((node = pending.poll()) != null) {
+			for (Node dependent : node.dependents) {
+				if (reached.add(dependent)) {
+					pending.add(dependent);
+				}
+			}
+		}
+		final Set<Value> included = Collections.newSetFromMap(new IdentityHashMap<Value, Boolean>());
+		included.addAll(scope);
+		final List<Value> dependents = new ArrayList<Value>();
+		for (Node sortedNode : sorted) {
+			if (reached.contains(sortedNode) && included.contains(sortedNode.value)) {
+				dependents.add(sortedNode.value);
+			}
+		}
+		return dependents;
+	}
+
+	/**
+	 * Gets the variables of the tables in topological order, as of the last build.
+	 *
+	 * @return The sorted variables as an unmodifiable list
+	 */
+	public List<Variable> getOrder() {
+		return Collections.unmodifiableList(order);
+	}
+
+	/**
+	 * Returns true if the variable or value was found constant on the last build.
+	 *
+	 * @param value The variable or value to check
+	 * @return True if the value is constant, false if not or if it isn't in the graph
+	 */
+	public boolean isConstant(Value value) {
+		final Node node = nodes.get(value);
+		return node != null && node.constant;
+	}
+
+	/**
+	 * Returns true if the variable or value was found to be a source of change by itself on the
+	 * last build: a random, incrementable or unknown value, or one in a dependency cycle. The values
+	 * which only depend on sources aren't sources themselves.
+	 *
+	 * @param value The variable or value to check
+	 * @return True if the value is a source of change, false if not or if it isn't in the graph
+	 */
+	public boolean isSource(Value value) {
+		final Node node = nodes.get(value);
+		return node != null && node.source;
+	}
+
+	/**
+	 * Gets the variables the variable or value depends on in the graph, as of the last build.
+	 *
+	 * @param value The variable or value to get the dependencies of
+	 * @return The dependencies as a list, empty if the value isn't in the graph
+	 */
+	public List<Variable> getDependencies(Value value) {
+		final Node node = nodes.get(value);
+		if (node == null) {
+			return Collections.emptyList();
+		}
+		final List<Variable> dependencies = new ArrayList<Variable>(node.dependencies.size());
+		for (Node dependency : node.dependencies) {
+			dependencies.add((Variable) dependency.value);
+		}
+		return dependencies;
+	}
+
+	/**
+	 * Returns the string representation of the graph.
+	 *
+	 * @return The string form of the graph
+	 */
+	@Override
+	public String toString() {
+		final List<String> names = new ArrayList<String>(order.size());
+		for (Variable variable : order) {
+			names.add(isConstant(variable) ? variable.getName() + "*" : variable.getName());
+		}
+		return "DependencyGraph{tables=" + tables.size() + ", values=" + values.size() + ", order="
+				+ names + '}';
+	}
+
+	private static class Node {
+		// a variable for the nodes of the tables, else an added value
+		private final Value value;
+		private final VariableTable table;
+		private final int slot;
+		private final List<Node> dependencies = new ArrayList<Node>();
+		private final List<Node> dependents = new ArrayList<Node>();
+		private int pending = 0;
+		private boolean source = false;
+		private boolean sorted = false;
+		private boolean constant = false;
+
+		private Node(Value value, VariableTable table, int slot) {
+			this.value = value;
+			this.table = table;
+			this.slot = slot;
+		}
+
+		private Value getExpression() {
+			return value instanceof Variable ? ((Variable) value).getRawValue() : value;
+		}
+	}
+}
@@ -29,13 +29,18 @@ package org.spout.infobjects.variable;
 import org.spout.api.util.Named;
 
 import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
 
 /**
- * Represents a variable, which is a named {@link org.spout.infobjects.value.Value}.
+ * Represents a variable, which is a named {@link org.spout.infobjects.value.Value}. A variable
+ * added to a {@link VariableTable} stores its real value in its slot of the table's frame.
  */
 public class Variable implements Value, Named {
 	private final String name;
 	private final Value value;
+	private VariableTable table = null;
+	private int slot = -1;
+	private boolean constant = false;
 
 	/**
 	 * Constructs a new variable from its name and value.
@@ -65,7 +70,8 @@ public class Variable implements Value, Named {
 	 */
 	@Override
 	public double getValue() {
-		return value.getValue();
+		final VariableTable variableTable = table;
+		return variableTable != null ? variableTable.frame[slot] : value.getValue();
 	}
 
 	/**
@@ -74,6 +80,82 @@ public class Variable implements Value, Named {
 	@Override
 	public void calculate() {
 		value.calculate();
+		update();
+	}
+
+	/**
+	 * Gets the real value of this variable in the state, which is the one of the raw value in the
+	 * state. If the state is empty, this is the value in the variable's slot.
+	 *
+	 * @param state The state to read the value from
+	 * @return The real value of this variable in the state
+	 */
+	@Override
+	public double getValue(ValueState state) {
+		return state.isEmpty() ? getValue() : value.getValue(state);
+	}
+
+	/**
+	 * Calculates the variable's value in the state. The variable's slot isn't changed.
+	 *
+	 * @param state The state to store the value in
+	 */
+	@Override
+	public void calculate(ValueState state) {
+		value.calculate(state);
+	}
+
+	/**
+	 * Stores the real value of the raw value in the variable's slot. This is done when calculating,
+	 * but must also be done if the raw value changes by other means.
+	 */
+	public void update() {
+		final VariableTable variableTable = table;
+		if (variableTable != null) {
+			variableTable.frame[slot] = value.getValue();
+		}
+	}
+
+	/**
+	 * Gets the table this variable has a slot in.
+	 *
+	 * @return The table, or null if the variable isn't in a table
+	 */
+	public VariableTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Gets the slot of the variable in its table.
+	 *
+	 * @return The slot, or -1 if the variable isn't in a table
+	 */
+	public int getSlot() {
+		return slot;
+	}
+
+	/**
+	 * Returns true if the variable has been found constant by a {@link DependencyGraph}. Its value
+	 * then never changes, and may be folded into the expressions using it.
+	 *
+	 * @return True if the variable is constant, false if not
+	 */
+	public boolean isConstant() {
+		return constant;
+	}
+
+	void setConstant(boolean constant) {
+		this.constant = constant;
+	}
+
+	void attach(VariableTable table, int slot) {
+		this.table = table;
+		this.slot = slot;
+	}
+
+	void detach() {
+		table = null;
+		slot = -1;
 	}
 
 	/**
@@ -0,0 +1,241 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.variable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.spout.infobjects.value.ValueState;
+
+/**
+ * A table of variables, where each variable gets an integer slot in a frame of primitive doubles.
+ * The value of a variable is stored in its slot when calculated, and reading it is then an array
+ * access. The name lookup is only meant for loading and tooling. The frame holds the whole state of
+ * the variables, so it can be saved and restored cheaply with {@link #snapshot()} and
+ * {@link #restore(double[])}. A {@link DependencyGraph} may set the order in which the variables are
+ * calculated, leaving out the constant ones.
+ */
+public class VariableTable implements VariableSource {
+	private final Map<String, Variable> variables = new LinkedHashMap<String, Variable>();
+	private Variable[] slots = new Variable[8];
+	double[] frame = new double[8];
+	private int size = 0;
+	private int[] schedule = null;
+
+	/**
+	 * Adds a variable to the table. A variable replacing another with the same name takes its
+	 * slot. The slot is initialized with the current value of the variable. The calculation order
+	 * set by a dependency graph is cleared.
+	 *
+	 * @param variable The variable to add
+	 */
+	@Override
+	public void addVariable(Variable variable) {
+		final Variable previous = variables.put(variable.getName(), variable);
+		final int slot;
+		if (previous != null && previous.getTable() == this) {
+			slot = previous.getSlot();
+			previous.detach();
+		} else {
+			if (size == slots.length) {
+				slots = Arrays.copyOf(slots, size << 1);
+				frame = Arrays.copyOf(frame, size << 1);
+			}
+			slot = size++;
+		}
+		slots[slot] = variable;
+		schedule = null;
+		variable.attach(this, slot);
+		variable.update();
+	}
+
+	/**
+	 * Looks up a variable from its name.
+	 *
+	 * @param name The name of the variable to lookup
+	 * @return The variable if found, else null
+	 */
+	@Override
+	public Variable getVariable(String name) {
+		return variables.get(name);
+	}
+
+	/**
+	 * Gets the variable in the slot.
+	 *
+	 * @param slot The slot of the variable
+	 * @return The variable
+	 */
+	public Variable getVariable(int slot) {
+		return slots[slot];
+	}
+
+	/**
+	 * Gets the slot of the variable from its name.
+	 *
+	 * @param name The name of the variable
+	 * @return The slot of the variable, or -1 if not found
+	 */
+	public int getSlot(String name) {
+		final Variable variable = variables.get(name);
+		return variable != null && variable.getTable() == this ? variable.getSlot() : -1;
+	}
+
+	/**
+	 * Gets all the variables of the table, in the order they were added.
+	 *
+	 * @return All the variables as a collection
+	 */
+	@Override
+	public Collection<Variable> getVariables() {
+		return variables.values();
+	}
+
+	/**
+	 * Gets the variables of the table mapped by name. Variables put directly in the map don't get
+	 * a slot, and are read from their value instead.
+	 *
+	 * @return The variable map
+	 */
+	@Override
+	public Map<String, Variable> getVariableMap() {
+		return variables;
+	}
+
+	/**
+	 * Checks if the table has the variable, by looking up its name.
+	 *
+	 * @param name The name of the variable to look up
+	 * @return True if the variable has been found, false if not
+	 */
+	@Override
+	public boolean hasVariable(String name) {
+		return variables.containsKey(name);
+	}
+
+	/**
+	 * Gets the number of slots in the frame.
+	 *
+	 * @return The number of slots
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Calculates the variables. If a dependency graph has set the calculation order, only the
+	 * variables which aren't constant are calculated, in topological order. Else, all the
+	 * variables are calculated in the order of their slots.
+	 */
+	public void calculate() {
+		final int[] order = schedule;
+		if (order != null) {
+			for (int slot : order) {
+				slots[slot].calculate();
+			}
+		} else {
+			calculateAll();
+		}
+	}
+
+	/**
+	 * Calculates all the variables, in the order of their slots, ignoring the calculation order.
+	 */
+	public void calculateAll() {
+		for (int i = 0; i < size; i++) {
+			slots[i].calculate();
+		}
+	}
+
+	/**
+	 * Calculates the variables in the state, in the same order as {@link #calculate()}. The frame
+	 * isn't changed.
+	 *
+	 * @param state The state to store the values in
+	 */
+	public void calculate(ValueState state) {
+		final int[] order = schedule;
+		if (order != null) {
+			for (int slot : order) {
+				slots[slot].calculate(state);
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				slots[i].calculate(state);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if a dependency graph has set the calculation order of the table.
+	 *
+	 * @return True if the calculation order is set, false if not
+	 */
+	public boolean isScheduled() {
+		return schedule != null;
+	}
+
+	void setSchedule(int[] schedule) {
+		this.schedule = schedule;
+	}
+
+	/**
+	 * Copies the values of all the variables.
+	 *
+	 * @return The copy of the frame
+	 */
+	public double[] snapshot() {
+		return Arrays.copyOf(frame, size);
+	}
+
+	/**
+	 * Restores the values of all the variables from a snapshot. The values stay until the variables
+	 * are calculated again.
+	 *
+	 * @param snapshot The snapshot to restore
+	 * @throws IllegalArgumentException If the snapshot isn't the size of the table
+	 */
+	public void restore(double[] snapshot) {
+		if (snapshot.length != size) {
+			throw new IllegalArgumentException("The snapshot has " + snapshot.length + " slots instead of " + size);
+		}
+		System.arraycopy(snapshot, 0, frame, 0, size);
+	}
+
+	/**
+	 * Returns the string representation of the table.
+	 *
+	 * @return The string form of the table
+	 */
+	@Override
+	public String toString() {
+		return "VariableTable{variables=" + variables.keySet() + ", frame="
+				+ Arrays.toString(snapshot()) + '}';
+	}
+}
@@ -0,0 +1,584 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects.voxel;
+
+import java.util.Arrays;
+
+import org.spout.api.geo.World;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.material.BlockMaterial;
+
+/**
+ * A compact buffer of pending block writes. Writes are recorded as packed coordinates relative to
+ * the buffer's origin, a material index into a small palette and the material data, all stored in
+ * primitive arrays. This lets an iWGO record all of its blocks during placement and apply them to
+ * the world in one pass once it is done, instead of calling the world for every single block.
+ * When applied, the writes are grouped by chunk so that chunk lookups scale with the number of
+ * chunks touched rather than the number of blocks written. Writes to the same block are kept in
+ * order, so the last one recorded is the one that ends up in the world.
+ */
+public class VoxelBuffer {
+	private static final int DEFAULT_CAPACITY = 256;
+	private static final int COORDINATE_BITS = 21;
+	private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+	private static final int COORDINATE_OFFSET = 1 << (COORDINATE_BITS - 1);
+	private static final int CHUNK_BITS = 4;
+	private static final int CHUNK_KEY_BITS = COORDINATE_BITS;
+	private static final long CHUNK_KEY_OFFSET = 1L << (CHUNK_KEY_BITS - 1);
+	private int originX;
+	private int originY;
+	private int originZ;
+	private long[] positions;
+	private short[] materials;
+	private short[] data;
+	private int size = 0;
+	private int minX;
+	private int minY;
+	private int minZ;
+	private int maxX;
+	private int maxY;
+	private int maxZ;
+	private BlockMaterial[] palette = new BlockMaterial[8];
+	private int paletteSize = 0;
+	private BlockMaterial lastMaterial;
+	private short lastMaterialIndex;
+
+	/**
+	 * Constructs a new empty voxel buffer with its origin at 0, 0, 0.
+	 */
+	public VoxelBuffer() {
+		this(0, 0, 0);
+	}
+
+	/**
+	 * Constructs a new empty voxel buffer with its origin at the provided coordinates.
+	 *
+	 * @param x The x coordinate of the origin
+	 * @param y The y coordinate of the origin
+	 * @param z The z coordinate of the origin
+	 */
+	public VoxelBuffer(int x, int y, int z) {
+		this(x, y, z, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a new empty voxel buffer with its origin at the provided coordinates and with
+	 * enough room for the provided number of writes. The buffer will still grow if needed.
+	 *
+	 * @param x The x coordinate of the origin
+	 * @param y The y coordinate of the origin
+	 * @param z The z coordinate of the origin
+	 * @param capacity The initial number of writes the buffer can hold
+	 */
+	public VoxelBuffer(int x, int y, int z, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be greater than zero");
+		}
+		originX = x;
+		originY = y;
+		originZ = z;
+		positions = new long[capacity];
+		materials = new short[capacity];
+		data = new short[capacity];
+	}
+
+	/**
+	 * Clears the buffer and moves its origin to the provided coordinates. The allocated storage is
+	 * kept for the next writes.
+	 *
+	 * @param x The x coordinate of the new origin
+	 * @param y The y coordinate of the new origin
+	 * @param z The z coordinate of the new origin
+	 */
+	public void reset(int x, int y, int z) {
+		clear();
+		originX = x;
+		originY = y;
+		originZ = z;
+	}
+
+	/**
+	 * Clears all the writes from the buffer. The origin and the allocated storage are kept.
+	 */
+	public void clear() {
+		size = 0;
+		Arrays.fill(palette, 0, paletteSize, null);
+		paletteSize = 0;
+		lastMaterial = null;
+	}
+
+	/**
+	 * Records a block write at the provided world coordinates. The coordinates must be within a
+	 * million blocks of the buffer's origin on each axis.
+	 *
+	 * @param x The x coordinate of the block
+	 * @param y The y coordinate of the block
+	 * @param z The z coordinate of the block
+	 * @param material The material to set
+	 * @param data The data of the material to set
+	 * @throws IllegalArgumentException If the coordinates are too far from the origin
+	 */
+	public void add(int x, int y, int z, BlockMaterial material, short data) {
+		if (size == positions.length) {
+			grow();
+		}
+		final int rx = x - originX;
+		final int ry = y - originY;
+		final int rz = z - originZ;
+		positions[size] = pack(rx, ry, rz);
+		if (size == 0) {
+			minX = maxX = rx;
+			minY = maxY = ry;
+			minZ = maxZ = rz;
+		} else {
+			if (rx < minX) {
+				minX = rx;
+			} else if (rx > maxX) {
+				maxX = rx;
+			}
+			if (ry < minY) {
+				minY = ry;
+			} else if (ry > maxY) {
+				maxY = ry;
+			}
+			if (rz < minZ) {
+				minZ = rz;
+			} else if (rz > maxZ) {
+				maxZ = rz;
+			}
+		}
+		materials[size] = indexOf(material);
+		this.data[size] = data;
+		size++;
+	}
+
+	/**
+	 * Gets the number of writes in the buffer.
+	 *
+	 * @return The number of writes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if the buffer has no writes.
+	 *
+	 * @return True if the buffer is empty, false if not
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the x coordinate of the origin.
+	 *
+	 * @return The x coordinate of the origin
+	 */
+	public int getOriginX() {
+		return originX;
+	}
+
+	/**
+	 * Gets the y coordinate of the origin.
+	 *
+	 * @return The y coordinate of the origin
+	 */
+	public int getOriginY() {
+		return originY;
+	}
+
+	/**
+	 * Gets the z coordinate of the origin.
+	 *
+	 * @return The z coordinate of the origin
+	 */
+	public int getOriginZ() {
+		return originZ;
+	}
+
+	/**
+	 * Gets the smallest x coordinate of all the writes. This is the lower x bound of the bounding
+	 * box of the writes, in world coordinates.
+	 *
+	 * @return The minimum x coordinate
+	 * @throws IllegalStateException If the buffer is empty
+	 */
+	public int getMinX() {
+		checkNotEmpty();
+		return minX + originX;
+	}
+
+	/**
+	 * Gets the smallest y coordinate of all the writes. This is the lower y bound of the bounding
+	 * box of the writes, in world coordinates.
+	 *
+	 * @return The minimum y coordinate
+	 * @throws IllegalStateException If the buffer is empty
+	 */
+	public int getMinY() {
+		checkNotEmpty();
+		return minY + originY;
+	}
+
+	/**
+	 * Gets the smallest z coordinate of all the writes. This is the lower z bound of the bounding
+	 * box of the writes, in world coordinates.
+	 *
+	 * @return The minimum z coordinate
+	 * @throws IllegalStateException If the buffer is empty
+	 */
+	public int getMinZ() {
+		checkNotEmpty();
+		return minZ + originZ;
+	}
+
+	/**
+	 * Gets the largest x coordinate of all the writes. This is the upper x bound (inclusive) of the
+	 * bounding box of the writes, in world coordinates.
+	 *
+	 * @return The maximum x coordinate
+	 * @throws IllegalStateException If the buffer is empty
+	 */
+	public int getMaxX() {
+		checkNotEmpty();
+		return maxX + originX;
+	}
+
+	/**
+	 * Gets the largest y coordinate of all the writes. This is the upper y bound (inclusive) of the
+	 * bounding box of the writes, in world coordinates.
+	 *
+	 * @return The maximum y coordinate
+	 * @throws IllegalStateException If the buffer is empty
+	 */
+	public int getMaxY() {
+		checkNotEmpty();
+		return maxY + originY;
+	}
+
+	/**
+	 * Gets the largest z coordinate of all the writes. This is the upper z bound (inclusive) of the
+	 * bounding box of the writes, in world coordinates.
+	 *
+	 * @return The maximum z coordinate
+	 * @throws IllegalStateException If the buffer is empty
+	 */
+	public int getMaxZ() {
+		checkNotEmpty();
+		return maxZ + originZ;
+	}
+
+	/**
+	 * Gets the world x coordinate of the write at the index.
+	 *
+	 * @param index The index of the write
+	 * @return The x coordinate
+	 */
+	public int getX(int index) {
+		return unpackX(positions[checkIndex(index)]) + originX;
+	}
+
+	/**
+	 * Gets the world y coordinate of the write at the index.
+	 *
+	 * @param index The index of the write
+	 * @return The y coordinate
+	 */
+	public int getY(int index) {
+		return unpackY(positions[checkIndex(index)]) + originY;
+	}
+
+	/**
+	 * Gets the world z coordinate of the write at the index.
+	 *
+	 * @param index The index of the write
+	 * @return The z coordinate
+	 */
+	public int getZ(int index) {
+		return unpackZ(positions[checkIndex(index)]) + originZ;
+	}
+
+	/**
+	 * Gets the material of the write at the index.
+	 *
+	 * @param index The index of the write
+	 * @return The material
+	 */
+	public BlockMaterial getMaterial(int index) {
+		return palette[materials[checkIndex(index)]];
+	}
+
+	/**
+	 * Gets the material data of the write at the index.
+	 *
+	 * @param index The index of the write
+	 * @return The material data
+	 */
+	public short getData(int index) {
+		return data[checkIndex(index)];
+	}
+
+	/**
+	 * Applies all the writes to the world, grouped by chunk, then clears the buffer.
+	 *
+	 * @param world The world to write to
+	 */
+	public void flush(World world) {
+		apply(world, originX, originY, originZ);
+		clear();
+	}
+
+	/**
+	 * Applies all the writes to the world as if the buffer's origin was at the provided
+	 * coordinates. The writes are grouped by chunk, and each chunk is looked up once and then
+	 * receives all of its writes together. Within a chunk, the writes are applied in the order they
+	 * were recorded. The buffer is left untouched and can be applied again. Applying doesn't modify
+	 * the buffer, so it is safe to apply the same buffer from many threads at once, as long as no
+	 * writes are being recorded at the same time.
+	 *
+	 * @param world The world to write to
+	 * @param x The x coordinate of the origin to use
+	 * @param y The y coordinate of the origin to use
+	 * @param z The z coordinate of the origin to use
+	 */
+	public void apply(World world, int x, int y, int z) {
+		if (size == 0) {
+			return;
+		}
+		final int[] order = groupByChunk(x, y, z);
+		Chunk chunk = null;
+		int chunkX = 0;
+		int chunkY = 0;
+		int chunkZ = 0;
+		boolean hasChunk = false;
+		for (int n = 0; n < size; n++) {
+			final int i = order[n];
+			final long position = positions[i];
+			final int bx = unpackX(position) + x;
+			final int by = unpackY(position) + y;
+			final int bz = unpackZ(position) + z;
+			final int cx = bx >> CHUNK_BITS;
+			final int cy = by >> CHUNK_BITS;
+			final int cz = bz >> CHUNK_BITS;
+			if (!hasChunk || cx != chunkX || cy != chunkY || cz != chunkZ) {
+				chunk = world.getChunkFromBlock(bx, by, bz);
+				chunkX = cx;
+				chunkY = cy;
+				chunkZ = cz;
+				hasChunk = true;
+			}
+			if (chunk != null) {
+				chunk.setBlockMaterial(bx, by, bz, palette[materials[i]], data[i], null);
+			} else {
+				world.setBlockMaterial(bx, by, bz, palette[materials[i]], data[i], null);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of distinct chunks the writes would touch if the buffer was applied with its
+	 * origin at the provided coordinates.
+	 *
+	 * @param x The x coordinate of the origin to use
+	 * @param y The y coordinate of the origin to use
+	 * @param z The z coordinate of the origin to use
+	 * @return The number of chunks touched
+	 */
+	public int getChunkCount(int x, int y, int z) {
+		if (size == 0) {
+			return 0;
+		}
+		final int[] order = groupByChunk(x, y, z);
+		int count = 0;
+		long lastKey = -1;
+		for (int n = 0; n < size; n++) {
+			final long key = chunkKey(positions[order[n]], x, y, z);
+			if (key != lastKey) {
+				count++;
+				lastKey = key;
+			}
+		}
+		return count;
+	}
+
+	// Returns the write indices grouped by chunk, in a stable order (a counting sort on bucket ids)
+	private int[] groupByChunk(int x, int y, int z) {
+		final int[] buckets = new int[size];
+		long[] keys = new long[16];
+		int[] ids = new int[16];
+		Arrays.fill(keys, -1);
+		int bucketCount = 0;
+		long lastKey = -1;
+		int lastBucket = -1;
+		for (int i = 0; i < size; i++) {
+			final long key = chunkKey(positions[i], x, y, z);
+			if (key != lastKey) {
+				int slot = hash(key) & (keys.length - 1);
+				while (keys[slot] != -1 && keys[slot] != key) {
+					slot = (slot + 1) & (keys.length - 1);
+				}
+				if (keys[slot] == -1) {
+					keys[slot] = key;
+					ids[slot] = bucketCount++;
+					if (bucketCount * 2 > keys.length) {
+						final long[] oldKeys = keys;
+						final int[] oldIds = ids;
+						keys = new long[oldKeys.length * 2];
+						ids = new int[oldIds.length * 2];
+						Arrays.fill(keys, -1);
+						for (int j = 0; j < oldKeys.length; j++) {
+							if (oldKeys[j] != -1) {
+								int newSlot = hash(oldKeys[j]) & (keys.length - 1);
+								while (keys[newSlot] != -1) {
+									newSlot = (newSlot + 1) & (keys.length - 1);
+								}
+								keys[newSlot] = oldKeys[j];
+								ids[newSlot] = oldIds[j];
+							}
+						}
+						lastBucket = bucketCount - 1;
+					} else {
+						lastBucket = ids[slot];
+					}
+				} else {
+					lastBucket = ids[slot];
+				}
+				lastKey = key;
+			}
+			buckets[i] = lastBucket;
+		}
+		final int[] starts = new int[bucketCount + 1];
+		for (int i = 0; i < size; i++) {
+			starts[buckets[i] + 1]++;
+		}
+		for (int b = 0; b < bucketCount; b++) {
+			starts[b + 1] += starts[b];
+		}
+		final int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[starts[buckets[i]]++] = i;
+		}
+		return order;
+	}
+
+	// A non negative key for the chunk containing the write, relative to the chunk of the origin
+	private static long chunkKey(long position, int x, int y, int z) {
+		final long cx = ((unpackX(position) + x) >> CHUNK_BITS) - (x >> CHUNK_BITS) + CHUNK_KEY_OFFSET;
+		final long cy = ((unpackY(position) + y) >> CHUNK_BITS) - (y >> CHUNK_BITS) + CHUNK_KEY_OFFSET;
+		final long cz = ((unpackZ(position) + z) >> CHUNK_BITS) - (z >> CHUNK_BITS) + CHUNK_KEY_OFFSET;
+		return cx << (CHUNK_KEY_BITS * 2) | cy << CHUNK_KEY_BITS | cz;
+	}
+
+	private static int hash(long key) {
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private short indexOf(BlockMaterial material) {
+		if (material == lastMaterial && material != null) {
+			return lastMaterialIndex;
+		}
+		int index = -1;
+		for (int i = 0; i < paletteSize; i++) {
+			if (palette[i] == material) {
+				index = i;
+				break;
+			}
+		}
+		if (index == -1) {
+			if (paletteSize == Short.MAX_VALUE) {
+				throw new IllegalStateException("Too many different materials in the buffer");
+			}
+			if (paletteSize == palette.length) {
+				palette = Arrays.copyOf(palette, paletteSize * 2);
+			}
+			index = paletteSize++;
+			palette[index] = material;
+		}
+		lastMaterial = material;
+		lastMaterialIndex = (short) index;
+		return lastMaterialIndex;
+	}
+
+	private void grow() {
+		final int capacity = positions.length * 2;
+		positions = Arrays.copyOf(positions, capacity);
+		materials = Arrays.copyOf(materials, capacity);
+		data = Arrays.copyOf(data, capacity);
+	}
+
+	private void checkNotEmpty() {
+		if (size == 0) {
+			throw new IllegalStateException("The buffer is empty");
+		}
+	}
+
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		return index;
+	}
+
+	private static long pack(int x, int y, int z) {
+		return ((long) checkCoordinate(x) << (COORDINATE_BITS * 2))
+				| ((long) checkCoordinate(y) << COORDINATE_BITS)
+				| checkCoordinate(z);
+	}
+
+	private static int checkCoordinate(int coordinate) {
+		final int offset = coordinate + COORDINATE_OFFSET;
+		if (offset < 0 || offset > COORDINATE_MASK) {
+			throw new IllegalArgumentException("Coordinate " + coordinate + " is too far from the origin");
+		}
+		return offset;
+	}
+
+	private static int unpackX(long position) {
+		return (int) ((position >>> (COORDINATE_BITS * 2)) & COORDINATE_MASK) - COORDINATE_OFFSET;
+	}
+
+	private static int unpackY(long position) {
+		return (int) ((position >>> COORDINATE_BITS) & COORDINATE_MASK) - COORDINATE_OFFSET;
+	}
+
+	private static int unpackZ(long position) {
+		return (int) (position & COORDINATE_MASK) - COORDINATE_OFFSET;
+	}
+
+	/**
+	 * Returns the string representation of this buffer.
+	 *
+	 * @return The string form of this buffer
+	 */
+	@Override
+	public String toString() {
+		return "VoxelBuffer{originX=" + originX + ", originY=" + originY + ", originZ=" + originZ
+				+ ", size=" + size + ", materials=" + paletteSize + '}';
+	}
+}
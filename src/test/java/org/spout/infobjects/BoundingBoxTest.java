@@ -0,0 +1,90 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.infobjects.util.BoundingBox;
+import org.spout.infobjects.util.Interval;
+
+public class BoundingBoxTest {
+	@Test
+	public void testBounded() {
+		Assert.assertFalse(BoundingBox.UNBOUNDED.isBounded());
+		Assert.assertTrue(new BoundingBox(-5, 0, -5, 5, 10, 5).isBounded());
+		// a box reaching the limits of the coordinates is unbounded, even if it's another instance
+		Assert.assertFalse(new BoundingBox(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE,
+				Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE).isBounded());
+		Assert.assertFalse(new BoundingBox(0, 0, 0, Integer.MAX_VALUE, 0, 0).isBounded());
+		Assert.assertFalse(new BoundingBox(0, Integer.MIN_VALUE, 0, 0, 0, 0).isBounded());
+	}
+
+	@Test
+	public void testOf() {
+		final BoundingBox box = BoundingBox.of(new Interval(-1.5, 2.5), new Interval(0, 3), new Interval(4));
+		Assert.assertEquals(-2, box.getMinX());
+		Assert.assertEquals(2, box.getMaxX());
+		Assert.assertEquals(0, box.getMinY());
+		Assert.assertEquals(3, box.getMaxY());
+		Assert.assertEquals(4, box.getMinZ());
+		Assert.assertEquals(4, box.getMaxZ());
+		Assert.assertTrue(box.isBounded());
+		// bounds which don't fit in the coordinates aren't clamped into a bounded box
+		Assert.assertFalse(BoundingBox.of(new Interval(0, 1e12), new Interval(0), new Interval(0)).isBounded());
+		Assert.assertFalse(BoundingBox.of(new Interval(0), new Interval(-1e12, 0), new Interval(0)).isBounded());
+		Assert.assertFalse(BoundingBox.of(Interval.UNBOUNDED, new Interval(0), new Interval(0)).isBounded());
+	}
+
+	@Test
+	public void testSize() {
+		final BoundingBox box = new BoundingBox(-3, 0, 7, 3, 0, 9);
+		Assert.assertEquals(7, box.getSizeX());
+		Assert.assertEquals(1, box.getSizeY());
+		Assert.assertEquals(3, box.getSizeZ());
+		Assert.assertEquals(21, box.getVolume());
+		final BoundingBox wide = new BoundingBox(-2000000000, 0, 0, 2000000000, 0, 0);
+		Assert.assertEquals(4000000001L, wide.getSizeX());
+		Assert.assertEquals(4000000001L, wide.getVolume());
+	}
+
+	@Test
+	public void testTranslateAndUnion() {
+		final BoundingBox box = new BoundingBox(0, 0, 0, 10, 10, 10);
+		final BoundingBox moved = box.translate(5, -5, 0);
+		Assert.assertEquals(5, moved.getMinX());
+		Assert.assertEquals(-5, moved.getMinY());
+		Assert.assertEquals(15, moved.getMaxX());
+		Assert.assertFalse(box.translate(Integer.MAX_VALUE - 5, 0, 0).isBounded());
+		Assert.assertFalse(box.translate(0, Integer.MIN_VALUE, 0).isBounded());
+		final BoundingBox union = box.union(moved);
+		Assert.assertEquals(0, union.getMinX());
+		Assert.assertEquals(-5, union.getMinY());
+		Assert.assertEquals(15, union.getMaxX());
+		Assert.assertFalse(box.union(new BoundingBox(0, 0, 0, Integer.MAX_VALUE, 0, 0)).isBounded());
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.api.geo.World;
+
+import org.spout.infobjects.condition.CuboidCondition;
+import org.spout.infobjects.condition.ShapeCondition.ConditionMode;
+import org.spout.infobjects.value.DoubleValue;
+import org.spout.infobjects.value.IncrementableValue;
+import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
+
+public class ConditionCacheTest {
+	@Test
+	public void testOnlySharedVariationCached() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("cached");
+		// grass right under the origin, a variation moves the checked block up by one
+		final IncrementableValue y = new IncrementableValue(new DoubleValue(-1), new DoubleValue(1));
+		final CuboidCondition grass = new CuboidCondition(iwgo);
+		final Map<String, Value> sizes = new HashMap<String, Value>();
+		sizes.put("x", new DoubleValue(1));
+		sizes.put("y", new DoubleValue(1));
+		sizes.put("z", new DoubleValue(1));
+		grass.setSize(sizes);
+		grass.setPosition(new DoubleValue(0), y, new DoubleValue(0));
+		grass.setMode(ConditionMode.INCLUDE);
+		grass.addBlockMaterial(WorldFaker.GRASS);
+		iwgo.addCondition(grass);
+		// the statistics count the checks which aren't served by the cache
+		iwgo.setAdaptiveConditionOrder(true);
+		iwgo.setConditionCached(true);
+		int top = -1;
+		for (int height = 58; height < 70 && top < 0; height++) {
+			if (iwgo.canPlaceObject(world, 0, height, 0)) {
+				top = height;
+			}
+		}
+		Assert.assertTrue(top > 58);
+		final long checks = grass.getStatistics().getChecks();
+		Assert.assertTrue(iwgo.canPlaceObject(world, 0, top, 0));
+		Assert.assertTrue(iwgo.canPlaceObject(world, 0, top, 0, new ValueState()));
+		Assert.assertEquals(checks, grass.getStatistics().getChecks());
+		// a variation is never served the result of the shared one
+		final ValueState variation = new ValueState();
+		y.increment(variation);
+		Assert.assertFalse(iwgo.canPlaceObject(world, 0, top, 0, variation));
+		Assert.assertFalse(iwgo.canPlaceObject(world, 0, top, 0, variation));
+		Assert.assertEquals(checks + 2, grass.getStatistics().getChecks());
+		// nor does it store its results for the shared one
+		Assert.assertTrue(iwgo.canPlaceObject(world, 0, top - 1, 0, variation));
+		// the shared result was cached by the search for the top
+		Assert.assertFalse(iwgo.canPlaceObject(world, 0, top - 1, 0));
+		Assert.assertEquals(checks + 3, grass.getStatistics().getChecks());
+	}
+}
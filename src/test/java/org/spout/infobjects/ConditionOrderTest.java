@@ -0,0 +1,168 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.api.geo.World;
+import org.spout.api.material.BlockMaterial;
+
+import org.spout.infobjects.condition.Condition;
+import org.spout.infobjects.condition.CuboidCondition;
+import org.spout.infobjects.condition.ShapeCondition.ConditionMode;
+import org.spout.infobjects.condition.SphereCondition;
+import org.spout.infobjects.value.DoubleValue;
+import org.spout.infobjects.value.Value;
+
+public class ConditionOrderTest {
+	@Test
+	public void testSameResults() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO fixed = createIWGO();
+		fixed.setAdaptiveConditionOrder(false);
+		final IWGO adaptive = createIWGO();
+		adaptive.setAdaptiveConditionOrder(true);
+		int passed = 0;
+		for (int x = -24; x < 24; x++) {
+			for (int z = -24; z < 24; z++) {
+				for (int y = 58; y < 70; y++) {
+					final boolean expected = fixed.canPlaceObject(world, x, y, z);
+					Assert.assertEquals(expected, adaptive.canPlaceObject(world, x, y, z));
+					if (expected) {
+						passed++;
+					}
+				}
+			}
+		}
+		// make sure both outcomes were compared
+		Assert.assertTrue(passed > 0);
+		Assert.assertTrue(passed < 48 * 48 * 12);
+		Assert.assertEquals(fixed.getConditions(), fixed.getConditionOrder());
+	}
+
+	@Test
+	public void testCheapSelectiveFirst() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = createIWGO();
+		iwgo.setAdaptiveConditionOrder(true);
+		final Condition main = iwgo.getConditions().get(0);
+		final Condition ground = iwgo.getConditions().get(1);
+		long fileOrderReads = 0;
+		for (int i = 0; i < 2; i++) {
+			for (Condition condition : iwgo.getConditions()) {
+				condition.getStatistics().reset();
+			}
+			for (int x = -24; x < 24; x++) {
+				for (int z = -24; z < 24; z++) {
+					for (int y = 58; y < 70; y++) {
+						iwgo.canPlaceObject(world, x, y, z);
+					}
+				}
+			}
+			long reads = 0;
+			for (Condition condition : iwgo.getConditions()) {
+				reads += condition.getStatistics().getBlockReads();
+			}
+			if (i == 0) {
+				fileOrderReads = reads;
+			} else {
+				Assert.assertTrue(reads < fileOrderReads);
+			}
+		}
+		final List<Condition> order = iwgo.getConditionOrder();
+		Assert.assertSame(ground, order.get(0));
+		Assert.assertTrue(order.indexOf(main) > 0);
+		Assert.assertTrue(ground.getStatistics().getRejectionRate() > 0.5);
+	}
+
+	@Test
+	public void testDisableRestoresFileOrder() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = createIWGO();
+		Assert.assertFalse(iwgo.isAdaptiveConditionOrder());
+		iwgo.setAdaptiveConditionOrder(true);
+		iwgo.setTraversalPlanned(true);
+		for (int x = -24; x < 24; x++) {
+			for (int z = -24; z < 24; z++) {
+				iwgo.canPlaceObject(world, x, 64, z);
+			}
+		}
+		Assert.assertFalse(iwgo.getConditions().equals(iwgo.getConditionOrder()));
+		iwgo.setAdaptiveConditionOrder(false);
+		Assert.assertEquals(iwgo.getConditions(), iwgo.getConditionOrder());
+		// no more statistics are recorded, so the order stays the file order
+		final long checks = iwgo.getConditions().get(1).getStatistics().getChecks();
+		for (int x = -24; x < 24; x++) {
+			for (int z = -24; z < 24; z++) {
+				iwgo.canPlaceObject(world, x, 64, z);
+			}
+		}
+		Assert.assertEquals(checks, iwgo.getConditions().get(1).getStatistics().getChecks());
+		Assert.assertEquals(iwgo.getConditions(), iwgo.getConditionOrder());
+	}
+
+	private static IWGO createIWGO() throws Exception {
+		final IWGO iwgo = new IWGO("ordered");
+		// expensive and rarely failing: no stone or leaves in the trunk and crown space
+		iwgo.addCondition(cuboid(iwgo, -3, 1, -3, 6, 8, 6, ConditionMode.EXCLUDE,
+				WorldFaker.STONE, WorldFaker.LEAVES));
+		// cheap and often failing: grass right under the origin
+		iwgo.addCondition(cuboid(iwgo, 0, -1, 0, 2, 1, 2, ConditionMode.INCLUDE, WorldFaker.GRASS));
+		final SphereCondition crown = new SphereCondition(iwgo);
+		final Map<String, Value> radii = new HashMap<String, Value>();
+		radii.put("radiusX", new DoubleValue(2));
+		radii.put("radiusY", new DoubleValue(1.5));
+		radii.put("radiusZ", new DoubleValue(2));
+		crown.setSize(radii);
+		crown.setPosition(new DoubleValue(0), new DoubleValue(5), new DoubleValue(0));
+		crown.setMode(ConditionMode.EXCLUDE);
+		crown.addBlockMaterial(WorldFaker.DIRT);
+		iwgo.addCondition(crown);
+		return iwgo;
+	}
+
+	private static CuboidCondition cuboid(IWGO iwgo, int x, int y, int z, int sizeX, int sizeY, int sizeZ,
+			ConditionMode mode, BlockMaterial... materials) throws Exception {
+		final CuboidCondition condition = new CuboidCondition(iwgo);
+		final Map<String, Value> sizes = new HashMap<String, Value>();
+		sizes.put("x", new DoubleValue(sizeX));
+		sizes.put("y", new DoubleValue(sizeY));
+		sizes.put("z", new DoubleValue(sizeZ));
+		condition.setSize(sizes);
+		condition.setPosition(new DoubleValue(x), new DoubleValue(y), new DoubleValue(z));
+		condition.setMode(mode);
+		for (BlockMaterial material : materials) {
+			condition.addBlockMaterial(material);
+		}
+		return condition;
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.api.geo.World;
+import org.spout.api.material.BlockMaterial;
+
+import org.spout.infobjects.condition.CuboidCondition;
+import org.spout.infobjects.condition.ShapeCondition.ConditionMode;
+import org.spout.infobjects.util.BoundingBox;
+import org.spout.infobjects.value.DoubleValue;
+import org.spout.infobjects.value.Value;
+
+public class CuboidConditionTest {
+	private static final int[][] SIZES = {
+		{2, 1, 2}, {3, 3, 3}, {4, 4, 4}, {5, 3, 6}, {8, 8, 8}, {1, 12, 7}
+	};
+
+	@Test
+	public void testBulkRead() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("cuboid");
+		for (int[] size : SIZES) {
+			final CuboidCondition include = cuboid(iwgo, -1, -size[1], -2, size[0], size[1], size[2],
+					ConditionMode.INCLUDE, WorldFaker.DIRT, WorldFaker.STONE, WorldFaker.ORE);
+			final CuboidCondition exclude = cuboid(iwgo, -2, 0, 1, size[0], size[1], size[2],
+					ConditionMode.EXCLUDE, WorldFaker.LEAVES, WorldFaker.GRASS);
+			for (CuboidCondition condition : new CuboidCondition[] {include, exclude}) {
+				int checks = 0;
+				int passed = 0;
+				for (int x = -20; x < 20; x += 3) {
+					for (int z = -20; z < 20; z += 3) {
+						for (int y = 52; y < 70; y++) {
+							final PlacementContext context = new PlacementContext(world, x, y, z);
+							final int failed = countFailed(world, x, y, z, condition);
+							checks++;
+							Assert.assertEquals(failed == 0, condition.check(context));
+							if (failed == 0) {
+								Assert.assertEquals(size[0] * size[1] * size[2], context.getReadCount());
+								passed++;
+							}
+						}
+					}
+				}
+				Assert.assertTrue(passed > 0);
+				Assert.assertTrue(passed < checks);
+			}
+		}
+	}
+
+	@Test
+	public void testCheckRegion() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("cuboid");
+		final BoundingBox region = new BoundingBox(-13, 55, -7, 6, 68, 9);
+		final Random random = new Random(7);
+		for (int[] size : SIZES) {
+			final CuboidCondition include = cuboid(iwgo, -1, -size[1], -2, size[0], size[1], size[2],
+					ConditionMode.INCLUDE, WorldFaker.DIRT, WorldFaker.STONE, WorldFaker.ORE);
+			final CuboidCondition exclude = cuboid(iwgo, -2, 0, 1, size[0], size[1], size[2],
+					ConditionMode.EXCLUDE, WorldFaker.LEAVES, WorldFaker.GRASS);
+			final CuboidCondition threshold = cuboid(iwgo, 0, -2, 0, size[0], size[1], size[2],
+					ConditionMode.THRESHOLD, WorldFaker.AIR);
+			threshold.setThreshold(40);
+			for (CuboidCondition condition : new CuboidCondition[] {include, exclude, threshold}) {
+				final boolean[] passed = new boolean[(int) region.getVolume()];
+				final boolean[] expected = new boolean[passed.length];
+				int index = 0;
+				for (int x = region.getMinX(); x <= region.getMaxX(); x++) {
+					for (int y = region.getMinY(); y <= region.getMaxY(); y++) {
+						for (int z = region.getMinZ(); z <= region.getMaxZ(); z++, index++) {
+							// origins which already failed a previous condition must stay failed
+							passed[index] = random.nextInt(8) != 0;
+							expected[index] = passed[index] && condition.check(new PlacementContext(world, x, y, z));
+						}
+					}
+				}
+				condition.checkRegion(world, region, passed);
+				for (int i = 0; i < passed.length; i++) {
+					Assert.assertEquals(expected[i], passed[i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCheckLongRegion() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("cuboid");
+		// too long for a single bulk read, so checked in slabs
+		final BoundingBox region = new BoundingBox(-30000, 61, 5, 29999, 61, 5);
+		final CuboidCondition threshold = cuboid(iwgo, 0, -4, -4, 1, 8, 8, ConditionMode.THRESHOLD, WorldFaker.AIR);
+		threshold.setThreshold(40);
+		final boolean[] passed = new boolean[(int) region.getVolume()];
+		final boolean[] expected = new boolean[passed.length];
+		final Random random = new Random(3);
+		int passing = 0;
+		for (int x = region.getMinX(), index = 0; x <= region.getMaxX(); x++, index++) {
+			passed[index] = random.nextInt(8) != 0;
+			expected[index] = passed[index] && threshold.check(new PlacementContext(world, x, 61, 5));
+			if (expected[index]) {
+				passing++;
+			}
+		}
+		Assert.assertTrue(passing > 0);
+		Assert.assertTrue(passing < passed.length);
+		threshold.checkRegion(world, region, passed);
+		for (int i = 0; i < passed.length; i++) {
+			Assert.assertEquals(expected[i], passed[i]);
+		}
+	}
+
+	@Test
+	public void testCheckRegionHugeVolume() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("cuboid");
+		// the prefix sums of this volume would overflow, each origin is checked on its own
+		final CuboidCondition include = cuboid(iwgo, 0, 1000, 0, 2000, 2000, 2000, ConditionMode.INCLUDE, WorldFaker.STONE);
+		final BoundingBox region = new BoundingBox(0, 60, 0, 1, 61, 1);
+		final boolean[] passed = new boolean[(int) region.getVolume()];
+		Arrays.fill(passed, true);
+		include.checkRegion(world, region, passed);
+		for (boolean site : passed) {
+			Assert.assertFalse(site);
+		}
+	}
+
+	@Test
+	public void testFindPlacements() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("placements");
+		iwgo.addCondition(cuboid(iwgo, 0, -1, 0, 2, 1, 2, ConditionMode.INCLUDE, WorldFaker.GRASS));
+		iwgo.addCondition(cuboid(iwgo, -2, 0, -2, 5, 6, 5, ConditionMode.EXCLUDE, WorldFaker.LEAVES,
+				WorldFaker.GRASS, WorldFaker.DIRT));
+		final CuboidCondition threshold = cuboid(iwgo, -1, -4, -1, 3, 3, 3, ConditionMode.THRESHOLD, WorldFaker.DIRT);
+		threshold.setThreshold(60);
+		iwgo.addCondition(threshold);
+		final BoundingBox region = new BoundingBox(-20, 58, -20, 19, 66, 19);
+		final List<Integer> expected = new ArrayList<Integer>();
+		for (int x = region.getMinX(); x <= region.getMaxX(); x++) {
+			for (int y = region.getMinY(); y <= region.getMaxY(); y++) {
+				for (int z = region.getMinZ(); z <= region.getMaxZ(); z++) {
+					if (iwgo.canPlaceObject(world, x, y, z)) {
+						expected.add(x);
+						expected.add(y);
+						expected.add(z);
+					}
+				}
+			}
+		}
+		Assert.assertFalse(expected.isEmpty());
+		final int[] placements = iwgo.findPlacements(world, region);
+		Assert.assertEquals(expected.size(), placements.length);
+		for (int i = 0; i < placements.length; i++) {
+			Assert.assertEquals((int) expected.get(i), placements[i]);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFindPlacementsUnbounded() {
+		new IWGO("placements").findPlacements(WorldFaker.fakeWorld(), BoundingBox.UNBOUNDED);
+	}
+
+	@Test
+	public void testProbes() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("cuboid");
+		for (int[] size : SIZES) {
+			final CuboidCondition include = cuboid(iwgo, -1, -size[1], -2, size[0], size[1], size[2],
+					ConditionMode.INCLUDE, WorldFaker.DIRT, WorldFaker.STONE, WorldFaker.ORE);
+			final CuboidCondition exclude = cuboid(iwgo, -2, 0, 1, size[0], size[1], size[2],
+					ConditionMode.EXCLUDE, WorldFaker.LEAVES, WorldFaker.GRASS);
+			for (CuboidCondition condition : new CuboidCondition[] {include, exclude}) {
+				for (int x = -20; x < 20; x += 3) {
+					for (int z = -20; z < 20; z += 3) {
+						for (int y = 52; y < 70; y++) {
+							condition.setProbes(0);
+							final boolean expected = condition.check(new PlacementContext(world, x, y, z));
+							for (int probes : new int[] {1, 9, 40}) {
+								condition.setProbes(probes);
+								Assert.assertEquals(expected, condition.check(new PlacementContext(world, x, y, z)));
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testThreshold() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("cuboid");
+		for (int[] size : SIZES) {
+			final int volume = size[0] * size[1] * size[2];
+			final CuboidCondition condition = cuboid(iwgo, -1, -size[1] / 2, -1, size[0], size[1], size[2],
+					ConditionMode.THRESHOLD, WorldFaker.AIR, WorldFaker.LEAVES);
+			// probes are ignored in the threshold mode
+			condition.setProbes(5);
+			for (int threshold : new int[] {0, 25, 50, 90, 100}) {
+				condition.setThreshold(threshold);
+				for (int x = -20; x < 20; x += 3) {
+					for (int z = -20; z < 20; z += 3) {
+						for (int y = 52; y < 70; y++) {
+							// count every block, without stopping early
+							final int matched = volume - countFailed(world, x, y, z, condition);
+							final PlacementContext context = new PlacementContext(world, x, y, z);
+							Assert.assertEquals(matched * 100 >= volume * threshold, condition.check(context));
+							// a threshold of zero is always reached, without reading anything
+							Assert.assertTrue(context.getReadCount() <= (threshold == 0 ? 0 : volume));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("cuboid");
+		final CuboidCondition include = cuboid(iwgo, -32, 0, -32, 64, 32, 64, ConditionMode.INCLUDE,
+				WorldFaker.AIR, WorldFaker.LEAVES);
+		final CuboidCondition exclude = cuboid(iwgo, -32, -16, -32, 64, 32, 64, ConditionMode.EXCLUDE,
+				WorldFaker.ORE);
+		final CuboidCondition threshold = cuboid(iwgo, -32, -16, -32, 64, 32, 64, ConditionMode.THRESHOLD,
+				WorldFaker.AIR);
+		threshold.setThreshold(50);
+		final int volume = 64 * 32 * 64;
+		for (CuboidCondition condition : new CuboidCondition[] {include, exclude, threshold}) {
+			for (int y : new int[] {40, 58, 62, 80}) {
+				for (int xz : new int[] {-100, 37}) {
+					final int failed = countFailed(world, xz, y, xz, condition);
+					final boolean expected = condition == threshold ? (volume - failed) * 2 >= volume : failed == 0;
+					final PlacementContext context = new PlacementContext(world, xz, y, xz);
+					Assert.assertEquals(expected, condition.check(context));
+					Assert.assertTrue(context.getReadCount() <= volume);
+				}
+			}
+		}
+	}
+
+	// the plain scan, reading the volume block by block
+	private static int countFailed(World world, int x, int y, int z, CuboidCondition condition) {
+		final BoundingBox bounds = condition.getBounds();
+		int failed = 0;
+		for (int xx = bounds.getMinX(); xx <= bounds.getMaxX(); xx++) {
+			for (int yy = bounds.getMinY(); yy <= bounds.getMaxY(); yy++) {
+				for (int zz = bounds.getMinZ(); zz <= bounds.getMaxZ(); zz++) {
+					final BlockMaterial material = world.getBlockMaterial(x + xx, y + yy, z + zz);
+					if (!condition.getMode().check(material, condition.getMaterials())) {
+						failed++;
+					}
+				}
+			}
+		}
+		return failed;
+	}
+
+	private static CuboidCondition cuboid(IWGO iwgo, int x, int y, int z, int sizeX, int sizeY, int sizeZ,
+			ConditionMode mode, BlockMaterial... materials) throws Exception {
+		final CuboidCondition condition = new CuboidCondition(iwgo);
+		final Map<String, Value> sizes = new HashMap<String, Value>();
+		sizes.put("x", new DoubleValue(sizeX));
+		sizes.put("y", new DoubleValue(sizeY));
+		sizes.put("z", new DoubleValue(sizeZ));
+		condition.setSize(sizes);
+		condition.setPosition(new DoubleValue(x), new DoubleValue(y), new DoubleValue(z));
+		condition.setMode(mode);
+		for (BlockMaterial material : materials) {
+			condition.addBlockMaterial(material);
+		}
+		return condition;
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.infobjects.util.RandomOwner;
+import org.spout.infobjects.value.DoubleValue;
+import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueParser;
+import org.spout.infobjects.value.ValueState;
+import org.spout.infobjects.variable.DependencyGraph;
+import org.spout.infobjects.variable.Variable;
+import org.spout.infobjects.variable.VariableTable;
+
+public class DependencyGraphTest {
+	@Test
+	public void testOrder() {
+		final VariableTable table = new VariableTable();
+		add(table, "c", "b + 1");
+		add(table, "k2", "k * 2");
+		add(table, "b", "a * 2");
+		add(table, "a", "ranI=1-5").setRandom(new Random(1));
+		table.addVariable(new Variable("k", new DoubleValue(12)));
+		final DependencyGraph graph = build(table);
+		final List<Variable> order = graph.getOrder();
+		Assert.assertEquals(5, order.size());
+		Assert.assertTrue(order.indexOf(table.getVariable("a")) < order.indexOf(table.getVariable("b")));
+		Assert.assertTrue(order.indexOf(table.getVariable("b")) < order.indexOf(table.getVariable("c")));
+		Assert.assertTrue(order.indexOf(table.getVariable("k")) < order.indexOf(table.getVariable("k2")));
+		Assert.assertTrue(graph.isConstant(table.getVariable("k")));
+		Assert.assertTrue(graph.isConstant(table.getVariable("k2")));
+		Assert.assertEquals(24, table.getVariable("k2").getValue(), 0);
+		for (String name : new String[] {"a", "b", "c"}) {
+			Assert.assertFalse(graph.isConstant(table.getVariable(name)));
+		}
+		Assert.assertEquals(1, graph.getDependencies(table.getVariable("c")).size());
+		Assert.assertSame(table.getVariable("b"), graph.getDependencies(table.getVariable("c")).get(0));
+		Assert.assertTrue(table.isScheduled());
+	}
+
+	@Test
+	public void testSameAsCalculateAll() {
+		// declared against the dependencies, calculated in dependency order by the graph
+		final VariableTable scheduled = new VariableTable();
+		add(scheduled, "c", "b + a / 2");
+		add(scheduled, "b", "a * 2 + k");
+		add(scheduled, "a", "ranI=1-50").setRandom(new Random(8));
+		scheduled.addVariable(new Variable("k", new DoubleValue(3)));
+		build(scheduled);
+		// declared in dependency order, every variable calculated in declaration order
+		final VariableTable plain = new VariableTable();
+		plain.addVariable(new Variable("k", new DoubleValue(3)));
+		add(plain, "a", "ranI=1-50").setRandom(new Random(8));
+		add(plain, "b", "a * 2 + k");
+		add(plain, "c", "b + a / 2");
+		for (int i = 0; i < 100; i++) {
+			scheduled.calculate();
+			plain.calculateAll();
+			for (String name : new String[] {"k", "a", "b", "c"}) {
+				Assert.assertEquals(plain.getVariable(name).getValue(), scheduled.getVariable(name).getValue(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testCycles() {
+		final VariableTable table = new VariableTable();
+		add(table, "x", "y + 1");
+		add(table, "y", "x + 1");
+		add(table, "z", "x * 2");
+		add(table, "s", "s + 1");
+		add(table, "m", "missing + 1");
+		table.addVariable(new Variable("w", new DoubleValue(3)));
+		add(table, "w2", "w - 1");
+		final DependencyGraph graph = build(table);
+		final List<Variable> order = graph.getOrder();
+		// every variable is ordered once, cycles included
+		Assert.assertEquals(table.size(), order.size());
+		Assert.assertEquals(table.size(), new HashSet<Variable>(order).size());
+		for (String name : new String[] {"x", "y", "z", "s", "m"}) {
+			Assert.assertFalse(name, graph.isConstant(table.getVariable(name)));
+		}
+		Assert.assertTrue(graph.isConstant(table.getVariable("w")));
+		Assert.assertTrue(graph.isConstant(table.getVariable("w2")));
+		// variables in a cycle keep the order of their table
+		Assert.assertTrue(order.indexOf(table.getVariable("x")) < order.indexOf(table.getVariable("y")));
+		Assert.assertTrue(order.indexOf(table.getVariable("y")) < order.indexOf(table.getVariable("z")));
+		// the same as calculating every variable in declaration order
+		final VariableTable plain = new VariableTable();
+		add(plain, "x", "y + 1");
+		add(plain, "y", "x + 1");
+		add(plain, "z", "x * 2");
+		add(plain, "s", "s + 1");
+		add(plain, "m", "missing + 1");
+		plain.addVariable(new Variable("w", new DoubleValue(3)));
+		add(plain, "w2", "w - 1");
+		for (int i = 0; i < 10; i++) {
+			table.calculate();
+			plain.calculateAll();
+			for (Variable variable : plain.getVariables()) {
+				final String name = variable.getName();
+				Assert.assertEquals(name, variable.getValue(), table.getVariable(name).getValue(), 0);
+			}
+		}
+		Assert.assertEquals(10, table.getVariable("s").getValue(), 0);
+	}
+
+	@Test
+	public void testTables() {
+		final VariableTable iwgo = new VariableTable();
+		final VariableTable instruction = new VariableTable();
+		add(instruction, "q", "a + 100", iwgo, instruction);
+		add(iwgo, "a", "ranI=1-5", iwgo).setRandom(new Random(4));
+		add(iwgo, "r", "q + 1", iwgo);
+		final DependencyGraph graph = new DependencyGraph();
+		graph.add(iwgo);
+		graph.add(instruction);
+		graph.build();
+		final List<Variable> order = graph.getOrder();
+		Assert.assertTrue(order.indexOf(iwgo.getVariable("a")) < order.indexOf(instruction.getVariable("q")));
+		// the iWGO can't see the instruction's variables
+		Assert.assertFalse(graph.isConstant(iwgo.getVariable("r")));
+		Assert.assertTrue(graph.getDependencies(iwgo.getVariable("r")).isEmpty());
+		for (int i = 0; i < 20; i++) {
+			iwgo.calculate();
+			instruction.calculate();
+			Assert.assertEquals(iwgo.getVariable("a").getValue() + 100, instruction.getVariable("q").getValue(), 0);
+		}
+	}
+
+	@Test
+	public void testValues() {
+		final VariableTable table = new VariableTable();
+		add(table, "a", "ranI=1-1000").setRandom(new Random(3));
+		table.addVariable(new Variable("k", new DoubleValue(5)));
+		final Value fixed = ValueParser.parse("k * 2", table);
+		final Value varying = ValueParser.parse("a + k", table);
+		final Value random = ValueParser.parse("ranI=1-1000");
+		((RandomOwner) random).setRandom(new Random(6));
+		final DependencyGraph graph = new DependencyGraph();
+		graph.add(table);
+		graph.add(Arrays.asList(fixed, varying, random, null));
+		graph.build();
+		Assert.assertTrue(graph.isConstant(fixed));
+		Assert.assertFalse(graph.isConstant(varying));
+		Assert.assertFalse(graph.isConstant(random));
+		Assert.assertTrue(graph.isSource(random));
+		Assert.assertFalse(graph.isSource(varying));
+		Assert.assertEquals(Arrays.asList(table.getVariable("a"), table.getVariable("k")),
+				graph.getDependencies(varying));
+		// the constant value is calculated by the build
+		Assert.assertEquals(10, fixed.getValue(), 0);
+		for (int i = 0; i < 20; i++) {
+			table.calculate();
+			graph.calculateValues();
+			Assert.assertEquals(table.getVariable("a").getValue() + 5, varying.getValue(), 0);
+			Assert.assertEquals(10, fixed.getValue(), 0);
+		}
+		final ValueState state = new ValueState(new Random(9));
+		table.calculate(state);
+		graph.calculateValues(state);
+		Assert.assertEquals(table.getVariable("a").getValue(state) + 5, varying.getValue(state), 0);
+		Assert.assertEquals(10, fixed.getValue(state), 0);
+	}
+
+	@Test
+	public void testDependents() {
+		final VariableTable table = new VariableTable();
+		add(table, "c", "b + 1");
+		add(table, "b", "a * 2");
+		table.addVariable(new Variable("a", new DoubleValue(1)));
+		add(table, "d", "ranI=1-5");
+		add(table, "f", "d + 1");
+		final Value usesC = ValueParser.parse("c * 3", table);
+		final Value usesF = ValueParser.parse("f * 3", table);
+		final DependencyGraph graph = new DependencyGraph();
+		graph.add(table);
+		graph.add(Arrays.asList(usesC, usesF));
+		graph.build();
+		final Variable a = table.getVariable("a");
+		final Variable b = table.getVariable("b");
+		final Variable c = table.getVariable("c");
+		final List<Value> scope = Arrays.<Value>asList(usesF, usesC, c, b, table.getVariable("f"));
+		// in topological order, only from the scope, and without the values that don't depend on a
+		Assert.assertEquals(Arrays.<Value>asList(b, c, usesC),
+				graph.getDependents(Collections.singletonList(a), scope));
+		Assert.assertEquals(Arrays.<Value>asList(c, usesC),
+				graph.getDependents(Collections.singletonList(c), scope));
+		Assert.assertTrue(graph.getDependents(Collections.singletonList(usesC), scope).equals(
+				Collections.singletonList(usesC)));
+		Assert.assertTrue(graph.getDependents(Collections.<Value>emptyList(), scope).isEmpty());
+	}
+
+	private static DependencyGraph build(VariableTable table) {
+		final DependencyGraph graph = new DependencyGraph();
+		graph.add(table);
+		graph.build();
+		return graph;
+	}
+
+	private static RandomOwner add(VariableTable table, String name, String expression) {
+		return add(table, name, expression, table);
+	}
+
+	private static RandomOwner add(VariableTable table, String name, String expression, VariableTable... sources) {
+		final Value value = ValueParser.parse(expression, sources);
+		table.addVariable(new Variable(name, value));
+		return value instanceof RandomOwner ? (RandomOwner) value : null;
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import de.congrace.exp4j.constant.Constants;
+import de.congrace.exp4j.expression.Calculable;
+import de.congrace.exp4j.expression.ExpressionBuilder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.infobjects.expression.ExpressionParser;
+import org.spout.infobjects.function.RandomDoubleFunction;
+import org.spout.infobjects.function.RandomIntFunction;
+import org.spout.infobjects.value.DoubleValue;
+import org.spout.infobjects.value.VariableMathExpressionValue;
+import org.spout.infobjects.variable.Variable;
+
+public class ExpressionCompilerTest {
+	private static final int SEEDS = 20;
+	// the expressions of the huge_tree test iWGO
+	private static final String[] HUGE_TREE_EXPRESSIONS = {
+		"ranF(0, 2) * PI",
+		"sin(angle) * 6",
+		"cos(angle) * 6",
+		"minLeafHeight - 3",
+		"height + 1",
+		"height"
+	};
+	// operator precedence, implicit multiplication and constants
+	private static final String[] SYNTAX_EXPRESSIONS = {
+		"-2^2",
+		"2^-2",
+		"-x^2",
+		"2^3^2",
+		"-x * y",
+		"10 - 4 - 3",
+		"x % 3 * 2",
+		"2x",
+		"2(x)",
+		"(x)(y)",
+		"2x^2",
+		"sin(3/4 * PI) * 10 + 2",
+		"pi",
+		"PI",
+		"e",
+		"E",
+		"2e",
+		"e * 2 + pi",
+		"ranI(1, 4) + x * ranF(0, 1)",
+		"ranI(1, 4) ^ 0 + ranF(0, 1)",
+		"abs(-y) + sqrt(x) - floor(y)"
+	};
+	// constants next to variables using their names
+	private static final String[] CONSTANT_EXPRESSIONS = {
+		"e",
+		"pi",
+		"E",
+		"PI",
+		"2e",
+		"e * x",
+		"x^e - pi",
+		"E * (x + 1)"
+	};
+
+	@Test
+	public void testHugeTreeExpressions() {
+		final Map<String, Double> variables = new LinkedHashMap<String, Double>();
+		variables.put("angle", 1.2);
+		variables.put("height", 27d);
+		variables.put("minLeafHeight", 8d);
+		for (String expression : HUGE_TREE_EXPRESSIONS) {
+			assertParity(expression, variables);
+		}
+	}
+
+	@Test
+	public void testSyntax() {
+		final Map<String, Double> variables = new LinkedHashMap<String, Double>();
+		variables.put("x", 7d);
+		variables.put("y", -2.5);
+		for (String expression : SYNTAX_EXPRESSIONS) {
+			assertParity(expression, variables);
+		}
+	}
+
+	@Test
+	public void testConstantNamedVariables() {
+		final Map<String, Double> variables = new LinkedHashMap<String, Double>();
+		variables.put("x", 3d);
+		variables.put("e", 5d);
+		variables.put("pi", 11d);
+		variables.put("E", 13d);
+		for (String expression : CONSTANT_EXPRESSIONS) {
+			assertParity(expression, variables);
+		}
+	}
+
+	@Test
+	public void testRandomOperandsKept() {
+		Assert.assertTrue(ExpressionParser.parse("x ^ 0").simplify().isConstant(1));
+		Assert.assertTrue(ExpressionParser.parse("ranF(0, 1) ^ 0").simplify().isRandom());
+		Assert.assertTrue(ExpressionParser.parse("(2 * ranI(1, 4)) ^ (1 - 1)").simplify().isRandom());
+	}
+
+	private static void assertParity(String expression, Map<String, Double> variables) {
+		final IWGO source = new IWGO("parity");
+		for (Map.Entry<String, Double> variable : variables.entrySet()) {
+			source.addVariable(new Variable(variable.getKey(), new DoubleValue(variable.getValue())));
+		}
+		final VariableMathExpressionValue value;
+		try {
+			value = new VariableMathExpressionValue(expression);
+		} catch (Exception ex) {
+			throw new AssertionError("Couldn't build \"" + expression + "\": " + ex);
+		}
+		value.addVariableSources(source);
+		Assert.assertTrue("\"" + expression + "\" is not compiled", value.isCompiled());
+		for (long seed = 0; seed < SEEDS; seed++) {
+			value.setRandom(new Random(seed));
+			value.calculate();
+			final double expected = calculateWithExp4j(expression, variables, seed);
+			Assert.assertEquals("\"" + expression + "\" with seed " + seed, expected, value.getValue(),
+					Math.abs(expected) * 1e-12);
+		}
+	}
+
+	private static double calculateWithExp4j(String expression, Map<String, Double> variables, long seed) {
+		final List<String> names = new ArrayList<String>();
+		for (String name : variables.keySet()) {
+			if (!Constants.isConstant(name)) {
+				names.add(name);
+			}
+		}
+		final Random random = new Random(seed);
+		final RandomIntFunction randomInt = new RandomIntFunction();
+		randomInt.setRandom(random);
+		final RandomDoubleFunction randomDouble = new RandomDoubleFunction();
+		randomDouble.setRandom(random);
+		try {
+			final Calculable calculable = new ExpressionBuilder(expression).withVariableNames(names)
+					.withCustomFunctions(randomInt, randomDouble).build();
+			for (String name : names) {
+				calculable.setVariable(name, variables.get(name));
+			}
+			return calculable.calculate();
+		} catch (Exception ex) {
+			throw new AssertionError("exp4j couldn't build \"" + expression + "\": " + ex);
+		}
+	}
+}
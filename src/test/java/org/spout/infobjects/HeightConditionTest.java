@@ -0,0 +1,140 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.api.geo.World;
+
+import org.spout.infobjects.condition.HeightCondition;
+import org.spout.infobjects.util.BoundingBox;
+import org.spout.infobjects.value.DoubleValue;
+
+public class HeightConditionTest {
+	@Test
+	public void testGround() {
+		final World world = WorldFaker.fakeWorld();
+		final HeightCondition condition = height(-2, -2, 5, 4);
+		condition.setGround(new DoubleValue(-3), new DoubleValue(-1));
+		assertSameAsScan(world, condition, -3, -1, -1, -1);
+	}
+
+	@Test
+	public void testFlatness() {
+		final World world = WorldFaker.fakeWorld();
+		for (int flatness = 0; flatness <= 3; flatness++) {
+			final HeightCondition condition = height(-3, -1, 6, 3);
+			condition.setFlatness(flatness);
+			assertSameAsScan(world, condition, Integer.MIN_VALUE, Integer.MAX_VALUE, flatness, -1);
+		}
+	}
+
+	@Test
+	public void testSlope() {
+		final World world = WorldFaker.fakeWorld();
+		for (int slope = 0; slope <= 3; slope++) {
+			final HeightCondition condition = height(0, -4, 3, 9);
+			condition.setSlope(slope);
+			condition.setGround(null, new DoubleValue(0));
+			assertSameAsScan(world, condition, Integer.MIN_VALUE, 0, -1, slope);
+		}
+	}
+
+	@Test
+	public void testEmptyFootprint() {
+		final HeightCondition condition = height(0, 0, 0, 4);
+		condition.setGround(new DoubleValue(1000), null);
+		Assert.assertTrue(condition.check(new PlacementContext(WorldFaker.fakeWorld(), 0, 64, 0)));
+	}
+
+	private static void assertSameAsScan(World world, HeightCondition condition, int min, int max,
+			int flatness, int slope) {
+		int checks = 0;
+		int passed = 0;
+		for (int x = -40; x < 40; x++) {
+			for (int z = -40; z < 40; z += 3) {
+				for (int y = 59; y < 66; y++) {
+					final boolean expected = scan(x, y, z, condition, min, max, flatness, slope);
+					Assert.assertEquals(expected, condition.check(new PlacementContext(world, x, y, z)));
+					checks++;
+					if (expected) {
+						passed++;
+					}
+				}
+			}
+		}
+		Assert.assertTrue(passed > 0);
+		Assert.assertTrue(passed < checks);
+	}
+
+	// the plain check: find each column's surface block by block, then compare every pair of columns
+	private static boolean scan(int x, int y, int z, HeightCondition condition, int min, int max,
+			int flatness, int slope) {
+		final BoundingBox columns = condition.getBounds();
+		final int sizeX = (int) columns.getSizeX();
+		final int sizeZ = (int) columns.getSizeZ();
+		final int[][] heights = new int[sizeX][sizeZ];
+		for (int xx = 0; xx < sizeX; xx++) {
+			for (int zz = 0; zz < sizeZ; zz++) {
+				int height = 255;
+				while (WorldFaker.getBlockMaterial(x + columns.getMinX() + xx, height, z + columns.getMinZ() + zz)
+						== WorldFaker.AIR) {
+					height--;
+				}
+				heights[xx][zz] = height - y;
+			}
+		}
+		for (int x1 = 0; x1 < sizeX; x1++) {
+			for (int z1 = 0; z1 < sizeZ; z1++) {
+				final int height = heights[x1][z1];
+				if (height < min || height > max) {
+					return false;
+				}
+				for (int x2 = 0; x2 < sizeX; x2++) {
+					for (int z2 = 0; z2 < sizeZ; z2++) {
+						final int difference = Math.abs(height - heights[x2][z2]);
+						if (flatness >= 0 && difference > flatness) {
+							return false;
+						}
+						if (slope >= 0 && Math.abs(x1 - x2) + Math.abs(z1 - z2) == 1 && difference > slope) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private static HeightCondition height(int x, int z, int sizeX, int sizeZ) {
+		final HeightCondition condition = new HeightCondition(null);
+		condition.setPosition(new DoubleValue(x), new DoubleValue(z));
+		condition.setSize(new DoubleValue(sizeX), new DoubleValue(sizeZ));
+		return condition;
+	}
+}
@@ -30,6 +30,7 @@ import java.io.File;
 import java.lang.reflect.Constructor;
 import java.util.Random;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -42,8 +43,10 @@ import org.spout.infobjects.instruction.RepeatInstruction;
 import org.spout.infobjects.instruction.ShapeInstruction;
 import org.spout.infobjects.material.MaterialSetter;
 import org.spout.infobjects.shape.Shape;
+import org.spout.infobjects.util.BoundingBox;
 import org.spout.infobjects.value.IncrementableValue;
 import org.spout.infobjects.variable.Variable;
+import org.spout.infobjects.voxel.VoxelBuffer;
 
 public class IWGOTest {
 	@Before
@@ -64,6 +67,20 @@ public class IWGOTest {
 		iwgo.randomize();
 		System.out.println("Estimated randomization time: " + (System.nanoTime() - start) / 1000000d + "ms");
 
+		start = System.nanoTime();
+		final VoxelBuffer placement = iwgo.dryRun(0, 64, 0);
+		System.out.println("Estimated dry run time: " + (System.nanoTime() - start) / 1000000d + "ms");
+		Assert.assertFalse(placement.isEmpty());
+		Assert.assertEquals(64, placement.getMinY());
+		final BoundingBox bounds = iwgo.getBounds().translate(0, 64, 0);
+		Assert.assertTrue(bounds.isBounded());
+		Assert.assertTrue(bounds.contains(placement.getMinX(), placement.getMinY(), placement.getMinZ()));
+		Assert.assertTrue(bounds.contains(placement.getMaxX(), placement.getMaxY(), placement.getMaxZ()));
+		System.out.println("Dry run: " + placement.size() + " blocks from (" + placement.getMinX() + ", "
+				+ placement.getMinY() + ", " + placement.getMinZ() + ") to (" + placement.getMaxX() + ", "
+				+ placement.getMaxY() + ", " + placement.getMaxZ() + ")");
+		System.out.println();
+
 		System.out.println("Variables:");
 		for (Variable variable : iwgo.getVariables()) {
 			System.out.println('\t' + variable.toString());
@@ -0,0 +1,136 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.api.geo.World;
+import org.spout.api.util.config.ConfigurationNode;
+
+import org.spout.infobjects.condition.Condition;
+import org.spout.infobjects.instruction.Instruction;
+import org.spout.infobjects.material.MaterialSetter;
+import org.spout.infobjects.util.BoundingBox;
+import org.spout.infobjects.voxel.VoxelBuffer;
+
+public class LegacyApiTest {
+	@Test
+	public void testLegacyCondition() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("legacy");
+		iwgo.addCondition(new GrassCondition(iwgo));
+		final BoundingBox region = new BoundingBox(-8, 60, -8, 7, 67, 7);
+		int expected = 0;
+		for (int x = -8; x < 8; x++) {
+			for (int y = 60; y < 68; y++) {
+				for (int z = -8; z < 8; z++) {
+					final boolean grass = WorldFaker.getBlockMaterial(x, y - 1, z) == WorldFaker.GRASS;
+					Assert.assertEquals(grass, iwgo.canPlaceObject(world, x, y, z));
+					if (grass) {
+						expected++;
+					}
+				}
+			}
+		}
+		Assert.assertTrue(expected > 0);
+		// the region check doesn't go through the iWGO checks, each origin must still be entered
+		final int[] placements = iwgo.findPlacements(world, region);
+		Assert.assertEquals(expected * 3, placements.length);
+		for (int i = 0; i < placements.length; i += 3) {
+			Assert.assertSame(WorldFaker.GRASS,
+					WorldFaker.getBlockMaterial(placements[i], placements[i + 1] - 1, placements[i + 2]));
+		}
+	}
+
+	@Test
+	public void testLegacyInstruction() throws Exception {
+		final IWGO iwgo = new IWGO("legacy");
+		iwgo.addInstruction(new LeavesInstruction(iwgo));
+		final VoxelBuffer placement = iwgo.dryRun(4, 64, -2);
+		Assert.assertEquals(1, placement.size());
+		Assert.assertEquals(4, placement.getX(0));
+		Assert.assertEquals(65, placement.getY(0));
+		Assert.assertEquals(-2, placement.getZ(0));
+		Assert.assertSame(WorldFaker.LEAVES, placement.getMaterial(0));
+	}
+
+	// a condition written before the contexts, reading the world through the iWGO
+	@SuppressWarnings("deprecation")
+	private static class GrassCondition extends Condition {
+		private GrassCondition(IWGO iwgo) {
+			super(iwgo);
+		}
+
+		@Override
+		public void load(ConfigurationNode properties) {
+		}
+
+		@Override
+		public boolean check() {
+			return getIWGO().getBlockMaterial(0, -1, 0) == WorldFaker.GRASS;
+		}
+
+		@Override
+		public void randomize() {
+		}
+
+		@Override
+		public void setRandom(Random random) {
+		}
+	}
+
+	// an instruction written before the contexts, setting the blocks through the iWGO
+	@SuppressWarnings("deprecation")
+	private static class LeavesInstruction extends Instruction {
+		private final MaterialSetter setter = new MaterialSetter("leaves") {
+			@Override
+			public void load(ConfigurationNode properties) {
+			}
+
+			@Override
+			public void setMaterial(VoxelBuffer buffer, int x, int y, int z, boolean outer) {
+				buffer.add(x, y, z, WorldFaker.LEAVES, (short) 0);
+			}
+		};
+
+		private LeavesInstruction(IWGO iwgo) {
+			super(iwgo, "leaves");
+		}
+
+		@Override
+		public void load(ConfigurationNode properties) {
+		}
+
+		@Override
+		public void execute() {
+			getIWGO().setMaterial(setter, 0, 1, 0, true);
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.api.math.GenericMath;
+import org.spout.api.util.config.ConfigurationNode;
+
+import org.spout.infobjects.material.MaterialSetter;
+import org.spout.infobjects.shape.Line;
+import org.spout.infobjects.value.DoubleValue;
+import org.spout.infobjects.value.Value;
+import org.spout.infobjects.voxel.VoxelBuffer;
+
+public class LineTest {
+	private static final int ORIGIN_X = 10;
+	private static final int ORIGIN_Y = 64;
+	private static final int ORIGIN_Z = -20;
+
+	@Test
+	public void testAxisAligned() throws Exception {
+		assertVoxels(draw(0, 0, 0, 3, 0, 0),
+				0, 0, 0, 1, 0, 0, 2, 0, 0, 3, 0, 0);
+		assertVoxels(draw(0.5, 0.5, 0.5, 0, -2, 0),
+				0, 0, 0, 0, -1, 0, 0, -2, 0);
+		assertVoxels(draw(2.25, 1, 0.75, 0, 0, 1.5),
+				2, 1, 0, 2, 1, 1, 2, 1, 2);
+	}
+
+	@Test
+	public void testDiagonal() throws Exception {
+		assertVoxels(draw(0, 0, 0, 2, 2, 0),
+				0, 0, 0, 1, 0, 0, 1, 1, 0, 2, 1, 0, 2, 2, 0);
+		assertVoxels(draw(0.5, 0.5, 0.5, 3, 1, 0),
+				0, 0, 0, 1, 0, 0, 2, 0, 0, 2, 1, 0, 3, 1, 0);
+		assertVoxels(draw(0, 0, 0, -2, 0, -1),
+				0, 0, 0, -1, 0, 0, -1, 0, -1, -2, 0, -1);
+	}
+
+	@Test
+	public void testZeroLength() throws Exception {
+		assertVoxels(draw(1.5, 2.5, -3.5, 0, 0, 0),
+				1, 2, -4);
+		assertVoxels(draw(4, 4, 4, 0.25, 0.5, 0.75),
+				4, 4, 4);
+	}
+
+	@Test
+	public void testTraversalProperties() throws Exception {
+		final Random random = new Random(12345);
+		for (int i = 0; i < 2000; i++) {
+			final double startX = (random.nextDouble() - 0.5) * 20;
+			final double startY = (random.nextDouble() - 0.5) * 20;
+			final double startZ = (random.nextDouble() - 0.5) * 20;
+			final double dx = (random.nextDouble() - 0.5) * 30;
+			final double dy = random.nextInt(4) == 0 ? 0 : (random.nextDouble() - 0.5) * 30;
+			final double dz = (random.nextDouble() - 0.5) * 30;
+			final List<int[]> voxels = draw(startX, startY, startZ, dx, dy, dz);
+			final int x0 = GenericMath.floor(startX);
+			final int y0 = GenericMath.floor(startY);
+			final int z0 = GenericMath.floor(startZ);
+			final int x1 = GenericMath.floor(startX + dx);
+			final int y1 = GenericMath.floor(startY + dy);
+			final int z1 = GenericMath.floor(startZ + dz);
+			Assert.assertArrayEquals(new int[] {x0, y0, z0}, voxels.get(0));
+			Assert.assertArrayEquals(new int[] {x1, y1, z1}, voxels.get(voxels.size() - 1));
+			Assert.assertEquals(Math.abs(x1 - x0) + Math.abs(y1 - y0) + Math.abs(z1 - z0) + 1, voxels.size());
+			final Set<String> seen = new HashSet<String>();
+			for (int j = 0; j < voxels.size(); j++) {
+				final int[] voxel = voxels.get(j);
+				Assert.assertTrue(seen.add(voxel[0] + " " + voxel[1] + " " + voxel[2]));
+				Assert.assertTrue(crosses(voxel, startX, startY, startZ, dx, dy, dz));
+				if (j > 0) {
+					final int[] previous = voxels.get(j - 1);
+					Assert.assertEquals(1, Math.abs(voxel[0] - previous[0])
+							+ Math.abs(voxel[1] - previous[1]) + Math.abs(voxel[2] - previous[2]));
+				}
+			}
+		}
+	}
+
+	private static List<int[]> draw(double x, double y, double z, double dx, double dy, double dz)
+			throws Exception {
+		final RecordingSetter setter = new RecordingSetter();
+		final Line line = new Line(null);
+		line.setPosition(new DoubleValue(x), new DoubleValue(y), new DoubleValue(z));
+		final Map<String, Value> sizes = new HashMap<String, Value>();
+		sizes.put("lengthX", new DoubleValue(dx));
+		sizes.put("lengthY", new DoubleValue(dy));
+		sizes.put("lengthZ", new DoubleValue(dz));
+		line.setSize(sizes);
+		line.setMaterialSetter(setter);
+		line.draw(new PlacementContext(null, ORIGIN_X, ORIGIN_Y, ORIGIN_Z, new VoxelBuffer(ORIGIN_X, ORIGIN_Y, ORIGIN_Z)));
+		return setter.voxels;
+	}
+
+	private static void assertVoxels(List<int[]> voxels, int... expected) {
+		Assert.assertEquals(expected.length / 3, voxels.size());
+		for (int i = 0; i < voxels.size(); i++) {
+			Assert.assertArrayEquals(new int[] {expected[i * 3], expected[i * 3 + 1], expected[i * 3 + 2]},
+					voxels.get(i));
+		}
+	}
+
+	// Slab test of the segment against the voxel, slightly enlarged for rounding
+	private static boolean crosses(int[] voxel, double x, double y, double z, double dx, double dy, double dz) {
+		final double[] start = {x, y, z};
+		final double[] length = {dx, dy, dz};
+		double min = 0;
+		double max = 1;
+		for (int i = 0; i < 3; i++) {
+			final double low = voxel[i] - 1e-9;
+			final double high = voxel[i] + 1 + 1e-9;
+			if (length[i] == 0) {
+				if (start[i] < low || start[i] > high) {
+					return false;
+				}
+				continue;
+			}
+			double t0 = (low - start[i]) / length[i];
+			double t1 = (high - start[i]) / length[i];
+			if (t0 > t1) {
+				final double swap = t0;
+				t0 = t1;
+				t1 = swap;
+			}
+			min = Math.max(min, t0);
+			max = Math.min(max, t1);
+		}
+		return min <= max;
+	}
+
+	private static class RecordingSetter extends MaterialSetter {
+		private final List<int[]> voxels = new ArrayList<int[]>();
+
+		public RecordingSetter() {
+			super("recording");
+		}
+
+		@Override
+		public void load(ConfigurationNode properties) {
+		}
+
+		@Override
+		public void setMaterial(VoxelBuffer buffer, int x, int y, int z, boolean outer) {
+			voxels.add(new int[] {x - ORIGIN_X, y - ORIGIN_Y, z - ORIGIN_Z});
+		}
+	}
+}
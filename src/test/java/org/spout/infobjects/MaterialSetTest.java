@@ -0,0 +1,133 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.api.material.BlockMaterial;
+import org.spout.api.material.Material;
+
+import org.spout.infobjects.condition.ShapeCondition.ConditionMode;
+import org.spout.infobjects.material.MaterialSet;
+
+public class MaterialSetTest {
+	private static final List<BlockMaterial> MATERIALS = new ArrayList<BlockMaterial>();
+
+	static {
+		EngineFaker.setupEngine();
+		for (int i = 0; i < 6; i++) {
+			final BlockMaterial parent = new TestMaterial("Set Material " + i);
+			MATERIALS.add(parent);
+			if (i % 2 == 0) {
+				for (int data = 1; data <= 3; data++) {
+					MATERIALS.add(new TestMaterial("Set Material " + i + ":" + data, data, parent));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSameAsHashSet() {
+		final Random random = new Random(42);
+		final MaterialSet set = new MaterialSet();
+		final Set<BlockMaterial> reference = new HashSet<BlockMaterial>();
+		for (int i = 0; i < 5000; i++) {
+			final BlockMaterial material = MATERIALS.get(random.nextInt(MATERIALS.size()));
+			final int operation = random.nextInt(100);
+			if (operation < 55) {
+				Assert.assertEquals(reference.add(material), set.add(material));
+			} else if (operation < 90) {
+				Assert.assertEquals(reference.remove(material), set.remove(material));
+			} else if (operation < 99) {
+				final Iterator<BlockMaterial> iterator = set.iterator();
+				while (iterator.hasNext()) {
+					final BlockMaterial next = iterator.next();
+					if (random.nextBoolean()) {
+						iterator.remove();
+						reference.remove(next);
+					}
+				}
+			} else {
+				set.clear();
+				reference.clear();
+			}
+			assertSame(reference, set);
+		}
+	}
+
+	@Test
+	public void testSubMaterials() {
+		final BlockMaterial parent = MATERIALS.get(0);
+		final BlockMaterial sub = MATERIALS.get(1);
+		final BlockMaterial otherSub = MATERIALS.get(2);
+		Assert.assertTrue(sub.isSubMaterial());
+		Assert.assertEquals(parent.getId(), sub.getId());
+		final MaterialSet set = new MaterialSet();
+		set.add(parent);
+		Assert.assertTrue(set.contains(parent));
+		Assert.assertFalse(set.contains(sub));
+		set.add(sub);
+		Assert.assertTrue(set.contains(sub));
+		Assert.assertFalse(set.contains(otherSub));
+		set.remove(parent);
+		Assert.assertFalse(set.contains(parent));
+		Assert.assertTrue(set.contains(sub));
+		Assert.assertFalse(set.contains((BlockMaterial) null));
+		Assert.assertFalse(set.contains("Set Material 0"));
+	}
+
+	private static void assertSame(Set<BlockMaterial> reference, MaterialSet set) {
+		Assert.assertEquals(reference.size(), set.size());
+		Assert.assertEquals(reference, new HashSet<BlockMaterial>(set));
+		for (BlockMaterial material : MATERIALS) {
+			final boolean contained = reference.contains(material);
+			Assert.assertEquals(contained, set.contains(material));
+			Assert.assertEquals(contained, set.contains((Object) material));
+			for (ConditionMode mode : ConditionMode.values()) {
+				Assert.assertEquals(mode.check(material, reference), mode.check(material, set));
+			}
+		}
+	}
+
+	private static class TestMaterial extends BlockMaterial {
+		private TestMaterial(String name) {
+			super(name);
+		}
+
+		private TestMaterial(String name, int data, Material parent) {
+			super(name, data, parent);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.infobjects.condition.SlabCheck;
+
+public class SlabCheckTest {
+	@Test
+	public void testSameAsSerial() {
+		final Random random = new Random(3);
+		for (int i = 0; i < 300; i++) {
+			final boolean[] failed = new boolean[1 + random.nextInt(5000)];
+			final int rate = 1 + random.nextInt(2000);
+			int failures = 0;
+			for (int j = 0; j < failed.length; j++) {
+				failed[j] = random.nextInt(rate) == 0;
+				if (failed[j]) {
+					failures++;
+				}
+			}
+			final int allowed = random.nextInt(4);
+			final ArraySlabCheck check = new ArraySlabCheck(allowed, failed);
+			Assert.assertEquals(failures <= allowed, check.check(0, failed.length));
+			if (failures <= allowed) {
+				// every slab was checked exactly once
+				for (int j = 0; j < failed.length; j++) {
+					Assert.assertEquals(1, check.visits.get(j));
+				}
+				Assert.assertEquals(failed.length, check.getReadCount());
+			}
+		}
+	}
+
+	@Test
+	public void testCancellation() {
+		final boolean[] failed = new boolean[100000];
+		for (int i = 0; i < failed.length; i++) {
+			failed[i] = true;
+		}
+		final ArraySlabCheck check = new ArraySlabCheck(0, failed);
+		Assert.assertFalse(check.check(0, failed.length));
+		// the first failures cancel the other slabs
+		Assert.assertTrue(check.getReadCount() < failed.length / 2);
+	}
+
+	@Test
+	public void testInPool() throws Exception {
+		final boolean[] failed = new boolean[20000];
+		failed[12345] = true;
+		final ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			Assert.assertTrue(pool.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return new ArraySlabCheck(1, failed).check(0, failed.length);
+				}
+			}).get());
+			Assert.assertFalse(pool.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return new ArraySlabCheck(0, failed).check(0, failed.length);
+				}
+			}).get());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static class ArraySlabCheck extends SlabCheck {
+		private final boolean[] failed;
+		private final AtomicIntegerArray visits;
+
+		private ArraySlabCheck(int allowed, boolean[] failed) {
+			super(allowed);
+			this.failed = failed;
+			visits = new AtomicIntegerArray(failed.length);
+		}
+
+		@Override
+		protected void checkSlab(int start, int end) {
+			for (int i = start; i < end; i++) {
+				if (isCancelled()) {
+					return;
+				}
+				visits.incrementAndGet(i);
+				addReadCount(1);
+				if (failed[i] && fail()) {
+					return;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.api.geo.World;
+import org.spout.api.material.BlockMaterial;
+
+import org.spout.infobjects.condition.ShapeCondition.ConditionMode;
+import org.spout.infobjects.condition.SphereCondition;
+import org.spout.infobjects.value.DoubleValue;
+import org.spout.infobjects.value.Value;
+
+public class SphereConditionTest {
+	private static final double[][] RADII = {
+		{0, 0, 0}, {1, 1, 1}, {2, 1.5, 2.5}, {3.2, 2, 1}, {4, 4, 4}
+	};
+
+	@Test
+	public void testProbes() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("sphere");
+		for (double[] radii : RADII) {
+			final SphereCondition include = sphere(iwgo, 0, -(int) radii[1] - 1, 0, radii,
+					ConditionMode.INCLUDE, WorldFaker.DIRT, WorldFaker.STONE, WorldFaker.ORE);
+			final SphereCondition exclude = sphere(iwgo, 1, (int) radii[1] + 1, -1, radii,
+					ConditionMode.EXCLUDE, WorldFaker.LEAVES, WorldFaker.GRASS);
+			for (SphereCondition condition : new SphereCondition[] {include, exclude}) {
+				int checks = 0;
+				int passed = 0;
+				for (int x = -20; x < 20; x += 3) {
+					for (int z = -20; z < 20; z += 3) {
+						for (int y = 52; y < 70; y++) {
+							final boolean expected = countFailed(world, x, y, z, condition, radii) == 0;
+							condition.setProbes(0);
+							Assert.assertEquals(expected, condition.check(new PlacementContext(world, x, y, z)));
+							for (int probes : new int[] {1, 7, 40}) {
+								condition.setProbes(probes);
+								Assert.assertEquals(expected, condition.check(new PlacementContext(world, x, y, z)));
+							}
+							checks++;
+							if (expected) {
+								passed++;
+							}
+						}
+					}
+				}
+				Assert.assertTrue(passed > 0);
+				Assert.assertTrue(passed < checks);
+			}
+		}
+	}
+
+	@Test
+	public void testThreshold() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("sphere");
+		for (double[] radii : RADII) {
+			final int volume = countVoxels(radii);
+			final SphereCondition condition = sphere(iwgo, 0, 0, 0, radii,
+					ConditionMode.THRESHOLD, WorldFaker.AIR, WorldFaker.LEAVES);
+			// probes are ignored in the threshold mode
+			condition.setProbes(5);
+			for (int threshold : new int[] {0, 25, 50, 90, 100}) {
+				condition.setThreshold(threshold);
+				for (int x = -20; x < 20; x += 3) {
+					for (int z = -20; z < 20; z += 3) {
+						for (int y = 52; y < 70; y++) {
+							// count every block, without stopping early
+							final int matched = volume - countFailed(world, x, y, z, condition, radii);
+							final PlacementContext context = new PlacementContext(world, x, y, z);
+							Assert.assertEquals(matched * 100 >= volume * threshold, condition.check(context));
+							// a threshold of zero is always reached, without reading anything
+							Assert.assertTrue(context.getReadCount() <= (threshold == 0 ? 0 : volume));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		final World world = WorldFaker.fakeWorld();
+		final IWGO iwgo = new IWGO("sphere");
+		final double[] radii = {28, 26, 27};
+		final SphereCondition include = sphere(iwgo, 0, 27, 0, radii, ConditionMode.INCLUDE,
+				WorldFaker.AIR, WorldFaker.LEAVES);
+		final SphereCondition exclude = sphere(iwgo, 0, 0, 0, radii, ConditionMode.EXCLUDE, WorldFaker.ORE);
+		final SphereCondition threshold = sphere(iwgo, 0, 0, 0, radii, ConditionMode.THRESHOLD, WorldFaker.AIR);
+		threshold.setThreshold(50);
+		final int volume = countVoxels(radii);
+		for (SphereCondition condition : new SphereCondition[] {include, exclude, threshold}) {
+			for (int y : new int[] {40, 58, 62, 95}) {
+				for (int xz : new int[] {-100, 37}) {
+					final int failed = countFailed(world, xz, y, xz, condition, radii);
+					final boolean expected = condition == threshold ? (volume - failed) * 2 >= volume : failed == 0;
+					Assert.assertEquals(expected, condition.check(new PlacementContext(world, xz, y, xz)));
+				}
+			}
+		}
+	}
+
+	private static int countVoxels(double[] radii) {
+		final double rx = radii[0] + 0.5;
+		final double ry = radii[1] + 0.5;
+		final double rz = radii[2] + 0.5;
+		final int ceilX = (int) Math.ceil(rx);
+		final int ceilY = (int) Math.ceil(ry);
+		final int ceilZ = (int) Math.ceil(rz);
+		int count = 0;
+		for (int xx = -ceilX; xx <= ceilX; xx++) {
+			for (int yy = -ceilY; yy <= ceilY; yy++) {
+				for (int zz = -ceilZ; zz <= ceilZ; zz++) {
+					final double xn = Math.abs(xx) * (1 / rx);
+					final double yn = Math.abs(yy) * (1 / ry);
+					final double zn = Math.abs(zz) * (1 / rz);
+					if (xn * xn + yn * yn + zn * zn <= 1) {
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	// the plain scan of the bounding box, testing each block for being in the sphere
+	private static int countFailed(World world, int x, int y, int z, SphereCondition condition, double[] radii) {
+		final int px = x + (int) condition.getX().getValue();
+		final int py = y + (int) condition.getY().getValue();
+		final int pz = z + (int) condition.getZ().getValue();
+		final double rx = radii[0] + 0.5;
+		final double ry = radii[1] + 0.5;
+		final double rz = radii[2] + 0.5;
+		final int ceilX = (int) Math.ceil(rx);
+		final int ceilY = (int) Math.ceil(ry);
+		final int ceilZ = (int) Math.ceil(rz);
+		int failed = 0;
+		for (int xx = -ceilX; xx <= ceilX; xx++) {
+			for (int yy = -ceilY; yy <= ceilY; yy++) {
+				for (int zz = -ceilZ; zz <= ceilZ; zz++) {
+					final double xn = Math.abs(xx) * (1 / rx);
+					final double yn = Math.abs(yy) * (1 / ry);
+					final double zn = Math.abs(zz) * (1 / rz);
+					if (xn * xn + yn * yn + zn * zn > 1) {
+						continue;
+					}
+					final BlockMaterial material = world.getBlockMaterial(px + xx, py + yy, pz + zz);
+					if (!condition.getMode().check(material, condition.getMaterials())) {
+						failed++;
+					}
+				}
+			}
+		}
+		return failed;
+	}
+
+	private static SphereCondition sphere(IWGO iwgo, int x, int y, int z, double[] radii,
+			ConditionMode mode, BlockMaterial... materials) throws Exception {
+		final SphereCondition condition = new SphereCondition(iwgo);
+		final Map<String, Value> sizes = new HashMap<String, Value>();
+		sizes.put("radiusX", new DoubleValue(radii[0]));
+		sizes.put("radiusY", new DoubleValue(radii[1]));
+		sizes.put("radiusZ", new DoubleValue(radii[2]));
+		condition.setSize(sizes);
+		condition.setPosition(new DoubleValue(x), new DoubleValue(y), new DoubleValue(z));
+		condition.setMode(mode);
+		for (BlockMaterial material : materials) {
+			condition.addBlockMaterial(material);
+		}
+		return condition;
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.infobjects.value.DoubleValue;
+import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueState;
+import org.spout.infobjects.value.VariableMathExpressionValue;
+import org.spout.infobjects.variable.Variable;
+import org.spout.infobjects.variable.VariableSource;
+import org.spout.infobjects.variable.VariableTable;
+
+public class VariableBindingTest {
+	private static final String EXPRESSION = "x * 10 + y - z / 2";
+
+	@Test
+	public void testFirstSourceWins() throws Exception {
+		final VariableTable first = new VariableTable();
+		final VariableTable second = new VariableTable();
+		first.addVariable(new Variable("x", new DoubleValue(2)));
+		second.addVariable(new Variable("x", new DoubleValue(5)));
+		second.addVariable(new Variable("y", new DoubleValue(3)));
+		final VariableMathExpressionValue value = new VariableMathExpressionValue(EXPRESSION);
+		value.addVariableSources(first, second);
+		value.calculate();
+		Assert.assertEquals(23, value.getValue(), 0);
+		Assert.assertEquals(evaluate(first, second), value.getValue(), 0);
+		Assert.assertSame(first.getVariable("x"), value.getBoundVariables().get(0));
+	}
+
+	@Test
+	public void testSameAsLookup() throws Exception {
+		final Random random = new Random(11);
+		final VariableTable first = new VariableTable();
+		final VariableTable second = new VariableTable();
+		final TestValue x = new TestValue();
+		final TestValue y = new TestValue();
+		final TestValue z = new TestValue();
+		first.addVariable(new Variable("x", x));
+		second.addVariable(new Variable("y", y));
+		final VariableMathExpressionValue value = new VariableMathExpressionValue(EXPRESSION);
+		value.addVariableSources(first, second);
+		for (int i = 0; i < 200; i++) {
+			if (i == 50) {
+				// missing variables are looked up again on the next evaluation
+				second.addVariable(new Variable("z", z));
+			} else if (i == 100) {
+				// a replaced variable is picked up once bound again
+				first.addVariable(new Variable("x", new TestValue(x)));
+				value.bindVariables();
+			} else if (i == 150) {
+				// a new source only provides the variables the others don't have
+				final VariableTable third = new VariableTable();
+				third.addVariable(new Variable("x", new DoubleValue(1000)));
+				value.addVariableSources(third);
+			}
+			x.value = random.nextInt(100);
+			y.value = random.nextDouble();
+			z.value = random.nextInt(9) - 4;
+			first.calculate();
+			second.calculate();
+			value.calculate();
+			final double expected = evaluate(value.getVariableSources().toArray(new VariableSource[0]));
+			Assert.assertEquals(expected, value.getValue(), 0);
+			final ValueState state = new ValueState(random);
+			value.calculate(state);
+			Assert.assertEquals(expected, value.getValue(state), 0);
+		}
+	}
+
+	@Test
+	public void testSharedFrame() throws Exception {
+		final VariableTable table = new VariableTable();
+		table.addVariable(new Variable("x", new DoubleValue(3)));
+		table.addVariable(new Variable("y", new DoubleValue(5)));
+		table.addVariable(new Variable("z", new DoubleValue(7)));
+		final VariableMathExpressionValue full = new VariableMathExpressionValue(EXPRESSION);
+		full.addVariableSources(table);
+		// "w" is never bound, the frame left by the other expression must not leak into it
+		final VariableMathExpressionValue missing = new VariableMathExpressionValue("w + x");
+		missing.addVariableSources(table);
+		final ValueState state = new ValueState(new Random(3));
+		for (int i = 0; i < 3; i++) {
+			full.calculate(state);
+			missing.calculate(state);
+			Assert.assertEquals(3 * 10 + 5 - 7 / 2d, full.getValue(state), 0);
+			Assert.assertEquals(3, missing.getValue(state), 0);
+		}
+	}
+
+	// the evaluation of the expression before binding: search the sources by name every time
+	private static double evaluate(VariableSource... sources) {
+		return lookup("x", sources) * 10 + lookup("y", sources) - lookup("z", sources) / 2;
+	}
+
+	private static double lookup(String name, VariableSource... sources) {
+		for (VariableSource source : sources) {
+			if (source.hasVariable(name)) {
+				return source.getVariable(name).getValue();
+			}
+		}
+		return 0;
+	}
+
+	private static class TestValue implements Value {
+		private final TestValue source;
+		private double value;
+
+		private TestValue() {
+			this(null);
+		}
+
+		// a value following another one
+		private TestValue(TestValue source) {
+			this.source = source;
+		}
+
+		@Override
+		public void calculate() {
+			if (source != null) {
+				value = source.value + 0.5;
+			}
+		}
+
+		@Override
+		public double getValue() {
+			return value;
+		}
+
+		@Override
+		public void calculate(ValueState state) {
+		}
+
+		@Override
+		public double getValue(ValueState state) {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spout.api.util.config.ConfigurationNode;
+
+import org.spout.infobjects.instruction.BlockInstruction;
+import org.spout.infobjects.instruction.RepeatInstruction;
+import org.spout.infobjects.material.MaterialSetter;
+import org.spout.infobjects.util.RandomOwner;
+import org.spout.infobjects.value.DoubleValue;
+import org.spout.infobjects.value.IncrementableValue;
+import org.spout.infobjects.value.Value;
+import org.spout.infobjects.value.ValueParser;
+import org.spout.infobjects.value.ValueState;
+import org.spout.infobjects.variable.DependencyGraph;
+import org.spout.infobjects.variable.Variable;
+import org.spout.infobjects.variable.VariableTable;
+import org.spout.infobjects.voxel.VoxelBuffer;
+
+public class VariableTableTest {
+	@Test
+	public void testSlots() {
+		final VariableTable table = new VariableTable();
+		final List<Variable> variables = new ArrayList<Variable>();
+		for (int i = 0; i < 20; i++) {
+			final Variable variable = new Variable("v" + i, new DoubleValue(i * 1.5));
+			table.addVariable(variable);
+			variables.add(variable);
+		}
+		Assert.assertEquals(20, table.size());
+		for (int i = 0; i < 20; i++) {
+			final Variable variable = variables.get(i);
+			Assert.assertEquals(i, table.getSlot("v" + i));
+			Assert.assertSame(variable, table.getVariable(i));
+			Assert.assertSame(variable, table.getVariable("v" + i));
+			Assert.assertEquals(variable.getRawValue().getValue(), variable.getValue(), 0);
+		}
+		Assert.assertEquals(-1, table.getSlot("missing"));
+		// a variable replacing another one takes its slot
+		final Variable replacement = new Variable("v3", new DoubleValue(-7));
+		table.addVariable(replacement);
+		Assert.assertEquals(20, table.size());
+		Assert.assertEquals(3, replacement.getSlot());
+		Assert.assertSame(replacement, table.getVariable(3));
+		Assert.assertEquals(-7, replacement.getValue(), 0);
+		Assert.assertNull(variables.get(3).getTable());
+		Assert.assertEquals(4.5, variables.get(3).getValue(), 0);
+	}
+
+	@Test
+	public void testSameAsRawValues() {
+		final Random random = new Random(5);
+		final VariableTable table = new VariableTable();
+		final List<Variable> variables = new ArrayList<Variable>();
+		for (int i = 0; i < 10; i++) {
+			final Value value = ValueParser.parse("ranF=" + i + "-" + (i * 3 + 1));
+			((RandomOwner) value).setRandom(random);
+			final Variable variable = new Variable("r" + i, value);
+			table.addVariable(variable);
+			variables.add(variable);
+		}
+		for (int i = 0; i < 100; i++) {
+			table.calculate();
+			// the frame holds what the values would give when read directly
+			for (Variable variable : variables) {
+				Assert.assertEquals(variable.getRawValue().getValue(), variable.getValue(), 0);
+				Assert.assertEquals(variable.getValue(), table.snapshot()[variable.getSlot()], 0);
+			}
+		}
+	}
+
+	@Test
+	public void testSnapshot() {
+		final Random random = new Random(9);
+		final VariableTable table = new VariableTable();
+		for (int i = 0; i < 5; i++) {
+			final Value value = ValueParser.parse("ranF=0-100");
+			((RandomOwner) value).setRandom(random);
+			table.addVariable(new Variable("r" + i, value));
+		}
+		table.calculate();
+		final double[] snapshot = table.snapshot();
+		Assert.assertEquals(5, snapshot.length);
+		table.calculate();
+		Assert.assertFalse(snapshot[0] == table.getVariable(0).getValue());
+		table.restore(snapshot);
+		for (int i = 0; i < 5; i++) {
+			Assert.assertEquals(snapshot[i], table.getVariable(i).getValue(), 0);
+		}
+		try {
+			table.restore(new double[4]);
+			Assert.fail();
+		} catch (IllegalArgumentException ex) {
+		}
+	}
+
+	@Test
+	public void testRepeatWithState() throws Exception {
+		final RecordingSetter setter = new RecordingSetter();
+		final IWGO iwgo = new IWGO("repeat");
+		iwgo.addVariable(new Variable("i", new DoubleValue(0)));
+		final BlockInstruction block = new BlockInstruction(iwgo, "block");
+		block.setX(ValueParser.parse("i * 2", iwgo, block));
+		block.setY(ValueParser.parse("ranI=0-9"));
+		block.setZ(ValueParser.parse("i * i - 1", iwgo, block));
+		block.setMaterialSetter(setter);
+		final RepeatInstruction repeat = new RepeatInstruction(iwgo, "repeat");
+		repeat.setRepeat(block);
+		repeat.setTimes(new DoubleValue(5));
+		repeat.addIncrementableValue("i", new IncrementableValue(iwgo.getVariable("i").getRawValue(),
+				new DoubleValue(1)));
+		iwgo.addInstruction(repeat);
+		iwgo.setRandom(new Random(1));
+		iwgo.randomize();
+		final double[] shared = iwgo.getVariableTable().snapshot();
+		List<int[]> first = null;
+		for (int run = 0; run < 3; run++) {
+			// states with the same seed give the same blocks
+			final ValueState state = new ValueState(new Random(42));
+			iwgo.randomize(state);
+			setter.voxels.clear();
+			iwgo.dryRun(new VoxelBuffer(0, 0, 0), state);
+			Assert.assertEquals(5, setter.voxels.size());
+			for (int k = 1; k <= 5; k++) {
+				final int[] voxel = setter.voxels.get(k - 1);
+				Assert.assertEquals(k * 2, voxel[0]);
+				Assert.assertTrue(voxel[1] >= 0 && voxel[1] <= 9);
+				Assert.assertEquals(k * k - 1, voxel[2]);
+			}
+			if (first == null) {
+				first = new ArrayList<int[]>(setter.voxels);
+			} else {
+				for (int k = 0; k < 5; k++) {
+					Assert.assertArrayEquals(first.get(k), setter.voxels.get(k));
+				}
+			}
+			// the increments are reset in the state and the shared frame is untouched
+			Assert.assertEquals(0, iwgo.getVariable("i").getValue(state), 0);
+			Assert.assertArrayEquals(shared, iwgo.getVariableTable().snapshot(), 0);
+		}
+	}
+
+	@Test
+	public void testRepeatWithGraph() throws Exception {
+		final RecordingSetter setter = new RecordingSetter();
+		final IWGO iwgo = new IWGO("repeat");
+		iwgo.addVariable(new Variable("i", new DoubleValue(0)));
+		iwgo.addVariable(new Variable("j", ValueParser.parse("i * i", iwgo)));
+		iwgo.addVariable(new Variable("k", new DoubleValue(3)));
+		final BlockInstruction block = new BlockInstruction(iwgo, "block");
+		block.setX(ValueParser.parse("i * 2", iwgo, block));
+		block.setY(ValueParser.parse("ranI=0-9"));
+		// depends on i through j
+		block.setZ(ValueParser.parse("j - 1", iwgo, block));
+		block.setMaterialSetter(setter);
+		final Value constant = ValueParser.parse("k + 1", iwgo);
+		final BlockInstruction fixed = new BlockInstruction(iwgo, "fixed");
+		fixed.setX(constant);
+		fixed.setY(constant);
+		fixed.setZ(constant);
+		fixed.setMaterialSetter(setter);
+		final RepeatInstruction repeat = new RepeatInstruction(iwgo, "repeat");
+		repeat.setRepeat(block);
+		repeat.setTimes(new DoubleValue(5));
+		repeat.addIncrementableValue("i", new IncrementableValue(iwgo.getVariable("i").getRawValue(),
+				new DoubleValue(1)));
+		iwgo.addInstruction(fixed);
+		iwgo.addInstruction(repeat);
+		iwgo.setRandom(new Random(1));
+		final DependencyGraph graph = iwgo.buildDependencyGraph();
+		Assert.assertTrue(graph.isConstant(constant));
+		Assert.assertFalse(graph.isConstant(block.getZ()));
+		iwgo.randomize();
+		Assert.assertEquals(4, constant.getValue(), 0);
+		final ValueState state = new ValueState(new Random(42));
+		iwgo.randomize(state);
+		iwgo.dryRun(new VoxelBuffer(0, 0, 0), state);
+		Assert.assertEquals(6, setter.voxels.size());
+		Assert.assertArrayEquals(new int[] {4, 4, 4}, setter.voxels.get(0));
+		for (int n = 1; n <= 5; n++) {
+			final int[] voxel = setter.voxels.get(n);
+			Assert.assertEquals(n * 2, voxel[0]);
+			Assert.assertTrue(voxel[1] >= 0 && voxel[1] <= 9);
+			// the iWGO variable depending on the incremented one is recalculated on each repeat
+			Assert.assertEquals(n * n - 1, voxel[2]);
+		}
+		// the variables depending on the increments are reset in the state too
+		Assert.assertEquals(0, iwgo.getVariable("i").getValue(state), 0);
+		Assert.assertEquals(0, iwgo.getVariable("j").getValue(state), 0);
+		Assert.assertEquals(0, iwgo.getVariable("j").getValue(), 0);
+	}
+
+	private static class RecordingSetter extends MaterialSetter {
+		private final List<int[]> voxels = new ArrayList<int[]>();
+
+		public RecordingSetter() {
+			super("recording");
+		}
+
+		@Override
+		public void load(ConfigurationNode properties) {
+		}
+
+		@Override
+		public void setMaterial(VoxelBuffer buffer, int x, int y, int z, boolean outer) {
+			voxels.add(new int[] {x, y, z});
+		}
+	}
+}
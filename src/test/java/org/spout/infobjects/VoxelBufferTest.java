@@ -0,0 +1,114 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import org.powermock.api.mockito.PowerMockito;
+
+import org.spout.api.geo.World;
+import org.spout.api.material.BlockMaterial;
+
+import org.spout.infobjects.voxel.VoxelBuffer;
+
+public class VoxelBufferTest {
+	private BlockMaterial stone;
+	private BlockMaterial dirt;
+
+	@Before
+	public void before() {
+		EngineFaker.setupEngine();
+		stone = PowerMockito.mock(BlockMaterial.class);
+		dirt = PowerMockito.mock(BlockMaterial.class);
+	}
+
+	@Test
+	public void testRecording() {
+		final VoxelBuffer buffer = new VoxelBuffer(-1000, 64, 5000, 1);
+		buffer.add(-1000, 64, 5000, stone, (short) 0);
+		buffer.add(-1000 - 70000, 0, 5000 + 300000, dirt, (short) 3);
+		buffer.add(-999, 65, 5001, stone, (short) 7);
+		Assert.assertEquals(3, buffer.size());
+		Assert.assertEquals(-70000 - 1000, buffer.getX(1));
+		Assert.assertEquals(0, buffer.getY(1));
+		Assert.assertEquals(305000, buffer.getZ(1));
+		Assert.assertSame(dirt, buffer.getMaterial(1));
+		Assert.assertEquals(3, buffer.getData(1));
+		Assert.assertSame(stone, buffer.getMaterial(2));
+		Assert.assertEquals(7, buffer.getData(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOutOfRange() {
+		new VoxelBuffer().add(2000000, 0, 0, stone, (short) 0);
+	}
+
+	@Test
+	public void testFlush() {
+		final World world = PowerMockito.mock(World.class);
+		final VoxelBuffer buffer = new VoxelBuffer(10, 20, 30);
+		buffer.add(10, 20, 30, stone, (short) 0);
+		buffer.add(11, 20, 30, dirt, (short) 1);
+		buffer.add(10, 20, 30, dirt, (short) 2);
+		buffer.flush(world);
+		Assert.assertTrue(buffer.isEmpty());
+		final InOrder order = Mockito.inOrder(world);
+		order.verify(world).setBlockMaterial(10, 20, 30, stone, (short) 0, null);
+		order.verify(world).setBlockMaterial(11, 20, 30, dirt, (short) 1, null);
+		order.verify(world).setBlockMaterial(10, 20, 30, dirt, (short) 2, null);
+	}
+
+	@Test
+	public void testApplyAtOrigin() {
+		final World world = PowerMockito.mock(World.class);
+		final VoxelBuffer buffer = new VoxelBuffer(0, 0, 0);
+		buffer.add(1, 2, 3, stone, (short) 0);
+		buffer.apply(world, 100, 50, -100);
+		Mockito.verify(world).setBlockMaterial(101, 52, -97, stone, (short) 0, null);
+		Assert.assertEquals(1, buffer.size());
+	}
+
+	@Test
+	public void testChunkGrouping() {
+		final VoxelBuffer buffer = new VoxelBuffer(0, 0, 0);
+		for (int x = -16; x < 32; x++) {
+			for (int y = 0; y < 16; y++) {
+				buffer.add(x, y, 0, stone, (short) 0);
+			}
+		}
+		Assert.assertEquals(3, buffer.getChunkCount(0, 0, 0));
+		Assert.assertEquals(6, buffer.getChunkCount(0, 8, 0));
+		final World world = PowerMockito.mock(World.class);
+		buffer.apply(world, 0, 0, 0);
+		Mockito.verify(world, Mockito.times(3)).getChunkFromBlock(Mockito.anyInt(), Mockito.anyInt(), Mockito.anyInt());
+	}
+}
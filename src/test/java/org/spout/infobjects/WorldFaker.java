@@ -0,0 +1,145 @@
+/*
+ * This file is part of InfiniteObjects.
+ *
+ * Copyright (c) 2012 Spout LLC <http://www.spout.org/>
+ * InfiniteObjects is licensed under the Spout License Version 1.
+ *
+ * InfiniteObjects is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * InfiniteObjects is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license,
+ * including the MIT license.
+ */
+package org.spout.infobjects;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.spout.api.geo.World;
+import org.spout.api.material.BlockMaterial;
+import org.spout.api.util.cuboid.CuboidBlockMaterialBuffer;
+
+/**
+ * Fakes a world with a deterministic terrain, for comparing the optimized condition checks
+ * against the plain ones. The surface is made of 8 by 8 plateaus of grass between y = 60 and 63,
+ * over three blocks of dirt and then stone with some ore. Some leaves float right above the
+ * surface. Everything else is air. The surface height is the height of the highest block which
+ * isn't air.
+ */
+public class WorldFaker {
+	public static final BlockMaterial AIR;
+	public static final BlockMaterial GRASS;
+	public static final BlockMaterial DIRT;
+	public static final BlockMaterial STONE;
+	public static final BlockMaterial ORE;
+	public static final BlockMaterial LEAVES;
+
+	static {
+		EngineFaker.setupEngine();
+		AIR = new TestMaterial("Faker Air");
+		GRASS = new TestMaterial("Faker Grass");
+		DIRT = new TestMaterial("Faker Dirt");
+		STONE = new TestMaterial("Faker Stone");
+		ORE = new TestMaterial("Faker Ore");
+		LEAVES = new TestMaterial("Faker Leaves");
+	}
+
+	public static World fakeWorld() {
+		return Mockito.mock(World.class, new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) {
+				final String method = invocation.getMethod().getName();
+				final Object[] args = invocation.getArguments();
+				if (method.equals("getBlockMaterial")) {
+					return getBlockMaterial((Integer) args[0], (Integer) args[1], (Integer) args[2]);
+				}
+				if (method.equals("getSurfaceHeight")) {
+					return getSurfaceHeight((Integer) args[0], (Integer) args[1]);
+				}
+				if (method.equals("getCuboid")) {
+					return getCuboid((Integer) args[0], (Integer) args[1], (Integer) args[2],
+							(Integer) args[3], (Integer) args[4], (Integer) args[5]);
+				}
+				if (method.equals("getName")) {
+					return "faker";
+				}
+				if (method.equals("hashCode")) {
+					return System.identityHashCode(invocation.getMock());
+				}
+				if (method.equals("equals")) {
+					return invocation.getMock() == args[0];
+				}
+				throw new UnsupportedOperationException(method);
+			}
+		});
+	}
+
+	public static int getSurfaceHeight(int x, int z) {
+		final int ground = getGroundHeight(x, z);
+		for (int y = ground + 3; y > ground; y--) {
+			if (getBlockMaterial(x, y, z) != AIR) {
+				return y;
+			}
+		}
+		return ground;
+	}
+
+	public static BlockMaterial getBlockMaterial(int x, int y, int z) {
+		final int surface = getGroundHeight(x, z);
+		final int hash = hash(x, y, z);
+		if (y > surface) {
+			return y <= surface + 3 && (hash & 255) == 0 ? LEAVES : AIR;
+		}
+		if (y == surface) {
+			return GRASS;
+		}
+		if (y >= surface - 3) {
+			return DIRT;
+		}
+		return (hash & 31) == 0 ? ORE : STONE;
+	}
+
+	private static int getGroundHeight(int x, int z) {
+		return 60 + (hash(x >> 3, 0, z >> 3) >>> 8 & 3);
+	}
+
+	private static CuboidBlockMaterialBuffer getCuboid(int bx, int by, int bz, int sx, int sy, int sz) {
+		final CuboidBlockMaterialBuffer buffer = new CuboidBlockMaterialBuffer(bx, by, bz, sx, sy, sz);
+		for (int x = bx; x < bx + sx; x++) {
+			for (int y = by; y < by + sy; y++) {
+				for (int z = bz; z < bz + sz; z++) {
+					buffer.set(x, y, z, getBlockMaterial(x, y, z));
+				}
+			}
+		}
+		return buffer;
+	}
+
+	private static int hash(int x, int y, int z) {
+		int hash = x * 73856093 ^ y * 19349663 ^ z * 83492791;
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		return hash ^ hash >>> 13;
+	}
+
+	private static class TestMaterial extends BlockMaterial {
+		private TestMaterial(String name) {
+			super(name);
+		}
+	}
+}